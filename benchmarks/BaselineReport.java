@@ -0,0 +1,255 @@
+package mr.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <pre>
+ * Compares two JMH result files written with '-rf json' and prints the change of the
+ * score of every benchmark. A benchmark has regressed when its score is worse than the
+ * baseline by more than the threshold (5% by default). Higher scores are better in
+ * throughput mode, lower scores are better in the other modes.
+ * 
+ * Usage: BaselineReport baseline.json current.json [threshold percent]
+ * 
+ * Exits with status 1 if any benchmark has regressed.
+ * </pre>
+ * 
+ * 
+ */
+public class BaselineReport {
+
+    private static final double DEFAULT_THRESHOLD = 5.0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineReport baseline.json current.json "
+                    + "[threshold percent]");
+            System.exit(2);
+        }
+        double threshold =
+                args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        Map<String, Result> baseline = readResults(args[0]);
+        Map<String, Result> current = readResults(args[1]);
+
+        int regressions = 0;
+        System.out.println(String.format("%-80s %14s %14s %9s  %s", "Benchmark",
+                "Baseline", "Current", "Change", "Unit"));
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result result = entry.getValue();
+            Result base = baseline.get(entry.getKey());
+            if (base == null) {
+                System.out.println(String.format("%-80s %14s %14.3f %9s  %s",
+                        entry.getKey(), "-", result.score, "new", result.unit));
+                continue;
+            }
+            double change = (result.score - base.score) * 100 / base.score;
+            // Positive when the benchmark got worse
+            double loss = "thrpt".equals(result.mode) ? -change : change;
+            String flag = "";
+            if (loss > threshold) {
+                flag = "  REGRESSION";
+                regressions++;
+            }
+            System.out.println(String.format("%-80s %14.3f %14.3f %+8.1f%%  %s%s",
+                    entry.getKey(), base.score, result.score, change, result.unit,
+                    flag));
+        }
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.println(String.format("%-80s %14.3f %14s %9s", name,
+                        baseline.get(name).score, "-", "missing"));
+            }
+        }
+        System.out.println(regressions + " regression(s) above " + threshold + "%");
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * Reads the results of a JMH json result file, keyed by the benchmark name followed
+     * by its parameters
+     * 
+     * @param fileName - name of the JMH result file
+     * @return results by benchmark
+     * @throws IOException when the file cannot be read
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Result> readResults(String fileName) throws IOException {
+        String json =
+                new String(Files.readAllBytes(Paths.get(fileName)),
+                        StandardCharsets.UTF_8);
+        Map<String, Result> results = new TreeMap<String, Result>();
+        for (Object item : (List<Object>) new JsonParser(json).parse()) {
+            Map<String, Object> benchmark = (Map<String, Object>) item;
+            StringBuilder name =
+                    new StringBuilder((String) benchmark.get("benchmark"));
+            Map<String, Object> params = (Map<String, Object>) benchmark.get("params");
+            if (params != null) {
+                for (Map.Entry<String, Object> param : new TreeMap<String, Object>(
+                        params).entrySet()) {
+                    name.append(' ').append(param.getKey()).append('=')
+                            .append(param.getValue());
+                }
+            }
+            Map<String, Object> metric =
+                    (Map<String, Object>) benchmark.get("primaryMetric");
+            Result result = new Result();
+            result.mode = (String) benchmark.get("mode");
+            result.score = ((Number) metric.get("score")).doubleValue();
+            result.unit = (String) metric.get("scoreUnit");
+            results.put(name.toString(), result);
+        }
+        return results;
+    }
+
+    /**
+     * Score of one benchmark
+     */
+    static class Result {
+        String mode;
+        double score;
+        String unit;
+    }
+
+    /**
+     * Minimal parser for the JSON written by JMH. Objects are returned as maps, arrays as
+     * lists, numbers as doubles.
+     */
+    static class JsonParser {
+
+        private final String json;
+        private int position = 0;
+
+        JsonParser(String json) {
+            this.json = json;
+        }
+
+        Object parse() {
+            skipWhitespace();
+            char c = json.charAt(position);
+            switch (c) {
+            case '{':
+                return parseObject();
+            case '[':
+                return parseArray();
+            case '"':
+                return parseString();
+            default:
+                return parseLiteral();
+            }
+        }
+
+        private Map<String, Object> parseObject() {
+            Map<String, Object> object = new LinkedHashMap<String, Object>();
+            position++;
+            skipWhitespace();
+            if (json.charAt(position) == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                object.put(key, parse());
+                skipWhitespace();
+                if (json.charAt(position++) == '}') {
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> parseArray() {
+            List<Object> array = new ArrayList<Object>();
+            position++;
+            skipWhitespace();
+            if (json.charAt(position) == ']') {
+                position++;
+                return array;
+            }
+            while (true) {
+                array.add(parse());
+                skipWhitespace();
+                if (json.charAt(position++) == ']') {
+                    return array;
+                }
+            }
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder builder = new StringBuilder();
+            char c;
+            while ((c = json.charAt(position++)) != '"') {
+                if (c == '\\') {
+                    c = json.charAt(position++);
+                    switch (c) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'u':
+                        c = (char) Integer.parseInt(
+                                json.substring(position, position + 4), 16);
+                        position += 4;
+                        break;
+                    default:
+                        break;
+                    }
+                }
+                builder.append(c);
+            }
+            return builder.toString();
+        }
+
+        private Object parseLiteral() {
+            int start = position;
+            while (position < json.length()
+                    && ",}] \t\r\n".indexOf(json.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = json.substring(start, position);
+            if ("null".equals(literal)) {
+                return null;
+            } else if ("true".equals(literal) || "false".equals(literal)) {
+                return Boolean.valueOf(literal);
+            } else if ("NaN".equals(literal)) {
+                return Double.NaN;
+            }
+            return Double.valueOf(literal);
+        }
+
+        private void expect(char c) {
+            if (json.charAt(position++) != c) {
+                throw new IllegalArgumentException("Expected '" + c
+                        + "' at position " + (position - 1));
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length()
+                    && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package mr.benchmarks;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Generates the data used by the benchmarks. A fixed seed is used so that every run of a
+ * benchmark processes the same data.
+ * 
+ * 
+ */
+final class BenchmarkData {
+
+    private static final long SEED = 42;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @return {@link Random} with a fixed seed
+     */
+    static Random newRandom() {
+        return new Random(SEED);
+    }
+
+    /**
+     * Generates a word of the given length, picked from 'cardinality' distinct words
+     * 
+     * @param random {@link Random}
+     * @param length - number of characters of the word
+     * @param cardinality - number of distinct words
+     * @return the word
+     */
+    static String word(Random random, int length, int cardinality) {
+        String id = Integer.toString(random.nextInt(cardinality), 36);
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() + id.length() < length) {
+            builder.append('w');
+        }
+        builder.append(id);
+        return builder.toString();
+    }
+
+    /**
+     * Generates text of about the given size, as lines of the given length
+     * 
+     * @param size - number of characters to generate
+     * @param lineLength - number of characters of each line, excluding the line feed
+     * @param cardinality - number of distinct words
+     * @return the generated text
+     */
+    static String text(int size, int lineLength, int cardinality) {
+        Random random = newRandom();
+        StringBuilder builder = new StringBuilder(size + lineLength + 1);
+        while (builder.length() < size) {
+            int lineStart = builder.length();
+            while (builder.length() - lineStart < lineLength) {
+                if (builder.length() > lineStart) {
+                    builder.append(' ');
+                }
+                builder.append(word(random, 8, cardinality));
+            }
+            builder.setLength(lineStart + lineLength);
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Deletes the given file, or the given directory along with its contents
+     * 
+     * @param file {@link File}
+     */
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
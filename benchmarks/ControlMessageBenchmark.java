@@ -0,0 +1,161 @@
+package mr.benchmarks;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import mr.common.Counters;
+import mr.common.MessageChannel;
+import mr.common.Task;
+import mr.common.TaskCounter;
+import mr.common.TaskProfile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transfer of a completed map {@link Task}, with its counters and profile, over a
+ * loopback connection: as a frame on a {@link MessageChannel}, and with a new
+ * ObjectOutputStream/ObjectInputStream per message as the control messages were sent
+ * before. An operation completes once the receiver has read the task. Reports the
+ * average time per task.
+ *
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControlMessageBenchmark {
+
+    private Task task;
+    private ServerSocket serverSocket;
+    private MessageChannel sender;
+    private MessageChannel receiver;
+    private Socket objectSender;
+    private Socket objectReceiver;
+    private OutputStream objectOutputStream;
+    private Thread[] receiverThreads = new Thread[2];
+    private SynchronousQueue<Task> receivedTasks = new SynchronousQueue<Task>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        task = new Task(Task.TYPE.MAP, "m42");
+        task.setReducers(new SocketAddress[] {
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 5000),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 5001) });
+        task.setSplitLength(64 << 20);
+        Counters counters = new Counters();
+        for (TaskCounter counter : TaskCounter.values()) {
+            counters.increment(counter, 123456789);
+        }
+        task.setCounters(counters);
+        TaskProfile profile = new TaskProfile();
+        for (TaskProfile.PHASE phase : TaskProfile.PHASE.values()) {
+            for (int i = 0; i < 1000; i++) {
+                profile.getHistogram(phase).record(i * 997L);
+            }
+        }
+        task.setProfile(profile);
+
+        serverSocket = new ServerSocket(0, 2, InetAddress.getLoopbackAddress());
+        sender = new MessageChannel(connect());
+        receiver = new MessageChannel(serverSocket.accept());
+        objectSender = connect();
+        objectReceiver = serverSocket.accept();
+        objectOutputStream = objectSender.getOutputStream();
+
+        receiverThreads[0] = startReceiver(new TaskReader() {
+            @Override
+            public Task read() throws Exception {
+                receiver.readFrame();
+                return receiver.readMessage(new Task());
+            }
+        });
+        receiverThreads[1] = startReceiver(new TaskReader() {
+            @Override
+            public Task read() throws Exception {
+                return (Task) new ObjectInputStream(objectReceiver.getInputStream())
+                        .readObject();
+            }
+        });
+    }
+
+    @Benchmark
+    public Task framed() throws Exception {
+        sender.send(MessageChannel.TYPE.COMPLETED_TASK, task);
+        return receivedTasks.take();
+    }
+
+    @Benchmark
+    public Task javaSerialization() throws Exception {
+        ObjectOutputStream stream = new ObjectOutputStream(objectOutputStream);
+        stream.writeObject(task);
+        stream.flush();
+        return receivedTasks.take();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        sender.close();
+        receiver.close();
+        objectSender.close();
+        objectReceiver.close();
+        serverSocket.close();
+        for (Thread thread : receiverThreads) {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+    }
+
+    /**
+     * Starts a thread that reads the tasks with the given reader and hands them over to
+     * the benchmark thread
+     */
+    private Thread startReceiver(final TaskReader reader) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        receivedTasks.put(reader.read());
+                    }
+                } catch (InterruptedException e) {
+                    // Interrupted by the tear down
+                } catch (Exception e) {
+                    // Connection closed by the tear down
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private interface TaskReader {
+        Task read() throws Exception;
+    }
+}
@@ -0,0 +1,77 @@
+package mr.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import mr.io.TextInputFormat;
+import mr.master.FileSplitter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Splitting of a text input file with {@link FileSplitter#getNextSplit()}, as done by
+ * the master before the splits are sent to the TaskTrackers. Reports the average time to
+ * split the whole file.
+ * 
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileSplitterBenchmark {
+
+    private static final int FILE_SIZE = 64 * 1024 * 1024;
+
+    @Param({ "1048576", "16777216" })
+    public int splitSize;
+
+    // Length of a line in characters
+    @Param({ "128" })
+    public int recordSize;
+
+    private File directory;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("mr-benchmark-split").toFile();
+        file = new File(directory, "input.txt");
+        Writer writer = new FileWriter(file);
+        writer.write(BenchmarkData.text(FILE_SIZE, recordSize, 100000));
+        writer.close();
+    }
+
+    @Benchmark
+    public void split(Blackhole blackhole) {
+        FileSplitter fileSplitter =
+                new FileSplitter(file.getPath(), splitSize, new TextInputFormat());
+        while (fileSplitter.hasMoreSplits()) {
+            blackhole.consume(fileSplitter.getNextSplit());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(directory);
+    }
+}
@@ -0,0 +1,111 @@
+package mr.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import mr.common.MessageChannel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * File transfer over a loopback connection with {@link MessageChannel#sendFile} and
+ * {@link MessageChannel#readFile}, as done for the input splits and the shuffle. An
+ * operation completes once the receiver has saved the file. Reports the average time per
+ * file.
+ * 
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileTransferBenchmark {
+
+    // Size of the transferred file in bytes
+    @Param({ "65536", "4194304", "33554432" })
+    public int fileSize;
+
+    private File directory;
+    private File file;
+    private ServerSocket serverSocket;
+    private MessageChannel sender;
+    private MessageChannel receiver;
+    private Thread receiverThread;
+    private SynchronousQueue<File> receivedFiles = new SynchronousQueue<File>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("mr-benchmark-transfer").toFile();
+        final File receiveDirectory = new File(directory, "received");
+        receiveDirectory.mkdirs();
+
+        byte[] data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+        file = new File(directory, "segment");
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        sender =
+                new MessageChannel(new Socket(InetAddress.getLoopbackAddress(),
+                        serverSocket.getLocalPort()));
+        receiver = new MessageChannel(serverSocket.accept());
+
+        receiverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        receiver.readFrame();
+                        receivedFiles.put(receiver.readFile(receiveDirectory
+                                .getPath()));
+                    }
+                } catch (IOException e) {
+                    // Connection closed by the tear down
+                } catch (InterruptedException e) {
+                    // Interrupted by the tear down
+                }
+            }
+        });
+        receiverThread.start();
+    }
+
+    @Benchmark
+    public File sendAndReceive() throws Exception {
+        sender.sendFile(MessageChannel.TYPE.SEGMENT, file);
+        return receivedFiles.take();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        sender.close();
+        receiver.close();
+        serverSocket.close();
+        receiverThread.interrupt();
+        receiverThread.join();
+        BenchmarkData.delete(directory);
+    }
+}
@@ -0,0 +1,66 @@
+package mr.benchmarks;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import mr.io.BufferedLineReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of {@link BufferedLineReader#readLine()}, which reads every record of a text
+ * input split. Reports the average time per line.
+ * 
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineReaderBenchmark {
+
+    private static final int LINES = 20000;
+
+    // Length of a line in characters
+    @Param({ "16", "128", "1024" })
+    public int recordSize;
+
+    @Param({ "1000" })
+    public int keyCardinality;
+
+    private char[] data;
+
+    @Setup
+    public void setup() {
+        data =
+                BenchmarkData.text(LINES * (recordSize + 1) - 1, recordSize,
+                        keyCardinality).toCharArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void readLine(Blackhole blackhole) throws IOException {
+        BufferedLineReader reader =
+                new BufferedLineReader(new CharArrayReader(data));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            blackhole.consume(line);
+        }
+        reader.close();
+    }
+}
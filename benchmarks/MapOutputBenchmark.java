@@ -0,0 +1,106 @@
+package mr.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+
+import mr.common.Configuration;
+import mr.io.IntWritable;
+import mr.io.Text;
+import mr.worker.MapContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the map output path: {@link MapContext#write} of every record into the map
+ * output buffer, followed by the sort and the spill of the buffer to one compressed
+ * segment per reducer. Reports the average time per record.
+ * 
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapOutputBenchmark {
+
+    private static final int RECORDS = 100000;
+    private static final int NUMBER_OF_REDUCERS = 4;
+
+    // MapContext resolves its output directory against the working directory
+    private static final String DATA_DIR = "mr-benchmark-map";
+
+    // Length of a key in characters
+    @Param({ "16", "128" })
+    public int recordSize;
+
+    @Param({ "100", "100000" })
+    public int keyCardinality;
+
+    private Text[] keys = new Text[RECORDS];
+    private IntWritable value = new IntWritable(1);
+    private Configuration configuration;
+    private File inputSplit;
+    private MapContext<Object, Object, Text, IntWritable> context;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        Random random = BenchmarkData.newRandom();
+        for (int i = 0; i < RECORDS; i++) {
+            keys[i] =
+                    new Text(BenchmarkData.word(random, recordSize,
+                            keyCardinality));
+        }
+
+        File dataDir = new File(DATA_DIR);
+        dataDir.mkdirs();
+        // Empty split, the records are written directly to the context
+        inputSplit = new File(dataDir, "input_0");
+        new DeflaterOutputStream(new FileOutputStream(inputSplit)).close();
+
+        configuration = new Configuration();
+        configuration.setNumberOfReducers(NUMBER_OF_REDUCERS);
+        // Large enough for all the records to be spilled once, at the end of the input
+        configuration.setSplitSize(1 << 30);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        context =
+                new MapContext<Object, Object, Text, IntWritable>(configuration,
+                        inputSplit, DATA_DIR);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void writeAndSpill() {
+        for (Text key : keys) {
+            context.write(key, value);
+        }
+        // Sorts and spills the buffer once the (empty) input has been read
+        context.nextKeyValue();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(new File(DATA_DIR));
+    }
+}
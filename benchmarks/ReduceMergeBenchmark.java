@@ -0,0 +1,109 @@
+package mr.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import mr.common.Configuration;
+import mr.io.IntWritable;
+import mr.io.Text;
+import mr.worker.ReduceContext;
+import mr.worker.SegmentWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merge throughput of {@link ReduceContext} over N sorted segments: every group is read
+ * and all its values are deserialized and summed, as done by a word count reducer.
+ * Reports the average time per input record.
+ * 
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReduceMergeBenchmark {
+
+    private static final int RECORDS = 200000;
+
+    @Param({ "4", "16", "64" })
+    public int segments;
+
+    // Length of a key in characters
+    @Param({ "16", "128" })
+    public int recordSize;
+
+    @Param({ "10000" })
+    public int keyCardinality;
+
+    private File directory;
+    private Configuration configuration;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("mr-benchmark-reduce").toFile();
+        File segmentDirectory = new File(directory, "segments");
+        segmentDirectory.mkdirs();
+
+        Random random = BenchmarkData.newRandom();
+        int recordsPerSegment = RECORDS / segments;
+        IntWritable one = new IntWritable(1);
+        for (int segment = 0; segment < segments; segment++) {
+            String[] keys = new String[recordsPerSegment];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = BenchmarkData.word(random, recordSize, keyCardinality);
+            }
+            Arrays.sort(keys);
+            SegmentWriter<Text, IntWritable> writer =
+                    new SegmentWriter<Text, IntWritable>(new File(
+                            segmentDirectory, "complete" + segment + "_0_0"));
+            for (String key : keys) {
+                writer.append(new Text(key), one);
+            }
+            writer.close();
+        }
+
+        configuration = new Configuration();
+        configuration.setOutputPath(new File(directory, "output").getPath());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public long merge() {
+        ReduceContext<Text, IntWritable, Text, IntWritable> context =
+                new ReduceContext<Text, IntWritable, Text, IntWritable>(
+                        configuration, new File(directory, "segments").getPath(),
+                        "bench");
+        long total = 0;
+        while (context.hasNextKey()) {
+            for (IntWritable value : context.getValues()) {
+                total += value.getValue();
+            }
+        }
+        return total;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(directory);
+    }
+}
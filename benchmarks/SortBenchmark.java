@@ -0,0 +1,97 @@
+package mr.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import mr.common.Configuration;
+import mr.common.KeyValuePair;
+import mr.io.IntWritable;
+import mr.io.Text;
+import mr.worker.KeyComparators;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sort of the map output buffer of {@link KeyValuePair}, using the natural ordering of
+ * the pairs and using the key comparator of the job as done by the map task. Reports the
+ * average time per record.
+ * 
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortBenchmark {
+
+    private static final int RECORDS = 100000;
+
+    // Length of a key in characters
+    @Param({ "16", "128" })
+    public int recordSize;
+
+    @Param({ "100", "10000", "1000000" })
+    public int keyCardinality;
+
+    private List<KeyValuePair<Text, IntWritable>> input;
+    private List<KeyValuePair<Text, IntWritable>> buffer;
+    private Comparator<KeyValuePair<Text, IntWritable>> comparator;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        Random random = BenchmarkData.newRandom();
+        input = new ArrayList<KeyValuePair<Text, IntWritable>>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            input.add(new KeyValuePair<Text, IntWritable>(new Text(
+                    BenchmarkData.word(random, recordSize, keyCardinality)),
+                    new IntWritable(i)));
+        }
+        final Comparator<Text> sortComparator =
+                KeyComparators.getSortComparator(new Configuration());
+        comparator = new Comparator<KeyValuePair<Text, IntWritable>>() {
+            @Override
+            public int compare(
+                    KeyValuePair<Text, IntWritable> pair1,
+                    KeyValuePair<Text, IntWritable> pair2) {
+                return sortComparator.compare(pair1.getKey(), pair2.getKey());
+            }
+        };
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        buffer = new ArrayList<KeyValuePair<Text, IntWritable>>(input);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public List<KeyValuePair<Text, IntWritable>> sortNatural() {
+        Collections.sort(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public List<KeyValuePair<Text, IntWritable>> sortWithKeyComparator() {
+        Collections.sort(buffer, comparator);
+        return buffer;
+    }
+}
@@ -0,0 +1,96 @@
+package mr.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import mr.io.DataInputBuffer;
+import mr.io.DataOutputBuffer;
+import mr.io.IntWritable;
+import mr.io.Text;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization round trip of the value types, using their {@link mr.io.Writable}
+ * methods with reused buffers and objects (as done for the intermediate values), and
+ * using java serialization (as done for the keys and for other value types).
+ * 
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WritableBenchmark {
+
+    // Length of the text value in characters
+    @Param({ "16", "256" })
+    public int recordSize;
+
+    private Text text;
+    private IntWritable number = new IntWritable(123456);
+
+    private DataOutputBuffer outputBuffer = new DataOutputBuffer();
+    private DataInputBuffer inputBuffer = new DataInputBuffer();
+    private Text reusedText = new Text();
+    private IntWritable reusedNumber = new IntWritable();
+
+    @Setup
+    public void setup() {
+        text = new Text(BenchmarkData.word(BenchmarkData.newRandom(), recordSize, 1000));
+    }
+
+    @Benchmark
+    public Text textWritable() throws IOException {
+        outputBuffer.reset();
+        text.write(outputBuffer);
+        inputBuffer.reset(outputBuffer.getData(), outputBuffer.getLength());
+        reusedText.readFields(inputBuffer);
+        return reusedText;
+    }
+
+    @Benchmark
+    public IntWritable intWritable() throws IOException {
+        outputBuffer.reset();
+        number.write(outputBuffer);
+        inputBuffer.reset(outputBuffer.getData(), outputBuffer.getLength());
+        reusedNumber.readFields(inputBuffer);
+        return reusedNumber;
+    }
+
+    @Benchmark
+    public Object textJavaSerialization() throws Exception {
+        return javaRoundTrip(text);
+    }
+
+    @Benchmark
+    public Object intJavaSerialization() throws Exception {
+        return javaRoundTrip(number);
+    }
+
+    private static Object javaRoundTrip(Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        return in.readObject();
+    }
+}
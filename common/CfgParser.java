@@ -27,6 +27,7 @@ public class CfgParser {
     private String jvmHeapSizeStr;
     private long jvmHeapSizeInBytes;
     private int numberOfTaskSlots;
+    private boolean singleTaskTracker;
     private static final long mb = (1024 * 1024);
     private static final long gb = (1024 * 1024 * 1024);
 
@@ -39,6 +40,16 @@ public class CfgParser {
         return numberOfTaskSlots;
     }
 
+    /**
+     * Check if the NodeManager runs a single TaskTracker with all the task slots, instead
+     * of one TaskTracker per slot
+     * 
+     * @return true for a single multi-slot TaskTracker (false by default)
+     */
+    public boolean isSingleTaskTracker() {
+        return singleTaskTracker;
+    }
+
     /**
      * Get the jvm heap size to be used for each TaskTracker
      * 
@@ -70,6 +81,28 @@ public class CfgParser {
     // Default file split size
     /* 64MB */
     private int splitSize = 67108864;
+    // True if the split size is set in the configuration file, otherwise the split size
+    // of each job is computed from its input length and the map slots
+    private boolean isSplitSizeConfigured = false;
+
+    // Default number of rounds of map tasks run by each slot, for the computed split size
+    private int mapWaves = 2;
+
+    // Default bounds of the computed split size
+    /* 1MB */
+    private int minSplitSize = 1048576;
+    /* 1GB */
+    private int maxSplitSize = 1073741824;
+
+    // Default number of segments merged into one run by the reducer
+    private int mergeFactor = 10;
+
+    // Default interval between two heartbeats of a TaskTracker, in milliseconds
+    private int heartbeatInterval = 1000;
+
+    // Default interval between two heartbeats of a TaskTracker to the registry, in
+    // milliseconds
+    private int registryHeartbeatInterval = 3000;
 
     private static CfgParser cfgParser = null;
     private Map<String, String> configMap = new HashMap<String, String>();
@@ -175,8 +208,45 @@ public class CfgParser {
 
         if (splitSizeString != null) {
             this.splitSize = Integer.parseInt(splitSizeString);
+            this.isSplitSizeConfigured = true;
+        }
+
+        String mapWavesString = configMap.get(Config.MAP_WAVES);
+        if (mapWavesString != null) {
+            this.mapWaves = Integer.parseInt(mapWavesString);
         }
 
+        String minSplitSizeString = configMap.get(Config.MIN_SPLIT_SIZE);
+        if (minSplitSizeString != null) {
+            this.minSplitSize = Integer.parseInt(minSplitSizeString);
+        }
+
+        String maxSplitSizeString = configMap.get(Config.MAX_SPLIT_SIZE);
+        if (maxSplitSizeString != null) {
+            this.maxSplitSize = Integer.parseInt(maxSplitSizeString);
+        }
+
+        String mergeFactorString = configMap.get(Config.MERGE_FACTOR);
+        if (mergeFactorString != null) {
+            this.mergeFactor = Integer.parseInt(mergeFactorString);
+        }
+
+        String heartbeatIntervalString =
+                configMap.get(Config.HEARTBEAT_INTERVAL);
+        if (heartbeatIntervalString != null) {
+            this.heartbeatInterval = Integer.parseInt(heartbeatIntervalString);
+        }
+
+        String registryHeartbeatIntervalString =
+                configMap.get(Config.REGISTRY_HEARTBEAT_INTERVAL);
+        if (registryHeartbeatIntervalString != null) {
+            this.registryHeartbeatInterval =
+                    Integer.parseInt(registryHeartbeatIntervalString);
+        }
+
+        this.singleTaskTracker =
+                Boolean.parseBoolean(configMap.get(Config.SINGLE_TASK_TRACKER));
+
         this.classpath = configMap.get(Config.LOAD_CLASSPATH);
         this.jvmHeapSizeStr = configMap.get(Config.JVM_HEAP_SIZE);
 
@@ -270,6 +340,80 @@ public class CfgParser {
         return splitSize;
     }
 
+    /**
+     * Check if the split size is set in the configuration file. Otherwise the split size
+     * of each job is computed from the length of its input and the number of map slots
+     * 
+     * @return true if the split size is fixed by the configuration file
+     */
+    public boolean isSplitSizeConfigured() {
+        return isSplitSizeConfigured;
+    }
+
+    /**
+     * Get the number of rounds of map tasks run by each map slot when the split size is
+     * computed for a job
+     * 
+     * @return target number of waves (returns default value of 2 if not found in the
+     *         configuration file)
+     */
+    public int getMapWaves() {
+        return mapWaves;
+    }
+
+    /**
+     * Get the smallest split size computed for a job, so that the map tasks of a small
+     * input are not dominated by their overhead
+     * 
+     * @return minimum split size (returns default value of 1MB if not found in the
+     *         configuration file)
+     */
+    public int getMinSplitSize() {
+        return minSplitSize;
+    }
+
+    /**
+     * Get the largest split size computed for a job
+     * 
+     * @return maximum split size (returns default value of 1GB if not found in the
+     *         configuration file)
+     */
+    public int getMaxSplitSize() {
+        return maxSplitSize;
+    }
+
+    /**
+     * Get the number of map output segments merged together into one run by the reducer
+     * 
+     * @return merge factor (returns default value of 10 if not found in the
+     *         configuration file)
+     */
+    public int getMergeFactor() {
+        return mergeFactor;
+    }
+
+    /**
+     * Get the interval between two heartbeats sent by a TaskTracker to the
+     * ApplicationMaster
+     * 
+     * @return heartbeat interval in milliseconds (returns default value of 1000 if not
+     *         found in the configuration file)
+     */
+    public int getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * Get the interval between two heartbeats sent by a TaskTracker to the registry. A
+     * TaskTracker that misses several heartbeats in a row is removed from the registry
+     * 
+     * @return registry heartbeat interval in milliseconds (returns default value of 3000
+     *         if not found in the configuration file)
+     */
+    public int getRegistryHeartbeatInterval() {
+        return registryHeartbeatInterval;
+    }
+
     /**
      * Get the map containing all the configured attributes
      * 
@@ -1,8 +1,19 @@
 package mr.common;
 
 import java.io.Serializable;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import mr.io.IndexedFileOutputFormat;
+import mr.io.InputFormat;
+import mr.io.OutputFormat;
+import mr.io.TextInputFormat;
+import mr.io.TextOutputFormat;
+import mr.worker.HashPartitioner;
 import mr.worker.Mapper;
+import mr.worker.Partitioner;
 import mr.worker.Reducer;
 
 /**
@@ -18,13 +29,37 @@ import mr.worker.Reducer;
  * 
  */
 @SuppressWarnings({ "serial", "rawtypes" })
-public class Configuration implements Serializable {
+public class Configuration implements Serializable, Cloneable {
 
     private String mapperClass;
     private String reducerClass;
 
     private int splitSize;
     private int numberOfReducers = 1;
+    private int mergeFactor = 10;
+    private int heartbeatInterval = 1000;
+    private int numberOfSlots = 1;
+
+    private String inputFormatClass = TextInputFormat.class.getName();
+    private String outputFormatClass = TextOutputFormat.class.getName();
+    private String outputSeparator = "--";
+    private String outputPath = "output";
+    private String outputFilePrefix = "part_";
+    private int indexInterval = 128;
+
+    private String sortComparatorClass;
+    private String groupingComparatorClass;
+    private String partitionerClass = HashPartitioner.class.getName();
+
+    private String jobId;
+    private int jobWeight = 1;
+    // Number of reducers each hot key is spread across, 0 to disable the salting
+    private int reducersPerHotKey = 0;
+
+    // Content hash of each cache file of the job, by file name
+    private Map<String, String> cacheFiles = new LinkedHashMap<String, String>();
+    // Local path of each cache file, set where the tasks run
+    private Map<String, String> localCacheFiles = new HashMap<String, String>();
 
     /**
      * Get the number of reducers
@@ -62,6 +97,67 @@ public class Configuration implements Serializable {
         this.splitSize = splitSize;
     }
 
+    /**
+     * Get the number of map output segments merged together into one sorted run by the
+     * reducer
+     * 
+     * @return merge factor
+     */
+    public int getMergeFactor() {
+        return mergeFactor;
+    }
+
+    /**
+     * Set the number of map output segments merged together into one sorted run by the
+     * reducer
+     * 
+     * @param mergeFactor number of segments per merge
+     */
+    public void setMergeFactor(int mergeFactor) {
+        this.mergeFactor = mergeFactor;
+    }
+
+    /**
+     * Get the interval between two heartbeats sent by a TaskTracker to the
+     * ApplicationMaster
+     * 
+     * @return heartbeat interval in milliseconds
+     */
+    public int getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * Set the interval between two heartbeats sent by a TaskTracker to the
+     * ApplicationMaster
+     * 
+     * @param heartbeatInterval heartbeat interval in milliseconds
+     */
+    public void setHeartbeatInterval(int heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Get the number of map tasks the TaskTracker receiving this configuration runs at
+     * the same time
+     * 
+     * @return number of task slots
+     */
+    public int getNumberOfSlots() {
+        return numberOfSlots;
+    }
+
+    /**
+     * Set the number of map tasks the TaskTracker receiving this configuration runs at
+     * the same time. Set by the ResourceManager for each TaskTracker from its
+     * specifications
+     * 
+     * @param numberOfSlots number of task slots
+     */
+    public void setNumberOfSlots(int numberOfSlots) {
+        this.numberOfSlots = numberOfSlots;
+    }
+
     /**
      * Get the String representation of the mapper class
      * 
@@ -103,4 +199,300 @@ public class Configuration implements Serializable {
     public void setReducerClass(Class<? extends Reducer> reducerClass) {
         this.reducerClass = reducerClass.getName();
     }
+
+    /**
+     * Get the String representation of the input format class
+     * 
+     * @return String representation of the input format class
+     */
+    public String getInputFormatClass() {
+        return inputFormatClass;
+    }
+
+    /**
+     * Set the input format used to split and read the input file
+     * 
+     * @see InputFormat
+     * 
+     * @param inputFormatClass {@link Class} of the input format
+     */
+    public void setInputFormatClass(Class<? extends InputFormat> inputFormatClass) {
+        this.inputFormatClass = inputFormatClass.getName();
+    }
+
+    /**
+     * Get the String representation of the output format class
+     * 
+     * @return String representation of the output format class
+     */
+    public String getOutputFormatClass() {
+        return outputFormatClass;
+    }
+
+    /**
+     * Set the output format used to write the reducer output
+     * 
+     * @see OutputFormat
+     * 
+     * @param outputFormatClass {@link Class} of the output format
+     */
+    public void setOutputFormatClass(
+            Class<? extends OutputFormat> outputFormatClass) {
+        this.outputFormatClass = outputFormatClass.getName();
+    }
+
+    /**
+     * Get the separator written between the key and the value by text output formats
+     * 
+     * @return key/value separator
+     */
+    public String getOutputSeparator() {
+        return outputSeparator;
+    }
+
+    /**
+     * Set the separator written between the key and the value by text output formats
+     * 
+     * @param outputSeparator key/value separator
+     */
+    public void setOutputSeparator(String outputSeparator) {
+        this.outputSeparator = outputSeparator;
+    }
+
+    /**
+     * Get the name prefix of the output files written by the reduce tasks, followed by
+     * the reduce task id
+     * 
+     * @return output file prefix
+     */
+    public String getOutputFilePrefix() {
+        return outputFilePrefix;
+    }
+
+    /**
+     * Set the name prefix of the output files written by the reduce tasks
+     * 
+     * @param outputFilePrefix - output file prefix ("part_" by default)
+     */
+    public void setOutputFilePrefix(String outputFilePrefix) {
+        this.outputFilePrefix = outputFilePrefix;
+    }
+
+    /**
+     * Get the directory to which the output files of the job are written
+     * 
+     * @return output directory
+     */
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    /**
+     * Set the directory to which the output files of the job are written
+     * 
+     * @param outputPath output directory
+     */
+    public void setOutputPath(String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * Get the number of records between two entries of the key index written by the
+     * {@link IndexedFileOutputFormat}
+     * 
+     * @return index interval in records
+     */
+    public int getIndexInterval() {
+        return indexInterval;
+    }
+
+    /**
+     * Set the number of records between two entries of the key index written by the
+     * {@link IndexedFileOutputFormat}. Smaller values make lookups faster at the cost of
+     * a larger index
+     * 
+     * @param indexInterval index interval in records
+     */
+    public void setIndexInterval(int indexInterval) {
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * Get the String representation of the comparator class used to sort the map output
+     * keys
+     * 
+     * @return String representation of the sort comparator class, or null if the keys
+     *         are sorted in their natural order
+     */
+    public String getSortComparatorClass() {
+        return sortComparatorClass;
+    }
+
+    /**
+     * Set the comparator used to sort the map output keys
+     * 
+     * @param sortComparatorClass {@link Class} of a {@link Comparator} of the map output
+     *            keys
+     */
+    public void setSortComparatorClass(
+            Class<? extends Comparator> sortComparatorClass) {
+        this.sortComparatorClass = sortComparatorClass.getName();
+    }
+
+    /**
+     * Get the String representation of the comparator class used to group the map output
+     * keys for the reduce method
+     * 
+     * @return String representation of the grouping comparator class, or null if the
+     *         keys are grouped by the sort comparator
+     */
+    public String getGroupingComparatorClass() {
+        return groupingComparatorClass;
+    }
+
+    /**
+     * Set the comparator used to group the sorted map output keys. All the values of
+     * consecutive keys that compare as equal are passed to one call of the reduce method
+     * 
+     * @param groupingComparatorClass {@link Class} of a {@link Comparator} of the map
+     *            output keys
+     */
+    public void setGroupingComparatorClass(
+            Class<? extends Comparator> groupingComparatorClass) {
+        this.groupingComparatorClass = groupingComparatorClass.getName();
+    }
+
+    /**
+     * Get the String representation of the partitioner class
+     * 
+     * @return String representation of the partitioner class
+     */
+    public String getPartitionerClass() {
+        return partitionerClass;
+    }
+
+    /**
+     * Set the partitioner used to compute the reducer of each map output key
+     * 
+     * @param partitionerClass {@link Class} of the partitioner
+     */
+    public void setPartitionerClass(
+            Class<? extends Partitioner> partitionerClass) {
+        this.partitionerClass = partitionerClass.getName();
+    }
+
+    /**
+     * Get the id of the job, unique among the jobs running on the TaskTrackers
+     * 
+     * @return job id, null until the job is submitted
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * Set the id of the job. Set by the ResourceManager when the job is submitted
+     * 
+     * @param jobId - id of the job
+     */
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    /**
+     * Get the weight of the job in the sharing of the TaskTracker slots between the jobs
+     * running at the same time
+     * 
+     * @return job weight
+     */
+    public int getJobWeight() {
+        return jobWeight;
+    }
+
+    /**
+     * Set the weight of the job in the sharing of the TaskTracker slots between the jobs
+     * running at the same time. A job of weight 2 gets twice as many slots as a job of
+     * weight 1 while both have map tasks waiting
+     * 
+     * @param jobWeight - weight of the job (1 by default)
+     */
+    public void setJobWeight(int jobWeight) {
+        this.jobWeight = jobWeight;
+    }
+
+    /**
+     * Get the cache files of the job, side files read by the tasks
+     * 
+     * @return content hash of each file, by file name
+     */
+    public Map<String, String> getCacheFiles() {
+        return cacheFiles;
+    }
+
+    /**
+     * Adds a cache file to the job
+     * 
+     * @param name - name of the file, used by the tasks to read it
+     * @param hash - hash of the content of the file
+     */
+    public void addCacheFile(String name, String hash) {
+        cacheFiles.put(name, hash);
+    }
+
+    /**
+     * Get the local path of a cache file, on the node running the task
+     * 
+     * @param name - name of the cache file
+     * @return path of the file, or null if there is no cache file with this name
+     */
+    public String getLocalCacheFile(String name) {
+        return localCacheFiles.get(name);
+    }
+
+    /**
+     * Set the local path of a cache file. Set by the TaskTracker once it has the file,
+     * or by the ApplicationMaster in local mode
+     * 
+     * @param name - name of the cache file
+     * @param path - path of the file on this node
+     */
+    public void setLocalCacheFile(String name, String path) {
+        localCacheFiles.put(name, path);
+    }
+
+    /**
+     * Get the number of reducers across which the records of each hot key are spread
+     * 
+     * @return reducers per hot key, 0 if the hot keys are not salted
+     */
+    public int getReducersPerHotKey() {
+        return reducersPerHotKey;
+    }
+
+    /**
+     * Set the number of reducers across which the records of each hot key are spread.
+     * The reducer of the job must be associative, see
+     * ApplicationMaster.setReducersPerHotKey
+     * 
+     * @param reducersPerHotKey - reducers per hot key, 0 to disable the salting
+     */
+    public void setReducersPerHotKey(int reducersPerHotKey) {
+        this.reducersPerHotKey = reducersPerHotKey;
+    }
+
+    /**
+     * Creates a copy of this configuration, for a job derived from this job
+     * 
+     * @return {@link Configuration} with the same values
+     */
+    public Configuration copy() {
+        try {
+            Configuration copy = (Configuration) clone();
+            copy.cacheFiles = new LinkedHashMap<String, String>(cacheFiles);
+            copy.localCacheFiles = new HashMap<String, String>(localCacheFiles);
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
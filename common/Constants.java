@@ -24,6 +24,7 @@ public class Constants {
         public static final String REGISTER = "register";
         public static final String UNREGISTER = "unregister";
         public static final String PING = "ping";
+        public static final String HEARTBEAT = "heartbeat";
         public static final String ACCEPT = "accept";
         public static final String FILE = "file";
         public static final String END = "end";
@@ -67,10 +68,27 @@ public class Constants {
         public static final String NUMBER_OF_TASK_SLOTS =
                 "number_of_task_slots";
 
+        public static final String MERGE_FACTOR = "merge_factor";
+
+        public static final String HEARTBEAT_INTERVAL = "heartbeat_interval";
+
+        public static final String REGISTRY_HEARTBEAT_INTERVAL =
+                "registry_heartbeat_interval";
+
+        public static final String SINGLE_TASK_TRACKER = "single_task_tracker";
+
+        public static final String MAP_WAVES = "map_waves";
+
+        public static final String MIN_SPLIT_SIZE = "min_split_size";
+
+        public static final String MAX_SPLIT_SIZE = "max_split_size";
+
         private static final String[] supportedAttributes = { SPLIT_SIZE,
                 REGISTRY_HOST_NAME, REGISTRY_LISTENER_PORT,
                 REGISTRY_REQUESTER_PORT, LOAD_CLASSPATH, MAX_USABLE_MEMORY,
-                JVM_HEAP_SIZE, NUMBER_OF_TASK_SLOTS };
+                JVM_HEAP_SIZE, NUMBER_OF_TASK_SLOTS, MERGE_FACTOR,
+                HEARTBEAT_INTERVAL, REGISTRY_HEARTBEAT_INTERVAL,
+                SINGLE_TASK_TRACKER, MAP_WAVES, MIN_SPLIT_SIZE, MAX_SPLIT_SIZE };
        
         public static final Set<String> SUPPORTED_ATTRIBUTES =
                 new HashSet<String>(Arrays.asList(supportedAttributes));
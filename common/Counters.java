@@ -0,0 +1,166 @@
+package mr.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import mr.io.Writable;
+
+/**
+ * <p>
+ * Named long counters organized in groups. The framework counts the records and bytes
+ * processed by each task under the {@link TaskCounter} group, and mappers and reducers
+ * can add their own counters through their context.
+ * 
+ * <p>
+ * The counters of a task are sent to the ApplicationMaster along with the completed
+ * {@link Task}, where the counters of all the tasks are added up to the job counters.
+ * All methods are thread safe.
+ * 
+ * Reference: This class is based on Apache Hadoop's Counters class.
+ * 
+ * 
+ */
+public class Counters implements Serializable, Writable {
+
+    private static final long serialVersionUID = 1L;
+
+    // group name -> counter name -> value
+    private Map<String, Map<String, Long>> groups =
+            new TreeMap<String, Map<String, Long>>();
+
+    /**
+     * Adds the given amount to a counter. The counter is created if it does not exist
+     * 
+     * @param group - name of the counter group
+     * @param name - name of the counter
+     * @param amount - value to be added
+     */
+    public synchronized void increment(String group, String name, long amount) {
+        Map<String, Long> counters = groups.get(group);
+        if (counters == null) {
+            counters = new TreeMap<String, Long>();
+            groups.put(group, counters);
+        }
+        Long value = counters.get(name);
+        counters.put(name, (value == null ? 0 : value) + amount);
+    }
+
+    /**
+     * Adds the given amount to a counter identified by an enum constant. The group name
+     * is the name of the enum class
+     * 
+     * @param counter - enum constant naming the counter
+     * @param amount - value to be added
+     */
+    public void increment(Enum<?> counter, long amount) {
+        increment(counter.getDeclaringClass().getName(), counter.name(), amount);
+    }
+
+    /**
+     * Get the value of a counter
+     * 
+     * @param group - name of the counter group
+     * @param name - name of the counter
+     * @return value of the counter, 0 if the counter does not exist
+     */
+    public synchronized long getValue(String group, String name) {
+        Map<String, Long> counters = groups.get(group);
+        if (counters == null) {
+            return 0;
+        }
+        Long value = counters.get(name);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Get the value of a counter identified by an enum constant
+     * 
+     * @param counter - enum constant naming the counter
+     * @return value of the counter, 0 if the counter does not exist
+     */
+    public long getValue(Enum<?> counter) {
+        return getValue(counter.getDeclaringClass().getName(), counter.name());
+    }
+
+    /**
+     * Adds the values of all the counters in the given counters to this object
+     * 
+     * @param other {@link Counters}
+     */
+    public void merge(Counters other) {
+        Map<String, Map<String, Long>> otherGroups = other.getGroups();
+        for (Map.Entry<String, Map<String, Long>> group : otherGroups.entrySet()) {
+            for (Map.Entry<String, Long> counter : group.getValue().entrySet()) {
+                increment(group.getKey(), counter.getKey(), counter.getValue());
+            }
+        }
+    }
+
+    /**
+     * Get a copy of all the counters
+     * 
+     * @return sorted map of group name to a sorted map of counter name and value
+     */
+    public synchronized Map<String, Map<String, Long>> getGroups() {
+        Map<String, Map<String, Long>> copy =
+                new TreeMap<String, Map<String, Long>>();
+        for (Map.Entry<String, Map<String, Long>> group : groups.entrySet()) {
+            copy.put(group.getKey(), Collections
+                    .unmodifiableMap(new TreeMap<String, Long>(group.getValue())));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Writes the number of groups, followed by the name and the counters of each group
+     */
+    @Override
+    public synchronized void write(DataOutput out) throws IOException {
+        out.writeInt(groups.size());
+        for (Map.Entry<String, Map<String, Long>> group : groups.entrySet()) {
+            out.writeUTF(group.getKey());
+            out.writeInt(group.getValue().size());
+            for (Map.Entry<String, Long> counter : group.getValue().entrySet()) {
+                out.writeUTF(counter.getKey());
+                out.writeLong(counter.getValue());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void readFields(DataInput in) throws IOException {
+        groups.clear();
+        int numberOfGroups = in.readInt();
+        for (int i = 0; i < numberOfGroups; i++) {
+            String group = in.readUTF();
+            Map<String, Long> counters = new TreeMap<String, Long>();
+            int numberOfCounters = in.readInt();
+            for (int j = 0; j < numberOfCounters; j++) {
+                String name = in.readUTF();
+                counters.put(name, in.readLong());
+            }
+            groups.put(group, counters);
+        }
+    }
+
+    /**
+     * One line per group followed by one indented line per counter
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("Counters:");
+        for (Map.Entry<String, Map<String, Long>> group : groups.entrySet()) {
+            builder.append("\n  ").append(group.getKey());
+            for (Map.Entry<String, Long> counter : group.getValue().entrySet()) {
+                builder.append("\n    ").append(counter.getKey()).append('=')
+                        .append(counter.getValue());
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,171 @@
+package mr.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import mr.io.Writable;
+
+/**
+ * Periodic status message sent by a TaskTracker to the ApplicationMaster on the same
+ * connection as the completed tasks. Carries the progress of the running tasks, the
+ * availability of task slots and the heap usage of the TaskTracker JVM.
+ * 
+ * @see TaskStatus
+ * 
+ * 
+ */
+public class Heartbeat implements Serializable, Writable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long timestamp;
+    private int totalSlots;
+    private int freeSlots;
+    private int queuedTasks;
+    private long usedHeapBytes;
+    private long maxHeapBytes;
+    private List<TaskStatus> taskStatuses = new ArrayList<TaskStatus>();
+
+    /**
+     * @return time at which the heartbeat was created, in milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @param timestamp time at which the heartbeat was created, in milliseconds
+     */
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return number of tasks the TaskTracker can run at the same time
+     */
+    public int getTotalSlots() {
+        return totalSlots;
+    }
+
+    /**
+     * @param totalSlots number of tasks the TaskTracker can run at the same time
+     */
+    public void setTotalSlots(int totalSlots) {
+        this.totalSlots = totalSlots;
+    }
+
+    /**
+     * @return number of slots not running any task
+     */
+    public int getFreeSlots() {
+        return freeSlots;
+    }
+
+    /**
+     * @param freeSlots number of slots not running any task
+     */
+    public void setFreeSlots(int freeSlots) {
+        this.freeSlots = freeSlots;
+    }
+
+    /**
+     * @return number of tasks received but not started yet
+     */
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    /**
+     * @param queuedTasks number of tasks received but not started yet
+     */
+    public void setQueuedTasks(int queuedTasks) {
+        this.queuedTasks = queuedTasks;
+    }
+
+    /**
+     * @return heap memory used by the TaskTracker JVM in bytes
+     */
+    public long getUsedHeapBytes() {
+        return usedHeapBytes;
+    }
+
+    /**
+     * @param usedHeapBytes heap memory used by the TaskTracker JVM in bytes
+     */
+    public void setUsedHeapBytes(long usedHeapBytes) {
+        this.usedHeapBytes = usedHeapBytes;
+    }
+
+    /**
+     * @return maximum heap memory of the TaskTracker JVM in bytes
+     */
+    public long getMaxHeapBytes() {
+        return maxHeapBytes;
+    }
+
+    /**
+     * @param maxHeapBytes maximum heap memory of the TaskTracker JVM in bytes
+     */
+    public void setMaxHeapBytes(long maxHeapBytes) {
+        this.maxHeapBytes = maxHeapBytes;
+    }
+
+    /**
+     * @return list of {@link TaskStatus} of the running tasks
+     */
+    public List<TaskStatus> getTaskStatuses() {
+        return taskStatuses;
+    }
+
+    /**
+     * Adds the status of a running task to this heartbeat
+     * 
+     * @param taskStatus {@link TaskStatus}
+     */
+    public void addTaskStatus(TaskStatus taskStatus) {
+        taskStatuses.add(taskStatus);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(timestamp);
+        out.writeInt(totalSlots);
+        out.writeInt(freeSlots);
+        out.writeInt(queuedTasks);
+        out.writeLong(usedHeapBytes);
+        out.writeLong(maxHeapBytes);
+        out.writeInt(taskStatuses.size());
+        for (TaskStatus taskStatus : taskStatuses) {
+            taskStatus.write(out);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        timestamp = in.readLong();
+        totalSlots = in.readInt();
+        freeSlots = in.readInt();
+        queuedTasks = in.readInt();
+        usedHeapBytes = in.readLong();
+        maxHeapBytes = in.readLong();
+        taskStatuses.clear();
+        int numberOfStatuses = in.readInt();
+        for (int i = 0; i < numberOfStatuses; i++) {
+            TaskStatus taskStatus = new TaskStatus();
+            taskStatus.readFields(in);
+            taskStatuses.add(taskStatus);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Heartbeat [timestamp=" + timestamp + ", freeSlots=" + freeSlots
+                + "/" + totalSlots + ", queuedTasks=" + queuedTasks
+                + ", usedHeapBytes=" + usedHeapBytes + ", taskStatuses="
+                + taskStatuses + "]";
+    }
+}
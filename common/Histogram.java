@@ -0,0 +1,162 @@
+package mr.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+import mr.io.Writable;
+
+/**
+ * <p>
+ * Low overhead histogram of durations in nanoseconds. Each duration is counted in a
+ * power of two bucket, so recording a value only updates a few fields and the histogram
+ * has a fixed size regardless of the number of values.
+ * 
+ * <p>
+ * Not thread safe. Threads sharing a histogram must synchronize on it.
+ * 
+ * 
+ */
+public class Histogram implements Serializable, Writable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Bucket i counts the values in [2^i, 2^(i+1)), bucket 0 also counts 0
+    private long[] buckets = new long[64];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records a duration
+     * 
+     * @param nanos duration in nanoseconds, negative values are counted as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[63 - Long.numberOfLeadingZeros(nanos | 1)]++;
+        count++;
+        total += nanos;
+        if (nanos < min) {
+            min = nanos;
+        }
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    /**
+     * Adds all the values recorded by the given histogram to this histogram
+     * 
+     * @param other {@link Histogram}
+     */
+    public void merge(Histogram other) {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] += other.buckets[i];
+        }
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return sum of all the values recorded, in nanoseconds
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return smallest value recorded in nanoseconds, 0 if empty
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * @return largest value recorded in nanoseconds
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return mean of the values recorded in nanoseconds, 0 if empty
+     */
+    public long getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * Get an upper bound of the given percentile, accurate to a power of two
+     * 
+     * @param percentile - value between 0 and 100
+     * @return upper bound of the bucket containing the percentile, in nanoseconds
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(1, rank)) {
+                long upperBound =
+                        (i == 63) ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                return Math.min(max, upperBound);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Writes the summary values followed by the non-empty buckets only, as a bucket
+     * index and a count
+     */
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(total);
+        out.writeLong(min);
+        out.writeLong(max);
+        int nonEmptyBuckets = 0;
+        for (long bucket : buckets) {
+            if (bucket != 0) {
+                nonEmptyBuckets++;
+            }
+        }
+        out.writeByte(nonEmptyBuckets);
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] != 0) {
+                out.writeByte(i);
+                out.writeLong(buckets[i]);
+            }
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        count = in.readLong();
+        total = in.readLong();
+        min = in.readLong();
+        max = in.readLong();
+        buckets = new long[64];
+        int nonEmptyBuckets = in.readUnsignedByte();
+        for (int i = 0; i < nonEmptyBuckets; i++) {
+            buckets[in.readUnsignedByte()] = in.readLong();
+        }
+    }
+}
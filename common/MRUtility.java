@@ -4,12 +4,17 @@ import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Static utility methods for common functionality used by the MR framework.
@@ -155,4 +160,75 @@ public class MRUtility {
         dataOutputStream.flush();
     }
 
+    /**
+     * Creates a new instance of the given class using its no-argument constructor. The
+     * class is loaded by the context class loader of the current thread, so that classes
+     * from the client jar file can be used.
+     * 
+     * @param className - fully qualified name of the class
+     * @return new instance of the class
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T newInstance(String className) {
+        try {
+            ClassLoader classLoader =
+                    Thread.currentThread().getContextClassLoader();
+            return (T) Class.forName(className, true, classLoader)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Error while creating an instance of "
+                    + className, e);
+        }
+    }
+
+    /**
+     * Computes the SHA-256 hash of the content of the given file, which identifies a
+     * cache file on the TaskTrackers
+     * 
+     * @param file {@link File} to be hashed
+     * @return hash as a hexadecimal string
+     * @throws IOException when the file cannot be read
+     */
+    public static String hashFileContent(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Maps the given file in memory, read-only. The mapping remains valid after the file
+     * is closed
+     * 
+     * @param file {@link File} to be mapped
+     * @return {@link MappedByteBuffer} of the whole file
+     * @throws IOException when the file cannot be opened or mapped
+     */
+    public static MappedByteBuffer mapFile(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
 }
@@ -0,0 +1,509 @@
+package mr.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import mr.io.DataOutputBuffer;
+import mr.io.Writable;
+
+/**
+ * <p>
+ * Persistent connection between two nodes of the MR framework, on which all the control
+ * messages and files are sent as length-prefixed binary frames. Used between the
+ * ApplicationMaster and the TaskTrackers (jar file, configuration, tasks, input splits,
+ * heartbeats and completed tasks), and between the 'map' and 'reduce' TaskTrackers (map
+ * output segments).
+ *
+ * <pre>
+ * Each frame is made of
+ * 1) the length of the payload in bytes (int)
+ * 2) the {@link TYPE} id of the message (byte)
+ * 3) the payload: a {@link Writable} message, or the file name followed by the file data
+ *    for the file messages
+ * </pre>
+ *
+ * <p>
+ * Messages are written with their own binary encoding instead of java serialization, so
+ * there is no stream header or class descriptor per message. Frames can be sent by
+ * several threads, each frame is written atomically. A single thread must read the
+ * frames: {@link #readFrame()} returns the type of the next frame, and the payload must
+ * then be read with one of the read methods.
+ *
+ * <p>
+ * The static encode methods build the same frames as buffers, for the nodes that write
+ * to non-blocking channels.
+ *
+ *
+ */
+public class MessageChannel {
+
+    /**
+     * <pre>
+     * Type of a frame, written as a one byte id
+     *
+     * 1) JAR - jar file of the job, sent by the ApplicationMaster after the configuration
+     * 2) CONFIGURATION - {@link Configuration} of the job, first frame of a job
+     * 3) TASK - {@link Task} assigned to a TaskTracker
+     * 4) SPLIT - compressed input split of the preceding map task
+     * 5) HEARTBEAT - {@link Heartbeat} of a TaskTracker
+     * 6) COMPLETED_TASK - {@link Task} completed by a TaskTracker
+     * 7) SEGMENT - map output file sent to a reducer
+     * 8) END_OF_SHUFFLE - all the map output files of a TaskTracker were sent
+     * 9) SHUFFLE - id of the job, first frame sent by a 'map' TaskTracker to a reducer
+     * 10) CACHE_REQUEST - content hashes of the cache files of the job that a TaskTracker
+     *     does not have, answer to the configuration
+     * 11) CACHE_FILE - cache file of the job, named by its content hash
+     * 12) HOT_KEYS - keys salted across several reducers by the map tasks of a
+     *     'map' TaskTracker, sent to every reducer
+     * 13) SPLIT_PART - part of a large input split, appended to the file of the split,
+     *     followed by the other parts and by the last part as a SPLIT frame
+     * </pre>
+     */
+    public enum TYPE {
+        JAR(1), CONFIGURATION(2), TASK(3), SPLIT(4), HEARTBEAT(5), COMPLETED_TASK(6),
+        SEGMENT(7), END_OF_SHUFFLE(8), SHUFFLE(9), CACHE_REQUEST(10), CACHE_FILE(11),
+        HOT_KEYS(12), SPLIT_PART(13);
+
+        private static final TYPE[] TYPES_BY_ID = new TYPE[14];
+        static {
+            for (TYPE type : values()) {
+                TYPES_BY_ID[type.id] = type;
+            }
+        }
+
+        private final byte id;
+
+        TYPE(int id) {
+            this.id = (byte) id;
+        }
+
+        /**
+         * Get the type with the given id
+         *
+         * @param id - type id read from a frame header
+         * @return {@link TYPE}
+         * @throws IOException when the id is not a known type
+         */
+        public static TYPE forId(byte id) throws IOException {
+            if (id <= 0 || id >= TYPES_BY_ID.length) {
+                throw new IOException("Unknown message type " + id);
+            }
+            return TYPES_BY_ID[id];
+        }
+    };
+
+    /**
+     * Length of the frame header: the payload length and the type id
+     */
+    public static final int HEADER_LENGTH = 5;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Socket socket;
+    private DataOutputStream out;
+    private DataInputStream in;
+    // Serialization buffer of the messages, used while holding the lock of this object
+    private DataOutputBuffer messageBuffer = new DataOutputBuffer();
+
+    // Remaining length of the payload of the last frame read
+    private int payloadLength = -1;
+
+    /**
+     * Constructor
+     *
+     * @param socket connected {@link Socket}
+     * @throws IOException when the streams of the socket cannot be obtained
+     */
+    public MessageChannel(Socket socket) throws IOException {
+        this.socket = socket;
+        // Each frame is written with a single flush, so there is nothing to coalesce
+        socket.setTcpNoDelay(true);
+        this.out =
+                new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(),
+                        BUFFER_SIZE));
+        this.in =
+                new DataInputStream(new BufferedInputStream(socket.getInputStream(),
+                        BUFFER_SIZE));
+    }
+
+    /**
+     * Get the socket of this channel
+     *
+     * @return {@link Socket}
+     */
+    public Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * Sends the given message in a frame of the given type
+     *
+     * @param type {@link TYPE} of the message
+     * @param message {@link Writable} message, or null for a frame without payload
+     * @throws IOException when there is an error writing to the socket
+     */
+    public synchronized void send(TYPE type, Writable message) throws IOException {
+        messageBuffer.reset();
+        if (message != null) {
+            message.write(messageBuffer);
+        }
+        writeHeader(type, messageBuffer.getLength());
+        out.write(messageBuffer.getData(), 0, messageBuffer.getLength());
+        out.flush();
+    }
+
+    /**
+     * Sends the given object with java serialization, in a frame of the given type. Only
+     * used for the messages that are sent once per job
+     *
+     * @param type {@link TYPE} of the message
+     * @param object {@link Serializable} object
+     * @throws IOException when there is an error writing to the socket
+     */
+    public synchronized void sendObject(TYPE type, Serializable object)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes);
+        objectOutputStream.writeObject(object);
+        objectOutputStream.close();
+        writeHeader(type, bytes.size());
+        bytes.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Sends the given data as a file with the given name, in a frame of the given type
+     *
+     * @param type {@link TYPE} of the message
+     * @param fileName - name under which the receiver saves the file
+     * @param data - content of the file
+     * @throws IOException when there is an error writing to the socket
+     */
+    public synchronized void sendFile(TYPE type, String fileName, byte[] data)
+            throws IOException {
+        messageBuffer.reset();
+        messageBuffer.writeUTF(fileName);
+        writeHeader(type, messageBuffer.getLength() + data.length);
+        out.write(messageBuffer.getData(), 0, messageBuffer.getLength());
+        out.write(data);
+        out.flush();
+    }
+
+    /**
+     * Sends the given file in a frame of the given type. The file is streamed from the
+     * disk
+     *
+     * @param type {@link TYPE} of the message
+     * @param file {@link File} to be sent
+     * @throws IOException when there is an error reading the file or writing to the
+     *             socket
+     */
+    public synchronized void sendFile(TYPE type, File file) throws IOException {
+        long fileLength = file.length();
+        messageBuffer.reset();
+        messageBuffer.writeUTF(file.getName());
+        if (messageBuffer.getLength() + fileLength > Integer.MAX_VALUE) {
+            throw new IOException("File " + file + " is too large to be sent");
+        }
+        writeHeader(type, (int) (messageBuffer.getLength() + fileLength));
+        out.write(messageBuffer.getData(), 0, messageBuffer.getLength());
+        InputStream fileInputStream = new FileInputStream(file);
+        try {
+            copy(fileInputStream, out, fileLength);
+        } finally {
+            fileInputStream.close();
+        }
+        out.flush();
+    }
+
+    /**
+     * Encodes the given message as a frame of the given type
+     *
+     * @param type {@link TYPE} of the message
+     * @param message {@link Writable} message, or null for a frame without payload
+     * @return buffer holding the whole frame, ready to be written
+     * @throws IOException when the message cannot be serialized
+     */
+    public static ByteBuffer encode(TYPE type, Writable message) throws IOException {
+        DataOutputBuffer buffer = new DataOutputBuffer();
+        writeHeader(buffer, type, 0);
+        if (message != null) {
+            message.write(buffer);
+        }
+        return toFrame(buffer);
+    }
+
+    /**
+     * Encodes the given object with java serialization as a frame of the given type
+     *
+     * @param type {@link TYPE} of the message
+     * @param object {@link Serializable} object
+     * @return buffer holding the whole frame, ready to be written
+     * @throws IOException when the object cannot be serialized
+     */
+    public static ByteBuffer encodeObject(TYPE type, Serializable object)
+            throws IOException {
+        DataOutputBuffer buffer = new DataOutputBuffer();
+        writeHeader(buffer, type, 0);
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(buffer);
+        objectOutputStream.writeObject(object);
+        objectOutputStream.flush();
+        return toFrame(buffer);
+    }
+
+    /**
+     * Encodes the given data as a file frame of the given type. The data is not copied
+     *
+     * @param type {@link TYPE} of the message
+     * @param fileName - name under which the receiver saves the file
+     * @param data - content of the file
+     * @return buffers holding the header with the file name, and the data
+     * @throws IOException when the header cannot be written
+     */
+    public static ByteBuffer[] encodeFile(TYPE type, String fileName, byte[] data)
+            throws IOException {
+        DataOutputBuffer buffer = new DataOutputBuffer();
+        writeHeader(buffer, type, 0);
+        buffer.writeUTF(fileName);
+        ByteBuffer header = ByteBuffer.wrap(buffer.getData(), 0, buffer.getLength());
+        header.putInt(0, buffer.getLength() - HEADER_LENGTH + data.length);
+        return new ByteBuffer[] { header, ByteBuffer.wrap(data) };
+    }
+
+    /**
+     * Reads the given frame payload into the given message
+     *
+     * @param payload - payload of a frame
+     * @param message {@link Writable} whose state is replaced by the payload
+     * @return the given message
+     * @throws IOException when the payload cannot be read
+     */
+    public static <T extends Writable> T decode(byte[] payload, T message)
+            throws IOException {
+        message.readFields(new DataInputStream(new ByteArrayInputStream(payload)));
+        return message;
+    }
+
+    /**
+     * Blocks until the next frame is received and returns its type. The payload of the
+     * frame must then be read with {@link #readMessage(Writable)},
+     * {@link #readObject()} or {@link #readFile(String)}, or skipped with
+     * {@link #skipPayload()}
+     *
+     * @return {@link TYPE} of the frame
+     * @throws EOFException when the connection was closed by the other node
+     * @throws IOException when there is an error reading from the socket
+     */
+    public TYPE readFrame() throws IOException {
+        if (payloadLength > 0) {
+            skipPayload();
+        }
+        payloadLength = in.readInt();
+        TYPE type = TYPE.forId(in.readByte());
+        if (payloadLength < 0) {
+            throw new IOException("Invalid frame length " + payloadLength);
+        }
+        return type;
+    }
+
+    /**
+     * Reads the payload of the current frame into the given message
+     *
+     * @param message {@link Writable} whose state is replaced by the payload
+     * @return the given message
+     * @throws IOException when there is an error reading from the socket
+     */
+    public <T extends Writable> T readMessage(T message) throws IOException {
+        return decode(readPayload(), message);
+    }
+
+    /**
+     * Reads the java serialized object in the payload of the current frame
+     *
+     * @return the object
+     * @throws IOException when there is an error reading from the socket or
+     *             deserializing the object
+     */
+    public Object readObject() throws IOException {
+        ObjectInputStream objectInputStream =
+                new ObjectInputStream(new ByteArrayInputStream(readPayload()));
+        try {
+            return objectInputStream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Saves the file in the payload of the current frame to the given directory. The
+     * file is streamed to the disk
+     *
+     * @param directory - directory to which the file is written
+     * @return {@link File} saved
+     * @throws IOException when there is an error reading from the socket or writing the
+     *             file
+     */
+    public File readFile(String directory) throws IOException {
+        return readFile(directory, false);
+    }
+
+    /**
+     * Saves the file in the payload of the current frame to the given directory, or
+     * appends it to the file of the same name, for a file sent in several frames. The
+     * file is streamed to the disk
+     *
+     * @param directory - directory to which the file is written
+     * @param append - true to append the payload to the file
+     * @return {@link File} saved
+     * @throws IOException when there is an error reading from the socket or writing the
+     *             file
+     */
+    public File readFile(String directory, boolean append) throws IOException {
+        String fileName = in.readUTF();
+        // Length of the name as written by writeUTF
+        payloadLength -= 2 + utfLength(fileName);
+        File file = new File(directory, fileName);
+        OutputStream fileOutputStream = new FileOutputStream(file, append);
+        try {
+            copy(in, fileOutputStream, payloadLength);
+        } finally {
+            fileOutputStream.close();
+        }
+        payloadLength = 0;
+        return file;
+    }
+
+    /**
+     * Skips the payload of the current frame
+     *
+     * @throws IOException when there is an error reading from the socket
+     */
+    public void skipPayload() throws IOException {
+        while (payloadLength > 0) {
+            int skipped = in.skipBytes(payloadLength);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            payloadLength -= skipped;
+        }
+    }
+
+    /**
+     * Closes the socket of this channel
+     *
+     * @throws IOException when there is an error closing the socket
+     */
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Reads the whole payload of the current frame
+     *
+     * @return payload bytes
+     * @throws IOException when there is an error reading from the socket
+     */
+    private byte[] readPayload() throws IOException {
+        byte[] payload = new byte[payloadLength];
+        in.readFully(payload);
+        payloadLength = 0;
+        return payload;
+    }
+
+    /**
+     * Writes the length and the type id of a frame
+     *
+     * @param type {@link TYPE} of the frame
+     * @param length - length of the payload in bytes
+     * @throws IOException when there is an error writing to the socket
+     */
+    private void writeHeader(TYPE type, int length) throws IOException {
+        writeHeader(out, type, length);
+    }
+
+    /**
+     * Writes the length and the type id of a frame to the given stream
+     *
+     * @param stream {@link DataOutputStream}
+     * @param type {@link TYPE} of the frame
+     * @param length - length of the payload in bytes
+     * @throws IOException when there is an error writing to the stream
+     */
+    private static void writeHeader(DataOutputStream stream, TYPE type, int length)
+            throws IOException {
+        stream.writeInt(length);
+        stream.writeByte(type.id);
+    }
+
+    /**
+     * Wraps the frame in the given buffer, and sets the payload length in its header
+     *
+     * @param buffer {@link DataOutputBuffer} holding a header and the payload
+     * @return buffer holding the whole frame
+     */
+    private static ByteBuffer toFrame(DataOutputBuffer buffer) {
+        ByteBuffer frame = ByteBuffer.wrap(buffer.getData(), 0, buffer.getLength());
+        frame.putInt(0, buffer.getLength() - HEADER_LENGTH);
+        return frame;
+    }
+
+    /**
+     * Copies the given number of bytes from the input to the output
+     *
+     * @param input {@link InputStream}
+     * @param output {@link OutputStream}
+     * @param length - number of bytes to copy
+     * @throws IOException when there is an error reading or writing, or the input ends
+     *             before the given number of bytes
+     */
+    private static void copy(InputStream input, OutputStream output, long length)
+            throws IOException {
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, length))];
+        while (length > 0) {
+            int read = input.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read < 0) {
+                throw new EOFException();
+            }
+            output.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    /**
+     * Get the length of the modified UTF-8 encoding of the given string, as written by
+     * {@link DataOutputStream#writeUTF(String)}
+     *
+     * @param string {@link String}
+     * @return number of bytes of the encoding, excluding the length prefix
+     */
+    private static int utfLength(String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+}
@@ -4,7 +4,8 @@ import java.io.Serializable;
 
 /**
  * 
- * Object used for storing the system and JVM specifications.
+ * Object used for storing the system and JVM specifications, along with the current load
+ * of the worker. The load is updated by the heartbeats the worker sends to the registry.
  * 
  * 
  * 
@@ -48,13 +49,124 @@ public class SystemSpecs implements Serializable {
         this.maxMemoryAvailable = maxMemoryAvailable;
     }
 
+    /**
+     * Get the number of task slots advertised by the worker
+     * 
+     * @return number of slots, 0 if the worker does not advertise its slots
+     */
+    public int getNumberOfSlots() {
+        return numberOfSlots;
+    }
+
+    /**
+     * Set the number of task slots advertised by the worker
+     * 
+     * @param numberOfSlots - number of slots, 0 if not advertised
+     */
+    public void setNumberOfSlots(int numberOfSlots) {
+        this.numberOfSlots = numberOfSlots;
+    }
+
+    /**
+     * Get the number of tasks running on the worker
+     * 
+     * @return number of running tasks
+     */
+    public int getRunningTasks() {
+        return runningTasks;
+    }
+
+    /**
+     * Set the number of tasks running on the worker
+     * 
+     * @param runningTasks - number of running tasks
+     */
+    public void setRunningTasks(int runningTasks) {
+        this.runningTasks = runningTasks;
+    }
+
+    /**
+     * Get the heap memory of the JVM that is not in use
+     * 
+     * @return free heap memory in bytes
+     */
+    public long getFreeMemory() {
+        return freeMemory;
+    }
+
+    /**
+     * Set the heap memory of the JVM that is not in use
+     * 
+     * @param freeMemory - free heap memory in bytes
+     */
+    public void setFreeMemory(long freeMemory) {
+        this.freeMemory = freeMemory;
+    }
+
+    /**
+     * Get the system load average for the last minute
+     * 
+     * @return load average, or a negative value if it is not available
+     */
+    public double getSystemLoadAverage() {
+        return systemLoadAverage;
+    }
+
+    /**
+     * Set the system load average for the last minute
+     * 
+     * @param systemLoadAverage - load average, negative if not available
+     */
+    public void setSystemLoadAverage(double systemLoadAverage) {
+        this.systemLoadAverage = systemLoadAverage;
+    }
+
+    /**
+     * Get the time at which the registry last heard from the worker
+     * 
+     * @return time in milliseconds, by the clock of the registry
+     */
+    public long getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+
+    /**
+     * Set the time at which the registry last heard from the worker
+     * 
+     * @param lastHeartbeat - time in milliseconds, by the clock of the registry
+     */
+    public void setLastHeartbeat(long lastHeartbeat) {
+        this.lastHeartbeat = lastHeartbeat;
+    }
+
+    /**
+     * Get the number of CPU cores that are not in use, from the system load average (or
+     * the running tasks if the load average is not available)
+     * 
+     * @return number of idle cores, 0 if the worker is fully loaded
+     */
+    public double getAvailableCapacity() {
+        double load =
+                systemLoadAverage >= 0 ? Math.max(systemLoadAverage, runningTasks)
+                        : runningTasks;
+        return Math.max(0, availableCpuCores - load);
+    }
+
     @Override
     public String toString() {
         return "SystemSpecs [availableCpuCores=" + availableCpuCores
-                + ", maxMemoryAvailable=" + maxMemoryAvailable + "]";
+                + ", maxMemoryAvailable=" + maxMemoryAvailable
+                + ", numberOfSlots=" + numberOfSlots
+                + ", runningTasks=" + runningTasks + ", freeMemory=" + freeMemory
+                + ", systemLoadAverage=" + systemLoadAverage + "]";
     }
 
     private int availableCpuCores;
     private long maxMemoryAvailable;
+    private int numberOfSlots;
+    private int runningTasks;
+    private long freeMemory;
+    private double systemLoadAverage = -1;
+    private long lastHeartbeat;
 
 }
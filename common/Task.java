@@ -1,9 +1,16 @@
 package mr.common;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 
+import mr.io.Writable;
+
 /**
  * <pre>
  * Task represents a unit of work used by the MR framework. Currently, the
@@ -17,7 +24,7 @@ import java.net.SocketAddress;
  * 
  * 
  */
-public class Task implements Comparable<Task>, Serializable {
+public class Task implements Comparable<Task>, Serializable, Writable {
 
     private static final long serialVersionUID = 1L;
 
@@ -56,12 +63,135 @@ public class Task implements Comparable<Task>, Serializable {
         this.taskId = taskId;
     }
 
+    /**
+     * Constructor used to read a task from a {@link MessageChannel}
+     */
+    public Task() {
+    }
+
     private TYPE taskType;
     private long creationTime;
     private int priority;
     private String taskId;
     private SocketAddress[] reducers;
     private int numberOfMapHosts;
+    private long splitLength;
+    private String localInputPath;
+    private String outputPath;
+    private String hotKeyOutputPath;
+    private Counters counters;
+    private TaskProfile profile;
+
+    /**
+     * Get the time spent by this task in each phase, set by the TaskTracker
+     * 
+     * @return {@link TaskProfile} of this task, or null if not available
+     */
+    public TaskProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Set the time spent by this task in each phase
+     * 
+     * @param profile {@link TaskProfile}
+     */
+    public void setProfile(TaskProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Get the uncompressed length of the input split of this map task
+     * 
+     * @return length of the input split in bytes
+     */
+    public long getSplitLength() {
+        return splitLength;
+    }
+
+    /**
+     * Set the uncompressed length of the input split of this map task
+     * 
+     * @param splitLength: length of the input split in bytes
+     */
+    public void setSplitLength(long splitLength) {
+        this.splitLength = splitLength;
+    }
+
+    /**
+     * Get the path of the file read by this map task on the TaskTracker, when the input
+     * is the output of a previous job written on the same TaskTracker
+     * 
+     * @return path of the input file, or null if the input split is sent with the task
+     */
+    public String getLocalInputPath() {
+        return localInputPath;
+    }
+
+    /**
+     * Set the path of the file read by this map task on the TaskTracker. No split is
+     * sent for the task, and the file is read as it is, without decompression
+     * 
+     * @param localInputPath: path of a file local to the TaskTracker
+     */
+    public void setLocalInputPath(String localInputPath) {
+        this.localInputPath = localInputPath;
+    }
+
+    /**
+     * Get the path of the output file written by this reduce task on its TaskTracker
+     * 
+     * @return path of the output file, or null if no output was written
+     */
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    /**
+     * Set the path of the output file written by this reduce task
+     * 
+     * @param outputPath: path of the output file on the TaskTracker
+     */
+    public void setOutputPath(String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * Get the path of the file of the partial results of the hot keys, written by this
+     * reduce task when the hot keys of the job are salted
+     * 
+     * @return path of the file on the TaskTracker, or null if there is none
+     */
+    public String getHotKeyOutputPath() {
+        return hotKeyOutputPath;
+    }
+
+    /**
+     * Set the path of the file of the partial results of the hot keys
+     * 
+     * @param hotKeyOutputPath: path of the file on the TaskTracker
+     */
+    public void setHotKeyOutputPath(String hotKeyOutputPath) {
+        this.hotKeyOutputPath = hotKeyOutputPath;
+    }
+
+    /**
+     * Get the counters of this task, set by the TaskTracker once the task is complete
+     * 
+     * @return {@link Counters} of this task, or null if not complete
+     */
+    public Counters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Set the counters of this completed task
+     * 
+     * @param counters {@link Counters}
+     */
+    public void setCounters(Counters counters) {
+        this.counters = counters;
+    }
 
     /**
      * Get the number of hosts(TaskTrackers) running the map tasks
@@ -186,6 +316,94 @@ public class Task implements Comparable<Task>, Serializable {
         return diff;
     }
 
+    /**
+     * Writes the fields of this task, except the split file which is local to the
+     * TaskTracker. The reducer addresses are written as raw IP addresses and ports
+     */
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(taskType.ordinal());
+        out.writeUTF(taskId);
+        out.writeLong(creationTime);
+        out.writeInt(priority);
+        out.writeInt(numberOfMapHosts);
+        out.writeLong(splitLength);
+        out.writeInt(reducers == null ? -1 : reducers.length);
+        if (reducers != null) {
+            for (SocketAddress reducer : reducers) {
+                InetSocketAddress address = (InetSocketAddress) reducer;
+                byte[] ipAddress = address.getAddress().getAddress();
+                out.writeByte(ipAddress.length);
+                out.write(ipAddress);
+                out.writeInt(address.getPort());
+            }
+        }
+        writeNullableString(out, localInputPath);
+        writeNullableString(out, outputPath);
+        writeNullableString(out, hotKeyOutputPath);
+        out.writeBoolean(counters != null);
+        if (counters != null) {
+            counters.write(out);
+        }
+        out.writeBoolean(profile != null);
+        if (profile != null) {
+            profile.write(out);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        taskType = TYPE.values()[in.readByte()];
+        taskId = in.readUTF();
+        creationTime = in.readLong();
+        priority = in.readInt();
+        numberOfMapHosts = in.readInt();
+        splitLength = in.readLong();
+        int numberOfReducers = in.readInt();
+        reducers = null;
+        if (numberOfReducers >= 0) {
+            reducers = new SocketAddress[numberOfReducers];
+            for (int i = 0; i < numberOfReducers; i++) {
+                byte[] ipAddress = new byte[in.readByte()];
+                in.readFully(ipAddress);
+                reducers[i] =
+                        new InetSocketAddress(InetAddress.getByAddress(ipAddress),
+                                in.readInt());
+            }
+        }
+        localInputPath = readNullableString(in);
+        outputPath = readNullableString(in);
+        hotKeyOutputPath = readNullableString(in);
+        counters = null;
+        if (in.readBoolean()) {
+            counters = new Counters();
+            counters.readFields(in);
+        }
+        profile = null;
+        if (in.readBoolean()) {
+            profile = new TaskProfile();
+            profile.readFields(in);
+        }
+    }
+
+    /**
+     * Writes a string that may be null, preceded by a flag
+     */
+    private static void writeNullableString(DataOutput out, String string)
+            throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    /**
+     * Reads a string written by writeNullableString
+     */
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
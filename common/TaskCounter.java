@@ -0,0 +1,29 @@
+package mr.common;
+
+/**
+ * Counters maintained by the framework for every map and reduce task
+ * 
+ * @see Counters
+ * 
+ * 
+ */
+public enum TaskCounter {
+    // Records read by the mappers
+    MAP_INPUT_RECORDS,
+    // Uncompressed bytes of the input splits read by the mappers
+    MAP_INPUT_BYTES,
+    // Records written by the mappers
+    MAP_OUTPUT_RECORDS,
+    // Uncompressed bytes of the spilled map output segments
+    MAP_OUTPUT_BYTES,
+    // Number of times the map output buffer was spilled to disk
+    SPILL_COUNT,
+    // Compressed bytes of the map output files received by the reducers
+    SHUFFLE_BYTES,
+    // Number of reduce calls
+    REDUCE_INPUT_GROUPS,
+    // Records read by the reducers
+    REDUCE_INPUT_RECORDS,
+    // Records written by the reducers
+    REDUCE_OUTPUT_RECORDS
+}
@@ -0,0 +1,131 @@
+package mr.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.Map;
+
+import mr.io.Writable;
+
+/**
+ * Time spent by a task in each of the instrumented phases, as one {@link Histogram} per
+ * phase. Sent to the ApplicationMaster along with the completed {@link Task}, where the
+ * profiles of all the tasks are combined into the job profile.
+ * 
+ * 
+ */
+public class TaskProfile implements Serializable, Writable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * <pre>
+     * Instrumented phases
+     * 
+     * 1) SPLIT_RECEIVE - input split received from the ApplicationMaster, per map task
+     * 2) RECORD_READ - record read from the input split, per record
+     * 3) MAP - map method, per record (excluding the spills it triggers)
+     * 4) SORT - sort of the map output buffer, per spill
+     * 5) SPILL - write of the sorted buffer to the segment files, per spill
+     * 6) SHUFFLE_SEND - map output file sent to a reducer, per file
+     * 7) SHUFFLE_RECEIVE - map output file received by the reducer, per file
+     * 8) MERGE - merge of map output files into a run, per merge, and merge reads
+     *    between two reduce calls
+     * 9) REDUCE - reduce method, per key group
+     * </pre>
+     */
+    public enum PHASE {
+        SPLIT_RECEIVE, RECORD_READ, MAP, SORT, SPILL, SHUFFLE_SEND,
+        SHUFFLE_RECEIVE, MERGE, REDUCE
+    };
+
+    private Map<PHASE, Histogram> histograms =
+            new EnumMap<PHASE, Histogram>(PHASE.class);
+    // Thread of the TaskTracker that ran the task, null if not known
+    private String threadName;
+
+    /**
+     * Get the histogram of the given phase, created if required. Hot paths should get
+     * the histogram once and record into it directly
+     * 
+     * @param phase {@link PHASE}
+     * @return {@link Histogram} of the phase
+     */
+    public synchronized Histogram getHistogram(PHASE phase) {
+        Histogram histogram = histograms.get(phase);
+        if (histogram == null) {
+            histogram = new Histogram();
+            histograms.put(phase, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Adds the durations of all the phases of the given profile to this profile
+     * 
+     * @param other {@link TaskProfile}
+     */
+    public synchronized void merge(TaskProfile other) {
+        for (Map.Entry<PHASE, Histogram> entry : other.getHistograms().entrySet()) {
+            getHistogram(entry.getKey()).merge(entry.getValue());
+        }
+    }
+
+    /**
+     * @return map of each recorded phase and its {@link Histogram}
+     */
+    public synchronized Map<PHASE, Histogram> getHistograms() {
+        return new EnumMap<PHASE, Histogram>(histograms);
+    }
+
+    /**
+     * Get the name of the thread that ran the task. The tasks run by a thread run one
+     * after the other, while the threads of a TaskTracker run at the same time
+     * 
+     * @return name of the thread, or null if not known
+     */
+    public synchronized String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Set the name of the thread that ran the task
+     * 
+     * @param threadName - name of the thread
+     */
+    public synchronized void setThreadName(String threadName) {
+        this.threadName = threadName;
+    }
+
+    /**
+     * Writes the name of the thread, if known, and the number of recorded phases,
+     * followed by the ordinal and the histogram of each phase
+     */
+    @Override
+    public synchronized void write(DataOutput out) throws IOException {
+        out.writeBoolean(threadName != null);
+        if (threadName != null) {
+            out.writeUTF(threadName);
+        }
+        out.writeByte(histograms.size());
+        for (Map.Entry<PHASE, Histogram> entry : histograms.entrySet()) {
+            out.writeByte(entry.getKey().ordinal());
+            entry.getValue().write(out);
+        }
+    }
+
+    @Override
+    public synchronized void readFields(DataInput in) throws IOException {
+        histograms.clear();
+        threadName = in.readBoolean() ? in.readUTF() : null;
+        int numberOfPhases = in.readUnsignedByte();
+        for (int i = 0; i < numberOfPhases; i++) {
+            PHASE phase = PHASE.values()[in.readUnsignedByte()];
+            Histogram histogram = new Histogram();
+            histogram.readFields(in);
+            histograms.put(phase, histogram);
+        }
+    }
+}
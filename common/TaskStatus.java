@@ -0,0 +1,174 @@
+package mr.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+import mr.io.Writable;
+
+/**
+ * Progress of a running task, reported by the TaskTracker to the ApplicationMaster as a
+ * part of each {@link Heartbeat}.
+ * 
+ * 
+ */
+public class TaskStatus implements Serializable, Writable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * <pre>
+     * Phase of a running task
+     * 
+     * 1) MAP - mapper is reading the input split
+     * 2) SPILL - map output buffer is being sorted and written to disk
+     * 3) SHUFFLE - reducer is receiving the map output files
+     * 4) MERGE - reducer is finishing the background merges of the received files
+     * 5) REDUCE - reducer is reading the merged input
+     * </pre>
+     */
+    public enum PHASE {
+        MAP, SPILL, SHUFFLE, MERGE, REDUCE
+    };
+
+    private String taskId;
+    private Task.TYPE taskType;
+    private PHASE phase;
+    private long bytesProcessed;
+    private long totalBytes;
+    private long recordsProcessed;
+
+    /**
+     * Constructor used to read a status from a {@link Heartbeat}
+     */
+    public TaskStatus() {
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param taskId - id of the running task
+     * @param taskType {@link Task.TYPE} of the running task
+     */
+    public TaskStatus(String taskId, Task.TYPE taskType) {
+        this.taskId = taskId;
+        this.taskType = taskType;
+    }
+
+    /**
+     * @return id of the task
+     */
+    public String getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * @return {@link Task.TYPE} of the task
+     */
+    public Task.TYPE getTaskType() {
+        return taskType;
+    }
+
+    /**
+     * @return current {@link PHASE} of the task
+     */
+    public PHASE getPhase() {
+        return phase;
+    }
+
+    /**
+     * @param phase current {@link PHASE} of the task
+     */
+    public void setPhase(PHASE phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Get the number of input bytes processed so far. For map tasks, this is the number
+     * of uncompressed bytes of the split read by the mapper. For reduce tasks, this is
+     * the number of bytes received during the shuffle
+     * 
+     * @return number of bytes processed
+     */
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    /**
+     * @param bytesProcessed number of bytes processed
+     */
+    public void setBytesProcessed(long bytesProcessed) {
+        this.bytesProcessed = bytesProcessed;
+    }
+
+    /**
+     * Get the number of input bytes of the task
+     * 
+     * @return length of the input split for map tasks, 0 if not known
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @param totalBytes number of input bytes of the task
+     */
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * @return number of input records processed so far
+     */
+    public long getRecordsProcessed() {
+        return recordsProcessed;
+    }
+
+    /**
+     * @param recordsProcessed number of input records processed
+     */
+    public void setRecordsProcessed(long recordsProcessed) {
+        this.recordsProcessed = recordsProcessed;
+    }
+
+    /**
+     * Get the fraction of the input processed
+     * 
+     * @return progress between 0 and 1, or -1 if the input length is not known
+     */
+    public float getProgress() {
+        if (totalBytes <= 0) {
+            return -1;
+        }
+        return Math.min(1f, (float) bytesProcessed / totalBytes);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(taskId);
+        out.writeByte(taskType.ordinal());
+        out.writeByte(phase == null ? -1 : phase.ordinal());
+        out.writeLong(bytesProcessed);
+        out.writeLong(totalBytes);
+        out.writeLong(recordsProcessed);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        taskId = in.readUTF();
+        taskType = Task.TYPE.values()[in.readByte()];
+        byte phaseOrdinal = in.readByte();
+        phase = phaseOrdinal < 0 ? null : PHASE.values()[phaseOrdinal];
+        bytesProcessed = in.readLong();
+        totalBytes = in.readLong();
+        recordsProcessed = in.readLong();
+    }
+
+    @Override
+    public String toString() {
+        return "TaskStatus [taskId=" + taskId + ", phase=" + phase
+                + ", bytesProcessed=" + bytesProcessed + ", totalBytes="
+                + totalBytes + ", recordsProcessed=" + recordsProcessed + "]";
+    }
+}
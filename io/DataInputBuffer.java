@@ -0,0 +1,52 @@
+package mr.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+
+/**
+ * Reusable {@link DataInputStream} that reads from an in-memory buffer. The buffer can be
+ * replaced to read the next object without creating a new stream.
+ * 
+ * 
+ */
+public class DataInputBuffer extends DataInputStream {
+
+    /**
+     * {@link ByteArrayInputStream} whose buffer can be replaced
+     */
+    private static class Buffer extends ByteArrayInputStream {
+        Buffer() {
+            super(new byte[0]);
+        }
+
+        void reset(byte[] data, int length) {
+            this.buf = data;
+            this.pos = 0;
+            this.mark = 0;
+            this.count = length;
+        }
+    }
+
+    private Buffer buffer;
+
+    public DataInputBuffer() {
+        this(new Buffer());
+    }
+
+    private DataInputBuffer(Buffer buffer) {
+        super(buffer);
+        this.buffer = buffer;
+    }
+
+    /**
+     * Replaces the data read by this stream
+     * 
+     * @param data - byte array
+     * @param length - number of valid bytes in the array
+     * @return this buffer
+     */
+    public DataInputBuffer reset(byte[] data, int length) {
+        buffer.reset(data, length);
+        return this;
+    }
+}
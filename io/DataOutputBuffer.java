@@ -0,0 +1,70 @@
+package mr.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
+/**
+ * Reusable {@link DataOutputStream} that writes to an in-memory buffer. The buffer is
+ * exposed without copying and can be reset to write the next object.
+ * 
+ * 
+ */
+public class DataOutputBuffer extends DataOutputStream {
+
+    /**
+     * {@link ByteArrayOutputStream} that exposes its internal buffer
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] getData() {
+            return buf;
+        }
+    }
+
+    private Buffer buffer;
+
+    public DataOutputBuffer() {
+        this(128);
+    }
+
+    private DataOutputBuffer(int size) {
+        this(new Buffer(size));
+    }
+
+    private DataOutputBuffer(Buffer buffer) {
+        super(buffer);
+        this.buffer = buffer;
+    }
+
+    /**
+     * Get the internal buffer. Only the first getLength() bytes are valid
+     * 
+     * @return the internal buffer
+     */
+    public byte[] getData() {
+        return buffer.getData();
+    }
+
+    /**
+     * Get the number of bytes written since the last reset
+     * 
+     * @return number of valid bytes in the buffer
+     */
+    public int getLength() {
+        return buffer.size();
+    }
+
+    /**
+     * Empties the buffer so that it can be reused
+     * 
+     * @return this buffer
+     */
+    public DataOutputBuffer reset() {
+        written = 0;
+        buffer.reset();
+        return this;
+    }
+}
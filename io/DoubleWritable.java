@@ -1,5 +1,9 @@
 package mr.io;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Serializable container for double values.
  *  
@@ -7,11 +11,14 @@ package mr.io;
  * 
  */
 @SuppressWarnings("serial")
-public class DoubleWritable implements MapReduceObject,
+public class DoubleWritable implements MapReduceObject, Writable,
         Comparable<DoubleWritable> {
 
     private double value;
 
+    public DoubleWritable() {
+    }
+
     public DoubleWritable(double value) {
         this.value = value;
     }
@@ -67,4 +74,13 @@ public class DoubleWritable implements MapReduceObject,
         return 4;
     }
 
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeDouble(value);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        this.value = in.readDouble();
+    }
 }
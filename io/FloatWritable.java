@@ -1,5 +1,9 @@
 package mr.io;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Serializable container for float values.
  * 
@@ -7,11 +11,14 @@ package mr.io;
  * 
  */
 @SuppressWarnings("serial")
-public class FloatWritable implements MapReduceObject,
+public class FloatWritable implements MapReduceObject, Writable,
         Comparable<FloatWritable> {
 
     private float value;
 
+    public FloatWritable() {
+    }
+
     public FloatWritable(float value) {
         this.value = value;
     }
@@ -65,4 +72,13 @@ public class FloatWritable implements MapReduceObject,
         return 2;
     }
 
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeFloat(value);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        this.value = in.readFloat();
+    }
 }
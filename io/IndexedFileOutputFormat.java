@@ -0,0 +1,90 @@
+package mr.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import mr.common.Configuration;
+
+/**
+ * <p>
+ * {@link OutputFormat} for sorted output that can be used as a lookup table. The
+ * key/value pairs are written to a {@link KeyValueFile} with a new block after every
+ * 'index interval' records (or earlier for large records), and the first key of each
+ * block is written along with the position of the block to an index file next to the
+ * data file (part_X.index).
+ * 
+ * <p>
+ * The {@link IndexedFileReader} binary searches the index and only reads the block
+ * which may contain the requested key.
+ * 
+ * 
+ */
+public class IndexedFileOutputFormat<KEY, VALUE> implements
+        OutputFormat<KEY, VALUE> {
+
+    public static final String INDEX_FILE_SUFFIX = ".index";
+
+    @Override
+    public RecordWriter<KEY, VALUE> getRecordWriter(
+            Configuration configuration,
+            File file) throws IOException {
+        File indexFile =
+                new File(file.getParentFile(), file.getName()
+                        + INDEX_FILE_SUFFIX);
+        return new IndexedRecordWriter<KEY, VALUE>(file, indexFile,
+                configuration.getIndexInterval());
+    }
+
+    /**
+     * Writes the data file and the sparse key index
+     * 
+     * 
+     */
+    static class IndexedRecordWriter<KEY, VALUE> implements
+            RecordWriter<KEY, VALUE> {
+
+        // Invoke reset periodically so that the keys written to the index are eligible
+        // for garbage collection
+        private static final int RESET_INTERVAL = 1024;
+
+        private KeyValueFile.Writer<KEY, VALUE> dataWriter;
+        private ObjectOutputStream indexStream;
+        private int numberOfIndexEntries;
+
+        IndexedRecordWriter(File dataFile, File indexFile, int indexInterval)
+                throws IOException {
+            this.dataWriter =
+                    new KeyValueFile.Writer<KEY, VALUE>(new BufferedOutputStream(
+                            new FileOutputStream(dataFile)),
+                            KeyValueFile.DEFAULT_BLOCK_SIZE, indexInterval);
+            this.indexStream =
+                    new ObjectOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(indexFile)));
+        }
+
+        /**
+         * Writes the key and the position of the block to the index whenever a new
+         * block is started
+         */
+        @Override
+        public void write(KEY key, VALUE value) throws IOException {
+            if (dataWriter.getRecordsInBlock() == 0) {
+                indexStream.writeObject(key);
+                indexStream.writeLong(dataWriter.getPosition());
+                if (++numberOfIndexEntries % RESET_INTERVAL == 0) {
+                    indexStream.reset();
+                }
+            }
+            dataWriter.write(key, value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            dataWriter.close();
+            indexStream.close();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package mr.io;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * Reads values by key from an output file written by the {@link IndexedFileOutputFormat}.
+ * The index is loaded into memory when the reader is created. A lookup binary searches
+ * the index for the block which may contain the key, seeks to the block and scans only
+ * that block (and the following blocks while they contain the key).
+ * 
+ * <p>
+ * Instances are not thread safe.
+ * 
+ * 
+ * @param <KEY>
+ * @param <VALUE>
+ */
+public class IndexedFileReader<KEY, VALUE> {
+
+    private RandomAccessFile dataFile;
+    private Comparator<KEY> comparator;
+    private List<KEY> indexKeys = new ArrayList<KEY>();
+    private long[] blockPositions;
+    // Shared by the readers of all the lookups, ended when this reader is closed
+    private Inflater inflater = new Inflater();
+
+    /**
+     * Constructor, opens the data file and loads the index file written next to it. The
+     * keys must be sorted in their natural order
+     * 
+     * @param file {@link File} the data file (for example output/part_0)
+     * @throws IOException when the data file or the index file cannot be read
+     */
+    public IndexedFileReader(File file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * Constructor, opens the data file and loads the index file written next to it
+     * 
+     * @param file {@link File} the data file (for example output/part_0)
+     * @param comparator {@link Comparator} the keys were sorted by (the sort comparator
+     *            of the job), or null for keys sorted in their natural order
+     * @throws IOException when the data file or the index file cannot be read
+     */
+    public IndexedFileReader(File file, Comparator<KEY> comparator)
+            throws IOException {
+        this.comparator = comparator;
+        this.dataFile = new RandomAccessFile(file, "r");
+        loadIndex(new File(file.getParentFile(), file.getName()
+                + IndexedFileOutputFormat.INDEX_FILE_SUFFIX));
+    }
+
+    /**
+     * Reads all the key/position entries from the given index file
+     * 
+     * @param indexFile {@link File}
+     * @throws IOException when there is an error reading the index file
+     */
+    @SuppressWarnings("unchecked")
+    private void loadIndex(File indexFile) throws IOException {
+        List<Long> positions = new ArrayList<Long>();
+        ObjectInputStream indexStream =
+                new ObjectInputStream(new BufferedInputStream(
+                        new FileInputStream(indexFile)));
+        try {
+            while (true) {
+                indexKeys.add((KEY) indexStream.readObject());
+                positions.add(indexStream.readLong());
+            }
+        } catch (EOFException eof) {
+            // All the entries have been read
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } finally {
+            indexStream.close();
+        }
+
+        blockPositions = new long[positions.size()];
+        for (int i = 0; i < blockPositions.length; i++) {
+            blockPositions[i] = positions.get(i);
+        }
+    }
+
+    /**
+     * Get the first value for the given key
+     * 
+     * @param key
+     * @return the first value written for the key, or null if the key is not found
+     * @throws IOException when there is an error reading the data file
+     */
+    public VALUE get(KEY key) throws IOException {
+        List<VALUE> values = lookup(key, true);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Get all the values for the given key
+     * 
+     * @param key
+     * @return list of values written for the key (empty if the key is not found)
+     * @throws IOException when there is an error reading the data file
+     */
+    public List<VALUE> getValues(KEY key) throws IOException {
+        return lookup(key, false);
+    }
+
+    /**
+     * Seeks to the block that may contain the first occurrence of the given key and
+     * scans forward until a larger key is found
+     * 
+     * @param key
+     * @param firstOnly - true if the scan ends at the first matching value
+     * @return list of matching values
+     * @throws IOException when there is an error reading the data file
+     */
+    private List<VALUE> lookup(KEY key, boolean firstOnly) throws IOException {
+        List<VALUE> values = new ArrayList<VALUE>();
+        int block = findBlock(key);
+        if (block < 0) {
+            return values;
+        }
+
+        dataFile.seek(blockPositions[block]);
+        // The block reader is not closed, as that would close the data file. It holds no
+        // native memory, as it decompresses with the inflater of this reader
+        KeyValueFile.Reader<KEY, VALUE> reader =
+                new KeyValueFile.Reader<KEY, VALUE>(new BufferedInputStream(
+                        Channels.newInputStream(dataFile.getChannel())), inflater);
+        while (reader.nextKeyValue()) {
+            int diff = compare(reader.getCurrentKey(), key);
+            if (diff > 0) {
+                break;
+            } else if (diff == 0) {
+                values.add(reader.getCurrentValue());
+                if (firstOnly) {
+                    break;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Binary searches the index for the last block whose first key is smaller than the
+     * given key. Earlier blocks only contain smaller keys, and equal keys can start in
+     * that block.
+     * 
+     * @param key
+     * @return index of the block to scan from, or -1 if the key is not in the file
+     */
+    private int findBlock(KEY key) {
+        int low = 0;
+        int high = indexKeys.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(indexKeys.get(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // 'high' is the last block starting with a smaller key
+        if (high >= 0) {
+            return high;
+        }
+        if (!indexKeys.isEmpty() && compare(indexKeys.get(0), key) == 0) {
+            return 0;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(KEY key1, KEY key2) {
+        if (comparator != null) {
+            return comparator.compare(key1, key2);
+        }
+        return ((Comparable<KEY>) key1).compareTo(key2);
+    }
+
+    /**
+     * Closes the data file and releases the inflater
+     * 
+     * @throws IOException when there is an error closing the file
+     */
+    public void close() throws IOException {
+        try {
+            dataFile.close();
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package mr.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import mr.common.Configuration;
+
+/**
+ * <p>
+ * Describes how the input files of a job are split and read. The master uses
+ * getSplitBoundary to cut the input file into splits that only contain complete records,
+ * and the TaskTracker uses getRecordReader to read the records of a split.
+ * 
+ * <p>
+ * Implementations must have a public no-argument constructor, as they are instantiated
+ * from the class name stored in the {@link Configuration}.
+ * 
+ * Reference: This interface is based on Apache Hadoop's InputFormat class.
+ * 
+ * @see TextInputFormat
+ * @see KeyValueFileInputFormat
+ * 
+ * @param <KEY>
+ * @param <VALUE>
+ */
+public interface InputFormat<KEY, VALUE> {
+
+    /**
+     * Get the number of bytes at the start of the given chunk of the input file that
+     * contain only complete records
+     * 
+     * @param data chunk of the input file, starting at a record boundary
+     * @return number of bytes up to the last record boundary in the chunk, or 0 if the
+     *         chunk does not contain a complete record, in which case the chunk is
+     *         extended with the data that follows it
+     */
+    int getSplitBoundary(byte[] data);
+
+    /**
+     * Creates a {@link RecordReader} for the split data in the given stream
+     * 
+     * @param configuration {@link Configuration} of the current job
+     * @param inputStream {@link InputStream} of the (uncompressed) split data
+     * @param splitOffset offset of the split, used to generate keys that are unique
+     *            across all splits
+     * @return {@link RecordReader}
+     * @throws IOException when the split cannot be read
+     */
+    RecordReader<KEY, VALUE> getRecordReader(
+            Configuration configuration,
+            InputStream inputStream,
+            long splitOffset) throws IOException;
+}
@@ -1,5 +1,9 @@
 package mr.io;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Serializable container for int values. 
  * 
@@ -7,10 +11,13 @@ package mr.io;
  * 
  */
 @SuppressWarnings("serial")
-public class IntWritable implements MapReduceObject, Comparable<IntWritable> {
+public class IntWritable implements MapReduceObject, Writable, Comparable<IntWritable> {
 
     private int value;
 
+    public IntWritable() {
+    }
+
     public IntWritable(int value) {
         this.value = value;
     }
@@ -62,4 +69,14 @@ public class IntWritable implements MapReduceObject, Comparable<IntWritable> {
     public int getSizeInBytes() {
         return 2;
     }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(value);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        this.value = in.readInt();
+    }
 }
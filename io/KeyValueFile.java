@@ -0,0 +1,318 @@
+package mr.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * Binary, block-compressed file of serialized key/value pairs. The pairs are buffered
+ * into blocks which are compressed independently, so that a file can be split at any
+ * block boundary and each split can be read on its own.
+ *
+ * <p>
+ * Each block has the following layout
+ *
+ * <pre>
+ * 1) BLOCK_MAGIC (int)
+ * 2) number of records in the block (int)
+ * 3) uncompressed length of the block data (int)
+ * 4) compressed length of the block data (int)
+ * 5) block data, compressed with Deflater.BEST_SPEED. The uncompressed data is an
+ *    object stream of alternating key and value objects
+ * </pre>
+ *
+ * @see KeyValueFileOutputFormat
+ * @see KeyValueFileInputFormat
+ *
+ *
+ */
+public class KeyValueFile {
+
+    public static final int BLOCK_MAGIC = 0x4D524B56;
+    public static final int BLOCK_HEADER_LENGTH = 16;
+
+    // Default uncompressed size of a block
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * Get the number of bytes at the start of the given data that contain only complete
+     * blocks
+     *
+     * @param data - byte array starting at a block boundary
+     * @return position following the last complete block in the given data
+     */
+    public static int getBlockBoundary(byte[] data) {
+        int position = 0;
+        while (position + BLOCK_HEADER_LENGTH <= data.length) {
+            int compressedLength = readInt(data, position + 12);
+            int blockEnd = position + BLOCK_HEADER_LENGTH + compressedLength;
+            if (compressedLength < 0 || blockEnd > data.length) {
+                break;
+            }
+            position = blockEnd;
+        }
+        return position;
+    }
+
+    private static int readInt(byte[] data, int position) {
+        return ((data[position] & 0xFF) << 24)
+                | ((data[position + 1] & 0xFF) << 16)
+                | ((data[position + 2] & 0xFF) << 8)
+                | (data[position + 3] & 0xFF);
+    }
+
+    /**
+     * Writes key/value pairs as compressed blocks to an output stream
+     *
+     * @param <KEY>
+     * @param <VALUE>
+     */
+    public static class Writer<KEY, VALUE> implements RecordWriter<KEY, VALUE> {
+
+        private DataOutputStream outputStream;
+        private ByteArrayOutputStream blockBuffer;
+        private ObjectOutputStream blockObjectStream;
+        private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] compressedBuffer = new byte[8192];
+        private int blockSize;
+        private int maxRecordsPerBlock;
+        private int recordsInBlock;
+        private long position;
+
+        /**
+         * Constructor
+         *
+         * @param outputStream {@link OutputStream} the blocks are written to
+         * @param blockSize uncompressed size after which a block is written
+         */
+        public Writer(OutputStream outputStream, int blockSize) {
+            this(outputStream, blockSize, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Constructor
+         *
+         * @param outputStream {@link OutputStream} the blocks are written to
+         * @param blockSize uncompressed size after which a block is written
+         * @param maxRecordsPerBlock number of records after which a block is written
+         */
+        public Writer(OutputStream outputStream, int blockSize,
+                int maxRecordsPerBlock) {
+            this.outputStream = new DataOutputStream(outputStream);
+            this.blockSize = blockSize;
+            this.maxRecordsPerBlock = maxRecordsPerBlock;
+            this.blockBuffer =
+                    new ByteArrayOutputStream(Math.min(blockSize,
+                            DEFAULT_BLOCK_SIZE) + 1024);
+        }
+
+        /**
+         * Appends the given key/value pair to the current block. The block is written
+         * once its size reaches the block size
+         */
+        @Override
+        public void write(KEY key, VALUE value) throws IOException {
+            if (blockObjectStream == null) {
+                blockObjectStream = new ObjectOutputStream(blockBuffer);
+            }
+            blockObjectStream.writeObject(key);
+            blockObjectStream.writeObject(value);
+            recordsInBlock++;
+            if (blockBuffer.size() >= blockSize
+                    || recordsInBlock >= maxRecordsPerBlock) {
+                writeBlock();
+            }
+        }
+
+        /**
+         * Get the position in the output stream at which the next block starts
+         *
+         * @return number of bytes written so far
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * Get the number of records buffered for the current block
+         *
+         * @return number of records in the current block
+         */
+        public int getRecordsInBlock() {
+            return recordsInBlock;
+        }
+
+        /**
+         * Compresses the current block and writes it to the output stream
+         *
+         * @throws IOException when there is an error writing to the output stream
+         */
+        public void writeBlock() throws IOException {
+            if (recordsInBlock == 0) {
+                return;
+            }
+            blockObjectStream.close();
+            byte[] data = blockBuffer.toByteArray();
+
+            deflater.reset();
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream compressed =
+                    new ByteArrayOutputStream(data.length / 2 + 64);
+            while (!deflater.finished()) {
+                int length = deflater.deflate(compressedBuffer);
+                compressed.write(compressedBuffer, 0, length);
+            }
+
+            outputStream.writeInt(BLOCK_MAGIC);
+            outputStream.writeInt(recordsInBlock);
+            outputStream.writeInt(data.length);
+            outputStream.writeInt(compressed.size());
+            compressed.writeTo(outputStream);
+            position += BLOCK_HEADER_LENGTH + compressed.size();
+
+            blockBuffer.reset();
+            blockObjectStream = null;
+            recordsInBlock = 0;
+        }
+
+        /**
+         * Writes the last block and closes the output stream
+         */
+        @Override
+        public void close() throws IOException {
+            writeBlock();
+            outputStream.close();
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads the key/value pairs of the blocks in an input stream
+     *
+     * @param <KEY>
+     * @param <VALUE>
+     */
+    public static class Reader<KEY, VALUE> implements RecordReader<KEY, VALUE> {
+
+        private DataInputStream inputStream;
+        private ObjectInputStream blockObjectStream;
+        private Inflater inflater;
+        // False when the inflater belongs to the caller, which ends it
+        private boolean endsInflater;
+        private int recordsRemaining;
+        private KEY currentKey;
+        private VALUE currentValue;
+
+        /**
+         * Constructor
+         *
+         * @param inputStream {@link InputStream} positioned at a block boundary
+         */
+        public Reader(InputStream inputStream) {
+            this(inputStream, new Inflater());
+            this.endsInflater = true;
+        }
+
+        /**
+         * Constructor, with an {@link Inflater} of the caller. The inflater is reset for
+         * each block and is not ended on close, so that it can be reused by the readers
+         * of successive lookups in the same file
+         *
+         * @param inputStream {@link InputStream} positioned at a block boundary
+         * @param inflater {@link Inflater} ended by the caller
+         */
+        public Reader(InputStream inputStream, Inflater inflater) {
+            this.inputStream = new DataInputStream(inputStream);
+            this.inflater = inflater;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            while (recordsRemaining == 0) {
+                if (!readBlock()) {
+                    currentKey = null;
+                    currentValue = null;
+                    return false;
+                }
+            }
+            try {
+                currentKey = (KEY) blockObjectStream.readObject();
+                currentValue = (VALUE) blockObjectStream.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+            recordsRemaining--;
+            return true;
+        }
+
+        /**
+         * Reads and decompresses the next block from the input stream
+         *
+         * @return true if a block was read, false at the end of the stream
+         * @throws IOException when the stream does not contain a valid block
+         */
+        private boolean readBlock() throws IOException {
+            int magic;
+            try {
+                magic = inputStream.readInt();
+            } catch (EOFException eof) {
+                return false;
+            }
+            if (magic != BLOCK_MAGIC) {
+                throw new IOException("Invalid key/value file block");
+            }
+            int records = inputStream.readInt();
+            int length = inputStream.readInt();
+            int compressedLength = inputStream.readInt();
+            byte[] compressed = new byte[compressedLength];
+            inputStream.readFully(compressed);
+
+            byte[] data = new byte[length];
+            inflater.reset();
+            inflater.setInput(compressed);
+            try {
+                int offset = 0;
+                while (offset < length && !inflater.finished()) {
+                    offset += inflater.inflate(data, offset, length - offset);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+            blockObjectStream =
+                    new ObjectInputStream(new ByteArrayInputStream(data));
+            recordsRemaining = records;
+            return true;
+        }
+
+        @Override
+        public KEY getCurrentKey() {
+            return currentKey;
+        }
+
+        @Override
+        public VALUE getCurrentValue() {
+            return currentValue;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+            if (endsInflater) {
+                inflater.end();
+            }
+        }
+    }
+}
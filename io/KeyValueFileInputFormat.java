@@ -0,0 +1,30 @@
+package mr.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import mr.common.Configuration;
+
+/**
+ * {@link InputFormat} for the binary files written by the
+ * {@link KeyValueFileOutputFormat}. Splits end on a block boundary, and the keys and
+ * values are the deserialized objects written by the previous job.
+ * 
+ * 
+ */
+public class KeyValueFileInputFormat<KEY, VALUE> implements
+        InputFormat<KEY, VALUE> {
+
+    @Override
+    public int getSplitBoundary(byte[] data) {
+        return KeyValueFile.getBlockBoundary(data);
+    }
+
+    @Override
+    public RecordReader<KEY, VALUE> getRecordReader(
+            Configuration configuration,
+            InputStream inputStream,
+            long splitOffset) throws IOException {
+        return new KeyValueFile.Reader<KEY, VALUE>(inputStream);
+    }
+}
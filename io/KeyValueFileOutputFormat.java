@@ -0,0 +1,27 @@
+package mr.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import mr.common.Configuration;
+
+/**
+ * {@link OutputFormat} that writes the key/value pairs to a binary, block-compressed
+ * {@link KeyValueFile}. The output can be used as the input of another job through the
+ * {@link KeyValueFileInputFormat}, without parsing the keys and values from text.
+ * 
+ * 
+ */
+public class KeyValueFileOutputFormat<KEY, VALUE> implements
+        OutputFormat<KEY, VALUE> {
+
+    @Override
+    public RecordWriter<KEY, VALUE> getRecordWriter(
+            Configuration configuration,
+            File file) throws IOException {
+        return new KeyValueFile.Writer<KEY, VALUE>(new BufferedOutputStream(
+                new FileOutputStream(file)), KeyValueFile.DEFAULT_BLOCK_SIZE);
+    }
+}
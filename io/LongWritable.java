@@ -1,5 +1,9 @@
 package mr.io;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Serializable container for long values. 
  * 
@@ -7,10 +11,13 @@ package mr.io;
  * 
  */
 @SuppressWarnings("serial")
-public class LongWritable implements MapReduceObject, Comparable<LongWritable> {
+public class LongWritable implements MapReduceObject, Writable, Comparable<LongWritable> {
 
     private long value;
 
+    public LongWritable() {
+    }
+
     public LongWritable(long value) {
         this.value = value;
     }
@@ -61,4 +68,14 @@ public class LongWritable implements MapReduceObject, Comparable<LongWritable> {
     public int getSizeInBytes() {
         return 4;
     }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(value);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        this.value = in.readLong();
+    }
 }
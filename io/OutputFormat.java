@@ -0,0 +1,34 @@
+package mr.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import mr.common.Configuration;
+
+/**
+ * Describes how the output key/value pairs of a job are written to the output files.
+ * Implementations must have a public no-argument constructor, as they are instantiated
+ * by the TaskTracker from the class name stored in the {@link Configuration}.
+ * 
+ * Reference: This interface is based on Apache Hadoop's OutputFormat class.
+ * 
+ * @see TextOutputFormat
+ * @see KeyValueFileOutputFormat
+ * 
+ * @param <KEY>
+ * @param <VALUE>
+ */
+public interface OutputFormat<KEY, VALUE> {
+
+    /**
+     * Creates a {@link RecordWriter} that writes to the given file
+     * 
+     * @param configuration {@link Configuration} of the current job
+     * @param file {@link File} the output file to be written
+     * @return {@link RecordWriter}
+     * @throws IOException when the output file cannot be created
+     */
+    RecordWriter<KEY, VALUE> getRecordWriter(
+            Configuration configuration,
+            File file) throws IOException;
+}
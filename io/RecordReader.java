@@ -0,0 +1,41 @@
+package mr.io;
+
+import java.io.IOException;
+
+/**
+ * Reads the input key/value pairs of a map task from an input split. Instances are
+ * created by an {@link InputFormat}.
+ * 
+ * Reference: This interface is based on Apache Hadoop's RecordReader class.
+ * 
+ * @param <KEY>
+ * @param <VALUE>
+ */
+public interface RecordReader<KEY, VALUE> {
+
+    /**
+     * Reads the next key/value pair from the split
+     * 
+     * @return true if a key/value pair was read, false if the end of the split has been
+     *         reached
+     * @throws IOException when there is an error reading from the split
+     */
+    boolean nextKeyValue() throws IOException;
+
+    /**
+     * @return key of the pair read by the last call to nextKeyValue()
+     */
+    KEY getCurrentKey();
+
+    /**
+     * @return value of the pair read by the last call to nextKeyValue()
+     */
+    VALUE getCurrentValue();
+
+    /**
+     * Closes the input split
+     * 
+     * @throws IOException when there is an error closing the split
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,31 @@
+package mr.io;
+
+import java.io.IOException;
+
+/**
+ * Writes the output key/value pairs of a task to an output file. Instances are created
+ * by an {@link OutputFormat}.
+ * 
+ * Reference: This interface is based on Apache Hadoop's RecordWriter class.
+ * 
+ * @param <KEY>
+ * @param <VALUE>
+ */
+public interface RecordWriter<KEY, VALUE> {
+
+    /**
+     * Writes a key/value pair to the output
+     * 
+     * @param key
+     * @param value
+     * @throws IOException when there is an error writing to the output
+     */
+    void write(KEY key, VALUE value) throws IOException;
+
+    /**
+     * Flushes any buffered output and closes the output file
+     * 
+     * @throws IOException when there is an error flushing/closing the output
+     */
+    void close() throws IOException;
+}
@@ -1,5 +1,10 @@
 package mr.io;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Serializable container for String values.
  *  
@@ -7,10 +12,13 @@ package mr.io;
  * 
  */
 @SuppressWarnings("serial")
-public class Text implements MapReduceObject, Comparable<Text> {
+public class Text implements MapReduceObject, Writable, Comparable<Text> {
 
     private String value;
 
+    public Text() {
+    }
+
     public Text(String value) {
         this.value = value;
     }
@@ -70,4 +78,29 @@ public class Text implements MapReduceObject, Comparable<Text> {
         }
     }
 
+    /**
+     * Writes the UTF-8 encoded value preceded by its length, or -1 for a null value
+     */
+    @Override
+    public void write(DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            this.value = null;
+        } else {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            this.value = new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
 }
@@ -0,0 +1,97 @@
+package mr.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import mr.common.Configuration;
+
+/**
+ * {@link InputFormat} for line separated text files. Splits end with an end of line
+ * character. Keys are the position of the line in the input file as a
+ * {@link LongWritable} and values are the line as a {@link Text}.
+ * 
+ * 
+ */
+public class TextInputFormat implements InputFormat<LongWritable, Text> {
+
+    /**
+     * returns the position following the last end of line character in the given
+     * byte array
+     * 
+     * @param data - byte array
+     * @return position following the last end of line character, or 0 if there is none
+     */
+    @Override
+    public int getSplitBoundary(byte[] data) {
+        for (int i = data.length - 1; i >= 0; i--) {
+            if (data[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public RecordReader<LongWritable, Text> getRecordReader(
+            Configuration configuration,
+            InputStream inputStream,
+            long splitOffset) throws IOException {
+        return new LineRecordReader(inputStream, splitOffset);
+    }
+
+    /**
+     * Reads the lines of a text split. Key generated is file_pointer + split offset,
+     * which is unique across all splits.
+     * 
+     * 
+     */
+    static class LineRecordReader implements RecordReader<LongWritable, Text> {
+
+        private BufferedLineReader reader;
+        private long splitOffset;
+        private LongWritable currentKey;
+        private Text currentValue;
+
+        LineRecordReader(InputStream inputStream, long splitOffset) {
+            this.reader =
+                    new BufferedLineReader(new InputStreamReader(inputStream));
+            this.splitOffset = splitOffset;
+        }
+
+        /**
+         * Reads the next line. Empty lines are skipped, the split ends at the end of the
+         * stream
+         */
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            String line;
+            do {
+                currentKey = new LongWritable(reader.getFilePosition() + splitOffset);
+                line = reader.readLine();
+            } while (line != null && line.isEmpty());
+
+            if (line != null) {
+                currentValue = new Text(line);
+                return true;
+            }
+            currentValue = null;
+            return false;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return currentKey;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return currentValue;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package mr.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import mr.common.Configuration;
+
+/**
+ * {@link OutputFormat} that writes one line per key/value pair, with the key and the
+ * value separated by the output separator of the job ("--" by default). Output is
+ * buffered in a large buffer and only flushed when the buffer is full or the writer is
+ * closed.
+ * 
+ * 
+ */
+public class TextOutputFormat<KEY, VALUE> implements OutputFormat<KEY, VALUE> {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    @Override
+    public RecordWriter<KEY, VALUE> getRecordWriter(
+            Configuration configuration,
+            File file) throws IOException {
+        return new LineRecordWriter<KEY, VALUE>(new FileOutputStream(file),
+                configuration.getOutputSeparator());
+    }
+
+    /**
+     * Writes key/value pairs as lines of text
+     * 
+     * 
+     */
+    static class LineRecordWriter<KEY, VALUE> implements
+            RecordWriter<KEY, VALUE> {
+
+        private Writer writer;
+        private String separator;
+
+        LineRecordWriter(FileOutputStream outputStream, String separator) {
+            this.writer =
+                    new BufferedWriter(new OutputStreamWriter(outputStream),
+                            BUFFER_SIZE);
+            this.separator = separator;
+        }
+
+        @Override
+        public void write(KEY key, VALUE value) throws IOException {
+            writer.write(String.valueOf(key));
+            writer.write(separator);
+            writer.write(String.valueOf(value));
+            writer.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package mr.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Objects that can serialize their state to a binary stream, and read it back into an
+ * existing instance. The framework serializes map output values that implement this
+ * interface without java serialization, and reuses one instance to deserialize the
+ * values passed to the reducer. Implementations must have a public no-argument
+ * constructor.
+ * 
+ * Reference: This interface is based on Apache Hadoop's Writable interface.
+ * 
+ * 
+ */
+public interface Writable {
+
+    /**
+     * Serializes the state of this object to the given output
+     * 
+     * @param out {@link DataOutput}
+     * @throws IOException when there is an error writing to the output
+     */
+    void write(DataOutput out) throws IOException;
+
+    /**
+     * Replaces the state of this object with the state read from the given input
+     * 
+     * @param in {@link DataInput}
+     * @throws IOException when there is an error reading from the input
+     */
+    void readFields(DataInput in) throws IOException;
+}
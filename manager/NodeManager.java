@@ -24,6 +24,10 @@ import mr.common.MRUtility;
  * settings from Configuration file to start tasks. Allows graceful shutdown of
  * TaskTracker instances.
  * 
+ * When 'single_task_tracker' is set, starts a single TaskTracker with N task slots
+ * instead, which shares its heap, JIT warmup and connections between the slots. Its heap
+ * is the maximum usable memory (or N times the jvm heap size if not configured).
+ * 
  * 
  */
 public class NodeManager {
@@ -39,6 +43,7 @@ public class NodeManager {
     private static String hostName;
     private static int port;
     private static PrintWriter[] outWriters;
+    private static final long mb = 1024 * 1024;
 
     /**
      * Starts the registry and task trackers using parameters specified in the
@@ -84,8 +89,9 @@ public class NodeManager {
                 numberOfWorkers = 2;
             }
         }
-        System.out.println("Allocated number of task trackers"
-                + numberOfWorkers);
+        System.out.println("Allocated number of task slots " + numberOfWorkers
+                + (cfg.isSingleTaskTracker() ? " in a single task tracker"
+                        : ", one task tracker per slot"));
     }
 
     /**
@@ -171,15 +177,28 @@ public class NodeManager {
      */
     private static void startTaskTrackers() throws IOException {
 
-        Thread[] starters = new Thread[numberOfWorkers];
-        outWriters = new PrintWriter[numberOfWorkers];
-
-        ProcessBuilder processBuilder =
-                new ProcessBuilder(javaHome, "-Xmx2g", classPathCommand,
-                        cfg.getClasspath(), taskTrackerClass);
+        ProcessBuilder processBuilder;
+        int numberOfProcesses;
+        if (cfg.isSingleTaskTracker()) {
+            // One TaskTracker advertising all the slots
+            processBuilder =
+                    new ProcessBuilder(javaHome, "-Xmx"
+                            + getSingleTaskTrackerHeapSize(), classPathCommand,
+                            cfg.getClasspath(), taskTrackerClass,
+                            String.valueOf(numberOfWorkers));
+            numberOfProcesses = 1;
+        } else {
+            processBuilder =
+                    new ProcessBuilder(javaHome, "-Xmx" + cfg.getJvmHeapSizeStr(),
+                            classPathCommand, cfg.getClasspath(), taskTrackerClass);
+            numberOfProcesses = numberOfWorkers;
+        }
         processBuilder.redirectErrorStream(true);
 
-        for (int i = 0; i < numberOfWorkers; i++) {
+        Thread[] starters = new Thread[numberOfProcesses];
+        outWriters = new PrintWriter[numberOfProcesses];
+
+        for (int i = 0; i < numberOfProcesses; i++) {
             Process process = processBuilder.start();
             InputStreamListener in =
                     new InputStreamListener(process.getInputStream());
@@ -193,6 +212,20 @@ public class NodeManager {
         waitForShutdown();
     }
 
+    /**
+     * Get the heap size of the single TaskTracker: the maximum usable memory if
+     * configured, otherwise the jvm heap size for each slot
+     * 
+     * @return heap size, in megabytes (example: 8192m)
+     */
+    private static String getSingleTaskTrackerHeapSize() {
+        long heapSize = cfg.getMaxUsableMemory();
+        if (heapSize <= 0) {
+            heapSize = cfg.getJvmHeapSizeInBytes() * numberOfWorkers;
+        }
+        return Math.max(1, heapSize / mb) + "m";
+    }
+
     /**
      * Listens on the console input stream for a shutdown message. If a shutdown message
      * is received, initiates the shutdown process.
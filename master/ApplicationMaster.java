@@ -1,13 +1,38 @@
 package mr.master;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketAddress;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import mr.common.CfgParser;
 import mr.common.Configuration;
+import mr.common.Counters;
+import mr.common.MRUtility;
+import mr.common.TaskProfile;
+import mr.io.IndexedFileOutputFormat;
+import mr.io.InputFormat;
+import mr.io.KeyValueFileInputFormat;
+import mr.io.KeyValueFileOutputFormat;
+import mr.io.OutputFormat;
+import mr.io.TextInputFormat;
+import mr.io.TextOutputFormat;
+import mr.worker.LocalJobRunner;
 import mr.worker.Mapper;
+import mr.worker.Partitioner;
 import mr.worker.Reducer;
 
 /**
@@ -18,9 +43,13 @@ import mr.worker.Reducer;
  * 1) Establishes connection with the TaskTracker nodes
  * 2) Assigns tasks (and file splits if applicable) to to each TaskTracker node.
  * 3) Waits till all Tasks are processed (or till any task failure). *
+ * 
+ * In local mode, all the tasks are run inside this JVM by a {@link LocalJobRunner},
+ * without the registry and the TaskTrackers.
  * </pre>
  * 
  * @see ResourceManager
+ * @see LocalJobRunner
  * 
  * @author Magesh Ramachandran
  * 
@@ -32,6 +61,25 @@ public class ApplicationMaster {
     private String inputPath;
     private String outputPath;
     private Configuration config;
+    private ResourceManager resourceManager;
+    // Merges the partial results of the hot keys, when the hot keys are salted
+    private ResourceManager hotKeyMergeManager;
+    private LocalJobRunner localJobRunner;
+    private boolean localMode = false;
+    // Jobs whose output is the input of this job, set by a JobGraph
+    private List<ApplicationMaster> inputJobs = new ArrayList<ApplicationMaster>();
+    // Cache files of the job by content hash
+    private Map<String, File> cacheFiles = new LinkedHashMap<String, File>();
+
+    // Default file split size in local mode, when there is no configuration file
+    /* 64MB */
+    private static final int DEFAULT_SPLIT_SIZE = 67108864;
+    private static final String LOCAL_DIR = "local_dir";
+    // Name prefix of the files written by the reduce tasks
+    private static final String OUTPUT_FILE_PREFIX = "part_";
+    // Name prefix of the files of the merged results of the hot keys
+    private static final String HOT_KEY_OUTPUT_FILE_PREFIX = "part_hot_";
+    private static final String HOT_KEY_MERGE_PROFILE = "_hot_key_merge_profile.json";
 
     // To get the jar file path
     private Class mapperClass;
@@ -43,7 +91,9 @@ public class ApplicationMaster {
 
     /**
      * Set the number of reducers for the job. This value might be overridden by the
-     * application logic to allow for at least one mapper
+     * application logic to allow for at least one mapper. With 0 reducers, the map
+     * tasks write their output directly to the output format of the job, and the map
+     * output is neither sorted nor shuffled
      * 
      * @param numberOfReducers
      */
@@ -109,6 +159,44 @@ public class ApplicationMaster {
         return config.getReducerClass();
     }
 
+    /**
+     * Set the comparator used to sort the map output keys. Composite keys are sorted
+     * fully by this comparator before they are passed to the reducer
+     * 
+     * @param sortComparatorClass {@link Class} of a {@link Comparator} of the map output
+     *            keys
+     */
+    public void setSortComparatorClass(
+            Class<? extends Comparator> sortComparatorClass) {
+        config.setSortComparatorClass(sortComparatorClass);
+    }
+
+    /**
+     * Set the comparator used to group the sorted map output keys. Each call of the
+     * reduce method receives the values of all the keys of one group, in the order of
+     * the sort comparator (secondary sort)
+     * 
+     * @param groupingComparatorClass {@link Class} of a {@link Comparator} of the map
+     *            output keys
+     */
+    public void setGroupingComparatorClass(
+            Class<? extends Comparator> groupingComparatorClass) {
+        config.setGroupingComparatorClass(groupingComparatorClass);
+    }
+
+    /**
+     * Set the partitioner used to compute the reducer of each map output key. When a
+     * grouping comparator is used, the partitioner must send all the keys of a group to
+     * the same reducer
+     * 
+     * @param partitionerClass {@link Class}
+     * @see Partitioner
+     */
+    public void setPartitionerClass(
+            Class<? extends Partitioner> partitionerClass) {
+        config.setPartitionerClass(partitionerClass);
+    }
+
     /**
      * sets the name with path of the configuration file
      * 
@@ -129,7 +217,10 @@ public class ApplicationMaster {
     }
 
     /**
-     * Set the input file path
+     * Set the input file path. The path may also be a directory, whose files are all
+     * read, or a glob pattern on the file names of a directory, such as logs/*.log.
+     * Files whose name starts with '_' or '.' are skipped, and small files are combined
+     * into one map task up to the split size
      * 
      * @param path
      */
@@ -154,7 +245,7 @@ public class ApplicationMaster {
      */
     public void setOutputPath(String path) {
         this.outputPath = path;
-
+        config.setOutputPath(path);
     }
 
     /**
@@ -167,15 +258,400 @@ public class ApplicationMaster {
     }
 
     /**
-     * Initiates the map-reduce process and waits for completion.
+     * Set the input format used to split and read the input file. Uses
+     * {@link TextInputFormat} if not set
+     * 
+     * @param inputFormatClass {@link Class}
+     * @see InputFormat
+     */
+    public void setInputFormatClass(Class<? extends InputFormat> inputFormatClass) {
+        config.setInputFormatClass(inputFormatClass);
+    }
+
+    /**
+     * Set the output format used to write the reducer output. Uses
+     * {@link TextOutputFormat} if not set
+     * 
+     * @param outputFormatClass {@link Class}
+     * @see OutputFormat
+     */
+    public void setOutputFormatClass(
+            Class<? extends OutputFormat> outputFormatClass) {
+        config.setOutputFormatClass(outputFormatClass);
+    }
+
+    /**
+     * Set the separator written between the key and the value by text output formats
+     * 
+     * @param separator - key/value separator ("--" by default)
+     */
+    public void setOutputSeparator(String separator) {
+        config.setOutputSeparator(separator);
+    }
+
+    /**
+     * Set the number of records between two entries of the key index written by the
+     * {@link IndexedFileOutputFormat} (128 by default)
+     * 
+     * @param indexInterval - index interval in records
+     */
+    public void setIndexInterval(int indexInterval) {
+        config.setIndexInterval(indexInterval);
+    }
+
+    /**
+     * Set the weight of the job in the sharing of the TaskTracker slots with the other
+     * jobs running at the same time (1 by default)
+     * 
+     * @param jobWeight - weight of the job
+     */
+    public void setJobWeight(int jobWeight) {
+        config.setJobWeight(jobWeight);
+    }
+
+    /**
+     * Spread the records of the hot keys, the keys holding a large share of the map
+     * output, over several reducers instead of the single reducer of the key. The hot
+     * keys are found by each map task in its first spill. Each reducer reduces its part
+     * of the records of a hot key, and the partial results are merged by a second job
+     * with one reducer, started automatically, which writes the files part_hot_[reducer
+     * id] to the output path.
+     * 
+     * The reducer must be associative and must write the key it is called with, with
+     * output key and value types equal to its input types, so that its output can be
+     * reduced again. The hot keys are not salted in local mode
+     * 
+     * @param reducersPerHotKey - number of reducers per hot key, 0 to disable the
+     *            salting (default)
+     */
+    public void setReducersPerHotKey(int reducersPerHotKey) {
+        config.setReducersPerHotKey(reducersPerHotKey);
+    }
+
+    /**
+     * Adds a cache file, a side file such as a dictionary or a lookup table, that the
+     * mappers and reducers read memory-mapped with getCacheFile(name) of their context.
+     * The file is sent once to each TaskTracker, which keeps it by content hash for the
+     * following jobs
+     * 
+     * @param path - path of the file. The name of the file identifies it in the job
+     */
+    public void addCacheFile(String path) {
+        File file = new File(path);
+        if (config.getCacheFiles().containsKey(file.getName())) {
+            throw new IllegalArgumentException("Cache file " + file.getName()
+                    + " already added");
+        }
+        String hash;
+        try {
+            hash = MRUtility.hashFileContent(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while reading the cache file " + path, e);
+        }
+        config.addCacheFile(file.getName(), hash);
+        cacheFiles.put(hash, file);
+    }
+
+    /**
+     * Run the job inside this JVM, on a pool of one thread per processor, instead of on
+     * the TaskTrackers. The split size and the merge factor are read from the
+     * configuration file if there is one
+     * 
+     * @param localMode - true to run the job locally (false by default)
+     * @see LocalJobRunner
+     */
+    public void setLocalMode(boolean localMode) {
+        this.localMode = localMode;
+    }
+
+    /**
+     * Initiates the map-reduce process and waits for completion. The counters of the job
+     * are available from getCounters() once this method returns.
      * 
      * @return true if the execution was successful, otherwise false
      */
     public boolean waitForCompletion() {
+        if (localMode) {
+            return runLocally();
+        }
         File jarFile = getJarFilePathFromClass(this.mapperClass);
-        ResourceManager resourceManager =
-                new ResourceManager(inputPath, jarFile, config);
-        return resourceManager.start();
+        if (inputJobs.isEmpty()) {
+            resourceManager = new ResourceManager(inputPath, jarFile, config);
+        } else {
+            resourceManager = new ResourceManager(getChainedInput(), jarFile, config);
+        }
+        resourceManager.setCacheFiles(cacheFiles);
+        if (!resourceManager.start()) {
+            return false;
+        }
+        return mergeHotKeyOutput(jarFile);
+    }
+
+    /**
+     * Runs the job merging the partial results of the hot keys written by the reduce
+     * tasks, if there are any. The partial results are read by map tasks on the
+     * TaskTrackers that wrote them, and reduced again by a single reducer
+     * 
+     * @param jarFile - {@link File} the client jar file
+     * @return true if there was nothing to merge or the merge was successful
+     */
+    private boolean mergeHotKeyOutput(File jarFile) {
+        Map<SocketAddress, List<String>> hotKeyOutputFiles =
+                new LinkedHashMap<SocketAddress, List<String>>();
+        for (Map.Entry<SocketAddress, List<String>> entry : resourceManager
+                .getHotKeyOutputFiles().entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                hotKeyOutputFiles.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (hotKeyOutputFiles.isEmpty()) {
+            return true;
+        }
+        LOG.info("Merging the partial results of the hot keys");
+
+        Configuration mergeConfig = config.copy();
+        mergeConfig.setMapperClass(Mapper.class);
+        mergeConfig.setInputFormatClass(KeyValueFileInputFormat.class);
+        mergeConfig.setNumberOfReducers(1);
+        mergeConfig.setReducersPerHotKey(0);
+        mergeConfig.setOutputFilePrefix(HOT_KEY_OUTPUT_FILE_PREFIX);
+        hotKeyMergeManager = new ResourceManager(hotKeyOutputFiles, jarFile, mergeConfig);
+        hotKeyMergeManager.setCacheFiles(cacheFiles);
+        hotKeyMergeManager.setProfileFileName(HOT_KEY_MERGE_PROFILE);
+        return hotKeyMergeManager.start();
+    }
+
+    /**
+     * Adds a job whose output is read by this job, in the binary format written by the
+     * {@link KeyValueFileOutputFormat}. The input path of this job is not used
+     * 
+     * @param inputJob - {@link ApplicationMaster} of the job, completed before this job
+     *            is started
+     * @see JobGraph
+     */
+    void addInputJob(ApplicationMaster inputJob) {
+        inputJobs.add(inputJob);
+        config.setInputFormatClass(KeyValueFileInputFormat.class);
+    }
+
+    /**
+     * Get the output files written by the reduce tasks of this completed job, or by its
+     * map tasks when it has no reducers
+     * 
+     * @return paths of the output files, by address of the TaskTracker that wrote them.
+     *         In local mode, the files are under a null address
+     */
+    Map<SocketAddress, List<String>> getOutputFiles() {
+        if (!localMode) {
+            if (hotKeyMergeManager == null) {
+                return resourceManager.getOutputFiles();
+            }
+            Map<SocketAddress, List<String>> outputFiles =
+                    new LinkedHashMap<SocketAddress, List<String>>();
+            for (ResourceManager manager : new ResourceManager[] { resourceManager,
+                    hotKeyMergeManager }) {
+                for (Map.Entry<SocketAddress, List<String>> entry : manager
+                        .getOutputFiles().entrySet()) {
+                    List<String> files = outputFiles.get(entry.getKey());
+                    if (files == null) {
+                        files = new ArrayList<String>();
+                        outputFiles.put(entry.getKey(), files);
+                    }
+                    files.addAll(entry.getValue());
+                }
+            }
+            return outputFiles;
+        }
+        List<String> outputFiles = new ArrayList<String>();
+        File[] files = new File(config.getOutputPath()).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(OUTPUT_FILE_PREFIX)) {
+                    outputFiles.add(file.getAbsolutePath());
+                }
+            }
+        }
+        Collections.sort(outputFiles);
+        return Collections.singletonMap((SocketAddress) null, outputFiles);
+    }
+
+    /**
+     * Get the output files of all the input jobs, read by the map tasks of this job
+     * 
+     * @return paths of the output files, by address of the TaskTracker that wrote them
+     */
+    private Map<SocketAddress, List<String>> getChainedInput() {
+        Map<SocketAddress, List<String>> chainedInput =
+                new LinkedHashMap<SocketAddress, List<String>>();
+        for (ApplicationMaster inputJob : inputJobs) {
+            for (Map.Entry<SocketAddress, List<String>> entry : inputJob
+                    .getOutputFiles().entrySet()) {
+                List<String> files = chainedInput.get(entry.getKey());
+                if (files == null) {
+                    files = new ArrayList<String>();
+                    chainedInput.put(entry.getKey(), files);
+                }
+                files.addAll(entry.getValue());
+            }
+        }
+        return chainedInput;
+    }
+
+    /**
+     * Get the counters of the job, aggregated from the counters of all the completed
+     * tasks
+     * 
+     * @return {@link Counters} of the job, or null if the job has not been started
+     */
+    public Counters getCounters() {
+        if (localJobRunner != null) {
+            return localJobRunner.getCounters();
+        }
+        return resourceManager == null ? null : resourceManager.getCounters();
+    }
+
+    /**
+     * Runs the job with a {@link LocalJobRunner}. The input file is split as it would be
+     * for the TaskTrackers, and the job profile is written to the output path with one
+     * entry per thread
+     * 
+     * @return true if the execution was successful, otherwise false
+     */
+    private boolean runLocally() {
+        JobProfile jobProfile = new JobProfile();
+        String workDirectory =
+                LOCAL_DIR + File.separator + "job_" + System.currentTimeMillis();
+        try {
+            readConfigFileIfPresent();
+            if (config.getReducersPerHotKey() > 0) {
+                LOG.info("Hot keys are not salted in local mode");
+                config.setReducersPerHotKey(0);
+            }
+            for (Map.Entry<String, String> entry : config.getCacheFiles().entrySet()) {
+                config.setLocalCacheFile(entry.getKey(), cacheFiles.get(entry.getValue())
+                        .getPath());
+            }
+            List<File> inputSplits =
+                    writeInputSplits(workDirectory + File.separator + "splits");
+            localJobRunner =
+                    new LocalJobRunner(config, workDirectory, Runtime.getRuntime()
+                            .availableProcessors());
+            localJobRunner.run(inputSplits);
+
+            LOG.info(localJobRunner.getCounters());
+            for (Map.Entry<String, TaskProfile> entry : localJobRunner.getProfiles()
+                    .entrySet()) {
+                jobProfile.addTaskProfile(entry.getKey(), entry.getValue());
+            }
+            File outputDir = new File(config.getOutputPath());
+            outputDir.mkdirs();
+            File profileFile = new File(outputDir, JobProfile.PROFILE_FILE_NAME);
+            jobProfile.writeJson(profileFile);
+            LOG.info("Job profile written to " + profileFile.getAbsolutePath());
+            return true;
+        } catch (Throwable throwable) {
+            LOG.fatal("Error while processing, map-reduce failed", throwable);
+            return false;
+        }
+    }
+
+    /**
+     * Sets the split size and the merge factor from the configuration file, if there is
+     * one. When the configuration file does not fix the split size, it is computed from
+     * the length of the input and one map slot per processor. Otherwise the default split
+     * size is used
+     */
+    private void readConfigFileIfPresent() {
+        String fileName =
+                configFileName != null ? configFileName : CfgParser.DEFAULT_CFG_FILE;
+        if (new File(fileName).isFile()) {
+            CfgParser cfg = CfgParser.getInstance(configFileName);
+            if (cfg.isSplitSizeConfigured() || !inputJobs.isEmpty()) {
+                config.setSplitSize(cfg.getSplitSize());
+            } else {
+                config.setSplitSize(FileSplitter.computeSplitSize(
+                        FileSplitter.getInputLength(FileSplitter
+                                .listInputFiles(inputPath)), Runtime.getRuntime()
+                                .availableProcessors(), cfg.getMapWaves(), cfg
+                                .getMinSplitSize(), cfg.getMaxSplitSize()));
+            }
+            config.setMergeFactor(cfg.getMergeFactor());
+        } else if (config.getSplitSize() <= 0) {
+            config.setSplitSize(DEFAULT_SPLIT_SIZE);
+        }
+    }
+
+    /**
+     * Splits the input file, or the output files of the input jobs, with the
+     * {@link InputFormat} of the job and writes each split, compressed, to the given
+     * directory
+     * 
+     * @param splitDirectory - directory for the split files
+     * @return the split files, named [input file]_[split id]
+     * @throws IOException when a split cannot be written
+     */
+    private List<File> writeInputSplits(String splitDirectory) throws IOException {
+        new File(splitDirectory).mkdirs();
+        List<String> inputFiles = new ArrayList<String>();
+        if (inputJobs.isEmpty()) {
+            inputFiles.add(inputPath);
+        } else {
+            for (List<String> files : getChainedInput().values()) {
+                inputFiles.addAll(files);
+            }
+        }
+
+        List<File> inputSplits = new ArrayList<File>();
+        for (String inputFile : inputFiles) {
+            writeInputSplits(inputFile, splitDirectory, inputSplits);
+        }
+        return inputSplits;
+    }
+
+    /**
+     * Splits the given input file with the {@link InputFormat} of the job and writes
+     * each split, compressed, to the given directory
+     * 
+     * @param inputFile - path of the input file, directory or glob pattern
+     * @param splitDirectory - directory for the split files
+     * @param inputSplits - list of the split files, to which the new splits are added
+     * @throws IOException when a split cannot be written
+     */
+    private void writeInputSplits(String inputFile, String splitDirectory,
+            List<File> inputSplits) throws IOException {
+        InputFormat<?, ?> inputFormat =
+                MRUtility.newInstance(config.getInputFormatClass());
+        FileSplitter fileSplitter =
+                new FileSplitter(inputFile, config.getSplitSize(), inputFormat);
+        String inputFileName = FileSplitter.getInputName(inputFile);
+
+        while (fileSplitter.hasMoreSplits()) {
+            File splitFile =
+                    new File(splitDirectory, inputFileName + '_' + inputSplits.size());
+            if (fileSplitter.isNextSplitGzip()) {
+                // Already compressed, decompressed by the map task
+                fileSplitter.nextGzipSplit();
+                OutputStream outputStream = new FileOutputStream(splitFile);
+                try {
+                    byte[] chunk;
+                    while ((chunk = fileSplitter.readGzipChunk()) != null) {
+                        outputStream.write(chunk);
+                    }
+                } finally {
+                    outputStream.close();
+                }
+                inputSplits.add(splitFile);
+                continue;
+            }
+            byte[] splitFileData = fileSplitter.getNextSplit();
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            OutputStream outputStream =
+                    new DeflaterOutputStream(new FileOutputStream(splitFile), deflater);
+            outputStream.write(splitFileData);
+            outputStream.close();
+            deflater.end();
+            inputSplits.add(splitFile);
+        }
     }
 
 }
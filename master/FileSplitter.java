@@ -1,47 +1,184 @@
 package mr.master;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import mr.io.InputFormat;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
  * Handles computation of the File splits based on the given split size, while retaining
- * the integrity of split data for any file with line separated data.
+ * the integrity of split data. The record boundaries are determined by the
+ * {@link InputFormat} of the job (line separated data by default).
+ * 
+ * The input path is a file, a directory whose files are all read, or a glob pattern
+ * matching the names of the files of a directory, such as logs/*.log. Files whose name
+ * starts with '_' or '.' are skipped. Files larger than the split size are split, and
+ * the smaller files are combined into splits of up to the split size, so that a
+ * directory of many small files does not run one map task per file.
+ * 
+ * Files ending with .gz are not decompressed by the master: their splits are read in
+ * chunks and sent as they are, and decompressed while being read by the map task. A
+ * gzip file is split between its members only when their headers record their
+ * compressed length, as in the blocked gzip format (BGZF) written by bgzip. Any other
+ * gzip file, such as a file of a single member, is not splittable and is read by one
+ * map task.
  * 
  * @author Magesh Ramachandran
  * @author Mansoor Ahmed Khan
  * 
  */
 public class FileSplitter {
+    private List<File> inputFiles;
+    // Index of the next input file to be opened
+    private int nextFile = 0;
     private RandomAccessFile randomAccessFile;
-    private long fileLength;
     private long bytesRemaining;
     private int splitSize;
     private int numberOfMapTasks;
+    private InputFormat<?, ?> inputFormat;
+    // True if the file being split is gzip compressed
+    private boolean isGzipFile;
+    // Bytes of the current gzip split that are not read yet
+    private long gzipSplitRemaining;
+
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final int GZIP_MAGIC = 0x8b1f;
+    // Fixed part of a gzip header, followed by the length of the extra field
+    private static final int GZIP_HEADER_LENGTH = 10;
+    private static final int FEXTRA = 4;
+    // Largest chunk of a gzip split read at once
+    static final int GZIP_CHUNK_SIZE = 1 << 20;
+    // Largest chunk read when looking for the end of a record
+    private static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE - 8;
     public static final Log LOG = LogFactory.getLog(FileSplitter.class);
 
     /**
      * Constructor, to initialize the instance fields.
      * 
-     * @param fileName - input file name
+     * @param inputPath - input file name, directory or glob pattern
      * @param splitSize - input split size in bytes
+     * @param inputFormat - {@link InputFormat} used to find the record boundaries
      */
-    public FileSplitter(String fileName, int splitSize) {
-        try {
+    public FileSplitter(String inputPath, int splitSize,
+            InputFormat<?, ?> inputFormat) {
+        this.inputFormat = inputFormat;
+        this.inputFiles = listInputFiles(inputPath);
+        this.splitSize = splitSize;
+        numberOfMapTasks =
+                (int) Math.ceil((double) getInputLength(inputFiles) / splitSize);
+    }
+
+    /**
+     * Get the files of the given input path
+     * 
+     * @param inputPath - input file name, directory or glob pattern on the file names of
+     *            a directory
+     * @return input files sorted by name, without the files whose name starts with '_'
+     *         or '.'
+     */
+    public static List<File> listInputFiles(String inputPath) {
+        File input = new File(inputPath);
+        if (input.isFile()) {
+            return Collections.singletonList(input);
+        }
+        File directory = input;
+        PathMatcher matcher = null;
+        if (!input.isDirectory() && isGlob(input.getName())) {
+            directory = input.getAbsoluteFile().getParentFile();
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + input.getName());
+        }
+        final PathMatcher nameMatcher = matcher;
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return file.isFile() && !name.startsWith("_") && !name.startsWith(".")
+                        && (nameMatcher == null || nameMatcher.matches(file.toPath()
+                                .getFileName()));
+            }
+        });
+        if (files == null || files.length == 0) {
+            throw new RuntimeException("No input file found for " + inputPath);
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
 
-            randomAccessFile = new RandomAccessFile(fileName, "r");
-            fileLength = randomAccessFile.length();
-            bytesRemaining = fileLength;
-            numberOfMapTasks = (int) Math.ceil(fileLength / splitSize);
-            this.splitSize = splitSize;
+    /**
+     * Get the total length of the given input files
+     * 
+     * @param inputFiles - list of {@link File}
+     * @return length in bytes
+     */
+    public static long getInputLength(List<File> inputFiles) {
+        long length = 0;
+        for (File file : inputFiles) {
+            length += file.length();
+        }
+        return length;
+    }
 
-        } catch (IOException e) {
-            LOG.fatal("Error initializing FileSplitter");
-            throw new RuntimeException(e);
+    /**
+     * Get the name used for the splits of the given input path: the name of the input
+     * file or directory, or the name of the directory of a glob pattern
+     * 
+     * @param inputPath - input file name, directory or glob pattern
+     * @return name of the input
+     */
+    public static String getInputName(String inputPath) {
+        File input = new File(inputPath).getAbsoluteFile();
+        if (!input.exists() && isGlob(input.getName())) {
+            input = input.getParentFile();
+        }
+        return input.getName();
+    }
+
+    /**
+     * Check if the given file name is a glob pattern
+     * 
+     * @param name - file name
+     * @return true if the name contains a glob special character
+     */
+    private static boolean isGlob(String name) {
+        for (char c : "*?[{".toCharArray()) {
+            if (name.indexOf(c) >= 0) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    /**
+     * Computes the split size of a job, so that the map tasks run in about the given
+     * number of waves on the map slots of the cluster: a small input is spread over all
+     * the slots, and a large input is cut into fewer, larger splits than the default
+     * split size, reducing the overhead per task
+     * 
+     * @param inputLength - length of the input in bytes
+     * @param mapSlots - number of map tasks run at the same time by the TaskTrackers
+     * @param waves - target number of rounds of map tasks per slot
+     * @param minSplitSize - smallest split size
+     * @param maxSplitSize - largest split size
+     * @return split size in bytes
+     */
+    public static int computeSplitSize(long inputLength, int mapSlots, int waves,
+            int minSplitSize, int maxSplitSize) {
+        long splits = Math.max(1, (long) mapSlots * Math.max(1, waves));
+        long splitSize = (inputLength + splits - 1) / splits;
+        splitSize = Math.min(Math.max(splitSize, minSplitSize), maxSplitSize);
+        // Leaves room for a larger chunk when no record boundary is found
+        return (int) Math.max(1, Math.min(splitSize, Integer.MAX_VALUE / 2));
     }
 
     /**
@@ -50,7 +187,12 @@ public class FileSplitter {
      * @return true if there are more splits to be read, false othewise
      */
     public boolean hasMoreSplits() {
-        return (bytesRemaining > 0);
+        while (bytesRemaining == 0 && nextFile < inputFiles.size()
+                && inputFiles.get(nextFile).length() == 0) {
+            // Empty files have no split
+            nextFile++;
+        }
+        return bytesRemaining > 0 || nextFile < inputFiles.size();
     }
 
     /**
@@ -64,34 +206,115 @@ public class FileSplitter {
     }
 
     /**
-     * Reads '~splitSize' bytes of data sequentially till the end of file. The data is
-     * read such that the start and end values of the byte chunk corresponds to a new line
-     * and an end of line respectively
+     * Check if the next split is a range of a gzip file, which is not returned by
+     * getNextSplit() but read in chunks with readGzipChunk(), and sent as it is
      * 
-     * @return the next 'file split'
+     * @return true if the next split is a range of a gzip file
      */
-    public byte[] getNextSplit() {
-        try {
-
-            long nextChunkSize = Math.min(splitSize, bytesRemaining);
-            byte[] split = new byte[(int) nextChunkSize];
-            int bytesRead = randomAccessFile.read(split);
-            long filePointer = randomAccessFile.getFilePointer();
-
-            // resize split array so that the data ends with an end of line
-            // character
-            int newSize = getBytesToEndOfLine(split);
-            split = Arrays.copyOf(split, newSize);
+    public boolean isNextSplitGzip() {
+        hasMoreSplits();
+        if (bytesRemaining > 0) {
+            return isGzipFile;
+        }
+        return nextFile < inputFiles.size() && isGzip(inputFiles.get(nextFile));
+    }
 
-            int effectiveBytesRead = (bytesRead - newSize);
+    /**
+     * Get the range of the file being split that makes the next split of a gzip file.
+     * The range is then read with readGzipChunk(). A file is split between its members
+     * only when each member records its compressed length in its header, as in the
+     * blocked gzip format, so that the file is not decompressed. Any other gzip file
+     * is a single split
+     * 
+     * @return compressed length of the split in bytes
+     * @throws IOException when the file cannot be read
+     */
+    public long nextGzipSplit() {
+        try {
+            if (bytesRemaining == 0) {
+                hasMoreSplits();
+                openNextFile();
+            }
+            long fileLength = randomAccessFile.length();
+            long start = randomAccessFile.getFilePointer();
+            long end = start;
+            while (end - start < splitSize && end < fileLength) {
+                long memberLength = getMemberLength(end, fileLength);
+                if (memberLength <= 0) {
+                    // The members that follow cannot be found without inflating them
+                    end = fileLength;
+                    break;
+                }
+                end = Math.min(fileLength, end + memberLength);
+            }
+            randomAccessFile.seek(start);
+            gzipSplitRemaining = end - start;
+            LOG.debug("Gzip split of " + gzipSplitRemaining + " bytes at " + start);
+            return gzipSplitRemaining;
+        } catch (IOException e) {
+            LOG.fatal("Error while reading the next split");
+            throw new RuntimeException(e);
+        }
+    }
 
-            // move the file pointer to the start of the discarded data
-            randomAccessFile.seek(filePointer - effectiveBytesRead);
-            bytesRemaining = bytesRemaining - newSize;
+    /**
+     * Reads the next chunk of the current gzip split, so that the split is never held in
+     * memory as a whole
+     * 
+     * @return next chunk of at most GZIP_CHUNK_SIZE bytes of compressed data, or null
+     *         once the whole split has been read
+     */
+    public byte[] readGzipChunk() {
+        if (gzipSplitRemaining == 0) {
+            return null;
+        }
+        try {
+            byte[] chunk = new byte[(int) Math.min(GZIP_CHUNK_SIZE, gzipSplitRemaining)];
+            randomAccessFile.readFully(chunk);
+            gzipSplitRemaining -= chunk.length;
+            bytesRemaining -= chunk.length;
+            if (bytesRemaining == 0) {
+                randomAccessFile.close();
+            }
+            return chunk;
+        } catch (IOException e) {
+            LOG.fatal("Error while reading the next split");
+            throw new RuntimeException(e);
+        }
+    }
 
-            System.out.println("bytesRemaining" + bytesRemaining);
-            return split;
+    /**
+     * Check if the current gzip split has data left to be read with readGzipChunk()
+     * 
+     * @return true if there are more chunks in the split
+     */
+    public boolean hasMoreGzipChunks() {
+        return gzipSplitRemaining > 0;
+    }
 
+    /**
+     * Get the next split: the next chunk of the file being split, or the content of the
+     * next input files when they are smaller than the split size. Not used for the
+     * splits of gzip files
+     * 
+     * @return the next 'file split'
+     * @see #isNextSplitGzip()
+     */
+    public byte[] getNextSplit() {
+        try {
+            if (bytesRemaining == 0) {
+                hasMoreSplits();
+                File file = inputFiles.get(nextFile);
+                if (isGzip(file)) {
+                    throw new IllegalStateException("Next split is gzip compressed: "
+                            + file);
+                }
+                if (file.length() < splitSize) {
+                    return combineSmallFiles();
+                }
+                openNextFile();
+            }
+            return readNextChunk();
         } catch (IOException e) {
             LOG.fatal("Error while reading the next split");
             throw new RuntimeException(e);
@@ -99,18 +322,150 @@ public class FileSplitter {
     }
 
     /**
-     * returns the position of the end of line character relative to the last index of the
-     * given byte array
+     * Check if the given input file is gzip compressed, from its extension
+     * 
+     * @param file - input {@link File}
+     * @return true if the file name ends with .gz
+     */
+    private static boolean isGzip(File file) {
+        return file.getName().endsWith(GZIP_SUFFIX);
+    }
+
+    /**
+     * Opens the next input file, to be split
+     * 
+     * @throws IOException when the file cannot be opened
+     */
+    private void openNextFile() throws IOException {
+        File file = inputFiles.get(nextFile++);
+        randomAccessFile = new RandomAccessFile(file, "r");
+        bytesRemaining = randomAccessFile.length();
+        isGzipFile = isGzip(file);
+    }
+
+    /**
+     * Get the compressed length of the gzip member at the given offset, from the 'BC'
+     * subfield of the extra field of its header, written by the blocked gzip format
+     * (BGZF). Only the header is read
+     * 
+     * @param offset - offset of the member in the file being split
+     * @param fileLength - length of the file
+     * @return length of the member in bytes, or -1 if its header does not record it
+     * @throws IOException when the file cannot be read
+     */
+    private long getMemberLength(long offset, long fileLength) throws IOException {
+        if (fileLength - offset < GZIP_HEADER_LENGTH + 2) {
+            return -1;
+        }
+        randomAccessFile.seek(offset);
+        byte[] header = new byte[GZIP_HEADER_LENGTH + 2];
+        randomAccessFile.readFully(header);
+        int magic = (header[0] & 0xff) | (header[1] & 0xff) << 8;
+        if (magic != GZIP_MAGIC || (header[3] & FEXTRA) == 0) {
+            return -1;
+        }
+        int extraLength = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+        if (fileLength - randomAccessFile.getFilePointer() < extraLength) {
+            return -1;
+        }
+        byte[] extra = new byte[extraLength];
+        randomAccessFile.readFully(extra);
+        int position = 0;
+        while (position + 4 <= extraLength) {
+            int subfieldLength =
+                    (extra[position + 2] & 0xff) | (extra[position + 3] & 0xff) << 8;
+            if (extra[position] == 'B' && extra[position + 1] == 'C'
+                    && subfieldLength == 2 && position + 6 <= extraLength) {
+                // Length of the member minus 1
+                return ((extra[position + 4] & 0xff) | (extra[position + 5] & 0xff) << 8)
+                        + 1;
+            }
+            position += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the whole content of the input files that are smaller than the split size,
+     * from the next input file, until the split size would be exceeded. A file whose
+     * last record is incomplete ends the split, so that the record is not joined with
+     * the first record of the next file
      * 
-     * @param bytes - byte array
-     * @return position of end of line character from the last index
+     * @return content of the combined files
+     * @throws IOException when a file cannot be read
      */
-    private int getBytesToEndOfLine(byte[] bytes) {
-        for (int i = bytes.length - 1; i > 0; i--) {
-            if (bytes[i] == '\n') {
-                return i + 1;
+    private byte[] combineSmallFiles() throws IOException {
+        ByteArrayOutputStream split = new ByteArrayOutputStream(splitSize);
+        int files = 0;
+        while (nextFile < inputFiles.size()) {
+            File file = inputFiles.get(nextFile);
+            if (isGzip(file) || file.length() >= splitSize
+                    || split.size() + file.length() > splitSize) {
+                break;
             }
+            byte[] data = new byte[(int) file.length()];
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                input.readFully(data);
+            } finally {
+                input.close();
+            }
+            split.write(data);
+            nextFile++;
+            files++;
+            if (data.length > 0 && inputFormat.getSplitBoundary(data) != data.length) {
+                break;
+            }
+        }
+        LOG.debug(files + " input files combined into one split");
+        return split.toByteArray();
+    }
+
+    /**
+     * Reads '~splitSize' bytes of data sequentially from the file being split. The data
+     * is read such that the start and end values of the byte chunk corresponds to the
+     * start and the end of a record respectively. If the chunk does not contain a
+     * complete record, the chunk is extended with the data that follows it until a record
+     * ends, or up to the end of the file. The file is closed once it has been read
+     * completely.
+     * 
+     * @return the next chunk of the file
+     * @throws IOException when the file cannot be read, or a record is larger than
+     *             MAX_CHUNK_SIZE
+     */
+    private byte[] readNextChunk() throws IOException {
+        long start = randomAccessFile.getFilePointer();
+        byte[] split = new byte[(int) Math.min(splitSize, bytesRemaining)];
+        randomAccessFile.readFully(split);
+
+        // resize split array so that the data ends with the end of a record
+        int newSize = inputFormat.getSplitBoundary(split);
+        while (newSize == 0 && split.length < bytesRemaining) {
+            if (split.length == MAX_CHUNK_SIZE) {
+                throw new IOException("No record boundary in " + MAX_CHUNK_SIZE
+                        + " bytes at offset " + start);
+            }
+            int bytesRead = split.length;
+            split =
+                    Arrays.copyOf(split, (int) Math.min(bytesRemaining,
+                            Math.min((long) bytesRead * 2, MAX_CHUNK_SIZE)));
+            randomAccessFile.readFully(split, bytesRead, split.length - bytesRead);
+            newSize = inputFormat.getSplitBoundary(split);
+        }
+        if (newSize == 0) {
+            // Incomplete record at the end of the file
+            newSize = split.length;
         }
-        return bytes.length;
+        split = Arrays.copyOf(split, newSize);
+
+        // move the file pointer to the start of the discarded data
+        randomAccessFile.seek(start + newSize);
+        bytesRemaining = bytesRemaining - newSize;
+        if (bytesRemaining == 0) {
+            randomAccessFile.close();
+        }
+
+        System.out.println("bytesRemaining" + bytesRemaining);
+        return split;
     }
 }
@@ -0,0 +1,140 @@
+package mr.master;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import mr.io.KeyValueFileInputFormat;
+import mr.io.KeyValueFileOutputFormat;
+
+/**
+ * <pre>
+ * Runs a group of jobs in which a job reads the output of other jobs, its input jobs.
+ *
+ * A job is started as soon as all its input jobs have completed, so that jobs that do
+ * not depend on each other run at the same time. The output of an input job is handed
+ * over in binary form: it is written with the {@link KeyValueFileOutputFormat} and read
+ * with the {@link KeyValueFileInputFormat}, one map task per output file, by the
+ * TaskTracker that wrote it. The output is thus neither parsed as text nor split and
+ * sent again by the master, except for the files of a TaskTracker that does not run map
+ * tasks of the next job.
+ * </pre>
+ *
+ * @see ApplicationMaster
+ *
+ */
+public class JobGraph {
+
+    // Input jobs of each job, in the order the jobs were added
+    private Map<ApplicationMaster, List<ApplicationMaster>> jobs =
+            new LinkedHashMap<ApplicationMaster, List<ApplicationMaster>>();
+
+    public static final Log LOG = LogFactory.getLog(JobGraph.class);
+
+    /**
+     * Adds a job to the graph. The output format of the input jobs and the input format
+     * of the job are replaced by the binary key value file formats
+     *
+     * @param job - {@link ApplicationMaster} of the job
+     * @param inputJobs - jobs whose output is the input of the job, already added to
+     *            the graph. With no input job, the job reads its input path
+     */
+    public void addJob(ApplicationMaster job, ApplicationMaster... inputJobs) {
+        if (jobs.containsKey(job)) {
+            throw new IllegalArgumentException("Job already added to the graph");
+        }
+        for (ApplicationMaster inputJob : inputJobs) {
+            if (!jobs.containsKey(inputJob)) {
+                throw new IllegalArgumentException("Input job not added to the graph");
+            }
+        }
+        for (ApplicationMaster inputJob : inputJobs) {
+            inputJob.setOutputFormatClass(KeyValueFileOutputFormat.class);
+            job.addInputJob(inputJob);
+        }
+        jobs.put(job, Arrays.asList(inputJobs));
+    }
+
+    /**
+     * Runs the jobs of the graph, each job once its input jobs have completed. A job
+     * whose input job failed is not run
+     *
+     * @return true if all the jobs completed successfully
+     */
+    public boolean waitForCompletion() {
+        final Map<ApplicationMaster, Boolean> results =
+                Collections.synchronizedMap(new HashMap<ApplicationMaster, Boolean>());
+        Map<ApplicationMaster, Thread> threads = new HashMap<ApplicationMaster, Thread>();
+
+        // Input jobs are added first, so their threads exist when a job is started
+        int jobNumber = 0;
+        for (Map.Entry<ApplicationMaster, List<ApplicationMaster>> entry : jobs
+                .entrySet()) {
+            final ApplicationMaster job = entry.getKey();
+            final List<ApplicationMaster> inputJobs = entry.getValue();
+            final List<Thread> inputThreads = new ArrayList<Thread>();
+            for (ApplicationMaster inputJob : inputJobs) {
+                inputThreads.add(threads.get(inputJob));
+            }
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    results.put(job, runAfterInputJobs(job, inputJobs, inputThreads,
+                            results));
+                }
+            }, "job-graph-" + jobNumber++);
+            threads.put(job, thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads.values()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return results.size() == jobs.size() && !results.containsValue(Boolean.FALSE);
+    }
+
+    /**
+     * Waits for the input jobs of a job to complete, and runs the job if they all
+     * completed successfully
+     *
+     * @param job - {@link ApplicationMaster} of the job
+     * @param inputJobs - input jobs of the job
+     * @param inputThreads - threads running the input jobs
+     * @param results - results of the completed jobs
+     * @return true if the job completed successfully
+     */
+    private boolean runAfterInputJobs(ApplicationMaster job,
+            List<ApplicationMaster> inputJobs, List<Thread> inputThreads,
+            Map<ApplicationMaster, Boolean> results) {
+        for (Thread inputThread : inputThreads) {
+            try {
+                inputThread.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        for (ApplicationMaster inputJob : inputJobs) {
+            if (!Boolean.TRUE.equals(results.get(inputJob))) {
+                LOG.error("Job not run, one of its input jobs failed");
+                return false;
+            }
+        }
+        try {
+            return job.waitForCompletion();
+        } catch (Exception e) {
+            LOG.error("Job failed", e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package mr.master;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import mr.common.Histogram;
+import mr.common.TaskProfile;
+
+/**
+ * <p>
+ * Combines the {@link TaskProfile} of all the completed tasks into a profile per node
+ * (TaskTracker), and writes the job profile as a JSON file once the job is complete.
+ * 
+ * <p>
+ * The threads of a node run at the same time: the map task slots, the reduce task and
+ * the shuffle. The tasks run by a thread run one after the other, so the time spent by a
+ * thread in a phase is the total time of the phase over its tasks. The critical path time
+ * of a phase is the largest of these totals over the threads of all the nodes, which is
+ * a lower bound of the wall time the phase adds to the job. The tasks whose thread is not
+ * known are counted as run by one thread of their node, as are the threads of the
+ * LocalJobRunner, which are reported as nodes.
+ * 
+ * 
+ */
+public class JobProfile {
+
+    public static final String PROFILE_FILE_NAME = "_job_profile.json";
+
+    private Map<String, TaskProfile> nodeProfiles =
+            new TreeMap<String, TaskProfile>();
+    // Total time of each phase over the tasks of each thread, -1 for the phases the
+    // thread has not recorded, by node and thread name
+    private Map<String, Map<String, long[]>> threadTotals =
+            new TreeMap<String, Map<String, long[]>>();
+    private long startTime = System.currentTimeMillis();
+
+    /**
+     * Adds the profile of a completed task to the profile of the node that ran it, and to
+     * the phase totals of its thread
+     * 
+     * @param node - name of the TaskTracker
+     * @param profile {@link TaskProfile} of the completed task
+     */
+    public synchronized void addTaskProfile(String node, TaskProfile profile) {
+        TaskProfile nodeProfile = nodeProfiles.get(node);
+        if (nodeProfile == null) {
+            nodeProfile = new TaskProfile();
+            nodeProfiles.put(node, nodeProfile);
+        }
+        nodeProfile.merge(profile);
+
+        Map<String, long[]> nodeThreads = threadTotals.get(node);
+        if (nodeThreads == null) {
+            nodeThreads = new TreeMap<String, long[]>();
+            threadTotals.put(node, nodeThreads);
+        }
+        String thread = profile.getThreadName() == null ? "" : profile.getThreadName();
+        long[] totals = nodeThreads.get(thread);
+        if (totals == null) {
+            totals = new long[TaskProfile.PHASE.values().length];
+            Arrays.fill(totals, -1);
+            nodeThreads.put(thread, totals);
+        }
+        for (Map.Entry<TaskProfile.PHASE, Histogram> phase : profile.getHistograms()
+                .entrySet()) {
+            int i = phase.getKey().ordinal();
+            totals[i] = Math.max(totals[i], 0) + phase.getValue().getTotal();
+        }
+    }
+
+    /**
+     * Writes the job profile to the given file, in the following format
+     * 
+     * <pre>
+     * {
+     *   "wallTimeMs": 1234,
+     *   "criticalPath": {
+     *     "MAP": { "timeMs": 800.1, "node": "/10.0.0.2:5000",
+     *              "thread": "pool-2-thread-1" }, ...
+     *   },
+     *   "nodes": {
+     *     "/10.0.0.2:5000": {
+     *       "MAP": { "count": 100, "totalMs": 800.1, "meanUs": 8001.0,
+     *                "minUs": 6500.2, "p50Us": 8191.0, "p99Us": 16383.0,
+     *                "maxUs": 9900.3 }, ...
+     *     }, ...
+     *   }
+     * }
+     * </pre>
+     * 
+     * @param file {@link File} to which the profile is written
+     * @throws IOException when there is an error writing to the file
+     */
+    public synchronized void writeJson(File file) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"wallTimeMs\": ")
+                .append(System.currentTimeMillis() - startTime);
+
+        json.append(",\n  \"criticalPath\": {");
+        boolean isFirstPhase = true;
+        for (TaskProfile.PHASE phase : TaskProfile.PHASE.values()) {
+            long criticalTime = -1;
+            String criticalNode = null;
+            String criticalThread = null;
+            for (Map.Entry<String, Map<String, long[]>> node : threadTotals.entrySet()) {
+                for (Map.Entry<String, long[]> thread : node.getValue().entrySet()) {
+                    long total = thread.getValue()[phase.ordinal()];
+                    if (total > criticalTime) {
+                        criticalTime = total;
+                        criticalNode = node.getKey();
+                        criticalThread = thread.getKey();
+                    }
+                }
+            }
+            if (criticalNode == null) {
+                continue;
+            }
+            json.append(isFirstPhase ? "\n" : ",\n");
+            isFirstPhase = false;
+            json.append("    \"").append(phase).append("\": { \"timeMs\": ")
+                    .append(toMillis(criticalTime)).append(", \"node\": \"")
+                    .append(escape(criticalNode)).append("\"");
+            if (!criticalThread.isEmpty()) {
+                json.append(", \"thread\": \"").append(escape(criticalThread))
+                        .append("\"");
+            }
+            json.append(" }");
+        }
+        json.append("\n  },\n  \"nodes\": {");
+
+        boolean isFirstNode = true;
+        for (Map.Entry<String, TaskProfile> node : nodeProfiles.entrySet()) {
+            json.append(isFirstNode ? "\n" : ",\n");
+            isFirstNode = false;
+            json.append("    \"").append(escape(node.getKey())).append("\": {");
+            isFirstPhase = true;
+            for (Map.Entry<TaskProfile.PHASE, Histogram> phase : node.getValue()
+                    .getHistograms().entrySet()) {
+                json.append(isFirstPhase ? "\n" : ",\n");
+                isFirstPhase = false;
+                appendHistogram(json, phase.getKey(), phase.getValue());
+            }
+            json.append("\n    }");
+        }
+        json.append("\n  }\n}\n");
+
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Appends the summary of a histogram as a JSON member
+     */
+    private static void appendHistogram(
+            StringBuilder json,
+            TaskProfile.PHASE phase,
+            Histogram histogram) {
+        json.append("      \"").append(phase).append("\": { \"count\": ")
+                .append(histogram.getCount()).append(", \"totalMs\": ")
+                .append(toMillis(histogram.getTotal())).append(", \"meanUs\": ")
+                .append(toMicros(histogram.getMean())).append(", \"minUs\": ")
+                .append(toMicros(histogram.getMin())).append(", \"p50Us\": ")
+                .append(toMicros(histogram.getPercentile(50)))
+                .append(", \"p99Us\": ")
+                .append(toMicros(histogram.getPercentile(99)))
+                .append(", \"maxUs\": ").append(toMicros(histogram.getMax()))
+                .append(" }");
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private static double toMicros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+
+    /**
+     * Escapes the quotes and backslashes of a JSON string
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
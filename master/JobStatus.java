@@ -0,0 +1,198 @@
+package mr.master;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import mr.common.Heartbeat;
+import mr.common.Task;
+import mr.common.TaskStatus;
+
+/**
+ * Live state of a running job, built from the heartbeats and completed tasks that the
+ * {@link TaskCompletionMonitor} of each TaskTracker receives on the single
+ * {@link MasterEventLoop} thread. Keeps the last heartbeat of every TaskTracker and the
+ * last status of every running task, and detects the tasks that have not made any
+ * progress for 'stall timeout' milliseconds. All methods are thread safe, as the status
+ * is read by the other threads of the master while the event loop updates it.
+ * 
+ * 
+ */
+public class JobStatus {
+
+    // Number of heartbeat intervals without progress after which a task is reported
+    private static final int STALL_TIMEOUT_HEARTBEATS = 60;
+    // Number of heartbeat intervals without any message after which a TaskTracker is
+    // considered lost
+    private static final int TRACKER_EXPIRY_HEARTBEATS = 30;
+
+    public static final Log LOG = LogFactory.getLog(JobStatus.class);
+
+    private long stallTimeout;
+    private int trackerExpiryInterval;
+
+    private Map<String, Heartbeat> lastHeartbeats = new HashMap<String, Heartbeat>();
+    private Map<String, TaskStatus> runningTasks = new HashMap<String, TaskStatus>();
+    private Map<String, String> taskTrackers = new HashMap<String, String>();
+    private Map<String, Long> lastProgressTimes = new HashMap<String, Long>();
+    private Set<String> stalledTasks = new HashSet<String>();
+    private Set<String> completedTasks = new HashSet<String>();
+    private Set<String> failedTasks = new HashSet<String>();
+
+    /**
+     * Constructor
+     * 
+     * @param heartbeatInterval interval between two heartbeats of a TaskTracker in
+     *            milliseconds
+     */
+    public JobStatus(int heartbeatInterval) {
+        this.stallTimeout = (long) heartbeatInterval * STALL_TIMEOUT_HEARTBEATS;
+        this.trackerExpiryInterval = heartbeatInterval * TRACKER_EXPIRY_HEARTBEATS;
+    }
+
+    /**
+     * Get the time after which a TaskTracker that has not sent any message is
+     * considered lost
+     * 
+     * @return expiry interval in milliseconds
+     */
+    public int getTrackerExpiryInterval() {
+        return trackerExpiryInterval;
+    }
+
+    /**
+     * Updates the state of the given TaskTracker and its running tasks with a heartbeat
+     * 
+     * @param tracker - name of the TaskTracker
+     * @param heartbeat {@link Heartbeat} received from the TaskTracker
+     */
+    public synchronized void updateHeartbeat(String tracker, Heartbeat heartbeat) {
+        long now = System.currentTimeMillis();
+        lastHeartbeats.put(tracker, heartbeat);
+        for (TaskStatus status : heartbeat.getTaskStatuses()) {
+            String taskId = status.getTaskId();
+            if (completedTasks.contains(taskId)) {
+                continue;
+            }
+            TaskStatus previous = runningTasks.put(taskId, status);
+            taskTrackers.put(taskId, tracker);
+            if (previous == null || hasProgressed(previous, status)) {
+                lastProgressTimes.put(taskId, now);
+                stalledTasks.remove(taskId);
+            } else if (now - lastProgressTimes.get(taskId) > stallTimeout
+                    && stalledTasks.add(taskId)) {
+                LOG.warn("Task " + taskId + " on " + tracker
+                        + " has not made progress for "
+                        + (now - lastProgressTimes.get(taskId)) + " ms: "
+                        + status);
+            }
+        }
+    }
+
+    /**
+     * Check if a task has processed more input, or moved to another phase, between two
+     * status updates
+     */
+    private static boolean hasProgressed(TaskStatus previous, TaskStatus current) {
+        return previous.getPhase() != current.getPhase()
+                || previous.getBytesProcessed() != current.getBytesProcessed()
+                || previous.getRecordsProcessed() != current.getRecordsProcessed();
+    }
+
+    /**
+     * Marks the given task as completed
+     * 
+     * @param task completed {@link Task}
+     */
+    public synchronized void taskCompleted(Task task) {
+        String taskId = task.getTaskId();
+        completedTasks.add(taskId);
+        runningTasks.remove(taskId);
+        taskTrackers.remove(taskId);
+        lastProgressTimes.remove(taskId);
+        stalledTasks.remove(taskId);
+    }
+
+    /**
+     * Marks the given tasks of a lost TaskTracker as failed
+     * 
+     * @param tracker - name of the TaskTracker
+     * @param taskIds - ids of the tasks of the TaskTracker that were not complete
+     */
+    public synchronized void tasksFailed(String tracker, List<String> taskIds) {
+        for (String taskId : taskIds) {
+            failedTasks.add(taskId);
+            runningTasks.remove(taskId);
+            taskTrackers.remove(taskId);
+            lastProgressTimes.remove(taskId);
+            stalledTasks.remove(taskId);
+        }
+        lastHeartbeats.remove(tracker);
+    }
+
+    /**
+     * Get the tasks that failed because their TaskTracker was lost
+     * 
+     * @return list of task ids
+     */
+    public synchronized List<String> getFailedTasks() {
+        return new ArrayList<String>(failedTasks);
+    }
+
+    /**
+     * Get the last status of all the running tasks
+     * 
+     * @return map of task id and the last {@link TaskStatus} of the task
+     */
+    public synchronized Map<String, TaskStatus> getRunningTasks() {
+        return new HashMap<String, TaskStatus>(runningTasks);
+    }
+
+    /**
+     * Get the tasks that have not made any progress for 'stall timeout' milliseconds
+     * 
+     * @return list of task ids
+     */
+    public synchronized List<String> getStalledTasks() {
+        return new ArrayList<String>(stalledTasks);
+    }
+
+    /**
+     * Get the last heartbeat received from the given TaskTracker
+     * 
+     * @param tracker - name of the TaskTracker
+     * @return {@link Heartbeat}, or null if no heartbeat has been received
+     */
+    public synchronized Heartbeat getLastHeartbeat(String tracker) {
+        return lastHeartbeats.get(tracker);
+    }
+
+    /**
+     * Get the number of free task slots of all the TaskTrackers, as reported by their
+     * last heartbeat
+     * 
+     * @return number of free slots
+     */
+    public synchronized int getFreeSlots() {
+        int freeSlots = 0;
+        for (Heartbeat heartbeat : lastHeartbeats.values()) {
+            freeSlots += heartbeat.getFreeSlots();
+        }
+        return freeSlots;
+    }
+
+    /**
+     * Get the number of completed tasks
+     * 
+     * @return number of tasks completed so far
+     */
+    public synchronized int getNumberOfCompletedTasks() {
+        return completedTasks.size();
+    }
+}
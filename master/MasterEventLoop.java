@@ -0,0 +1,501 @@
+package mr.master;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import mr.common.MessageChannel;
+
+/**
+ * <p>
+ * Single thread that handles the connections of the ApplicationMaster to all the
+ * TaskTrackers with a non-blocking {@link Selector}, instead of one blocking monitor
+ * thread per TaskTracker. The thread reads the frames sent by the TaskTrackers and hands
+ * them over to the {@link TaskCompletionMonitor} of each connection, and writes the
+ * frames queued by the ApplicationMaster.
+ *
+ * <p>
+ * Each connection has its own write queue. {@link #send(Connection, ByteBuffer...)}
+ * returns as soon as the frame is queued, and blocks while the queue of the connection
+ * holds more than 'max queued bytes', so that a slow TaskTracker cannot make the master
+ * buffer the whole input.
+ *
+ * <p>
+ * A TaskTracker is lost if its connection is closed or fails before its END task was
+ * received, if it sends a frame longer than MAX_FRAME_LENGTH, or if it sends nothing
+ * for longer than the tracker expiry interval. Its connection is closed and the tasks
+ * it has not completed are marked as failed by its monitor, while the other
+ * connections are left open. As the tasks are not run again on another TaskTracker,
+ * {@link #awaitCompletion()} then fails the job.
+ *
+ *
+ */
+public class MasterEventLoop implements Runnable {
+
+    public static final Log LOG = LogFactory.getLog(MasterEventLoop.class);
+
+    // Longest frame accepted from a TaskTracker, heartbeats and completed tasks are much
+    // smaller
+    static final int MAX_FRAME_LENGTH = 16 << 20;
+
+    private Selector selector;
+    private int expiryInterval;
+    private volatile long maxQueuedBytes;
+    private Thread thread;
+    private volatile boolean isClosed = false;
+    private volatile Throwable failure;
+
+    // Connections registered or with frames queued since the last select, handled by the
+    // event loop thread
+    private List<Connection> pendingRegistrations = new ArrayList<Connection>();
+    private Set<Connection> pendingWrites = new LinkedHashSet<Connection>();
+
+    // Only accessed by the event loop thread
+    private List<Connection> connections = new ArrayList<Connection>();
+
+    // Guarded by this object
+    private int registeredConnections = 0;
+    private int completedConnections = 0;
+    private List<String> lostConnections = new ArrayList<String>();
+
+    /**
+     * Constructor
+     *
+     * @param expiryInterval - time in milliseconds after which a TaskTracker that has
+     *            sent nothing is considered lost
+     * @param maxQueuedBytes - number of bytes that can be queued for a connection
+     *            before {@link #send(Connection, ByteBuffer...)} blocks
+     * @throws IOException when the selector cannot be opened
+     */
+    public MasterEventLoop(int expiryInterval, long maxQueuedBytes) throws IOException {
+        this.selector = Selector.open();
+        this.expiryInterval = expiryInterval;
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Set the number of bytes that can be queued for a connection, when the split size of
+     * the job is known
+     *
+     * @param maxQueuedBytes - number of bytes that can be queued for a connection
+     *            before {@link #send(Connection, ByteBuffer...)} blocks
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes) {
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Starts the event loop thread
+     */
+    public void start() {
+        thread = new Thread(this, "master-event-loop");
+        thread.start();
+    }
+
+    /**
+     * Adds a connected channel to the event loop. The frames received on the channel are
+     * handed over to the given monitor
+     *
+     * @param channel connected {@link SocketChannel} to a TaskTracker
+     * @param monitor {@link TaskCompletionMonitor} of the TaskTracker
+     * @return {@link Connection} used to send frames to the TaskTracker
+     * @throws IOException when the channel cannot be made non-blocking
+     */
+    public Connection register(SocketChannel channel, TaskCompletionMonitor monitor)
+            throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel, monitor);
+        synchronized (this) {
+            registeredConnections++;
+        }
+        synchronized (pendingRegistrations) {
+            pendingRegistrations.add(connection);
+        }
+        selector.wakeup();
+        return connection;
+    }
+
+    /**
+     * Queues the given frame to be sent on the given connection. Blocks while the write
+     * queue of the connection is full. A frame is always accepted by an empty queue, so
+     * frames larger than 'max queued bytes' can be sent
+     *
+     * @param connection {@link Connection}
+     * @param frame - buffers of the frame, see {@link MessageChannel}
+     * @throws RuntimeException when the job has failed, or the TaskTracker was lost
+     */
+    public void send(Connection connection, ByteBuffer... frame) {
+        long frameLength = 0;
+        for (ByteBuffer buffer : frame) {
+            frameLength += buffer.remaining();
+        }
+        synchronized (connection) {
+            while (connection.queuedBytes > 0
+                    && connection.queuedBytes + frameLength > maxQueuedBytes
+                    && failure == null && !isClosed && !connection.isLost) {
+                try {
+                    connection.wait();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            checkForFailure();
+            if (connection.isLost) {
+                throw new RuntimeException("TaskTracker " + connection.name
+                        + " was lost");
+            }
+            for (ByteBuffer buffer : frame) {
+                connection.writeQueue.add(buffer);
+            }
+            connection.queuedBytes += frameLength;
+        }
+        synchronized (pendingWrites) {
+            pendingWrites.add(connection);
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * Waits till the END task was received on all the registered connections, or till a
+     * TaskTracker is lost
+     *
+     * @throws RuntimeException when the job has failed, or a TaskTracker was lost
+     */
+    public synchronized void awaitCompletion() {
+        while (completedConnections < registeredConnections && failure == null
+                && lostConnections.isEmpty()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        checkForFailure();
+        if (!lostConnections.isEmpty()) {
+            throw new RuntimeException("Job failed, lost TaskTrackers "
+                    + lostConnections);
+        }
+    }
+
+    /**
+     * Stops the event loop thread and closes all the connections
+     */
+    public void close() {
+        isClosed = true;
+        selector.wakeup();
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Selects the ready connections and reads or writes their frames, until the loop is
+     * closed or the job fails
+     */
+    @Override
+    public void run() {
+        long checkInterval = Math.max(1, Math.min(1000, expiryInterval / 2));
+        try {
+            while (!isClosed && failure == null) {
+                selector.select(checkInterval);
+                registerPendingConnections();
+                enablePendingWrites();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isWritable()) {
+                            write(key, connection);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key, connection);
+                        }
+                    } catch (IOException e) {
+                        connectionLost(connection, "Error on the connection", e);
+                    }
+                }
+                expireConnections();
+            }
+        } catch (Throwable throwable) {
+            fail(throwable);
+        } finally {
+            for (Connection connection : connections) {
+                closeQuietly(connection);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOG.error("Error while closing the selector", e);
+            }
+        }
+    }
+
+    /**
+     * Registers the connections added since the last select with the selector
+     *
+     * @throws IOException when a channel cannot be registered
+     */
+    private void registerPendingConnections() throws IOException {
+        synchronized (pendingRegistrations) {
+            for (Connection connection : pendingRegistrations) {
+                connection.key =
+                        connection.channel.register(selector, SelectionKey.OP_READ,
+                                connection);
+                connection.lastReadTime = System.currentTimeMillis();
+                connections.add(connection);
+            }
+            pendingRegistrations.clear();
+        }
+    }
+
+    /**
+     * Adds the write interest to the connections that have frames queued since the last
+     * select
+     */
+    private void enablePendingWrites() {
+        synchronized (pendingWrites) {
+            Iterator<Connection> iterator = pendingWrites.iterator();
+            while (iterator.hasNext()) {
+                Connection connection = iterator.next();
+                // Registered with the next select if not yet registered
+                if (connection.key == null) {
+                    continue;
+                }
+                if (connection.key.isValid()) {
+                    connection.key.interestOps(SelectionKey.OP_READ
+                            | SelectionKey.OP_WRITE);
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes the queued frames of the given connection until the socket buffer is full.
+     * Removes the write interest once the queue is empty, and wakes up the threads
+     * waiting for room in the queue
+     *
+     * @param key {@link SelectionKey} of the connection
+     * @param connection {@link Connection}
+     * @throws IOException when there is an error writing to the channel
+     */
+    private void write(SelectionKey key, Connection connection) throws IOException {
+        synchronized (connection) {
+            while (!connection.writeQueue.isEmpty()) {
+                ByteBuffer buffer = connection.writeQueue.peek();
+                connection.queuedBytes -= connection.channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                connection.writeQueue.poll();
+            }
+            if (connection.writeQueue.isEmpty()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            connection.notifyAll();
+        }
+    }
+
+    /**
+     * Reads the available frames of the given connection and hands them over to its
+     * monitor. The connection is closed once its END task is received
+     *
+     * @param key {@link SelectionKey} of the connection
+     * @param connection {@link Connection}
+     * @throws IOException when there is an error reading from the channel, the
+     *             connection was closed by the TaskTracker or a frame is too long
+     */
+    private void read(SelectionKey key, Connection connection) throws IOException {
+        connection.lastReadTime = System.currentTimeMillis();
+        while (true) {
+            if (connection.payload == null) {
+                if (connection.channel.read(connection.header) < 0) {
+                    throw new EOFException("Connection closed by the TaskTracker");
+                }
+                if (connection.header.hasRemaining()) {
+                    return;
+                }
+                connection.header.flip();
+                int length = connection.header.getInt();
+                connection.type = MessageChannel.TYPE.forId(connection.header.get());
+                connection.header.clear();
+                if (length < 0 || length > MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                connection.payload = ByteBuffer.allocate(length);
+            }
+            if (connection.payload.hasRemaining()
+                    && connection.channel.read(connection.payload) < 0) {
+                throw new EOFException("Connection closed by the TaskTracker");
+            }
+            if (connection.payload.hasRemaining()) {
+                return;
+            }
+            byte[] payload = connection.payload.array();
+            connection.payload = null;
+            if (connection.monitor.messageReceived(connection.type, payload)) {
+                connection.isComplete = true;
+                closeQuietly(connection);
+                synchronized (this) {
+                    completedConnections++;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes the connection of the TaskTrackers that have not completed their tasks and
+     * have sent nothing for longer than the expiry interval
+     */
+    private void expireConnections() {
+        long now = System.currentTimeMillis();
+        for (Connection connection : connections) {
+            if (!connection.isComplete && !connection.isLost
+                    && now - connection.lastReadTime > expiryInterval) {
+                connectionLost(connection, "No heartbeat for " + expiryInterval + " ms",
+                        null);
+            }
+        }
+    }
+
+    /**
+     * Closes the connection of a lost TaskTracker and marks its tasks that are not
+     * complete as failed. The threads waiting for room in its write queue or for the
+     * completion of the job are woken up
+     *
+     * @param connection {@link Connection} of the TaskTracker
+     * @param reason - reason for which the TaskTracker is lost
+     * @param cause - error on the connection, may be null
+     */
+    private void connectionLost(Connection connection, String reason, Throwable cause) {
+        LOG.error("TaskTracker " + connection.name + " lost: " + reason, cause);
+        closeQuietly(connection);
+        connection.monitor.connectionLost();
+        synchronized (connection) {
+            connection.isLost = true;
+            connection.writeQueue.clear();
+            connection.queuedBytes = 0;
+            connection.notifyAll();
+        }
+        synchronized (this) {
+            lostConnections.add(connection.name);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Records the failure of the job and wakes up all the waiting threads
+     *
+     * @param throwable cause of the failure
+     */
+    private void fail(Throwable throwable) {
+        LOG.fatal("Error while monitoring task completion", throwable);
+        failure = throwable;
+        synchronized (this) {
+            notifyAll();
+        }
+        for (Connection connection : connections) {
+            synchronized (connection) {
+                connection.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Throws an exception if the job has failed, or the loop was closed
+     */
+    private void checkForFailure() {
+        if (failure != null) {
+            throw new RuntimeException("Job failed", failure);
+        }
+        if (isClosed) {
+            throw new IllegalStateException("Event loop is closed");
+        }
+    }
+
+    /**
+     * Closes the channel of the given connection, errors are logged
+     *
+     * @param connection {@link Connection}
+     */
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            LOG.error("Error while closing the connection to " + connection.name, e);
+        }
+    }
+
+    /**
+     * Connection to a TaskTracker, with its write queue and the state of the frame being
+     * read
+     */
+    public static class Connection {
+
+        private SocketChannel channel;
+        private TaskCompletionMonitor monitor;
+        private String name;
+        private SocketAddress remoteAddress;
+        private SelectionKey key;
+        private volatile long lastReadTime;
+        private boolean isComplete = false;
+        private volatile boolean isLost = false;
+
+        // Guarded by this object
+        private ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+        private long queuedBytes = 0;
+
+        private ByteBuffer header = ByteBuffer.allocate(MessageChannel.HEADER_LENGTH);
+        private ByteBuffer payload;
+        private MessageChannel.TYPE type;
+
+        Connection(SocketChannel channel, TaskCompletionMonitor monitor)
+                throws IOException {
+            this.channel = channel;
+            this.monitor = monitor;
+            this.remoteAddress = channel.getRemoteAddress();
+            this.name = remoteAddress.toString();
+        }
+
+        /**
+         * Get the address of the TaskTracker
+         *
+         * @return {@link SocketAddress}
+         */
+        public SocketAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        /**
+         * Get the monitor of the TaskTracker
+         *
+         * @return {@link TaskCompletionMonitor}
+         */
+        public TaskCompletionMonitor getMonitor() {
+            return monitor;
+        }
+    }
+}
@@ -1,17 +1,26 @@
 package mr.master;
 
 import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
@@ -19,9 +28,13 @@ import mr.common.CfgParser;
 import mr.common.CircularList;
 import mr.common.Configuration;
 import mr.common.Constants.NetworkProtocol;
+import mr.common.Counters;
 import mr.common.MRUtility;
+import mr.common.MessageChannel;
 import mr.common.SystemSpecs;
 import mr.common.Task;
+import mr.io.InputFormat;
+import mr.io.Text;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,8 +48,21 @@ import org.apache.commons.logging.LogFactory;
  * 2) Establishes connection to all TaskTrackers
  * 3) Allocates reduce task to the TaskTracker nodes
  * 4) Reads the input file and sends the file splits to the mapper nodes
- * 5) Creates a listener thread to monitor task completion and ensure completion of all 
- *    tasks before exiting.
+ * 5) Monitors task completion and ensures completion of all tasks before exiting.
+ *    
+ * All the messages to and from a TaskTracker are sent as binary frames on one persistent
+ * connection ({@link MessageChannel}). The connections to all the TaskTrackers are
+ * handled by a single {@link MasterEventLoop} thread: the tasks are queued for sending,
+ * and the heartbeats and completed tasks are handed over to a
+ * {@link TaskCompletionMonitor} per TaskTracker.
+ *    
+ * The work is weighted by the {@link SystemSpecs} of the TaskTrackers. Each TaskTracker
+ * gets a number of slots (map tasks run at the same time) from its cores and memory, the
+ * splits are assigned in proportion to the slots, and the reduce tasks are assigned to the
+ * TaskTrackers with the most memory. Unless the configuration file fixes the split size,
+ * the split size of a job is computed from the length of its input and the map slots,
+ * so that the map tasks run in a few waves. When there is a single TaskTracker (a single
+ * multi-slot TaskTracker on one host), it runs both the reduce task and the map tasks.
  * </pre>
  * 
  * @author Magesh Ramachandran
@@ -48,21 +74,55 @@ public class ResourceManager {
     private Configuration configuration;
     private String inputFilePath;
     private CfgParser cfg;
-    private static int fileSplitId;
-    private String inputFileName;
+    // Split ids are unique within a job, the jobs of a JobGraph run at the same time
+    private int fileSplitId;
     private PriorityQueue<Task> taskQueue = new PriorityQueue<Task>();
     private SocketAddress[] assignedReducers;
     public static final Log LOG = LogFactory.getLog(ResourceManager.class);
     private File jarFile;
-
-    private Socket[] workers;
-    private CircularList<Socket> circularListOfWorkers =
-            new CircularList<Socket>();
+    private Counters counters = new Counters();
+    private JobStatus jobStatus;
+    private JobProfile jobProfile = new JobProfile();
+    private MasterEventLoop eventLoop;
+
+    // Memory needed by a map slot, in split sizes: the map output buffer holds up to
+    // twice the split size, and the objects are larger than their serialized size
+    private static final int MEMORY_PER_SLOT_IN_SPLITS = 4;
+
+    // Number of compressed splits that can be queued for a TaskTracker before the
+    // splitting of the input waits for them to be sent
+    private static final int MAX_QUEUED_SPLITS_PER_WORKER = 2;
+    private static final long MIN_QUEUED_BYTES_PER_WORKER = 1 << 20;
+
+    private MasterEventLoop.Connection[] workers;
+    private SystemSpecs[] workerSpecs;
+    private int[] workerSlots;
+    // True if the reduce tasks run on TaskTrackers that also run map tasks
+    private boolean isReducerColocated = false;
+    private CircularList<MasterEventLoop.Connection> circularListOfWorkers =
+            new CircularList<MasterEventLoop.Connection>();
+
+    // Output files of previous jobs read by the map tasks of this job, by the address of
+    // the TaskTracker that wrote them. Null when the input is a file of the master
+    private Map<SocketAddress, List<String>> chainedInput;
+    // Cache files of the job by content hash, and the content of the files already read
+    private Map<String, File> cacheFiles = new HashMap<String, File>();
+    private Map<String, byte[]> cacheFileData = new HashMap<String, byte[]>();
+
+    // Output files written by the reduce tasks of this job, or by its map tasks when it
+    // has no reducers, by TaskTracker address
+    private Map<SocketAddress, List<String>> outputFiles =
+            new LinkedHashMap<SocketAddress, List<String>>();
+    // Partial results of the hot keys written by the reduce tasks, by TaskTracker address
+    private Map<SocketAddress, List<String>> hotKeyOutputFiles =
+            new LinkedHashMap<SocketAddress, List<String>>();
+    private String profileFileName = JobProfile.PROFILE_FILE_NAME;
 
     /**
      * Constructor, parses the config.txt file that contain runtime parameters
      * 
-     * @param inputPath - path of the input file
+     * @param inputPath - path of the input file, of a directory of input files or glob
+     *            pattern on the names of the files of a directory
      * @param jarFile {@link File} the jar file used for execution
      * @param config {@link Configuration}
      */
@@ -70,35 +130,121 @@ public class ResourceManager {
             final Configuration config) {
         this.cfg = CfgParser.getInstance(null);
         this.inputFilePath = inputPath;
-        File inputFile = new File(inputFilePath);
-        this.inputFileName = inputFile.getName();
         this.configuration = config;
         this.configuration.setSplitSize(cfg.getSplitSize());
+        this.configuration.setMergeFactor(cfg.getMergeFactor());
+        this.configuration.setHeartbeatInterval(cfg.getHeartbeatInterval());
+        // Identifies the job on the TaskTrackers, which run several jobs at the same time
+        this.configuration.setJobId("job_" + System.currentTimeMillis() + "_"
+                + Integer.toHexString(new Random().nextInt()));
+        this.jobStatus = new JobStatus(configuration.getHeartbeatInterval());
         this.jarFile = jarFile;
 
     }
 
+    /**
+     * Constructor for a job whose input is the output of previous jobs. The output files
+     * are read by map tasks on the TaskTrackers that wrote them, when possible
+     * 
+     * @param chainedInput - paths of the output files of the previous jobs, by address of
+     *            the TaskTracker that wrote them, or by a null address for the files that
+     *            are read by the master
+     * @param jarFile {@link File} the jar file used for execution
+     * @param config {@link Configuration}
+     */
+    public ResourceManager(final Map<SocketAddress, List<String>> chainedInput,
+            final File jarFile, final Configuration config) {
+        this((String) null, jarFile, config);
+        this.chainedInput = chainedInput;
+    }
+
     /**
      * <pre>
      * Executes the following tasks in order
      * 
-     * 1) Retrieves the worker node addresses from registry
-     * 2) Allocates tasks to Nodes
-     * 3) Wait till all the tasks have been completed
+     * 1) Starts the event loop that handles the connections to the workers
+     * 2) Retrieves the worker node addresses from registry and connects to them
+     * 3) Allocates tasks to Nodes
+     * 4) Wait till all the tasks have been completed
+     * 5) Writes the job profile to the output path
      * </pre>
      */
     public boolean start() {
         try {
+            startEventLoop();
             getNodeAddressFromRegistry();
             allocateTasksToNodes();
             listenForUpdatesTillCompletion();
+            LOG.info(counters);
+            writeJobProfile();
             return true;
         } catch (Throwable throwable) {
             LOG.fatal("Error while processing, map-reduce failed", throwable);
             return false;
+        } finally {
+            if (eventLoop != null) {
+                eventLoop.close();
+            }
         }
     }
 
+    /**
+     * Get the counters of the job, which are the sum of the counters of all the
+     * completed tasks
+     * 
+     * @return {@link Counters} of the job
+     */
+    public Counters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Set the cache files of the job, sent to the TaskTrackers that do not have them
+     * 
+     * @param cacheFiles - {@link File} of each cache file, by content hash
+     */
+    public void setCacheFiles(Map<String, File> cacheFiles) {
+        this.cacheFiles = cacheFiles;
+    }
+
+    /**
+     * Get the output files written by the reduce tasks of the job, or by the map tasks of
+     * a map-only job, available once the job is complete
+     * 
+     * @return paths of the output files, by address of the TaskTracker that wrote them
+     */
+    public Map<SocketAddress, List<String>> getOutputFiles() {
+        return outputFiles;
+    }
+
+    /**
+     * Get the files of the partial results of the hot keys, written by the reduce tasks
+     * when the hot keys are salted, available once the job is complete
+     * 
+     * @return paths of the files, by address of the TaskTracker that wrote them
+     */
+    public Map<SocketAddress, List<String>> getHotKeyOutputFiles() {
+        return hotKeyOutputFiles;
+    }
+
+    /**
+     * Set the name of the job profile file written to the output path
+     * 
+     * @param profileFileName - name of the file (JobProfile.PROFILE_FILE_NAME by default)
+     */
+    public void setProfileFileName(String profileFileName) {
+        this.profileFileName = profileFileName;
+    }
+
+    /**
+     * Get the live state of the job, updated from the heartbeats of the workers
+     * 
+     * @return {@link JobStatus} of the job
+     */
+    public JobStatus getJobStatus() {
+        return jobStatus;
+    }
+
     /**
      * Get the ip addresses of worker nodes from registry and establish a connection with
      * each of the nodes. The connections are persisted in state and are used for
@@ -124,13 +270,18 @@ public class ResourceManager {
                     (Map<SocketAddress, SystemSpecs>) objectInputStream
                             .readObject();
 
-            adjustNumberOfReducers(workerAddressMap.size());
             socket.close();
 
             LOG.debug("Retrieved node addresses from registry");
             LOG.debug(workerAddressMap);
 
-            establishConnectionWithWorkerNodes(workerAddressMap);
+            // The number of reducers and the split size are sent with the configuration,
+            // and depend on the nodes that could be connected
+            Map<SocketChannel, SystemSpecs> channels =
+                    connectToWorkerNodes(workerAddressMap);
+            adjustNumberOfReducers(channels.size());
+            adjustSplitSize(channels.values());
+            establishConnectionWithWorkerNodes(channels);
 
         } catch (Exception e) {
             LOG.fatal("Exception while getting data from registry", e);
@@ -151,88 +302,491 @@ public class ResourceManager {
         LOG.debug("Before allocating reduce tasks");
         allocateReduceTasks();
         LOG.debug("Before allocating map tasks");
-        allocateMapTasksWithFileSplits();
+        if (chainedInput != null) {
+            allocateMapTasksFromChainedInput();
+        } else {
+            allocateMapTasksWithFileSplits(inputFilePath);
+        }
         LOG.debug("Before allocating end tasks");
         allocateEndTasks();
     }
 
     /**
-     * Establishes a connection with each of the nodes in the given map. The connections
-     * are persisted in state and are used for data/file transfers.
+     * Opens a connection to each of the nodes in the given map. The nodes that cannot be
+     * connected are left out of the job
      * 
      * @param workerAddressMap: map of SocketAddress of each TaskTracker, with
-     *            {@link SystemSpecs} as value (SystemSpecs is not used by the current
-     *            implementation)
+     *            {@link SystemSpecs} as value
+     * @return connected {@link SocketChannel} of each TaskTracker, with its
+     *         {@link SystemSpecs} as value
+     * @throws RuntimeException when no TaskTracker could be connected
+     */
+    private Map<SocketChannel, SystemSpecs> connectToWorkerNodes(
+            Map<SocketAddress, SystemSpecs> workerAddressMap) {
+        Map<SocketChannel, SystemSpecs> channels =
+                new LinkedHashMap<SocketChannel, SystemSpecs>();
+        for (Map.Entry<SocketAddress, SystemSpecs> entry : workerAddressMap
+                .entrySet()) {
+            try {
+                channels.put(SocketChannel.open(entry.getKey()), entry.getValue());
+            } catch (IOException e) {
+                LOG.error("An exception has occured while connecting to "
+                        + entry.getKey(), e);
+            }
+        }
+        if (channels.isEmpty()) {
+            throw new RuntimeException("No TaskTracker could be connected, out of "
+                    + workerAddressMap.size() + " registered");
+        }
+        return channels;
+    }
+
+    /**
+     * Starts the job on each of the connected nodes. The connections are persisted in
+     * state and are used for data/file transfers. Each node is sent the configuration
+     * with its number of slots, computed from its {@link SystemSpecs}, then the cache
+     * files it does not have yet and the jar file. The connections are added to the
+     * event loop, which sends the queued frames and monitors the completion of the tasks
+     * of each node. The connected nodes are then ordered for the placement of the reduce
+     * tasks. The job fails if a node is lost at this point, as the number of reducers was
+     * computed from the connected nodes.
+     * 
+     * @param channels: connected {@link SocketChannel} of each TaskTracker, with
+     *            {@link SystemSpecs} as value
      * 
      * 
      */
     private void establishConnectionWithWorkerNodes(
-            Map<SocketAddress, SystemSpecs> workerAddressMap) {
+            Map<SocketChannel, SystemSpecs> channels) {
         int count = 0;
-        workers = new Socket[workerAddressMap.size()];
+        workers = new MasterEventLoop.Connection[channels.size()];
+        workerSpecs = new SystemSpecs[channels.size()];
+        workerSlots = new int[channels.size()];
+
+        byte[] jarFileData;
+        try {
+            jarFileData = Files.readAllBytes(jarFile.toPath());
+        } catch (IOException e) {
+            closeQuietly(channels.keySet());
+            throw new RuntimeException("Error while reading the jar file", e);
+        }
 
-        for (SocketAddress socketAddress : workerAddressMap.keySet()) {
-            Socket socket = new Socket();
+        for (Map.Entry<SocketChannel, SystemSpecs> entry : channels.entrySet()) {
+            SocketChannel channel = entry.getKey();
             try {
-                socket.connect(socketAddress);
-                OutputStream outputStream = socket.getOutputStream();
+                // The configuration starts the job on the worker. It is sent before the
+                // channel is added to the event loop, as the worker answers with the
+                // cache files it does not have
+                int slots = computeNumberOfSlots(entry.getValue());
+                configuration.setNumberOfSlots(slots);
+                writeFully(channel, MessageChannel.encodeObject(
+                        MessageChannel.TYPE.CONFIGURATION, configuration));
+                List<String> missingCacheFiles = readCacheRequest(channel);
+
+                List<String> trackerOutputFiles =
+                        Collections.synchronizedList(new ArrayList<String>());
+                outputFiles.put(channel.getRemoteAddress(), trackerOutputFiles);
+                List<String> trackerHotKeyOutputFiles =
+                        Collections.synchronizedList(new ArrayList<String>());
+                hotKeyOutputFiles.put(channel.getRemoteAddress(),
+                        trackerHotKeyOutputFiles);
+                TaskCompletionMonitor taskMonitor =
+                        new TaskCompletionMonitor(channel.getRemoteAddress()
+                                .toString(), taskQueue, counters, jobStatus,
+                                jobProfile, trackerOutputFiles,
+                                trackerHotKeyOutputFiles);
+                MasterEventLoop.Connection connection =
+                        eventLoop.register(channel, taskMonitor);
+
+                for (String hash : missingCacheFiles) {
+                    eventLoop.send(connection, MessageChannel.encodeFile(
+                            MessageChannel.TYPE.CACHE_FILE, hash,
+                            getCacheFileData(hash)));
+                }
+                eventLoop.send(connection, MessageChannel.encodeFile(
+                        MessageChannel.TYPE.JAR, jarFile.getName(), jarFileData));
+                workers[count] = connection;
+                workerSpecs[count] = entry.getValue();
+                workerSlots[count] = slots;
+                count++;
+
+                LOG.debug("Connection to " + channel.getRemoteAddress()
+                        + " was successful, " + slots + " slots");
+            } catch (IOException e) {
+                // The registered channels are closed by the event loop
+                closeQuietly(new ArrayList<SocketChannel>(channels.keySet()).subList(
+                        count, channels.size()));
+                throw new RuntimeException("Error while starting the job on a worker", e);
+            }
+        }
+        orderWorkersForReducerPlacement();
+    }
 
-                // Transfer jar file to worker nodes
-                // todo remove hard 0code
-                MRUtility.sendFile(jarFile.getAbsolutePath(), outputStream);
+    /**
+     * Closes the given channels, errors are logged
+     * 
+     * @param channels - collection of {@link SocketChannel}
+     */
+    private static void closeQuietly(Collection<SocketChannel> channels) {
+        for (SocketChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.error("Error while closing a connection", e);
+            }
+        }
+    }
 
-                ObjectOutputStream objectOutputStream =
-                        new ObjectOutputStream(outputStream);
-                objectOutputStream.writeObject(configuration);
-                objectOutputStream.flush();
-                workers[count++] = socket;
-                circularListOfWorkers.add(socket);
+    /**
+     * Reads the answer of a TaskTracker to the configuration of a job with cache files:
+     * the content hashes of the cache files that the TaskTracker does not have
+     * 
+     * @param channel - blocking {@link SocketChannel} to the TaskTracker
+     * @return content hashes of the files to be sent, empty if the job has no cache file
+     * @throws IOException when the answer cannot be read
+     */
+    private List<String> readCacheRequest(SocketChannel channel) throws IOException {
+        List<String> missingCacheFiles = new ArrayList<String>();
+        if (configuration.getCacheFiles().isEmpty()) {
+            return missingCacheFiles;
+        }
+        ByteBuffer header = ByteBuffer.allocate(MessageChannel.HEADER_LENGTH);
+        readFully(channel, header);
+        header.flip();
+        int length = header.getInt();
+        MessageChannel.TYPE type = MessageChannel.TYPE.forId(header.get());
+        if (type != MessageChannel.TYPE.CACHE_REQUEST) {
+            throw new IOException("Expected " + MessageChannel.TYPE.CACHE_REQUEST
+                    + " from the worker, received " + type);
+        }
+        if (length < 0 || length > MasterEventLoop.MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload);
+        String request =
+                MessageChannel.decode(payload.array(), new Text()).getValue();
+        for (String hash : request.split(",")) {
+            if (!hash.isEmpty()) {
+                missingCacheFiles.add(hash);
+            }
+        }
+        LOG.debug(missingCacheFiles.size() + " cache files requested by "
+                + channel.getRemoteAddress());
+        return missingCacheFiles;
+    }
 
-                LOG.debug("Connection to " + socketAddress + " was successful");
-            } catch (IOException e) {
-                LOG.error("An exception has occured while connecting", e);
+    /**
+     * Get the content of a cache file, read once for all the TaskTrackers
+     * 
+     * @param hash - content hash of the file
+     * @return content of the file
+     * @throws IOException when the file cannot be read
+     */
+    private byte[] getCacheFileData(String hash) throws IOException {
+        byte[] data = cacheFileData.get(hash);
+        if (data == null) {
+            File file = cacheFiles.get(hash);
+            if (file == null) {
+                throw new IOException("Unknown cache file requested " + hash);
+            }
+            data = Files.readAllBytes(file.toPath());
+            cacheFileData.put(hash, data);
+        }
+        return data;
+    }
+
+    /**
+     * Writes the given buffer to a blocking channel
+     * 
+     * @param channel {@link SocketChannel}
+     * @param buffer {@link ByteBuffer} to be written
+     * @throws IOException when there is an error writing to the channel
+     */
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads from a blocking channel till the given buffer is full
+     * 
+     * @param channel {@link SocketChannel}
+     * @param buffer {@link ByteBuffer} to be filled
+     * @throws IOException when there is an error reading from the channel or the
+     *             connection is closed
+     */
+    private static void readFully(SocketChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Connection closed by the worker");
+            }
+        }
+    }
+
+    /**
+     * Computes the number of map tasks a TaskTracker can run at the same time: the slots
+     * it advertises, or one per core if it does not, limited by the memory of the
+     * TaskTracker JVM
+     * 
+     * @param specs {@link SystemSpecs} of the TaskTracker
+     * @return number of slots, at least 1
+     */
+    private int computeNumberOfSlots(SystemSpecs specs) {
+        int slots = getAdvertisedSlots(specs);
+        long memoryPerSlot =
+                Math.max(1, (long) MEMORY_PER_SLOT_IN_SPLITS
+                        * configuration.getSplitSize());
+        long slotsByMemory = specs.getMaxMemoryAvailable() / memoryPerSlot;
+        return (int) Math.max(1, Math.min(slots, slotsByMemory));
+    }
+
+    /**
+     * Get the number of map tasks a TaskTracker can run at the same time, without the
+     * limit of its memory
+     * 
+     * @param specs {@link SystemSpecs} of the TaskTracker
+     * @return slots advertised by the TaskTracker, or its number of cores
+     */
+    private static int getAdvertisedSlots(SystemSpecs specs) {
+        return specs.getNumberOfSlots() > 0 ? specs.getNumberOfSlots() : specs
+                .getAvailableCpuCores();
+    }
+
+    /**
+     * Sets the split size of the job from the length of the input file and the slots of
+     * the TaskTrackers that run the map tasks, unless the split size is fixed by the
+     * configuration file or the input is the output of previous jobs. The reduce tasks
+     * are placed on the TaskTrackers with the most memory, so the slots of the others
+     * are counted. The split size is limited by the memory of the TaskTrackers, so that
+     * larger splits do not leave slots unused
+     * 
+     * @param workerSpecs: {@link SystemSpecs} of each connected TaskTracker
+     * @see FileSplitter#computeSplitSize(long, int, int, int, int)
+     */
+    private void adjustSplitSize(Collection<SystemSpecs> workerSpecs) {
+        if (cfg.isSplitSizeConfigured() || inputFilePath == null) {
+            return;
+        }
+        List<SystemSpecs> specs = new ArrayList<SystemSpecs>(workerSpecs);
+        Collections.sort(specs, new Comparator<SystemSpecs>() {
+            @Override
+            public int compare(SystemSpecs specs1, SystemSpecs specs2) {
+                return Long.compare(specs2.getMaxMemoryAvailable(),
+                        specs1.getMaxMemoryAvailable());
+            }
+        });
+        int firstMapWorker =
+                isReducerColocated ? 0 : configuration.getNumberOfReducers();
+        int mapSlots = 0;
+        long maxSplitSize = cfg.getMaxSplitSize();
+        for (int i = firstMapWorker; i < specs.size(); i++) {
+            int slots = getAdvertisedSlots(specs.get(i));
+            mapSlots += slots;
+            long memoryPerSlot = specs.get(i).getMaxMemoryAvailable() / slots;
+            if (memoryPerSlot > 0) {
+                maxSplitSize =
+                        Math.min(maxSplitSize, memoryPerSlot / MEMORY_PER_SLOT_IN_SPLITS);
+            }
+        }
+
+        long inputLength =
+                FileSplitter.getInputLength(FileSplitter.listInputFiles(inputFilePath));
+        int splitSize =
+                FileSplitter.computeSplitSize(inputLength, mapSlots, cfg.getMapWaves(),
+                        cfg.getMinSplitSize(), (int) maxSplitSize);
+        configuration.setSplitSize(splitSize);
+        eventLoop.setMaxQueuedBytes(getMaxQueuedBytes());
+        LOG.info("Split size " + splitSize + " for " + inputLength + " input bytes and "
+                + mapSlots + " map slots");
+    }
+
+    /**
+     * Orders the workers by decreasing memory, and by increasing number of slots for the
+     * same memory. Reduce tasks are assigned to the first workers: they merge all the
+     * map output of their partition, while the workers with more slots are left to run
+     * the map tasks
+     */
+    private void orderWorkersForReducerPlacement() {
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < workers.length; i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer worker1, Integer worker2) {
+                int diff =
+                        Boolean.compare(hasChainedInput(workers[worker1]),
+                                hasChainedInput(workers[worker2]));
+                if (diff == 0) {
+                    diff =
+                            Long.compare(workerSpecs[worker2].getMaxMemoryAvailable(),
+                                    workerSpecs[worker1].getMaxMemoryAvailable());
+                }
+                if (diff == 0) {
+                    diff = workerSlots[worker1] - workerSlots[worker2];
+                }
+                return diff;
+            }
+        });
+
+        MasterEventLoop.Connection[] orderedWorkers =
+                new MasterEventLoop.Connection[workers.length];
+        SystemSpecs[] orderedSpecs = new SystemSpecs[workers.length];
+        int[] orderedSlots = new int[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            orderedWorkers[i] = workers[order.get(i)];
+            orderedSpecs[i] = workerSpecs[order.get(i)];
+            orderedSlots[i] = workerSlots[order.get(i)];
+        }
+        workers = orderedWorkers;
+        workerSpecs = orderedSpecs;
+        workerSlots = orderedSlots;
+    }
+
+    /**
+     * Adds the workers that are not running a reduce task to the circular list used to
+     * assign the splits. Each worker is added once per slot, interleaved with the other
+     * workers, so that the splits are assigned in proportion to the slots
+     */
+    private void buildWeightedListOfMapWorkers() {
+        int firstMapWorker =
+                isReducerColocated ? 0 : configuration.getNumberOfReducers();
+        int maxSlots = 0;
+        for (int i = firstMapWorker; i < workers.length; i++) {
+            maxSlots = Math.max(maxSlots, workerSlots[i]);
+        }
+        for (int slot = 0; slot < maxSlots; slot++) {
+            for (int i = firstMapWorker; i < workers.length; i++) {
+                if (workerSlots[i] > slot) {
+                    circularListOfWorkers.add(workers[i]);
+                }
             }
         }
     }
 
     /**
      * Adjusts the number of reducer slots (if required) such that it is always less than
-     * total number of worker slots available
+     * total number of worker slots available. With a single worker node, one reduce task
+     * runs on the node along with the map tasks. A map-only job, with no reducers, runs
+     * map tasks on all the nodes
      * 
      * @param numberOfNodesAvailable - total number of worker nodes available
      */
     private void adjustNumberOfReducers(int numberOfNodesAvailable) {
         int initalReducerCount = configuration.getNumberOfReducers();
-        if (numberOfNodesAvailable < 2) {
+        if (numberOfNodesAvailable < 1) {
             throw new RuntimeException("Error: not enough worker slots!");
         }
+        if (initalReducerCount == 0) {
+            isReducerColocated = true;
+            LOG.debug("Map-only job, no reducer");
+            return;
+        }
+        isReducerColocated = numberOfNodesAvailable == 1;
         int updatedReducerCount =
-                Math.min(initalReducerCount, numberOfNodesAvailable - 1);
+                Math.min(initalReducerCount, Math.max(1, numberOfNodesAvailable - 1));
         configuration.setNumberOfReducers(updatedReducerCount);
         LOG.debug("reducer count after adjustment" + updatedReducerCount);
     }
 
     /**
-     * Splits the input file into chunks based on split size and transfers it to worker
-     * nodes in a round-robin manner along with the corresponding map task
+     * Allocates one map task per output file of the previous jobs. A file written by a
+     * TaskTracker that runs the map tasks of this job is read on that TaskTracker, and
+     * is neither split nor sent. The other files are split by the master, as an input
+     * file
+     */
+    private void allocateMapTasksFromChainedInput() {
+        for (Map.Entry<SocketAddress, List<String>> entry : chainedInput.entrySet()) {
+            MasterEventLoop.Connection connection = getMapWorker(entry.getKey());
+            for (String path : entry.getValue()) {
+                if (connection == null) {
+                    allocateMapTasksWithFileSplits(path);
+                    continue;
+                }
+                try {
+                    Task task = new Task(Task.TYPE.MAP, "m" + fileSplitId++);
+                    task.setReducers(assignedReducers);
+                    task.setLocalInputPath(path);
+                    addToTaskQueue(task);
+                    sendTask(connection, task);
+                    LOG.debug("Local input " + path + " of " + entry.getKey());
+                } catch (IOException e) {
+                    LOG.fatal("Error while allocating a map task", e);
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the connection of the TaskTracker with the given address, if it runs the map
+     * tasks of this job
+     * 
+     * @param address {@link SocketAddress} of a TaskTracker, may be null
+     * @return {@link MasterEventLoop.Connection}, or null if the TaskTracker does not run
+     *         map tasks
+     */
+    private MasterEventLoop.Connection getMapWorker(SocketAddress address) {
+        int firstMapWorker =
+                isReducerColocated ? 0 : configuration.getNumberOfReducers();
+        for (int i = firstMapWorker; i < workers.length; i++) {
+            if (workers[i].getRemoteAddress().equals(address)) {
+                return workers[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the given TaskTracker holds output files of the previous jobs
+     * 
+     * @param connection {@link MasterEventLoop.Connection} of the TaskTracker
+     * @return true if the map tasks of this job read files of the TaskTracker
      */
-    private void allocateMapTasksWithFileSplits() {
+    private boolean hasChainedInput(MasterEventLoop.Connection connection) {
+        return chainedInput != null
+                && chainedInput.containsKey(connection.getRemoteAddress());
+    }
+
+    /**
+     * Splits the given input file into chunks based on split size and transfers it to
+     * worker nodes in a round-robin manner along with the corresponding map task
+     * 
+     * @param inputPath - path of the input file, directory or glob pattern
+     */
+    private void allocateMapTasksWithFileSplits(String inputPath) {
+        InputFormat<?, ?> inputFormat =
+                MRUtility.newInstance(configuration.getInputFormatClass());
         FileSplitter fileSplitter =
-                new FileSplitter(inputFilePath, cfg.getSplitSize());
+                new FileSplitter(inputPath, configuration.getSplitSize(), inputFormat);
+        String inputFileName = FileSplitter.getInputName(inputPath);
         while (fileSplitter.hasMoreSplits()) {
             try {
-                OutputStream outputStream =
-                        circularListOfWorkers.next().getOutputStream();
+                MasterEventLoop.Connection connection = circularListOfWorkers.next();
 
                 Task task = new Task(Task.TYPE.MAP, "m" + fileSplitId);
                 // set of reducers are sent to each mappers to facilitate
                 // shuffle
                 task.setReducers(assignedReducers);
-                writeObjectToStream(outputStream, task);
-                taskQueue.add(task);
+                String splitName = inputFileName + '_' + fileSplitId++;
+                if (fileSplitter.isNextSplitGzip()) {
+                    task.setSplitLength(fileSplitter.nextGzipSplit());
+                    addToTaskQueue(task);
+                    sendTask(connection, task);
+                    sendGzipSplit(connection, fileSplitter, splitName);
+                    continue;
+                }
                 byte[] splitFileData = fileSplitter.getNextSplit();
-                byte[] compressedSplitFileData = compressData(splitFileData);
-                writeFileSplitToStream(outputStream, compressedSplitFileData);
+                task.setSplitLength(splitFileData.length);
+                addToTaskQueue(task);
+                sendTask(connection, task);
+                eventLoop.send(connection, MessageChannel.encodeFile(
+                        MessageChannel.TYPE.SPLIT, splitName,
+                        compressData(splitFileData)));
                 LOG.debug("Split data length " + splitFileData.length);
             } catch (IOException e) {
                 LOG.fatal("Error while transferring file splits", e);
@@ -241,6 +795,28 @@ public class ResourceManager {
         }
     }
 
+    /**
+     * Sends the next split of a gzip file as it is, in parts of at most
+     * FileSplitter.GZIP_CHUNK_SIZE bytes, so that the split is not held in memory and the
+     * parts are queued like any other frame. The last part is sent as the SPLIT frame
+     * 
+     * @param connection {@link MasterEventLoop.Connection} of the TaskTracker
+     * @param fileSplitter {@link FileSplitter} positioned on the split
+     * @param splitName - name of the split file
+     * @throws IOException when the connection was lost
+     */
+    private void sendGzipSplit(MasterEventLoop.Connection connection,
+            FileSplitter fileSplitter, String splitName) throws IOException {
+        byte[] part = fileSplitter.readGzipChunk();
+        while (fileSplitter.hasMoreGzipChunks()) {
+            eventLoop.send(connection, MessageChannel.encodeFile(
+                    MessageChannel.TYPE.SPLIT_PART, splitName, part));
+            part = fileSplitter.readGzipChunk();
+        }
+        eventLoop.send(connection,
+                MessageChannel.encodeFile(MessageChannel.TYPE.SPLIT, splitName, part));
+    }
+
     //
 
     /**
@@ -270,26 +846,31 @@ public class ResourceManager {
     }
 
     /**
-     * Allocates first n worker nodes with reduce tasks where n is the number of reducers
+     * Allocates first n worker nodes with reduce tasks where n is the number of reducers.
+     * The other worker nodes are used for the map tasks. A worker node runs at most one
+     * reduce task of a job, as the reduce task of a node that also runs map tasks waits
+     * for the output of its map tasks
      */
     private void allocateReduceTasks() {
         int numberOfMapHosts =
-                workers.length - configuration.getNumberOfReducers();
+                isReducerColocated ? workers.length : workers.length
+                        - configuration.getNumberOfReducers();
 
         int numberOfReducers = configuration.getNumberOfReducers();
+        if (numberOfReducers > workers.length) {
+            throw new IllegalStateException(numberOfReducers + " reducers for "
+                    + workers.length + " workers");
+        }
         assignedReducers = new SocketAddress[numberOfReducers];
         for (int i = 0; i < numberOfReducers; i++) {
             try {
-                circularListOfWorkers.remove(workers[i]);
-                OutputStream outputStream = workers[i].getOutputStream();
                 Task task = new Task(Task.TYPE.REDUCE, "r" + i);
                 // Used by TaskTracker to receive files from all the mapper
                 // nodes
                 task.setNumberOfMapHosts(numberOfMapHosts);
-                writeObjectToStream(outputStream, task);
-                taskQueue.add(task);
-                SocketAddress socketAddress =
-                        workers[i].getRemoteSocketAddress();
+                addToTaskQueue(task);
+                sendTask(workers[i], task);
+                SocketAddress socketAddress = workers[i].getRemoteAddress();
 
                 assignedReducers[i] = socketAddress;
             } catch (IOException e) {
@@ -297,23 +878,26 @@ public class ResourceManager {
                 throw new RuntimeException(e);
             }
         }
-
+        buildWeightedListOfMapWorkers();
     }
 
     /**
      * Marks the end of task execution. The END tasks are used to signal the
-     * {@link TaskTrackers} that there are no more tasks to be assigned
+     * {@link TaskTrackers} that there are no more tasks to be assigned. The END tasks of
+     * the map hosts carry the reducers, so that a map host that got no map task, as with
+     * the output files of a previous job held by other TaskTrackers, still ends the
+     * shuffle of each reducer
      */
     private void allocateEndTasks() {
+        int firstMapWorker =
+                isReducerColocated ? 0 : configuration.getNumberOfReducers();
         for (int i = 0; i < workers.length; i++) {
             try {
-                OutputStream outputStream;
-                outputStream = workers[i].getOutputStream();
-                ObjectOutputStream objectOutputStream =
-                        new ObjectOutputStream(outputStream);
                 Task t = new Task(Task.TYPE.END, "e" + i);
-                objectOutputStream.writeObject(t);
-                objectOutputStream.flush();
+                if (i >= firstMapWorker && assignedReducers.length > 0) {
+                    t.setReducers(assignedReducers);
+                }
+                sendTask(workers[i], t);
 
             } catch (IOException e) {
                 LOG.fatal("Error while allocating end task", e);
@@ -323,45 +907,29 @@ public class ResourceManager {
     }
 
     /**
-     * Helper method to write the split file data to the output steam.
-     * 
-     * @param outputStream {@link OutputStream}
-     * @param splitFileData byte[] of the entire file split
+     * Sends a task to the given TaskTracker. The task is recorded by the monitor of the
+     * TaskTracker, so that it is marked as failed if the TaskTracker is lost
      * 
-     * @throws IOException when error writing to output stream
+     * @param connection {@link MasterEventLoop.Connection} of the TaskTracker
+     * @param task {@link Task}
+     * @throws IOException when the task cannot be serialized
      */
-    private void writeFileSplitToStream(
-            OutputStream outputStream,
-            byte[] splitFileData) throws IOException {
-        DataOutputStream dataOutStream = new DataOutputStream(outputStream);
-        // Write file name
-        String fileName = inputFileName + '_' + fileSplitId;
-        dataOutStream.writeUTF(fileName);
-        dataOutStream.flush();
-
-        // Write file length
-        dataOutStream.writeLong(splitFileData.length);
-        dataOutStream.flush();
-
-        // Write split data
-        dataOutStream.write(splitFileData, 0, splitFileData.length);
-        dataOutStream.flush();
-        fileSplitId++;
+    private void sendTask(MasterEventLoop.Connection connection, Task task)
+            throws IOException {
+        connection.getMonitor().taskAssigned(task);
+        eventLoop.send(connection, MessageChannel.encode(MessageChannel.TYPE.TASK, task));
     }
 
     /**
-     * Writes the given object to the given output stream
+     * Adds a task to the queue of tasks that are not complete. The task is added before
+     * it is sent, since the monitor threads remove it as soon as it completes
      * 
-     * @param outputStream {@link OutputStream}
-     * @param object {@link Object}
-     * @throws IOException when there is error writing to the stream
+     * @param task {@link Task}
      */
-    private void writeObjectToStream(OutputStream outputStream, Object object)
-            throws IOException {
-        ObjectOutputStream objectOutputStream =
-                new ObjectOutputStream(outputStream);
-        objectOutputStream.writeObject(object);
-        objectOutputStream.flush();
+    private void addToTaskQueue(Task task) {
+        synchronized (taskQueue) {
+            taskQueue.add(task);
+        }
     }
 
     /**
@@ -369,39 +937,52 @@ public class ResourceManager {
      */
     private void listenForUpdatesTillCompletion() {
         LOG.debug("Inside listenForUpdatesTillCompletion");
+        eventLoop.awaitCompletion();
+        LOG.info("all done!");
+    }
 
-        Thread[] taskUpdaterThreads = new Thread[workers.length];
-        launchTaskMonitorThreads(taskUpdaterThreads);
-
-        LOG.debug("Started monitoring threads");
-        for (int i = 0; i < taskUpdaterThreads.length; i++) {
-            try {
-                taskUpdaterThreads[i].join();
-                System.out.println(taskUpdaterThreads[i].getName()
-                        + " thread joined");
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-        System.out.println("all done!");
+    /**
+     * Starts the event loop that handles the connections to all the TaskTrackers. The
+     * loop is started before the connections are made, so that the job status is live
+     * during the allocation of the tasks. The frames queued for a TaskTracker are
+     * limited to a few splits, so that the input is split as fast as it is sent
+     * 
+     * @throws IOException when the event loop cannot be created
+     * @see MasterEventLoop
+     */
+    private void startEventLoop() throws IOException {
+        eventLoop =
+                new MasterEventLoop(jobStatus.getTrackerExpiryInterval(),
+                        getMaxQueuedBytes());
+        eventLoop.start();
+        LOG.debug("Started the event loop");
     }
 
     /**
-     * Launches a monitor thread for each TaskTracker. The task updater thread tracks the
-     * task completion status of each task.
+     * Get the number of bytes that can be queued for a TaskTracker, a few splits
      * 
-     * @see TaskUpdater
+     * @return maximum queued bytes per connection
+     */
+    private long getMaxQueuedBytes() {
+        return Math.max(MIN_QUEUED_BYTES_PER_WORKER, (long) MAX_QUEUED_SPLITS_PER_WORKER
+                * configuration.getSplitSize());
+    }
+
+    /**
+     * Writes the profile of the job, with the time spent in each phase per node, to the
+     * output path. A failure to write the profile does not fail the job
      * 
-     * @param allWorkers: empty array of thread which will be filled in this method
+     * @see JobProfile
      */
-    private void launchTaskMonitorThreads(Thread[] taskUpdaterThread) {
-        for (int i = 0; i < workers.length; i++) {
-            TaskCompletionMonitor taskMonitor =
-                    new TaskCompletionMonitor(workers[i], taskQueue);
-            taskUpdaterThread[i] =
-                    new Thread(taskMonitor, workers[i].getRemoteSocketAddress()
-                            .toString());
-            taskUpdaterThread[i].start();
+    private void writeJobProfile() {
+        File outputDir = new File(configuration.getOutputPath());
+        outputDir.mkdirs();
+        File profileFile = new File(outputDir, profileFileName);
+        try {
+            jobProfile.writeJson(profileFile);
+            LOG.info("Job profile written to " + profileFile.getAbsolutePath());
+        } catch (IOException e) {
+            LOG.error("Error while writing the job profile", e);
         }
     }
 }
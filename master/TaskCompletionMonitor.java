@@ -1,71 +1,150 @@
 package mr.master;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.PriorityQueue;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import mr.common.Counters;
+import mr.common.Heartbeat;
+import mr.common.MessageChannel;
 import mr.common.Task;
 import mr.common.Task.TYPE;
 
 /**
  * Monitors the completion of tasks for each worker. The successful completion
  * of all map/reduce tasks assigned to a particular worker is indicated by an
- * 'END' task. Once the 'END' task is received, the StatusMonitor thread comes
- * to a halt.
+ * 'END' task. Once the 'END' task is received, the connection to the worker is
+ * closed. The counters and the profile of every completed task are added to
+ * the job counters and the job profile, and the output file of every completed
+ * reduce task, or map task of a map-only job, is recorded, so that a chained job
+ * can read it on the same worker.
+ * 
+ * The worker also sends periodic heartbeats, which are used to update the live
+ * {@link JobStatus}. A worker that sends nothing for longer than the tracker expiry
+ * interval is considered lost, and the tasks it has not completed are marked as
+ * failed.
+ * 
+ * The heartbeats and the completed tasks are read as frames by the
+ * {@link MasterEventLoop}, which hands them over to the monitor of the worker.
  * 
  * 
  */
-public class TaskCompletionMonitor implements Runnable {
+public class TaskCompletionMonitor {
 
-	private final Socket socket;
 	private PriorityQueue<Task> taskQueue;
+	private Counters jobCounters;
+	private JobStatus jobStatus;
+	private JobProfile jobProfile;
+	private String trackerName;
+	private List<String> outputFiles;
+	private List<String> hotKeyOutputFiles;
+	// Ids of the tasks sent to the worker that are not complete, guarded by this
+	// object
+	private Set<String> pendingTasks = new LinkedHashSet<String>();
 	public static final Log LOG = LogFactory
 			.getLog(TaskCompletionMonitor.class);
 
-	public TaskCompletionMonitor(final Socket socket,
-			PriorityQueue<Task> taskQueue) {
-		this.socket = socket;
+	/**
+	 * Constructor
+	 * 
+	 * @param trackerName - address of the TaskTracker
+	 * @param taskQueue {@link PriorityQueue} of the tasks that are not complete
+	 * @param jobCounters {@link Counters} of the job, shared by all the monitors
+	 * @param jobStatus {@link JobStatus} of the job, shared by all the monitors
+	 * @param jobProfile {@link JobProfile} of the job, shared by all the monitors
+	 * @param outputFiles {@link List} to which the paths of the output files
+	 *            written by the reduce tasks of the worker, or by its map tasks
+	 *            when the job has no reducers, are added
+	 * @param hotKeyOutputFiles {@link List} to which the paths of the files of
+	 *            the partial results of the hot keys, written by the reduce
+	 *            tasks of the worker, are added
+	 */
+	public TaskCompletionMonitor(String trackerName,
+			PriorityQueue<Task> taskQueue, Counters jobCounters,
+			JobStatus jobStatus, JobProfile jobProfile,
+			List<String> outputFiles, List<String> hotKeyOutputFiles) {
+		this.trackerName = trackerName;
 		this.taskQueue = taskQueue;
+		this.jobCounters = jobCounters;
+		this.jobStatus = jobStatus;
+		this.jobProfile = jobProfile;
+		this.outputFiles = outputFiles;
+		this.hotKeyOutputFiles = hotKeyOutputFiles;
+	}
+
+	/**
+	 * Records a task sent to the worker, which fails if the worker is lost
+	 * before completing it
+	 * 
+	 * @param task {@link Task} sent to the worker
+	 */
+	public synchronized void taskAssigned(Task task) {
+		pendingTasks.add(task.getTaskId());
+	}
+
+	/**
+	 * Marks the tasks of the worker that are not complete as failed, once the
+	 * connection to the worker is lost
+	 * 
+	 * @return ids of the failed tasks
+	 */
+	public List<String> connectionLost() {
+		List<String> failedTasks;
+		synchronized (this) {
+			failedTasks = new ArrayList<String>(pendingTasks);
+			pendingTasks.clear();
+		}
+		jobStatus.tasksFailed(trackerName, failedTasks);
+		LOG.error("Tasks of " + trackerName + " failed: " + failedTasks);
+		return failedTasks;
 	}
 
-	@Override
-	public void run() {
-		InputStream inputStream = null;
-		while (true) {
-			try {
-				inputStream = socket.getInputStream();
-				// Blocks until a completed Task is sent by the worker. Once it
-				// is received, the Task is removed from the task queue
-				ObjectInputStream objectInputStream = new ObjectInputStream(
-						inputStream);
-				Task task = (Task) objectInputStream.readObject();
-				synchronized (taskQueue) {
-					taskQueue.remove(task);
-					LOG.debug("Task " + task.getTaskId() + " completed");
-				}
-				if (task.getType() == TYPE.END) {
-					break;
-				}
-			} catch (IOException e) {
-				LOG.fatal("Error while monitoring task completion", e);
-				throw new RuntimeException(e);
-			} catch (ClassNotFoundException e) {
-				LOG.fatal("Error while monitoring task completion", e);
-				throw new RuntimeException(e);
-			}
+	/**
+	 * Processes a heartbeat or a completed Task sent by the worker. Once a
+	 * Task is received, it is removed from the task queue
+	 * 
+	 * @param type {@link MessageChannel.TYPE} of the frame
+	 * @param payload - payload of the frame
+	 * @return true if the END task was received, otherwise false
+	 * @throws IOException when the message cannot be read
+	 */
+	public boolean messageReceived(MessageChannel.TYPE type, byte[] payload)
+			throws IOException {
+		if (type == MessageChannel.TYPE.HEARTBEAT) {
+			jobStatus.updateHeartbeat(trackerName,
+					MessageChannel.decode(payload, new Heartbeat()));
+			return false;
+		} else if (type != MessageChannel.TYPE.COMPLETED_TASK) {
+			LOG.warn("Unexpected message " + type + " from " + trackerName);
+			return false;
+		}
+		Task task = MessageChannel.decode(payload, new Task());
+		synchronized (this) {
+			pendingTasks.remove(task.getTaskId());
+		}
+		jobStatus.taskCompleted(task);
+		synchronized (taskQueue) {
+			taskQueue.remove(task);
+			LOG.debug("Task " + task.getTaskId() + " completed");
+		}
+		if (task.getCounters() != null) {
+			jobCounters.merge(task.getCounters());
+		}
+		if (task.getProfile() != null) {
+			jobProfile.addTaskProfile(trackerName, task.getProfile());
+		}
+		if (task.getOutputPath() != null) {
+			outputFiles.add(task.getOutputPath());
 		}
-		// close connection on exit
-		if (inputStream != null) {
-			try {
-				inputStream.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+		if (task.getHotKeyOutputPath() != null) {
+			hotKeyOutputFiles.add(task.getHotKeyOutputPath());
 		}
+		return task.getType() == TYPE.END;
 	}
 }
@@ -11,7 +11,8 @@ import mr.common.SystemSpecs;
 /**
  * Custom registry service that allows worker nodes to register/unregister their
  * InetAddress. It also allows any requesting service to retrieve the addresses of all
- * currently registered nodes.
+ * currently registered nodes. A worker that misses {@link #EXPIRY_HEARTBEATS}
+ * heartbeats in a row is considered dead and is removed.
  * 
  * @author Magesh Ramachandran
  * @author Mansoor Ahmed Khan
@@ -19,6 +20,9 @@ import mr.common.SystemSpecs;
  */
 public class Registry {
 
+    // Number of missed heartbeats after which a worker is removed
+    public static final int EXPIRY_HEARTBEATS = 3;
+
     private Map<SocketAddress, SystemSpecs> workers =
             new HashMap<SocketAddress, SystemSpecs>();
 
@@ -38,7 +42,9 @@ public class Registry {
         RegistryListener incoming =
                 new RegistryListener(workers, cfg.getRegistryListenerPort());
         RegistryService outgoing =
-                new RegistryService(workers, cfg.getRegistryRequesterPort());
+                new RegistryService(workers, cfg.getRegistryRequesterPort(),
+                        (long) EXPIRY_HEARTBEATS
+                                * cfg.getRegistryHeartbeatInterval());
         Thread incomingThread = new Thread(incoming);
         Thread outgoingThread = new Thread(outgoing);
         incomingThread.start();
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
@@ -22,7 +23,8 @@ import static mr.common.MRUtility.sleep;
 /**
  * Listener for registry. Waits for incoming connections and stores the ip address of the
  * registering machines along with their system specifications in a map which is shared
- * with the servicer thread
+ * with the servicer thread. The registered workers send periodic heartbeats with their
+ * current load, which keep their entry alive.
  * 
  * @author Magesh Ramachandran
  * @author Mansoor Ahmed Khan
@@ -47,7 +49,11 @@ public class RegistryListener implements Runnable {
      * 
      * 1) Register - registers the connected node with the registry
      * 2) Unregister - unregisters the connected node from the registry
-     * 3) Ping - prints the socket address of the connected node
+     * 3) Heartbeat - updates the load and the last heartbeat time of the connected node
+     * 4) Ping - prints the socket address of the connected node
+     * 
+     * Unregister and heartbeat messages are sent on new connections, so the node
+     * identifies itself by the port it listens on for the ApplicationMaster
      * </pre>
      */
     @Override
@@ -68,7 +74,9 @@ public class RegistryListener implements Runnable {
                 if (NetworkProtocol.REGISTER.equals(mode)) {
                     register(inputStream, outputStream, socketAddress);
                 } else if (NetworkProtocol.UNREGISTER.equals(mode)) {
-                    unregister(socketAddress);
+                    unregister(getWorkerAddress(socket, inputStream));
+                } else if (NetworkProtocol.HEARTBEAT.equals(mode)) {
+                    heartbeat(getWorkerAddress(socket, inputStream), inputStream);
                 } else if (NetworkProtocol.PING.equals(mode)) {
                     ping(socketAddress);
                 }
@@ -106,11 +114,10 @@ public class RegistryListener implements Runnable {
                 new ObjectInputStream(inputStream);
 
         SystemSpecs workerSpecs = (SystemSpecs) objectInputStream.readObject();
+        workerSpecs.setLastHeartbeat(System.currentTimeMillis());
 
         synchronized (clients) {
-            if (!clients.containsKey(socketAddress)) {
-                clients.put(socketAddress, workerSpecs);
-            }
+            clients.put(socketAddress, workerSpecs);
         }
 
         DataOutputStream dataOutStream = new DataOutputStream(outputStream);
@@ -131,6 +138,49 @@ public class RegistryListener implements Runnable {
         }
     }
 
+    /**
+     * Updates the specifications of the given worker with the ones read from the stream,
+     * which contain its current load. A worker that was not registered (or whose entry
+     * has expired) is registered again
+     * 
+     * @param socketAddress - {@link SocketAddress} of the worker
+     * @param inputStream {@link InputStream}
+     * @throws IOException when there is an error while reading from stream
+     * @throws ClassNotFoundException if the class corresponding to the object read from
+     *             stream is not available
+     */
+    private void heartbeat(SocketAddress socketAddress, InputStream inputStream)
+            throws IOException,
+            ClassNotFoundException {
+        ObjectInputStream objectInputStream =
+                new ObjectInputStream(inputStream);
+
+        SystemSpecs workerSpecs = (SystemSpecs) objectInputStream.readObject();
+        workerSpecs.setLastHeartbeat(System.currentTimeMillis());
+
+        synchronized (clients) {
+            if (clients.put(socketAddress, workerSpecs) == null) {
+                LOG.info("Worker " + socketAddress + " registered by heartbeat");
+            }
+        }
+    }
+
+    /**
+     * Get the address a worker is registered with, from the ip address of the connection
+     * and the port read from the stream
+     * 
+     * @param socket {@link Socket} connection with the worker
+     * @param inputStream {@link InputStream}
+     * @return {@link SocketAddress} of the worker
+     * @throws IOException if there is an error reading from stream
+     */
+    private SocketAddress getWorkerAddress(Socket socket, InputStream inputStream)
+            throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        int port = dataInputStream.readInt();
+        return new InetSocketAddress(socket.getInetAddress(), port);
+    }
+
     /**
      * Get the mode of operation from the stream. The mode is represented by a String.
      * 
@@ -10,6 +10,12 @@ import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import mr.common.SystemSpecs;
@@ -17,7 +23,9 @@ import static mr.common.MRUtility.sleep;
 
 /**
  * Service provider for registry. Waits for incoming connections and serves the worker
- * details and specifications to the requester
+ * details and specifications to the requester. Only the live workers are served, ordered
+ * by their available capacity; the workers that have not sent a heartbeat within the
+ * expiry interval are removed from the registry.
  * 
  * @author Magesh Ramachandran
  * @author Mansoor Ahmed Khan
@@ -26,11 +34,22 @@ import static mr.common.MRUtility.sleep;
 public class RegistryService implements Runnable {
     private ServerSocket serverSocket;
     private Map<SocketAddress, SystemSpecs> workerAddressMap;
+    private long expiryInterval;
 
-    public RegistryService(Map<SocketAddress, SystemSpecs> workers, int port)
-            throws IOException {
+    /**
+     * Constructor
+     * 
+     * @param workers - map of the registered workers, shared with the listener thread
+     * @param port - port on which the requests are served
+     * @param expiryInterval - time after the last heartbeat of a worker at which it is
+     *            removed from the registry, in milliseconds
+     * @throws IOException when the server socket cannot be created
+     */
+    public RegistryService(Map<SocketAddress, SystemSpecs> workers, int port,
+            long expiryInterval) throws IOException {
         this.serverSocket = new ServerSocket(port);
         this.workerAddressMap = workers;
+        this.expiryInterval = expiryInterval;
     }
 
     /**
@@ -78,7 +97,8 @@ public class RegistryService implements Runnable {
     }
 
     /**
-     * Write the details of the nodes registered to the given output stream
+     * Write the details of the live nodes registered to the given output stream, ordered
+     * by available capacity (highest first)
      * 
      * @param outputStream {@link OutputStream}
      * @throws IOException when there is an error writing to the outputStream
@@ -86,11 +106,63 @@ public class RegistryService implements Runnable {
     private void sendRegisteredNodeAddress(OutputStream outputStream)
             throws IOException {
         System.out.println("about to send the info to app master");
+        Map<SocketAddress, SystemSpecs> liveWorkers = getLiveWorkers();
+        ObjectOutputStream out = new ObjectOutputStream(outputStream);
+        out.writeObject(liveWorkers);
+        out.flush();
+    }
+
+    /**
+     * Removes the expired workers from the registry and returns the others, ordered by
+     * available capacity and then by free memory
+     * 
+     * @return {@link LinkedHashMap} of the live workers
+     */
+    private Map<SocketAddress, SystemSpecs> getLiveWorkers() {
+        List<Map.Entry<SocketAddress, SystemSpecs>> entries =
+                new ArrayList<Map.Entry<SocketAddress, SystemSpecs>>();
+        long now = System.currentTimeMillis();
         synchronized (workerAddressMap) {
-            ObjectOutputStream out = new ObjectOutputStream(outputStream);
-            out.writeObject(workerAddressMap);
-            out.flush();
+            Iterator<Map.Entry<SocketAddress, SystemSpecs>> iterator =
+                    workerAddressMap.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<SocketAddress, SystemSpecs> entry = iterator.next();
+                if (now - entry.getValue().getLastHeartbeat() > expiryInterval) {
+                    System.out.println("Worker " + entry.getKey()
+                            + " has expired");
+                    iterator.remove();
+                } else {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        Collections.sort(entries,
+                new Comparator<Map.Entry<SocketAddress, SystemSpecs>>() {
+                    @Override
+                    public int compare(
+                            Map.Entry<SocketAddress, SystemSpecs> entry1,
+                            Map.Entry<SocketAddress, SystemSpecs> entry2) {
+                        SystemSpecs specs1 = entry1.getValue();
+                        SystemSpecs specs2 = entry2.getValue();
+                        int diff =
+                                Double.compare(specs2.getAvailableCapacity(),
+                                        specs1.getAvailableCapacity());
+                        if (diff == 0) {
+                            diff =
+                                    Long.compare(specs2.getFreeMemory(),
+                                            specs1.getFreeMemory());
+                        }
+                        return diff;
+                    }
+                });
+
+        Map<SocketAddress, SystemSpecs> liveWorkers =
+                new LinkedHashMap<SocketAddress, SystemSpecs>();
+        for (Map.Entry<SocketAddress, SystemSpecs> entry : entries) {
+            liveWorkers.put(entry.getKey(), entry.getValue());
         }
+        return liveWorkers;
     }
 
 }
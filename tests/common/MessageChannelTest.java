@@ -0,0 +1,77 @@
+package mr.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the file frames of {@link MessageChannel}, over a loopback connection
+ */
+public class MessageChannelTest {
+
+    private File directory;
+    private MessageChannel sender;
+    private MessageChannel receiver;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("channel").toFile();
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        ServerSocket serverSocket = new ServerSocket(0, 1, loopback);
+        sender =
+                new MessageChannel(new Socket(loopback, serverSocket.getLocalPort()));
+        receiver = new MessageChannel(serverSocket.accept());
+        serverSocket.close();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        sender.sendFile(MessageChannel.TYPE.SPLIT, "split_0", "first".getBytes());
+        sender.sendFile(MessageChannel.TYPE.SPLIT, "split_0", "second".getBytes());
+
+        assertEquals(MessageChannel.TYPE.SPLIT, receiver.readFrame());
+        receiver.readFile(directory.getPath());
+        assertEquals(MessageChannel.TYPE.SPLIT, receiver.readFrame());
+        File file = receiver.readFile(directory.getPath());
+        assertArrayEquals("second".getBytes(), Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testFileInParts() throws IOException {
+        sender.sendFile(MessageChannel.TYPE.SPLIT_PART, "split_0", "a".getBytes());
+        sender.sendFile(MessageChannel.TYPE.SPLIT_PART, "split_0", "bc".getBytes());
+        sender.sendFile(MessageChannel.TYPE.SPLIT, "split_0", "def".getBytes());
+
+        // Read as the split of a map task is received by the TaskTracker
+        MessageChannel.TYPE type = receiver.readFrame();
+        boolean append = false;
+        while (type == MessageChannel.TYPE.SPLIT_PART) {
+            receiver.readFile(directory.getPath(), append);
+            append = true;
+            type = receiver.readFrame();
+        }
+        assertEquals(MessageChannel.TYPE.SPLIT, type);
+        File file = receiver.readFile(directory.getPath(), append);
+        assertArrayEquals("abcdef".getBytes(), Files.readAllBytes(file.toPath()));
+    }
+}
@@ -0,0 +1,126 @@
+package mr.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import mr.common.Configuration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the lookups of {@link IndexedFileReader} in a file written by
+ * {@link IndexedFileOutputFormat}
+ */
+public class IndexedFileReaderTest {
+
+    private static final String DUPLICATE_KEY = "k00500";
+    private static final int DUPLICATES = 25;
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("indexed").toFile();
+        file = new File(directory, "part_0");
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        writeFile(getKeys());
+        IndexedFileReader<Text, IntWritable> reader =
+                new IndexedFileReader<Text, IntWritable>(file);
+        for (int i = 0; i < 2000; i++) {
+            IntWritable value = reader.get(new Text(String.format("k%05d", i)));
+            if (i % 2 == 0) {
+                assertEquals(i, value.getValue());
+            } else {
+                assertNull(value);
+            }
+        }
+        assertNull(reader.get(new Text("a")));
+        assertNull(reader.get(new Text("z")));
+        reader.close();
+    }
+
+    @Test
+    public void testGetValuesAcrossBlocks() throws IOException {
+        writeFile(getKeys());
+        IndexedFileReader<Text, IntWritable> reader =
+                new IndexedFileReader<Text, IntWritable>(file);
+        List<IntWritable> values = reader.getValues(new Text(DUPLICATE_KEY));
+        assertEquals(DUPLICATES, values.size());
+        for (IntWritable value : values) {
+            assertEquals(500, value.getValue());
+        }
+        assertTrue(reader.getValues(new Text("k00501")).isEmpty());
+        reader.close();
+    }
+
+    @Test
+    public void testComparator() throws IOException {
+        Comparator<Text> reverse = Collections.reverseOrder();
+        List<String> keys = getKeys();
+        Collections.reverse(keys);
+        writeFile(keys);
+        IndexedFileReader<Text, IntWritable> reader =
+                new IndexedFileReader<Text, IntWritable>(file, reverse);
+        assertEquals(0, reader.get(new Text("k00000")).getValue());
+        assertEquals(1998, reader.get(new Text("k01998")).getValue());
+        assertEquals(DUPLICATES, reader.getValues(new Text(DUPLICATE_KEY)).size());
+        assertNull(reader.get(new Text("k00001")));
+        reader.close();
+    }
+
+    /**
+     * Get the sorted keys k00000, k00002, ... k01998, with DUPLICATES occurrences of
+     * DUPLICATE_KEY
+     */
+    private static List<String> getKeys() {
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(String.format("k%05d", i * 2));
+        }
+        for (int i = 1; i < DUPLICATES; i++) {
+            keys.add(DUPLICATE_KEY);
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Writes the given keys with an index entry every 10 records, each key with its
+     * number as the value
+     */
+    private void writeFile(List<String> keys) throws IOException {
+        Configuration configuration = new Configuration();
+        configuration.setIndexInterval(10);
+        RecordWriter<Text, IntWritable> writer =
+                new IndexedFileOutputFormat<Text, IntWritable>().getRecordWriter(
+                        configuration, file);
+        for (String key : keys) {
+            writer.write(new Text(key),
+                    new IntWritable(Integer.parseInt(key.substring(1))));
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,113 @@
+package mr.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests of the block-compressed binary key/value file
+ */
+public class KeyValueFileTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] data = writeRecords(10000, 4096);
+        KeyValueFile.Reader<Text, IntWritable> reader =
+                new KeyValueFile.Reader<Text, IntWritable>(
+                        new ByteArrayInputStream(data));
+        assertEquals(10000, readRecords(reader, 0));
+        reader.close();
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        KeyValueFile.Reader<Text, IntWritable> reader =
+                new KeyValueFile.Reader<Text, IntWritable>(new ByteArrayInputStream(
+                        writeRecords(0, 4096)));
+        assertFalse(reader.nextKeyValue());
+    }
+
+    @Test
+    public void testBlockBoundary() throws IOException {
+        byte[] data = writeRecords(10000, 4096);
+        assertEquals(data.length, KeyValueFile.getBlockBoundary(data));
+
+        // A split ending inside a block ends at the start of that block
+        int half = data.length / 2;
+        int boundary = KeyValueFile.getBlockBoundary(Arrays.copyOf(data, half));
+        assertTrue(boundary > 0 && boundary <= half);
+        assertEquals(boundary,
+                KeyValueFile.getBlockBoundary(Arrays.copyOf(data, boundary)));
+        assertEquals(0, KeyValueFile.getBlockBoundary(Arrays.copyOf(data, 10)));
+    }
+
+    @Test
+    public void testSplitsAreReadOnTheirOwn() throws IOException {
+        byte[] data = writeRecords(10000, 4096);
+        int boundary =
+                KeyValueFile.getBlockBoundary(Arrays.copyOf(data, data.length / 2));
+
+        KeyValueFile.Reader<Text, IntWritable> first =
+                new KeyValueFile.Reader<Text, IntWritable>(new ByteArrayInputStream(data,
+                        0, boundary));
+        int records = readRecords(first, 0);
+        KeyValueFile.Reader<Text, IntWritable> second =
+                new KeyValueFile.Reader<Text, IntWritable>(new ByteArrayInputStream(data,
+                        boundary, data.length - boundary));
+        assertEquals(10000, readRecords(second, records));
+    }
+
+    @Test
+    public void testMaxRecordsPerBlock() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KeyValueFile.Writer<Text, IntWritable> writer =
+                new KeyValueFile.Writer<Text, IntWritable>(out,
+                        KeyValueFile.DEFAULT_BLOCK_SIZE, 10);
+        for (int i = 0; i < 25; i++) {
+            writer.write(new Text("key" + i), new IntWritable(i));
+        }
+        assertEquals(5, writer.getRecordsInBlock());
+        writer.close();
+        KeyValueFile.Reader<Text, IntWritable> reader =
+                new KeyValueFile.Reader<Text, IntWritable>(new ByteArrayInputStream(
+                        out.toByteArray()));
+        assertEquals(25, readRecords(reader, 0));
+    }
+
+    /**
+     * Writes the records ("key" + i, i) for i in [0, records)
+     */
+    private static byte[] writeRecords(int records, int blockSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KeyValueFile.Writer<Text, IntWritable> writer =
+                new KeyValueFile.Writer<Text, IntWritable>(out, blockSize);
+        for (int i = 0; i < records; i++) {
+            writer.write(new Text("key" + i), new IntWritable(i));
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads the records, checking that they follow the given first record
+     * 
+     * @return number of the record following the last record read
+     */
+    private static int readRecords(KeyValueFile.Reader<Text, IntWritable> reader,
+            int first) throws IOException {
+        int next = first;
+        while (reader.nextKeyValue()) {
+            assertEquals("key" + next, reader.getCurrentKey().getValue());
+            assertEquals(next, reader.getCurrentValue().getValue());
+            next++;
+        }
+        return next;
+    }
+}
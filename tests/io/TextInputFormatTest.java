@@ -0,0 +1,52 @@
+package mr.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests of the line records of {@link TextInputFormat}
+ */
+public class TextInputFormatTest {
+
+    private TextInputFormat inputFormat = new TextInputFormat();
+
+    @Test
+    public void testSplitBoundary() {
+        assertEquals(4, inputFormat.getSplitBoundary("a\nb\nc".getBytes()));
+        assertEquals(2, inputFormat.getSplitBoundary("a\n".getBytes()));
+        assertEquals(0, inputFormat.getSplitBoundary("abc".getBytes()));
+        assertEquals(0, inputFormat.getSplitBoundary(new byte[0]));
+    }
+
+    @Test
+    public void testBlankLinesAreSkipped() throws IOException {
+        RecordReader<LongWritable, Text> reader =
+                inputFormat.getRecordReader(null,
+                        new ByteArrayInputStream("a\n\n\nb\n\nc".getBytes()), 100);
+        assertTrue(reader.nextKeyValue());
+        assertEquals("a", reader.getCurrentValue().getValue());
+        assertEquals(100L, reader.getCurrentKey().getValue());
+        assertTrue(reader.nextKeyValue());
+        assertEquals("b", reader.getCurrentValue().getValue());
+        assertEquals(104L, reader.getCurrentKey().getValue());
+        assertTrue(reader.nextKeyValue());
+        assertEquals("c", reader.getCurrentValue().getValue());
+        assertFalse(reader.nextKeyValue());
+        reader.close();
+    }
+
+    @Test
+    public void testOnlyBlankLines() throws IOException {
+        RecordReader<LongWritable, Text> reader =
+                inputFormat.getRecordReader(null,
+                        new ByteArrayInputStream("\n\n\n".getBytes()), 0);
+        assertFalse(reader.nextKeyValue());
+        reader.close();
+    }
+}
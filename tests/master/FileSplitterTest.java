@@ -0,0 +1,333 @@
+package mr.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import mr.io.TextInputFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the splits of the input files, directories and glob patterns of a job
+ */
+public class FileSplitterTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("splits").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testLargeFileIsSplitAtLineEnds() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 2000; i++) {
+            lines.add("line" + i);
+        }
+        File file = writeFile("input.txt", join(lines));
+
+        FileSplitter splitter = newSplitter(file.getPath(), 1024);
+        List<String> read = new ArrayList<String>();
+        int splits = 0;
+        while (splitter.hasMoreSplits()) {
+            byte[] split = splitter.getNextSplit();
+            assertTrue(split.length <= 1024);
+            assertEquals('\n', split[split.length - 1]);
+            read.addAll(getLines(split));
+            splits++;
+        }
+        assertEquals(lines, read);
+        assertTrue(splits >= file.length() / 1024);
+    }
+
+    @Test
+    public void testRecordLongerThanSplitSize() throws IOException {
+        char[] longLine = new char[10000];
+        Arrays.fill(longLine, 'x');
+        List<String> lines =
+                Arrays.asList("first", new String(longLine), "last", "", "after blank");
+        writeFile("input.txt", join(lines));
+
+        assertEquals(lines, readAll(newSplitter(directory.getPath(), 1024)));
+    }
+
+    @Test
+    public void testSmallFilesAreCombined() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (int file = 0; file < 20; file++) {
+            List<String> fileLines = new ArrayList<String>();
+            for (int i = 0; i < 10; i++) {
+                fileLines.add("f" + file + "l" + i);
+            }
+            writeFile(String.format("log%02d.txt", file), join(fileLines));
+            lines.addAll(fileLines);
+        }
+
+        FileSplitter splitter = newSplitter(directory.getPath(), 1024);
+        List<String> read = new ArrayList<String>();
+        int splits = 0;
+        while (splitter.hasMoreSplits()) {
+            read.addAll(getLines(splitter.getNextSplit()));
+            splits++;
+        }
+        assertEquals(lines, read);
+        assertTrue("20 files in " + splits + " splits", splits < 5);
+    }
+
+    @Test
+    public void testIncompleteLastRecordEndsTheSplit() throws IOException {
+        writeFile("a.txt", "a1\na2");
+        writeFile("b.txt", "b1\n");
+
+        FileSplitter splitter = newSplitter(directory.getPath(), 1024);
+        assertEquals(Arrays.asList("a1", "a2"), getLines(splitter.getNextSplit()));
+        assertEquals(Arrays.asList("b1"), getLines(splitter.getNextSplit()));
+        assertFalse(splitter.hasMoreSplits());
+    }
+
+    @Test
+    public void testHiddenAndEmptyFilesAreSkipped() throws IOException {
+        writeFile("data.txt", "data\n");
+        writeFile("empty.txt", "");
+        writeFile("_SUCCESS", "success\n");
+        writeFile(".data.txt.crc", "crc\n");
+
+        assertEquals(2, FileSplitter.listInputFiles(directory.getPath()).size());
+        assertEquals(Arrays.asList("data"),
+                readAll(newSplitter(directory.getPath(), 1024)));
+    }
+
+    @Test
+    public void testGlob() throws IOException {
+        writeFile("log1.txt", "log1\n");
+        writeFile("log2.txt", "log2\n");
+        writeFile("other.dat", "other\n");
+        String glob = new File(directory, "log*.txt").getPath();
+
+        assertEquals(2, FileSplitter.listInputFiles(glob).size());
+        assertEquals(Arrays.asList("log1", "log2"), readAll(newSplitter(glob, 1024)));
+        assertEquals(directory.getName(), FileSplitter.getInputName(glob));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNoInputFile() {
+        FileSplitter.listInputFiles(new File(directory, "*.txt").getPath());
+    }
+
+    @Test
+    public void testBlockedGzipIsSplitBetweenMembers() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        for (int member = 0; member < 20; member++) {
+            List<String> memberLines = new ArrayList<String>();
+            for (int i = 0; i < 200; i++) {
+                memberLines.add("m" + member + "l" + i);
+            }
+            lines.addAll(memberLines);
+            file.write(getBlockedGzipMember(join(memberLines).getBytes()));
+        }
+        writeFile("input.gz", file.toByteArray());
+        int splitSize = file.size() / 5;
+
+        FileSplitter splitter = newSplitter(directory.getPath(), splitSize);
+        List<String> read = new ArrayList<String>();
+        long length = 0;
+        int splits = 0;
+        while (splitter.hasMoreSplits()) {
+            assertTrue(splitter.isNextSplitGzip());
+            long splitLength = splitter.nextGzipSplit();
+            byte[] split = readGzipSplit(splitter);
+            assertEquals(splitLength, split.length);
+            assertTrue(splitLength >= splitSize || !splitter.hasMoreSplits());
+            read.addAll(getLines(decompress(split)));
+            length += splitLength;
+            splits++;
+        }
+        assertEquals(lines, read);
+        assertEquals(file.size(), length);
+        assertTrue(splits >= 4);
+    }
+
+    @Test
+    public void testGzipFileWithoutBlockSizesIsOneSplit() throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        for (int member = 0; member < 3; member++) {
+            GZIPOutputStream out = new GZIPOutputStream(file);
+            out.write(("member" + member + "\n").getBytes());
+            out.finish();
+        }
+        writeFile("input.gz", file.toByteArray());
+
+        FileSplitter splitter = newSplitter(directory.getPath(), 10);
+        assertTrue(splitter.isNextSplitGzip());
+        assertEquals(file.size(), splitter.nextGzipSplit());
+        byte[] split = readGzipSplit(splitter);
+        assertFalse(splitter.hasMoreSplits());
+        assertEquals(Arrays.asList("member0", "member1", "member2"),
+                getLines(decompress(split)));
+    }
+
+    @Test
+    public void testGzipSplitIsReadInChunks() throws IOException {
+        byte[] data = new byte[FileSplitter.GZIP_CHUNK_SIZE * 3 / 2];
+        new Random(1).nextBytes(data);
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(file);
+        out.write(data);
+        out.close();
+        writeFile("input.gz", file.toByteArray());
+
+        FileSplitter splitter = newSplitter(directory.getPath(), 1024);
+        splitter.nextGzipSplit();
+        assertEquals(FileSplitter.GZIP_CHUNK_SIZE, splitter.readGzipChunk().length);
+        assertTrue(splitter.hasMoreGzipChunks());
+        assertEquals(file.size() - FileSplitter.GZIP_CHUNK_SIZE,
+                splitter.readGzipChunk().length);
+        assertFalse(splitter.hasMoreGzipChunks());
+        assertNull(splitter.readGzipChunk());
+        assertFalse(splitter.hasMoreSplits());
+    }
+
+    @Test
+    public void testGzipAndTextFiles() throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(file);
+        out.write("compressed\n".getBytes());
+        out.close();
+        writeFile("a.gz", file.toByteArray());
+        writeFile("b.txt", "text\n");
+
+        FileSplitter splitter = newSplitter(directory.getPath(), 1024);
+        assertTrue(splitter.isNextSplitGzip());
+        splitter.nextGzipSplit();
+        assertEquals(Arrays.asList("compressed"),
+                getLines(decompress(readGzipSplit(splitter))));
+        assertFalse(splitter.isNextSplitGzip());
+        assertEquals(Arrays.asList("text"), getLines(splitter.getNextSplit()));
+        assertFalse(splitter.hasMoreSplits());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGzipSplitIsNotReturnedWhole() throws IOException {
+        writeFile("a.gz", new byte[] { 0x1f, (byte) 0x8b });
+        newSplitter(directory.getPath(), 1024).getNextSplit();
+    }
+
+    /**
+     * Get a gzip member holding the given data, whose header records the compressed
+     * length of the member in a 'BC' extra subfield, as written by bgzip
+     */
+    private static byte[] getBlockedGzipMember(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] compressed = new byte[data.length + 1024];
+        int compressedLength = deflater.deflate(compressed);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        // Length of the member minus 1: header, extra field, data and trailer
+        int blockSize = 18 + compressedLength + 8 - 1;
+
+        ByteArrayOutputStream member = new ByteArrayOutputStream();
+        member.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff,
+                6, 0, 'B', 'C', 2, 0, (byte) blockSize, (byte) (blockSize >> 8) }, 0, 18);
+        member.write(compressed, 0, compressedLength);
+        writeIntLE(member, (int) crc.getValue());
+        writeIntLE(member, data.length);
+        return member.toByteArray();
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        for (int i = 0; i < 4; i++) {
+            out.write(value >>> (8 * i));
+        }
+    }
+
+    private static byte[] readGzipSplit(FileSplitter splitter) throws IOException {
+        ByteArrayOutputStream split = new ByteArrayOutputStream();
+        byte[] chunk;
+        while ((chunk = splitter.readGzipChunk()) != null) {
+            split.write(chunk);
+        }
+        return split.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] split) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(split));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) > 0) {
+            out.write(buffer, 0, bytesRead);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private FileSplitter newSplitter(String inputPath, int splitSize) {
+        return new FileSplitter(inputPath, splitSize, new TextInputFormat());
+    }
+
+    private File writeFile(String name, String content) throws IOException {
+        return writeFile(name, content.getBytes());
+    }
+
+    private File writeFile(String name, byte[] content) throws IOException {
+        File file = new File(directory, name);
+        OutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+        return file;
+    }
+
+    private static String join(List<String> lines) {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static List<String> getLines(byte[] split) {
+        return Arrays.asList(new String(split).split("\n"));
+    }
+
+    private static List<String> readAll(FileSplitter splitter) {
+        List<String> lines = new ArrayList<String>();
+        while (splitter.hasMoreSplits()) {
+            lines.addAll(getLines(splitter.getNextSplit()));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,137 @@
+package mr.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import mr.common.Configuration;
+import mr.common.Histogram;
+import mr.io.IntWritable;
+import mr.io.Text;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the background merge of the map output segments received by a reduce task
+ */
+public class SegmentMergerTest {
+
+    private static final int MERGE_FACTOR = 4;
+
+    private File directory;
+    private SegmentMerger<Text, IntWritable> merger;
+    private Thread mergerThread;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("segments").toFile();
+        merger =
+                new SegmentMerger<Text, IntWritable>(directory.getPath(), MERGE_FACTOR,
+                        KeyComparators.<Text> getSortComparator(new Configuration()),
+                        new Histogram());
+        mergerThread = new Thread(merger);
+        mergerThread.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        merger.setShuffleComplete();
+        mergerThread.join();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testMergesSegmentsIntoSortedRuns() throws Exception {
+        Random random = new Random(1);
+        List<String> expected = new ArrayList<String>();
+        for (int segment = 0; segment < 10; segment++) {
+            List<String> keys = new ArrayList<String>();
+            for (int i = 0; i < 100; i++) {
+                keys.add("k" + random.nextInt(300));
+            }
+            Collections.sort(keys);
+            expected.addAll(keys);
+            merger.addSegment(writeSegment("complete" + segment + "_0_0", keys));
+        }
+        merger.setShuffleComplete();
+        mergerThread.join();
+        merger.checkForFailure();
+
+        File[] runs = directory.listFiles();
+        assertTrue("at most merge factor - 1 runs left", runs.length < MERGE_FACTOR);
+        List<String> merged = new ArrayList<String>();
+        for (File run : runs) {
+            assertFalse(run.getName().endsWith(SegmentMerger.IN_PROGRESS_SUFFIX));
+            List<String> keys = readSegment(run);
+            List<String> sorted = new ArrayList<String>(keys);
+            Collections.sort(sorted);
+            assertEquals(sorted, keys);
+            merged.addAll(keys);
+        }
+        Collections.sort(expected);
+        Collections.sort(merged);
+        assertEquals(expected, merged);
+    }
+
+    @Test
+    public void testFailedMergeIsReported() throws Exception {
+        for (int segment = 0; segment < MERGE_FACTOR; segment++) {
+            File file = new File(directory, "complete" + segment + "_0_0");
+            FileOutputStream out = new FileOutputStream(file);
+            out.write("not a segment".getBytes());
+            out.close();
+            merger.addSegment(file);
+        }
+        merger.setShuffleComplete();
+        mergerThread.join();
+        try {
+            merger.checkForFailure();
+            fail("The failed merge was not reported");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Writes a segment of the given sorted keys, each with the value 1
+     */
+    private File writeSegment(String name, List<String> keys) throws IOException {
+        File file = new File(directory, name);
+        SegmentWriter<Text, IntWritable> writer =
+                new SegmentWriter<Text, IntWritable>(file);
+        for (String key : keys) {
+            writer.append(new Text(key), new IntWritable(1));
+        }
+        writer.close();
+        return file;
+    }
+
+    /**
+     * Reads the keys of a segment
+     */
+    private List<String> readSegment(File file) throws IOException {
+        List<String> keys = new ArrayList<String>();
+        SegmentReader<Text, IntWritable> reader =
+                new SegmentReader<Text, IntWritable>(file);
+        while (reader.next()) {
+            keys.add(reader.getKey().getValue());
+        }
+        reader.close();
+        return keys;
+    }
+}
@@ -0,0 +1,144 @@
+package mr.worker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Shares the map slots of a TaskTracker between the jobs it runs at the same time. When
+ * a slot is free, it is given to the waiting job with the lowest number of running map
+ * tasks relative to its weight, and to the job that was started first on a tie. A short
+ * job submitted while a long job holds all the slots thus gets its share of the slots as
+ * soon as map tasks of the long job complete, instead of waiting for the long job to end.
+ *
+ * <p>
+ * Reduce tasks run outside of the slots, and are not scheduled.
+ *
+ *
+ */
+public class FairShareScheduler {
+
+    private final int totalSlots;
+    private int freeSlots;
+    // Jobs in the order they were added, guarded by this object
+    private Map<String, JobShare> jobs = new LinkedHashMap<String, JobShare>();
+
+    /**
+     * Constructor
+     *
+     * @param totalSlots - number of map slots of the TaskTracker
+     */
+    public FairShareScheduler(int totalSlots) {
+        this.totalSlots = Math.max(1, totalSlots);
+        this.freeSlots = this.totalSlots;
+    }
+
+    /**
+     * Adds a job that shares the slots
+     *
+     * @param jobId - id of the job
+     * @param weight - share of the slots of the job relative to the other jobs
+     */
+    public synchronized void addJob(String jobId, int weight) {
+        jobs.put(jobId, new JobShare(Math.max(1, weight)));
+    }
+
+    /**
+     * Removes a job that has ended. The slots still held by its map tasks are given back
+     * as they complete
+     *
+     * @param jobId - id of the job
+     */
+    public synchronized void removeJob(String jobId) {
+        jobs.remove(jobId);
+        notifyAll();
+    }
+
+    /**
+     * Blocks till a slot is free and the given job is the next one to get a slot
+     *
+     * @param jobId - id of a job added to this scheduler
+     * @throws InterruptedException when the thread is interrupted while waiting
+     */
+    public synchronized void acquireSlot(String jobId) throws InterruptedException {
+        JobShare share = jobs.get(jobId);
+        if (share == null) {
+            throw new IllegalStateException("Unknown job " + jobId);
+        }
+        share.waiting++;
+        try {
+            while (freeSlots == 0 || getNextJob() != share) {
+                wait();
+            }
+        } finally {
+            share.waiting--;
+            // Another job may be the next one if this one stops waiting
+            notifyAll();
+        }
+        share.running++;
+        freeSlots--;
+    }
+
+    /**
+     * Gives back a slot acquired by the given job
+     *
+     * @param jobId - id of the job
+     */
+    public synchronized void releaseSlot(String jobId) {
+        JobShare share = jobs.get(jobId);
+        if (share != null) {
+            share.running--;
+        }
+        freeSlots++;
+        notifyAll();
+    }
+
+    /**
+     * Get the number of slots of the TaskTracker
+     *
+     * @return number of slots
+     */
+    public int getTotalSlots() {
+        return totalSlots;
+    }
+
+    /**
+     * Get the number of slots not used by any job
+     *
+     * @return number of free slots
+     */
+    public synchronized int getFreeSlots() {
+        return freeSlots;
+    }
+
+    /**
+     * Get the waiting job with the lowest number of running map tasks relative to its
+     * weight
+     *
+     * @return {@link JobShare} of the job, or null if no job is waiting
+     */
+    private JobShare getNextJob() {
+        JobShare next = null;
+        for (JobShare share : jobs.values()) {
+            if (share.waiting > 0
+                    && (next == null || (long) share.running * next.weight
+                            < (long) next.running * share.weight)) {
+                next = share;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Slot usage of a job
+     */
+    private static class JobShare {
+        private final int weight;
+        private int running = 0;
+        private int waiting = 0;
+
+        JobShare(int weight) {
+            this.weight = weight;
+        }
+    }
+}
@@ -1,13 +1,12 @@
 package mr.worker;
 
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.Socket;
 
-import mr.common.Constants.NetworkProtocol;
-import mr.common.MRUtility;
+import mr.common.Counters;
+import mr.common.Histogram;
+import mr.common.MessageChannel;
+import mr.common.TaskCounter;
 
 /**
  * File saver thread is started by the 'reducer' TaskTracker to facilitate
@@ -21,18 +20,40 @@ import mr.common.MRUtility;
 public class FileSaver implements Runnable {
 
     private String tempDirectory;
-    private Socket socket;
+    private String hotKeysDirectory;
+    private MessageChannel channel;
+    private SegmentMerger<?, ?> segmentMerger;
+    private Counters counters;
+    private Histogram receiveTimes;
 
-    public FileSaver(Socket socket, String tempDirectory) {
-        this.socket = socket;
+    /**
+     * Constructor
+     * 
+     * @param channel {@link MessageChannel} connection to a 'Map' TaskTracker
+     * @param tempDirectory - folder to which the map output files are saved
+     * @param hotKeysDirectory - folder to which the hot keys files are saved
+     * @param segmentMerger {@link SegmentMerger} to which every received file is handed
+     *            over for background merging
+     * @param counters {@link Counters} of the reduce task, updated with the number of
+     *            bytes received
+     * @param receiveTimes {@link Histogram} of the time taken to receive each file,
+     *            shared by the FileSaver threads of the reduce task
+     */
+    public FileSaver(MessageChannel channel, String tempDirectory,
+            String hotKeysDirectory, SegmentMerger<?, ?> segmentMerger,
+            Counters counters, Histogram receiveTimes) {
+        this.channel = channel;
         this.tempDirectory = tempDirectory;
+        this.hotKeysDirectory = hotKeysDirectory;
+        this.segmentMerger = segmentMerger;
+        this.counters = counters;
+        this.receiveTimes = receiveTimes;
     }
 
     /**
-     * Blocks till a file is received from the input stream. Any mode message
-     * from the input stream other than 'NetworkProtocol.FILE' indicates that
-     * all the files were transfered, thus completing the execution of the
-     * thread.
+     * Blocks till a file is received from the channel. Any message other than
+     * a map output segment or a hot keys file indicates that all the files were
+     * transfered, thus completing the execution of the thread.
      */
     @Override
     public void run() {
@@ -43,18 +64,25 @@ public class FileSaver implements Runnable {
         boolean hasMoreFiles = true;
         while (hasMoreFiles) {
             try {
-                InputStream inputStream = socket.getInputStream();
-                DataInputStream dataInputStream =
-                        new DataInputStream(inputStream);
-                String mode = dataInputStream.readUTF();
-                if (NetworkProtocol.FILE.equals(mode)) {
-                    MRUtility.receiveFile(tempDirectory, dataInputStream);
+                MessageChannel.TYPE type = channel.readFrame();
+                if (type == MessageChannel.TYPE.SEGMENT) {
+                    long start = System.nanoTime();
+                    File segment = channel.readFile(tempDirectory);
+                    long receiveTime = System.nanoTime() - start;
+                    synchronized (receiveTimes) {
+                        receiveTimes.record(receiveTime);
+                    }
+                    counters.increment(TaskCounter.SHUFFLE_BYTES,
+                            segment.length());
+                    segmentMerger.addSegment(segment);
+                } else if (type == MessageChannel.TYPE.HOT_KEYS) {
+                    channel.readFile(hotKeysDirectory);
                 } else {
                     // If the code reaches here, means that all map output files
                     // from a particular map node were transfered
                     hasMoreFiles = false;
                     System.out.println("All files from "
-                            + socket.getRemoteSocketAddress()
+                            + channel.getSocket().getRemoteSocketAddress()
                             + " mapper were received");
                 }
             } catch (IOException e) {
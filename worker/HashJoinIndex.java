@@ -0,0 +1,326 @@
+package mr.worker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mr.common.MRUtility;
+
+/**
+ * <p>
+ * Hash index of a small table, probed by the map tasks of a map-side join, so that the
+ * large input does not need to be shuffled to reducers. The table is a cache file of the
+ * job with one key and value per line, separated by a given separator.
+ *
+ * <p>
+ * The index is built once per TaskTracker for each content of the table, and is shared
+ * by all the map tasks that use it, of this job and the following ones. It is stored
+ * outside of the heap, in a direct buffer: a table of slots (hash of the key, position
+ * of the entry) probed linearly, followed by the UTF-8 encoded key and value of each
+ * entry. The first entry of a key is kept when the table has duplicate keys, and lines
+ * without the separator are skipped.
+ *
+ * <p>
+ * At most {@value #MAX_CACHED_INDEXES} indexes are cached, the least recently used one
+ * is evicted when another table is indexed. An evicted index stays valid for the map
+ * tasks still probing it, and its buffer is released once they no longer reference it.
+ *
+ * <p>
+ * Lookups are thread safe.
+ *
+ * @see MapContext#getJoinIndex(String, String)
+ *
+ */
+public class HashJoinIndex {
+
+    // Hash of the key and position of the entry, 0 for an empty slot
+    private static final int SLOT_SIZE = 8;
+
+    // Number of indexes kept by the TaskTracker for the following map tasks and jobs
+    static final int MAX_CACHED_INDEXES = 8;
+
+    // Indexes built by this JVM, by content hash and separator of the table, in access
+    // order so that the least recently used index is evicted first
+    private static final Map<String, HashJoinIndex> indexes =
+            new LinkedHashMap<String, HashJoinIndex>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, HashJoinIndex> eldest) {
+                    return size() > MAX_CACHED_INDEXES;
+                }
+            };
+
+    private ByteBuffer buffer;
+    private int mask;
+    private int size = 0;
+
+    /**
+     * Get the index of the given table, built by the first map task that needs it, or
+     * again once it has been evicted from the cache
+     *
+     * @param hash - content hash of the table
+     * @param table - local {@link File} of the table
+     * @param separator - separator between the key and the value of a line
+     * @return {@link HashJoinIndex}
+     * @throws IOException when the table cannot be read
+     */
+    static HashJoinIndex getIndex(String hash, File table, String separator)
+            throws IOException {
+        String indexKey = hash + '\u0000' + separator;
+        synchronized (indexes) {
+            HashJoinIndex index = indexes.get(indexKey);
+            if (index == null) {
+                index = new HashJoinIndex(MRUtility.mapFile(table), separator);
+                indexes.put(indexKey, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Constructor, builds the index in two passes over the table: the first one sizes
+     * the buffer, the second one adds the entries
+     *
+     * @param table - {@link ByteBuffer} of the content of the table
+     * @param separator - separator between the key and the value of a line
+     */
+    HashJoinIndex(ByteBuffer table, String separator) {
+        byte[] separatorBytes = separator.getBytes(StandardCharsets.UTF_8);
+        int lines = 0;
+        long dataLength = 0;
+        int position = 0;
+        while (position < table.limit()) {
+            int end = getLineEnd(table, position);
+            if (indexOf(table, position, end, separatorBytes) >= 0) {
+                lines++;
+                dataLength += 8 + end - position - separatorBytes.length;
+            }
+            position = end + 1;
+        }
+
+        // At most half of the slots are used
+        long slots = Long.highestOneBit(Math.max(1, lines) * 2L - 1) << 1;
+        long length = slots * SLOT_SIZE + dataLength;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Join table too large for an index: "
+                    + lines + " lines");
+        }
+        mask = (int) slots - 1;
+        buffer = ByteBuffer.allocateDirect((int) length);
+
+        int entryPosition = (int) slots * SLOT_SIZE;
+        position = 0;
+        while (position < table.limit()) {
+            int end = getLineEnd(table, position);
+            int separatorPosition = indexOf(table, position, end, separatorBytes);
+            if (separatorPosition >= 0) {
+                int keyLength = separatorPosition - position;
+                int valuePosition = separatorPosition + separatorBytes.length;
+                int valueLength = trimLineEnd(table, valuePosition, end) - valuePosition;
+                if (add(table, position, keyLength, valuePosition, valueLength,
+                        entryPosition)) {
+                    entryPosition += 8 + keyLength + valueLength;
+                }
+            }
+            position = end + 1;
+        }
+    }
+
+    /**
+     * Get the value of the given key
+     *
+     * @param key - key to be probed
+     * @return value of the key, or null if the table does not contain the key
+     */
+    public String get(String key) {
+        int entry = find(key.getBytes(StandardCharsets.UTF_8));
+        if (entry < 0) {
+            return null;
+        }
+        int valuePosition = entry + 4 + buffer.getInt(entry);
+        byte[] value = new byte[buffer.getInt(valuePosition)];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = buffer.get(valuePosition + 4 + i);
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Check if the table contains the given key
+     *
+     * @param key - key to be probed
+     * @return true if the table contains the key
+     */
+    public boolean containsKey(String key) {
+        return find(key.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    /**
+     * Get the number of keys of the index
+     *
+     * @return number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of bytes of the index, allocated outside of the heap
+     *
+     * @return size of the index in bytes
+     */
+    public int getSizeInBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Adds an entry to the index, unless its key was already added
+     *
+     * @param table - {@link ByteBuffer} of the table
+     * @param keyPosition - position of the key in the table
+     * @param keyLength - length of the key
+     * @param valuePosition - position of the value in the table
+     * @param valueLength - length of the value
+     * @param entryPosition - position of the entry in the index
+     * @return true if the entry was added, false for a duplicate key
+     */
+    private boolean add(ByteBuffer table, int keyPosition, int keyLength,
+            int valuePosition, int valueLength, int entryPosition) {
+        int hash = hash(table, keyPosition, keyLength);
+        int slot = hash & mask;
+        while (buffer.getInt(slot * SLOT_SIZE + 4) != 0) {
+            int entry = buffer.getInt(slot * SLOT_SIZE + 4);
+            if (buffer.getInt(slot * SLOT_SIZE) == hash
+                    && keyEquals(entry, table, keyPosition, keyLength)) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        buffer.putInt(slot * SLOT_SIZE, hash);
+        buffer.putInt(slot * SLOT_SIZE + 4, entryPosition);
+
+        buffer.putInt(entryPosition, keyLength);
+        for (int i = 0; i < keyLength; i++) {
+            buffer.put(entryPosition + 4 + i, table.get(keyPosition + i));
+        }
+        int entryValuePosition = entryPosition + 4 + keyLength;
+        buffer.putInt(entryValuePosition, valueLength);
+        for (int i = 0; i < valueLength; i++) {
+            buffer.put(entryValuePosition + 4 + i, table.get(valuePosition + i));
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Finds the entry of the given key
+     *
+     * @param key - UTF-8 encoded key
+     * @return position of the entry in the index, or -1 if there is none
+     */
+    private int find(byte[] key) {
+        ByteBuffer keyBuffer = ByteBuffer.wrap(key);
+        int hash = hash(keyBuffer, 0, key.length);
+        int slot = hash & mask;
+        int entry;
+        while ((entry = buffer.getInt(slot * SLOT_SIZE + 4)) != 0) {
+            if (buffer.getInt(slot * SLOT_SIZE) == hash
+                    && keyEquals(entry, keyBuffer, 0, key.length)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the key of an entry with the given key
+     *
+     * @param entry - position of the entry in the index
+     * @param key - {@link ByteBuffer} holding the key
+     * @param keyPosition - position of the key
+     * @param keyLength - length of the key
+     * @return true if the keys are equal
+     */
+    private boolean keyEquals(int entry, ByteBuffer key, int keyPosition, int keyLength) {
+        if (buffer.getInt(entry) != keyLength) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (buffer.get(entry + 4 + i) != key.get(keyPosition + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a hash of the given bytes, with the high bits mixed into the low bits used to
+     * select a slot
+     *
+     * @param bytes - {@link ByteBuffer} holding the bytes
+     * @param position - position of the first byte
+     * @param length - number of bytes
+     * @return hash
+     */
+    private static int hash(ByteBuffer bytes, int position, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (bytes.get(position + i) & 0xff)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Get the position of the end of the line starting at the given position
+     *
+     * @param table - {@link ByteBuffer} of the table
+     * @param position - start of the line
+     * @return position of the line feed, or the limit of the table for the last line
+     */
+    private static int getLineEnd(ByteBuffer table, int position) {
+        while (position < table.limit() && table.get(position) != '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Get the end of a line without its carriage return, if any
+     *
+     * @param table - {@link ByteBuffer} of the table
+     * @param start - start of the line, or of its value
+     * @param end - position of the line feed
+     * @return end of the line content
+     */
+    private static int trimLineEnd(ByteBuffer table, int start, int end) {
+        return end > start && table.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    /**
+     * Finds the first occurrence of the separator in a line
+     *
+     * @param table - {@link ByteBuffer} of the table
+     * @param start - start of the line
+     * @param end - end of the line
+     * @param separator - UTF-8 encoded separator
+     * @return position of the separator, or -1 if the line does not contain it
+     */
+    private static int indexOf(ByteBuffer table, int start, int end, byte[] separator) {
+        for (int i = start; i + separator.length <= end; i++) {
+            int j = 0;
+            while (j < separator.length && table.get(i + j) == separator[j]) {
+                j++;
+            }
+            if (j == separator.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
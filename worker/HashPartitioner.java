@@ -0,0 +1,19 @@
+package mr.worker;
+
+/**
+ * Default {@link Partitioner}, uses the hash code of the key to compute the reducer id.
+ * 
+ * 
+ */
+public class HashPartitioner<KEY, VALUE> implements Partitioner<KEY, VALUE> {
+
+    /**
+     * Tried using hash function (key.hashCode() % numberOfReducers), but that sometimes
+     * caused the reducer Id to be set as -1. Reference:
+     * http://ercoppa.github.io/HadoopInternals/AnatomyMapReduceJob.html
+     */
+    @Override
+    public int getPartition(KEY key, VALUE value, int numberOfReducers) {
+        return (Integer.MAX_VALUE & key.hashCode()) % numberOfReducers;
+    }
+}
@@ -0,0 +1,896 @@
+package mr.worker;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import mr.common.Configuration;
+import mr.common.Counters;
+import mr.common.Heartbeat;
+import mr.common.Histogram;
+import mr.common.MRUtility;
+import mr.common.MessageChannel;
+import mr.common.Task;
+import mr.common.TaskCounter;
+import mr.common.TaskProfile;
+import mr.common.TaskStatus;
+import mr.io.Text;
+
+/**
+ *
+ * <pre>
+ * A job run by a {@link TaskTracker}. A session is started for every ApplicationMaster
+ * that connects to the TaskTracker, and runs on its own thread, so that the TaskTracker
+ * runs several jobs at the same time. Executes the following steps in sequence
+ * 1) Receives the configuration and the jar file of the job from the ApplicationMaster
+ * 2) Sets the Mapper and Reducer objects
+ * 3) Starts a thread to listen for tasks, and a thread to send the completed tasks
+ * 4) Processes Map/Reduce tasks till completion. Up to 'number of slots' map tasks (sent by
+ *    the ApplicationMaster in the configuration) run at the same time, on the slots of the
+ *    TaskTracker given to the job by the {@link FairShareScheduler}
+ * 5) Cleans up the resources, files used by the tasks
+ * </pre>
+ *
+ *
+ */
+@SuppressWarnings({ "rawtypes" })
+public class JobSession implements Runnable {
+
+    private TaskTracker taskTracker;
+    private FairShareScheduler scheduler;
+    // Connection to the ApplicationMaster of the job
+    private MessageChannel masterChannel;
+    private Configuration configuration;
+    private volatile String jobId;
+    // Tasks are handed over between the threads with blocking queues, so that a waiting
+    // thread is woken up as soon as a task is available
+    private BlockingQueue<Task> taskExecutionQueue = new PriorityBlockingQueue<Task>();
+    private BlockingQueue<Task> completedTaskQueue = new PriorityBlockingQueue<Task>();
+    private Class<?> mapperClass;
+    private Reducer reducer;
+
+    // Map tasks run concurrently on a pool with one thread per slot of the job. Each task
+    // also takes a slot of the TaskTracker from the scheduler, which shares them with the
+    // other jobs
+    private int numberOfSlots = 1;
+    private Semaphore freeSlots;
+    private ExecutorService mapTaskExecutor;
+    // Reduce tasks run on their own thread, outside of the slots, so that the map tasks
+    // of the same TaskTracker can run while the reduce task receives the map output. A
+    // TaskTracker runs at most one reduce task of a job: a second one could only start
+    // once the first one has received the output of the map tasks queued after it
+    private Thread reduceTaskThread;
+    private volatile Throwable taskFailure;
+    // Thread running executeTask(), interrupted when a task fails
+    private volatile Thread executionThread;
+
+    // State of the running tasks, read by the StatusUpdater for the heartbeats
+    private Map<Task, Mapper.Context> runningMapTasks =
+            new LinkedHashMap<Task, Mapper.Context>();
+    private volatile Task runningReduceTask;
+    private volatile Reducer.Context reduceContext;
+    private volatile Counters reduceCounters;
+    private volatile TaskStatus.PHASE reducePhase;
+    Thread taskUpdaterThread;
+    Thread taskListenerThread;
+    Thread fileTransferThread;
+    private boolean hasFileTransferThreadStarted = false;
+    // Set once the connection to the ApplicationMaster has failed, or has been closed by
+    // the end of the session
+    private boolean isChannelClosed = false;
+    private String mtemp_dir;
+    private String rtemp_dir;
+    // Hot keys files received from the map TaskTrackers, kept out of the reducer input
+    private String hotkeys_dir;
+    private String jartemp_dir;
+    private Shuffler shuffler;
+    private URLClassLoader classLoader;
+
+    /**
+     * Constructor
+     *
+     * @param taskTracker {@link TaskTracker} running the job
+     * @param masterChannel {@link MessageChannel} connection to the ApplicationMaster,
+     *            whose CONFIGURATION frame has been read but not its payload
+     * @param scheduler {@link FairShareScheduler} of the map slots of the TaskTracker
+     */
+    JobSession(TaskTracker taskTracker, MessageChannel masterChannel,
+            FairShareScheduler scheduler) {
+        this.taskTracker = taskTracker;
+        this.masterChannel = masterChannel;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Get the id of the job
+     *
+     * @return job id, null until the configuration is received
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * @see JobSession
+     */
+    @Override
+    public void run() {
+        try {
+            receiveJob();
+            setupMapperAndReducerObjects();
+            startTaskListenerThread();
+            startTaskUpdaterThread();
+            executeTask();
+            taskUpdaterThread.join();
+            taskListenerThread.join();
+
+            if (hasFileTransferThreadStarted) {
+                fileTransferThread.join();
+            }
+            // The channel may fail while the END task is sent
+            checkForTaskFailure();
+            System.out.println("Task execution of job " + jobId + " complete!");
+        } catch (Throwable e) {
+            // Closing the connection below fails the job on the ApplicationMaster
+            System.out.println("Job " + jobId + " has failed");
+            e.printStackTrace();
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Receives the configuration, the cache files missing from the cache of the
+     * TaskTracker and the jar file of the job from the {@link MessageChannel} of the
+     * ApplicationMaster, and creates the temporary folders of the job
+     *
+     * @throws IOException when there is an error reading from the channel
+     */
+    private void receiveJob() throws IOException {
+        configuration = (Configuration) masterChannel.readObject();
+        jobId = configuration.getJobId();
+        System.out.println("Received job " + jobId);
+        mtemp_dir = taskTracker.getMapTempDirectory() + File.separator + jobId;
+        rtemp_dir = taskTracker.getReduceTempDirectory() + File.separator + jobId;
+        hotkeys_dir = rtemp_dir + "_hotkeys";
+        jartemp_dir = taskTracker.getJarTempDirectory() + File.separator + jobId;
+        new File(mtemp_dir).mkdirs();
+        new File(rtemp_dir).mkdirs();
+        new File(hotkeys_dir).mkdirs();
+        new File(jartemp_dir).mkdirs();
+        scheduler.addJob(jobId, configuration.getJobWeight());
+        if (!configuration.getCacheFiles().isEmpty()) {
+            receiveCacheFiles();
+        }
+
+        MessageChannel.TYPE type = masterChannel.readFrame();
+        if (type != MessageChannel.TYPE.JAR) {
+            throw new IOException("Expected " + MessageChannel.TYPE.JAR
+                    + " from the master, received " + type);
+        }
+        File jarFile = masterChannel.readFile(jartemp_dir);
+        System.out.println("Jar file received");
+        buildClassLoaderFromJar(jarFile);
+    }
+
+    /**
+     * Answers the configuration with the content hashes of the cache files of the job
+     * that are not in the cache of the TaskTracker, and receives these files from the
+     * master. The local path of every cache file is then set in the configuration
+     *
+     * @throws IOException when a file cannot be received, or its content does not match
+     *             its hash
+     */
+    private void receiveCacheFiles() throws IOException {
+        Set<String> missingFiles = new LinkedHashSet<String>();
+        for (String hash : configuration.getCacheFiles().values()) {
+            if (!taskTracker.getCacheFile(hash).exists()) {
+                missingFiles.add(hash);
+            }
+        }
+        StringBuilder request = new StringBuilder();
+        for (String hash : missingFiles) {
+            request.append(request.length() == 0 ? "" : ",").append(hash);
+        }
+        masterChannel.send(MessageChannel.TYPE.CACHE_REQUEST,
+                new Text(request.toString()));
+
+        for (int i = 0; i < missingFiles.size(); i++) {
+            MessageChannel.TYPE type = masterChannel.readFrame();
+            if (type != MessageChannel.TYPE.CACHE_FILE) {
+                throw new IOException("Expected " + MessageChannel.TYPE.CACHE_FILE
+                        + " from the master, received " + type);
+            }
+            File file = masterChannel.readFile(jartemp_dir);
+            // The file is shared with the other jobs of the TaskTracker under its name, its
+            // content is checked before it is cached
+            String hash = MRUtility.hashFileContent(file);
+            if (!hash.equals(file.getName())) {
+                file.delete();
+                throw new IOException("Cache file " + file.getName()
+                        + " received with content hash " + hash);
+            }
+            taskTracker.addCacheFile(file);
+        }
+        System.out.println("Cache files received: " + missingFiles.size() + " of "
+                + configuration.getCacheFiles().size());
+
+        for (Map.Entry<String, String> entry : configuration.getCacheFiles()
+                .entrySet()) {
+            configuration.setLocalCacheFile(entry.getKey(),
+                    taskTracker.getCacheFile(entry.getValue()).getPath());
+        }
+    }
+
+    /**
+     * <pre>
+     * 1) Listens to the inputStream from the {@link ApplicationMaster} for any task.
+     * 2) Updates the task execution queue with the tasks read from stream.
+     * 3) Saves the file splits to the temp directory (for map tasks)
+     * </pre>
+     *
+     * @see TaskListener
+     */
+    private void startTaskListenerThread() {
+        TaskListener taskListener =
+                new TaskListener(masterChannel, taskExecutionQueue, mtemp_dir, this);
+        taskListenerThread = new Thread(taskListener);
+        taskListenerThread.start();
+    }
+
+    /**
+     * Updates the ApplicationMaster by sending the completed tasks and periodic
+     * heartbeats. Reads and removes tasks from the completed task queue.
+     *
+     * @see StatusUpdater
+     */
+    private void startTaskUpdaterThread() {
+        StatusUpdater statusUpdater =
+                new StatusUpdater(masterChannel, completedTaskQueue, this,
+                        configuration.getHeartbeatInterval());
+        taskUpdaterThread = new Thread(statusUpdater);
+        taskUpdaterThread.start();
+    }
+
+    /**
+     * Gets the next task by priority from the task queue and executes it. Map tasks are
+     * run on the map task pool as soon as a slot is free, reduce tasks are run on their
+     * own thread. Blocks while there are no tasks in the queue. The method ends when an
+     * END task is fetched and executed, once all the map tasks are complete.
+     *
+     */
+    private void executeTask() {
+        boolean hasMoreTasks = true;
+        executionThread = Thread.currentThread();
+        numberOfSlots = Math.max(1, configuration.getNumberOfSlots());
+        freeSlots = new Semaphore(numberOfSlots);
+        // Created for each job, so that the pool threads inherit the class loader of the
+        // job's jar
+        mapTaskExecutor = Executors.newFixedThreadPool(numberOfSlots);
+
+        try {
+            while (hasMoreTasks) {
+                checkForTaskFailure();
+                Task currentTask = getNextTaskFromQueue();
+                if (currentTask.getType() == Task.TYPE.MAP) {
+
+                    submitMapTask(currentTask);
+
+                } else if (currentTask.getType() == Task.TYPE.REDUCE) {
+
+                    startReduceTask(currentTask);
+
+                } else {
+                    waitForMapTasks();
+                    executeCompleteTask(currentTask);
+                    hasMoreTasks = false;
+                }
+            }
+        } finally {
+            executionThread = null;
+            // Clears the interrupt of a failed task
+            Thread.interrupted();
+            mapTaskExecutor.shutdown();
+        }
+        System.out.println("Execute task has ended");
+    }
+
+    /**
+     * Waits for a free slot of the job and for a slot of the TaskTracker given by the
+     * scheduler, and runs the given map task on the map task pool. A failure of the task
+     * is reported by the next call to checkForTaskFailure()
+     *
+     * @param task {@link Task} of Task.TYPE MAP
+     */
+    private void submitMapTask(final Task task) {
+        freeSlots.acquireUninterruptibly();
+        try {
+            scheduler.acquireSlot(jobId);
+        } catch (InterruptedException e) {
+            freeSlots.release();
+            // Interrupted when a task has failed
+            checkForTaskFailure();
+            throw new RuntimeException(e);
+        }
+        mapTaskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executeMapTask(task);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                    taskFailed(e);
+                } finally {
+                    scheduler.releaseSlot(jobId);
+                    freeSlots.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the given reduce task on a new thread. A failure of the task is reported by the
+     * next call to checkForTaskFailure()
+     *
+     * @param task {@link Task} of Task.TYPE REDUCE
+     * @throws IllegalStateException when a reduce task of the job was already started, as
+     *             the ApplicationMaster assigns at most one reduce task per TaskTracker
+     */
+    private void startReduceTask(final Task task) {
+        if (reduceTaskThread != null) {
+            throw new IllegalStateException("Reduce task " + task.getTaskId()
+                    + " received while another reduce task of job " + jobId
+                    + " was started, a TaskTracker runs at most one reduce task of a"
+                    + " job");
+        }
+        reduceTaskThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executeReduceTask(task);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                    taskFailed(e);
+                }
+            }
+        }, "reduce-" + jobId + "-" + task.getTaskId());
+        reduceTaskThread.start();
+    }
+
+    /**
+     * Waits till the running reduce task, if any, is complete
+     */
+    private void waitForReduceTask() {
+        if (reduceTaskThread != null) {
+            try {
+                reduceTaskThread.join();
+            } catch (InterruptedException e) {
+                checkForTaskFailure();
+                throw new RuntimeException(e);
+            }
+            reduceTaskThread = null;
+        }
+        checkForTaskFailure();
+    }
+
+    /**
+     * Waits till all the map tasks submitted to the pool are complete
+     */
+    private void waitForMapTasks() {
+        freeSlots.acquireUninterruptibly(numberOfSlots);
+        freeSlots.release(numberOfSlots);
+        checkForTaskFailure();
+    }
+
+    /**
+     * Records the failure of a map or reduce task, and interrupts the thread executing
+     * the tasks if it is waiting for the next task
+     *
+     * @param failure cause of the failure
+     */
+    private void taskFailed(Throwable failure) {
+        taskFailure = failure;
+        Thread thread = executionThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Fails the job when the connection to the ApplicationMaster fails, as the tasks can
+     * neither be received nor reported. The failure is recorded as the failure of a task,
+     * an END task wakes up the thread executing the tasks if it is waiting for the next
+     * task, and the channel is closed so that the thread still using it ends as well.
+     * Invoked by the {@link TaskListener} and the {@link StatusUpdater}
+     *
+     * @param e - error on the channel
+     */
+    synchronized void channelFailed(IOException e) {
+        if (isChannelClosed) {
+            // The channel was closed by the first failure or by the end of the session
+            return;
+        }
+        isChannelClosed = true;
+        System.out.println("Connection to the master of job " + jobId + " has failed");
+        e.printStackTrace();
+        taskFailed(e);
+        taskExecutionQueue.add(new Task(Task.TYPE.END, "e"));
+        try {
+            masterChannel.close();
+        } catch (IOException closeError) {
+            closeError.printStackTrace();
+        }
+    }
+
+    /**
+     * Fails the execution of the tasks if a map or reduce task has failed
+     */
+    private void checkForTaskFailure() {
+        if (taskFailure != null) {
+            throw new RuntimeException("Task failed", taskFailure);
+        }
+    }
+
+    /**
+     * Fetches and removes the next task from the task queue by priority, blocks till a
+     * task is available
+     *
+     * @return {@link Task}
+     */
+    private Task getNextTaskFromQueue() {
+        try {
+            Task nextTask = taskExecutionQueue.take();
+            System.out.println("Next task " + nextTask);
+            return nextTask;
+        } catch (InterruptedException e) {
+            // Interrupted when a task has failed
+            checkForTaskFailure();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Executes the given END task. Sets the "shouldEnd" field of shuffler to true, so that
+     * the Shuffler thread can finish executing after transferring the existing map output
+     * files, and waits for it to end. Then waits for the reduce task, which may be
+     * receiving the output of this TaskTracker. The profile of the shuffle is then set to
+     * the END task, which is added to the completed task queue.
+     *
+     * @param task {@link Task} of Task.TYPE END
+     */
+    private void executeCompleteTask(Task task) {
+        if (task.getReducers() != null) {
+            // A map host that ran no map task still ends the shuffle of the reducers
+            startShuffler(task);
+        }
+        if (hasFileTransferThreadStarted) {
+            if (shuffler != null) {
+                shuffler.setShouldEnd(true);
+                try {
+                    fileTransferThread.join();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                TaskProfile profile = shuffler.getProfile();
+                profile.setThreadName(fileTransferThread.getName());
+                task.setProfile(profile);
+            }
+        }
+        waitForReduceTask();
+        addCompletedTask(task);
+    }
+
+    /**
+     * Execute the reduce task if there is at least one mapper output file. Once the task
+     * has been executed, sets the counters of the shuffle and the reducer to the task and
+     * adds it to the completedTask queue
+     *
+     * @param currentTask {@link Task} of Task.TYPE REDUCE
+     */
+    @SuppressWarnings("unchecked")
+    private void executeReduceTask(Task currentTask) {
+        Counters counters = new Counters();
+        TaskProfile profile = new TaskProfile();
+        reduceCounters = counters;
+        reducePhase = TaskStatus.PHASE.SHUFFLE;
+        runningReduceTask = currentTask;
+        boolean hasAtleastOneFile =
+                getFilesFromMapper(currentTask, counters, profile);
+
+        if (hasAtleastOneFile) {
+            reduceContext =
+                    reducer.new Context(configuration, rtemp_dir,
+                            currentTask.getTaskId());
+            reduceContext.setHotKeys(new File(hotkeys_dir));
+            reducePhase = TaskStatus.PHASE.REDUCE;
+
+            reducer.run(reduceContext);
+            currentTask.setOutputPath(reduceContext.getOutputFile().getPath());
+            if (reduceContext.getHotKeyOutputFile() != null) {
+                currentTask.setHotKeyOutputPath(reduceContext.getHotKeyOutputFile()
+                        .getPath());
+            }
+            counters.merge(reduceContext.getCounters());
+            profile.merge(reduceContext.getProfile());
+        } else {
+            System.out.println("Reduce was not executed in this node");
+        }
+
+        System.out.println("Finished reduce task");
+        runningReduceTask = null;
+        reduceContext = null;
+        currentTask.setCounters(counters);
+        profile.setThreadName(Thread.currentThread().getName());
+        currentTask.setProfile(profile);
+        addCompletedTask(currentTask);
+    }
+
+    /**
+     * Executes a map task on a thread of the map task pool, with a new instance of the
+     * mapper. If the Shuffler thread was not started before, launches a new shuffler
+     * thread, unless the job has no reducers. Once the task has been executed, sets the
+     * counters of the mapper to the task and adds it to the completedTask queue
+     *
+     * @param currentTask {@link Task} of Task.TYPE MAP
+     */
+    @SuppressWarnings("unchecked")
+    private void executeMapTask(Task currentTask) {
+        Mapper mapper;
+        try {
+            mapper = (Mapper) mapperClass.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        Mapper.Context context;
+        if (currentTask.getLocalInputPath() != null) {
+            // Output of a previous job, written by a reduce task of this TaskTracker
+            File input = new File(currentTask.getLocalInputPath());
+            currentTask.setSplitLength(input.length());
+            context =
+                    mapper.new Context(configuration, input,
+                            getSplitNumber(currentTask), false, mtemp_dir);
+        } else {
+            context =
+                    mapper.new Context(configuration,
+                            currentTask.getSplitFileForTask(), mtemp_dir);
+        }
+        synchronized (runningMapTasks) {
+            runningMapTasks.put(currentTask, context);
+        }
+
+        try {
+            mapper.run(context);
+        } finally {
+            synchronized (runningMapTasks) {
+                runningMapTasks.remove(currentTask);
+            }
+        }
+        currentTask.setCounters(context.getCounters());
+        // Adds the split receive time recorded by the TaskListener
+        TaskProfile profile = context.getProfile();
+        if (currentTask.getProfile() != null) {
+            profile.merge(currentTask.getProfile());
+        }
+        profile.setThreadName(Thread.currentThread().getName());
+        currentTask.setProfile(profile);
+
+        if (context.getOutputFile() != null) {
+            // Map-only job, the output was written to the job's OutputFormat
+            currentTask.setOutputPath(context.getOutputFile().getPath());
+        } else {
+            startShuffler(currentTask);
+            shuffler.filesCompleted();
+        }
+        addCompletedTask(currentTask);
+    }
+
+    /**
+     * Get the number of the split of the given map task, from its task id m[split id]
+     *
+     * @param task {@link Task} of Task.TYPE MAP
+     * @return split number
+     */
+    private static int getSplitNumber(Task task) {
+        return Integer.parseInt(task.getTaskId().substring(1));
+    }
+
+    /**
+     * Starts the Shuffler thread after the first map task of the job, if it was not
+     * started before. The Shuffler thread is responsible for transferring the map output
+     * files to the appropriate reducer
+     *
+     * @param task - completed {@link Task} of Task.TYPE MAP, or END task of a map host
+     */
+    private synchronized void startShuffler(Task task) {
+        if (!hasFileTransferThreadStarted) {
+            shuffler = new Shuffler(task.getReducers(), mtemp_dir, jobId);
+            fileTransferThread = new Thread(shuffler);
+            fileTransferThread.start();
+            hasFileTransferThreadStarted = true;
+        }
+    }
+
+    /**
+     * Adds the given task to the completed task queue, from which the
+     * {@link StatusUpdater} sends it to the ApplicationMaster immediately
+     *
+     * @param task completed {@link Task}
+     */
+    private void addCompletedTask(Task task) {
+        completedTaskQueue.add(task);
+    }
+
+    /**
+     * Builds a heartbeat with the progress of the running tasks of the job, the slot
+     * availability of the TaskTracker and its heap usage. Invoked periodically by the
+     * {@link StatusUpdater}
+     *
+     * @return {@link Heartbeat}
+     */
+    Heartbeat getHeartbeat() {
+        Heartbeat heartbeat = new Heartbeat();
+        heartbeat.setTimestamp(System.currentTimeMillis());
+
+        heartbeat.setQueuedTasks(taskExecutionQueue.size());
+
+        Runtime runtime = Runtime.getRuntime();
+        heartbeat.setUsedHeapBytes(runtime.totalMemory() - runtime.freeMemory());
+        heartbeat.setMaxHeapBytes(runtime.maxMemory());
+
+        synchronized (runningMapTasks) {
+            for (Map.Entry<Task, Mapper.Context> entry : runningMapTasks.entrySet()) {
+                Task task = entry.getKey();
+                TaskStatus status = new TaskStatus(task.getTaskId(), task.getType());
+                status.setTotalBytes(task.getSplitLength());
+                entry.getValue().updateStatus(status);
+                heartbeat.addTaskStatus(status);
+            }
+        }
+
+        Task task = runningReduceTask;
+        if (task != null) {
+            TaskStatus status = new TaskStatus(task.getTaskId(), task.getType());
+            status.setPhase(reducePhase);
+            status.setBytesProcessed(reduceCounters
+                    .getValue(TaskCounter.SHUFFLE_BYTES));
+            Reducer.Context currentReduceContext = reduceContext;
+            if (currentReduceContext != null) {
+                currentReduceContext.updateStatus(status);
+            }
+            heartbeat.addTaskStatus(status);
+        }
+
+        // The slots are shared with the other jobs, the reduce task runs outside of them
+        heartbeat.setTotalSlots(scheduler.getTotalSlots());
+        heartbeat.setFreeSlots(scheduler.getFreeSlots());
+        return heartbeat;
+    }
+
+    /**
+     * Get the number of tasks of the job running on this TaskTracker
+     *
+     * @return number of running map and reduce tasks
+     */
+    int getNumberOfRunningTasks() {
+        int runningTasks = runningReduceTask == null ? 0 : 1;
+        synchronized (runningMapTasks) {
+            return runningTasks + runningMapTasks.size();
+        }
+    }
+
+    /**
+     * This method is executed only when the TaskTracker is executing a reduce task.
+     * Receives the connection of every map TaskTracker to receive the map output files.
+     * The received files are merged into larger sorted runs by a {@link SegmentMerger}
+     * thread while the shuffle is still in progress. Ends after all the map output files
+     * have been transfered to the temp folder of the job and the background merges have
+     * completed. A failed merge fails the reduce task.
+     *
+     * @param currentTask {@link Task}
+     * @param counters {@link Counters} of the reduce task
+     * @param profile {@link TaskProfile} of the reduce task
+     * @return true if atleast one map file was received, otherwise false
+     */
+    private boolean getFilesFromMapper(
+            Task currentTask,
+            Counters counters,
+            TaskProfile profile) {
+        int numberOfMapHosts = currentTask.getNumberOfMapHosts();
+
+        SegmentMerger<?, ?> segmentMerger =
+                new SegmentMerger<Object, Object>(rtemp_dir,
+                        configuration.getMergeFactor(),
+                        KeyComparators.getSortComparator(configuration),
+                        profile.getHistogram(TaskProfile.PHASE.MERGE));
+        Thread segmentMergerThread = new Thread(segmentMerger);
+        segmentMergerThread.start();
+
+        // Receives the connections of all the map TaskTrackers and launches file saver
+        // threads
+        Map<MessageChannel, Thread> connectionToMapper =
+                saveMapTaskOutput(numberOfMapHosts, segmentMerger, counters,
+                        profile.getHistogram(TaskProfile.PHASE.SHUFFLE_RECEIVE));
+
+        // Waits for all file saver threads to finish.
+        for (Map.Entry<MessageChannel, Thread> entry : connectionToMapper.entrySet()) {
+            try {
+                entry.getValue().join();
+                entry.getKey().close();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // Waits for the merges that are still pending to finish
+        reducePhase = TaskStatus.PHASE.MERGE;
+        segmentMerger.setShuffleComplete();
+        try {
+            segmentMergerThread.join();
+            segmentMerger.checkForFailure();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return checkIfAnyMapperFilesWereWritten();
+
+    }
+
+    /**
+     * Checks if any map output file was received by the reducer.
+     *
+     * @return true if at least one file was transferred, otherwise false
+     */
+    private boolean checkIfAnyMapperFilesWereWritten() {
+        File file = new File(rtemp_dir);
+        if (file.list().length == 0) {
+            return false;
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * This method is executed only when the TaskTracker is executing a reduce task. Takes
+     * the connections of all the TaskTrackers running the map tasks of the job, which are
+     * handed over by the TaskTracker as they are accepted, and launches a FileSaver thread
+     * listening for files on each connection.
+     *
+     * @param numberOfMapHosts: number of TaskTrackers running the map task
+     * @param segmentMerger: {@link SegmentMerger} notified of every received file
+     * @param counters: {@link Counters} of the reduce task
+     * @param receiveTimes: {@link Histogram} of the time taken to receive each file
+     * @return {@link Map} of mapper's {@link MessageChannel} and the corresponding
+     *         FileSaver thread as value
+     */
+    private Map<MessageChannel, Thread> saveMapTaskOutput(
+            int numberOfMapHosts,
+            SegmentMerger<?, ?> segmentMerger,
+            Counters counters,
+            Histogram receiveTimes) {
+        Map<MessageChannel, Thread> connectionsToMapper =
+                new HashMap<MessageChannel, Thread>();
+        BlockingQueue<MessageChannel> shuffleConnections =
+                taskTracker.getShuffleConnections(jobId);
+
+        for (int i = 0; i < numberOfMapHosts; i++) {
+            System.out.println("Getting file from mapper");
+
+            try {
+                MessageChannel channel = shuffleConnections.take();
+                FileSaver fileSaver =
+                        new FileSaver(channel, rtemp_dir, hotkeys_dir, segmentMerger,
+                                counters, receiveTimes);
+                Thread thread = new Thread(fileSaver);
+                thread.start();
+                connectionsToMapper.put(channel, thread);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        return connectionsToMapper;
+    }
+
+    /**
+     * Uses {@link URLClassLoader} to load the Mapper and Reducer class. Once the classes
+     * are loaded, creates an instance of the reducer object, which is stored with the
+     * mapper class in the instance variables of this session
+     *
+     */
+    private void setupMapperAndReducerObjects() {
+        String mapperClassStr = configuration.getMapperClass();
+        String reducerClassStr = configuration.getReducerClass();
+
+        try {
+            // A mapper is created for each map task, since the map tasks run concurrently
+            mapperClass = Class.forName(mapperClassStr, true, classLoader);
+            reducer =
+                    (Reducer) Class.forName(reducerClassStr, true, classLoader)
+                            .newInstance();
+        } catch (Exception e) {
+            // LOG.fatal("Error while setting up mapper and reducer object", e);
+            throw new RuntimeException(e);
+        }
+
+    }
+
+    /**
+     * Creates an instance of {@link URLClassLoader} for the client jar file transfered by
+     * the ApplicationMaster. The classLoader instance is used for loading the Mapper and
+     * Reducer classes. Each job has its own class loader, so that the jobs running at the
+     * same time can use different versions of the same classes
+     *
+     * @param file - {@link File} the client jar file
+     */
+    private void buildClassLoaderFromJar(File file) {
+        try {
+            URL[] url = new URL[] { file.toURI().toURL() };
+            classLoader =
+                    new URLClassLoader(url, this.getClass().getClassLoader());
+            // Input and output formats from the client jar are loaded using the context
+            // class loader, which is inherited by the threads started by this session
+            Thread.currentThread().setContextClassLoader(classLoader);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Ends the session: closes the connection to the ApplicationMaster, removes the job
+     * from the scheduler and the TaskTracker, and deletes the temporary files of the job
+     */
+    private void end() {
+        if (mapTaskExecutor != null) {
+            // Stops the map tasks that are still running after a failure
+            mapTaskExecutor.shutdownNow();
+        }
+        synchronized (this) {
+            // A thread still reading from the channel fails once it is closed, which is
+            // not a failure of the connection
+            isChannelClosed = true;
+        }
+        try {
+            masterChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        taskTracker.jobEnded(this);
+        if (jobId != null) {
+            scheduler.removeJob(jobId);
+            cleanup();
+        }
+        if (classLoader != null) {
+            try {
+                classLoader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary folders of the job, with the files written by the mappers and
+     * reducers and the jar file
+     */
+    private void cleanup() {
+        TaskTracker.deleteRecursively(new File(mtemp_dir));
+        TaskTracker.deleteRecursively(new File(rtemp_dir));
+        TaskTracker.deleteRecursively(new File(hotkeys_dir));
+        TaskTracker.deleteRecursively(new File(jartemp_dir));
+    }
+}
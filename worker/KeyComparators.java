@@ -0,0 +1,66 @@
+package mr.worker;
+
+import java.util.Comparator;
+
+import mr.common.Configuration;
+import mr.common.MRUtility;
+
+/**
+ * Creates the comparators used to sort and to group the map output keys, from the
+ * comparator classes set in the {@link Configuration}. Keys are sorted in their natural
+ * order if no sort comparator is set, and are grouped by the sort comparator if no
+ * grouping comparator is set.
+ * 
+ * 
+ */
+public class KeyComparators {
+
+    /**
+     * Compares keys in ascending order of the key's compareTo method (or of its String
+     * representation for keys that are not {@link Comparable}), same as
+     * {@link mr.common.KeyValuePair}
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static final Comparator NATURAL_ORDER = new Comparator() {
+        @Override
+        public int compare(Object key1, Object key2) {
+            if (key1 instanceof Comparable) {
+                return ((Comparable) key1).compareTo(key2);
+            } else {
+                return key1.toString().compareTo(key2.toString());
+            }
+        }
+    };
+
+    /**
+     * Get the comparator used to sort the map output keys
+     * 
+     * @param configuration {@link Configuration}
+     * @return the configured sort comparator, or a natural order comparator
+     */
+    @SuppressWarnings("unchecked")
+    public static <KEY> Comparator<KEY> getSortComparator(
+            Configuration configuration) {
+        String className = configuration.getSortComparatorClass();
+        if (className == null) {
+            return NATURAL_ORDER;
+        }
+        return MRUtility.newInstance(className);
+    }
+
+    /**
+     * Get the comparator used to group the sorted keys into the values passed to one
+     * call of the reduce method
+     * 
+     * @param configuration {@link Configuration}
+     * @return the configured grouping comparator, or the sort comparator
+     */
+    public static <KEY> Comparator<KEY> getGroupingComparator(
+            Configuration configuration) {
+        String className = configuration.getGroupingComparatorClass();
+        if (className == null) {
+            return getSortComparator(configuration);
+        }
+        return MRUtility.newInstance(className);
+    }
+}
@@ -0,0 +1,274 @@
+package mr.worker;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mr.common.Configuration;
+import mr.common.Counters;
+import mr.common.MRUtility;
+import mr.common.TaskCounter;
+import mr.common.TaskProfile;
+
+/**
+ * <pre>
+ * Runs all the tasks of a job inside the current JVM, without a registry, TaskTrackers or
+ * sockets. Used by the ApplicationMaster in local mode for small jobs and tests.
+ *
+ * The tasks use the same data path as on a TaskTracker
+ * 1) Each input split is processed by a map task ({@link MapContext}) on a thread pool,
+ *    which sorts and spills its output into one segment per reducer
+ * 2) Once all the map tasks are complete, the segments are moved to the directory of
+ *    their reducer (instead of being sent by the Shuffler)
+ * 3) Each reduce task merges its segments with a {@link SegmentMerger} and runs the
+ *    reducer ({@link ReduceContext}) on the thread pool
+ * </pre>
+ *
+ *
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class LocalJobRunner {
+
+    private static final String MAP_DIR = "map", REDUCE_DIR = "reduce";
+
+    private Configuration configuration;
+    private String workDirectory;
+    private int numberOfThreads;
+    private Counters counters = new Counters();
+
+    // Profile of the tasks run by each thread of the pool
+    private Map<String, TaskProfile> profiles = new TreeMap<String, TaskProfile>();
+
+    /**
+     * Constructor
+     *
+     * @param configuration {@link Configuration} of the job
+     * @param workDirectory - directory for the intermediate files of the job, relative to
+     *            the current directory
+     * @param numberOfThreads - number of tasks run concurrently
+     */
+    public LocalJobRunner(Configuration configuration, String workDirectory,
+            int numberOfThreads) {
+        this.configuration = configuration;
+        this.workDirectory = workDirectory;
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
+    /**
+     * Runs the map tasks for the given input splits, followed by the reduce tasks, and
+     * waits for all of them to complete. The intermediate files are deleted once the job
+     * is complete
+     *
+     * @param inputSplits - compressed input split files, named [input file]_[split id]
+     */
+    public void run(List<File> inputSplits) {
+        String mapDirectory = workDirectory + File.separator + MAP_DIR;
+        new File(mapDirectory).mkdirs();
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(numberOfThreads, new TaskThreadFactory());
+        try {
+            List<Callable<Void>> mapTasks = new ArrayList<Callable<Void>>();
+            for (File inputSplit : inputSplits) {
+                mapTasks.add(newMapTask(inputSplit, mapDirectory));
+            }
+            waitForTasks(executor.invokeAll(mapTasks));
+
+            List<Callable<Void>> reduceTasks = new ArrayList<Callable<Void>>();
+            for (int reducer = 0; reducer < configuration.getNumberOfReducers(); reducer++) {
+                String reduceDirectory =
+                        workDirectory + File.separator + REDUCE_DIR + reducer;
+                new File(reduceDirectory).mkdirs();
+                reduceTasks.add(newReduceTask("r" + reducer, reduceDirectory));
+            }
+            moveMapOutputToReducers(mapDirectory);
+            waitForTasks(executor.invokeAll(reduceTasks));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+            deleteRecursively(new File(workDirectory));
+        }
+    }
+
+    /**
+     * Get the counters of the job, which are the sum of the counters of all the tasks
+     *
+     * @return {@link Counters}
+     */
+    public Counters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Get the profiles of the tasks, combined for each thread that ran them
+     *
+     * @return map of thread name to {@link TaskProfile}
+     */
+    public Map<String, TaskProfile> getProfiles() {
+        synchronized (profiles) {
+            return new TreeMap<String, TaskProfile>(profiles);
+        }
+    }
+
+    /**
+     * Creates a map task for the given input split. The output segments are written to
+     * the given directory
+     *
+     * @param inputSplit - compressed input split file
+     * @param mapDirectory - directory for the map output, relative to the current
+     *            directory
+     * @return the map task
+     */
+    private Callable<Void> newMapTask(final File inputSplit, final String mapDirectory) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                Mapper mapper = MRUtility.newInstance(configuration.getMapperClass());
+                Mapper.Context context =
+                        mapper.new Context(configuration, inputSplit, mapDirectory);
+                mapper.run(context);
+                taskCompleted(context.getCounters(), context.getProfile());
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Creates a reduce task for the segments in the given directory. The task is skipped
+     * if no segments were written for it, as on a TaskTracker
+     *
+     * @param taskId - id of the reduce task
+     * @param reduceDirectory - directory of the segments of the reduce task
+     * @return the reduce task
+     */
+    private Callable<Void> newReduceTask(final String taskId, final String reduceDirectory) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                File[] segments = new File(reduceDirectory).listFiles();
+                if (segments.length == 0) {
+                    return null;
+                }
+                Counters taskCounters = new Counters();
+                TaskProfile profile = new TaskProfile();
+
+                SegmentMerger<?, ?> segmentMerger =
+                        new SegmentMerger<Object, Object>(reduceDirectory,
+                                configuration.getMergeFactor(),
+                                KeyComparators.getSortComparator(configuration),
+                                profile.getHistogram(TaskProfile.PHASE.MERGE));
+                for (File segment : segments) {
+                    taskCounters.increment(TaskCounter.SHUFFLE_BYTES, segment.length());
+                    segmentMerger.addSegment(segment);
+                }
+                segmentMerger.setShuffleComplete();
+                segmentMerger.run();
+
+                Reducer reducer = MRUtility.newInstance(configuration.getReducerClass());
+                Reducer.Context context =
+                        reducer.new Context(configuration, reduceDirectory, taskId);
+                reducer.run(context);
+                taskCounters.merge(context.getCounters());
+                profile.merge(context.getProfile());
+                taskCompleted(taskCounters, profile);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Adds the counters and the profile of a completed task to those of the job
+     *
+     * @param taskCounters {@link Counters} of the task
+     * @param profile {@link TaskProfile} of the task
+     */
+    private void taskCompleted(Counters taskCounters, TaskProfile profile) {
+        counters.merge(taskCounters);
+        String threadName = Thread.currentThread().getName();
+        synchronized (profiles) {
+            TaskProfile threadProfile = profiles.get(threadName);
+            if (threadProfile == null) {
+                threadProfile = new TaskProfile();
+                profiles.put(threadName, threadProfile);
+            }
+            threadProfile.merge(profile);
+        }
+    }
+
+    /**
+     * Moves the completed map output files (completeX_Y_Z) to the directory of reducer Z
+     *
+     * @param mapDirectory - directory of the map output
+     */
+    private void moveMapOutputToReducers(String mapDirectory) {
+        for (File file : new File(mapDirectory).listFiles()) {
+            String fileName = file.getName();
+            if (!fileName.startsWith("complete")) {
+                continue;
+            }
+            String reducerId = fileName.substring(fileName.lastIndexOf('_') + 1);
+            File reduceDirectory =
+                    new File(workDirectory, REDUCE_DIR + reducerId);
+            if (!file.renameTo(new File(reduceDirectory, fileName))) {
+                throw new RuntimeException("Error while moving " + fileName
+                        + " to " + reduceDirectory);
+            }
+        }
+    }
+
+    /**
+     * Waits for the given tasks to complete. Fails if any of the tasks has failed
+     *
+     * @param futures - {@link Future} of each task
+     * @throws InterruptedException when the thread is interrupted while waiting
+     */
+    private static void waitForTasks(List<Future<Void>> futures)
+            throws InterruptedException {
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Task failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Deletes the given file, or the given directory along with its contents
+     *
+     * @param file {@link File}
+     */
+    private static void deleteRecursively(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Names the threads of the pool, so that the profile of the tasks can be reported
+     * for each thread
+     */
+    private static class TaskThreadFactory implements ThreadFactory {
+
+        private AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "local-" + threadCount.incrementAndGet());
+        }
+    }
+}
@@ -1,33 +1,52 @@
 package mr.worker;
 
-import java.io.BufferedOutputStream;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 import mr.common.Configuration;
+import mr.common.Counters;
 import mr.common.KeyValuePair;
-import mr.io.BufferedLineReader;
-import mr.io.LongWritable;
+import mr.common.MRUtility;
+import mr.common.TaskCounter;
+import mr.common.TaskProfile;
+import mr.common.TaskStatus;
+import mr.io.InputFormat;
 import mr.io.MapReduceObject;
+import mr.io.OutputFormat;
+import mr.io.RecordReader;
+import mr.io.RecordWriter;
 import mr.io.Text;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 /**
  * <p>
  * Reads the compressed input split files and writes map output in a compressed format.
+ * The splits of gzip input files, sent without being decompressed by the master, are
+ * recognized by their gzip header and decompressed as they are read.
  * Generates Key Value pair which is passed to the Mapper's map method. Key generated is
- * the file offset position + (file split number * split size), which is unique across all
- * Tasks run on different nodes.
+ * the offset of the record in the uncompressed split, with the split number in the bits
+ * above the lowest {@value #SPLIT_OFFSET_BITS}, which is unique across all Tasks run on
+ * different nodes as long as a split inflates to less than 2^{@value #SPLIT_OFFSET_BITS}
+ * bytes. A split larger than the split size, such as a gzip split, does not overlap with
+ * the keys of the next split.
  * 
  * <p>
  * Keeps the map output in a temporary collection till it reaches a threshold(twice the
@@ -39,6 +58,18 @@ import mr.io.Text;
  * mod logic on the hash code for each key. The files are labeled accordingly so that they
  * are sent to the correct reducer.
  * 
+ * <p>
+ * A map task of a job with no reducers writes its output directly to the job's
+ * {@link OutputFormat}, in the file part_m[split number] of the output directory. The
+ * output is neither buffered, sorted nor spilled.
+ * 
+ * <p>
+ * When the hot keys of the job are salted, the first spill is sampled for keys holding a
+ * large share of the map output. The records of a hot key are spread over several
+ * consecutive reducers, starting at the reducer computed by the {@link Partitioner}, and
+ * the hot keys are written to the file hotkeys[split number] of the map output
+ * directory, sent by the {@link Shuffler} to all the reducers.
+ * 
  * 
  * @param <KEYIN>
  * @param <VALUEIN>
@@ -50,7 +81,12 @@ import mr.io.Text;
 public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
 
     private static final String tempFile = "_temp.m",
-            completeFile = "complete";
+            completeFile = "complete", outputFile = "part_m";
+    static final String HOT_KEYS_FILE = "hotkeys";
+    private static final int UNCOMPRESSED_BUFFER = 64 * 1024;
+    public static final Log LOG = LogFactory.getLog(MapContext.class);
+    // Minimum number of records of a hot key in the first spill
+    private static final int MIN_HOT_KEY_RECORDS = 1000;
 
     private KEYIN currentKey;
     private VALUEIN currentValue;
@@ -59,10 +95,43 @@ public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
     private String tempPath;
     private String finalPath;
 
-    private BufferedLineReader reader;
-
-    private List<KeyValuePair<KEYOUT, VALUEOUT>> keyValuePairs =
-            new ArrayList<KeyValuePair<KEYOUT, VALUEOUT>>(200000);
+    private RecordReader<KEYIN, VALUEIN> reader;
+    // Inflates the input split, counts the uncompressed bytes read
+    private Inflater inflater = new Inflater();
+    // Input file read without decompression, when the input is a local file
+    private FileInputStream uncompressedInput;
+    private long uncompressedInputLength;
+    // Uncompressed bytes read from a gzip split, -1 for the other splits
+    private volatile long gzipBytesRead = -1;
+    // Gzip split, whose compressed bytes read are the progress of the task
+    private FileInputStream gzipInput;
+    private long gzipInputLength;
+    private Counters counters = new Counters();
+    private Configuration configuration;
+    // Cache files of the job mapped by this task, by name
+    private Map<String, MappedByteBuffer> cacheFiles =
+            new HashMap<String, MappedByteBuffer>();
+
+    // Progress of the task, read by the heartbeat thread. The records are counted in
+    // fields and added to the counters once the input has been read
+    private volatile long inputRecords;
+    private long outputRecords;
+    private volatile long inputBytes = -1;
+    private volatile TaskStatus.PHASE phase = TaskStatus.PHASE.MAP;
+
+    // Time spent in each phase of this task
+    private TaskProfile profile = new TaskProfile();
+    // Total time spent sorting and spilling, in nanoseconds
+    private long spillTime;
+
+    private List<KeyValuePair<KEYOUT, VALUEOUT>> keyValuePairs;
+
+    // Writer of the job's OutputFormat, when the job has no reducers
+    private RecordWriter<KEYOUT, VALUEOUT> outputWriter;
+    private File outputPath;
+
+    // Number of low bits of the keys of text records holding the offset in the split
+    static final int SPLIT_OFFSET_BITS = 40;
 
     private long splitSize;
     private long spillSize;
@@ -72,6 +141,16 @@ public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
     private int spillCount = 0;
     private int bytesInBuffer = 0;
 
+    private Comparator<KEYOUT> sortComparator;
+    private Comparator<KeyValuePair<KEYOUT, VALUEOUT>> keyValuePairComparator;
+    private Partitioner<KEYOUT, VALUEOUT> partitioner;
+
+    // Keys found in the first spill, spread over reducersPerHotKey reducers
+    private TreeSet<KEYOUT> hotKeys;
+    private int reducersPerHotKey;
+    private int hotKeyRecords = 0;
+    private String hotKeysPath;
+
     /**
      * Constructor. Initializes the fields using data from the given configuration,
      * 
@@ -82,15 +161,49 @@ public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
      */
     public MapContext(Configuration configuration, File inputSplit,
             String dataDir) {
+        this(configuration, inputSplit, getSplitNumberFromInputFile(inputSplit
+                .getName()), true, dataDir);
+    }
+
+    /**
+     * Constructor. Initializes the fields using data from the given configuration,
+     * 
+     * @param configuration contains info about the split size, number of reducers
+     *            {@link Configuration}
+     * @param input input file for this map task
+     * @param splitNumber number of the split, which identifies the map output files
+     * @param isCompressed true if the input is a compressed split, false if the input is
+     *            read as it is (a local file written by a previous job)
+     * @param dataDir directory to store the map task output
+     */
+    public MapContext(Configuration configuration, File input, int splitNumber,
+            boolean isCompressed, String dataDir) {
 
         try {
 
+            this.configuration = configuration;
             this.numberOfReducers = configuration.getNumberOfReducers();
             this.outputAbsFilePath = new File(".").getCanonicalPath();
             this.splitSize = configuration.getSplitSize();
             this.spillSize = splitSize * 2;
 
-            splitNumber = getSplitNumberFromInputFile(inputSplit.getName());
+            final Comparator<KEYOUT> sortComparator =
+                    KeyComparators.getSortComparator(configuration);
+            this.sortComparator = sortComparator;
+            this.keyValuePairComparator =
+                    new Comparator<KeyValuePair<KEYOUT, VALUEOUT>>() {
+                        @Override
+                        public int compare(
+                                KeyValuePair<KEYOUT, VALUEOUT> pair1,
+                                KeyValuePair<KEYOUT, VALUEOUT> pair2) {
+                            return sortComparator.compare(pair1.getKey(),
+                                    pair2.getKey());
+                        }
+                    };
+            this.partitioner =
+                    MRUtility.newInstance(configuration.getPartitionerClass());
+
+            this.splitNumber = splitNumber;
 
             // Prepare the path for map task output
             String pathStr =
@@ -98,18 +211,108 @@ public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
                             + File.separator;
             this.tempPath = pathStr + tempFile + splitNumber;
             this.finalPath = pathStr + completeFile + splitNumber;
+            this.hotKeysPath = pathStr + HOT_KEYS_FILE + splitNumber;
+            this.reducersPerHotKey =
+                    Math.min(configuration.getReducersPerHotKey(), numberOfReducers);
+            if (numberOfReducers == 0) {
+                setUpForMapOutput(configuration);
+            } else {
+                keyValuePairs = new ArrayList<KeyValuePair<KEYOUT, VALUEOUT>>(200000);
+            }
 
-            // Reader to inflate and read the the compressed file
+            // Reader of the input, inflated when it is a compressed split
+            InputStream inputStream;
+            if (isCompressed && isGzip(input)) {
+                inputStream = openGzipSplit(input);
+            } else if (isCompressed) {
+                inputStream =
+                        new InflaterInputStream(new FileInputStream(input), inflater);
+            } else {
+                uncompressedInput = new FileInputStream(input);
+                uncompressedInputLength = input.length();
+                inputStream =
+                        new BufferedInputStream(uncompressedInput, UNCOMPRESSED_BUFFER);
+            }
+            InputFormat<KEYIN, VALUEIN> inputFormat =
+                    MRUtility.newInstance(configuration.getInputFormatClass());
             reader =
-                    new BufferedLineReader(new InputStreamReader(
-                            new InflaterInputStream(new FileInputStream(
-                                    inputSplit))));
+                    inputFormat.getRecordReader(configuration, inputStream,
+                            (long) splitNumber << SPLIT_OFFSET_BITS);
 
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Check if the given split is a gzip split, sent as it is by the master, rather than
+     * a split compressed by the master
+     * 
+     * @param split - input split file
+     * @return true if the split starts with the gzip magic number
+     * @throws IOException when the split cannot be read
+     */
+    private static boolean isGzip(File split) throws IOException {
+        FileInputStream in = new FileInputStream(split);
+        try {
+            return in.read() == (GZIPInputStream.GZIP_MAGIC & 0xff)
+                    && in.read() == (GZIPInputStream.GZIP_MAGIC >> 8);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens a gzip split, made of one or more gzip members, counting the uncompressed
+     * bytes read for the input counter of the task. The progress of the task is the
+     * position in the compressed split, as the length of the split is its compressed
+     * length
+     * 
+     * @param split - input split file
+     * @return {@link InputStream} of the uncompressed data
+     * @throws IOException when the split is not a valid gzip file
+     */
+    private InputStream openGzipSplit(File split) throws IOException {
+        gzipBytesRead = 0;
+        gzipInput = new FileInputStream(split);
+        gzipInputLength = split.length();
+        return new GZIPInputStream(gzipInput, UNCOMPRESSED_BUFFER) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int bytesRead = super.read(buffer, offset, length);
+                if (bytesRead > 0) {
+                    gzipBytesRead += bytesRead;
+                }
+                return bytesRead;
+            }
+        };
+    }
+
+    /**
+     * Opens the output file of a map task of a job with no reducers, with the
+     * {@link RecordWriter} of the job's {@link OutputFormat}
+     * 
+     * @param configuration {@link Configuration} of the job
+     * @throws IOException when the output file cannot be created
+     */
+    private void setUpForMapOutput(Configuration configuration) throws IOException {
+        File outputDir = new File(configuration.getOutputPath()).getCanonicalFile();
+        outputDir.mkdirs();
+        outputPath = new File(outputDir, outputFile + splitNumber);
+        OutputFormat<KEYOUT, VALUEOUT> outputFormat =
+                MRUtility.newInstance(configuration.getOutputFormatClass());
+        outputWriter = outputFormat.getRecordWriter(configuration, outputPath);
+    }
+
+    /**
+     * Get the file written by this map task when the job has no reducers
+     * 
+     * @return {@link File} of the map output, or null if the job has reducers
+     */
+    public File getOutputFile() {
+        return outputPath;
+    }
+
     /**
      * Processes the file name to get the split number
      * 
@@ -142,40 +345,43 @@ public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
     }
 
     /**
-     * Determines the next key value pair from the input split file. Key generated is
-     * file_pointer + (split number * split size). Value is a {@link Text} containing the
-     * current line read from file.
+     * Determines the next key value pair from the input split file using the
+     * {@link RecordReader} of the job's {@link InputFormat}. For text input, key
+     * generated is file_pointer + (split number << SPLIT_OFFSET_BITS) and value is a
+     * {@link Text} containing the current line read from file.
      * 
      * 
-     * Once all the lines are read from the input, the file is closed
+     * Once all the records are read from the input, the file is closed
      * 
      * @return true if there is at least one more value to be read for the currentKey,
      *         false otherwise
      * 
      */
-    @SuppressWarnings("unchecked")
     public boolean nextKeyValue() {
 
         try {
-            this.currentKey =
-                    (KEYIN) new LongWritable(
-                            (reader.getFilePosition() + (this.splitNumber * this.splitSize)));
-
-            String line = "";
-            line = reader.readLine();
-
-            if (line != null && !line.equals("")) {
-                this.currentValue = (VALUEIN) new Text(line);
+            if (reader.nextKeyValue()) {
+                this.currentKey = reader.getCurrentKey();
+                this.currentValue = reader.getCurrentValue();
                 currentLine++;
+                inputRecords++;
                 return true;
             }
 
             // The below code will be invoked only when there are no more keys
             // to be read from the input split file
             this.currentValue = null;
-            sortKeyValPairsByKey();
-            spillToFile();
+            if (outputWriter != null) {
+                outputWriter.close();
+            } else {
+                sortKeyValPairsByKey();
+                spillToFile();
+            }
             reader.close();
+            closeInflater();
+            counters.increment(TaskCounter.MAP_INPUT_RECORDS, inputRecords);
+            counters.increment(TaskCounter.MAP_INPUT_BYTES, inputBytes);
+            counters.increment(TaskCounter.MAP_OUTPUT_RECORDS, outputRecords);
 
         } catch (FileNotFoundException e) {
             throw new RuntimeException(e);
@@ -190,7 +396,8 @@ public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
      * Writes the processed map data into in-memory buffer until it reaches a threshold
      * (twice the split size by default). Once the threshold is reached, the data is
      * sorted and spilled to files with the and the buffer is freed. Keeps track of the
-     * number of bytes read so far in order to test against the threshold
+     * number of bytes read so far in order to test against the threshold. When the job
+     * has no reducers, the pair is written to the output file instead
      * 
      * @param key - key written by the map method
      * @param value - value written by the map method
@@ -199,10 +406,21 @@ public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public void write(KEYOUT key, VALUEOUT value) {
 
+        if (outputWriter != null) {
+            try {
+                outputWriter.write(key, value);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            outputRecords++;
+            return;
+        }
+
         int keySize = ((MapReduceObject) key).getSizeInBytes();
         int valueSize = ((MapReduceObject) value).getSizeInBytes();
 
         bytesInBuffer = bytesInBuffer + keySize + valueSize;
+        outputRecords++;
 
         if (bytesInBuffer > spillSize) {
             sortKeyValPairsByKey();
@@ -219,12 +437,19 @@ public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
     }
 
     /**
-     * Sorts the in-memory buffer using Collections.sort
+     * Sorts the in-memory buffer using Collections.sort and the sort comparator of the
+     * job
      * 
      * @see java.util.Collections
+     * @see KeyComparators
      */
     public void sortKeyValPairsByKey() {
-        Collections.sort(keyValuePairs);
+        phase = TaskStatus.PHASE.SPILL;
+        long start = System.nanoTime();
+        Collections.sort(keyValuePairs, keyValuePairComparator);
+        long sortTime = System.nanoTime() - start;
+        profile.getHistogram(TaskProfile.PHASE.SORT).record(sortTime);
+        spillTime += sortTime;
     }
 
     /**
@@ -233,22 +458,30 @@ public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
      */
     public void spillToFile() {
         File[] mapperOutputFiles = new File[this.numberOfReducers];
-        ObjectOutputStream[] objectOutputStream =
-                new ObjectOutputStream[this.numberOfReducers];
+        List<SegmentWriter<KEYOUT, VALUEOUT>> segmentWriters =
+                new ArrayList<SegmentWriter<KEYOUT, VALUEOUT>>(this.numberOfReducers);
 
         try {
+            long start = System.nanoTime();
 
-            initializeCompressedObjectOutputStream(mapperOutputFiles,
-                    objectOutputStream);
+            if (spillCount == 0 && reducersPerHotKey > 1) {
+                findHotKeys();
+            }
+            initializeSegmentWriters(mapperOutputFiles, segmentWriters);
 
-            writeMapBufferToStream(objectOutputStream);
+            writeMapBufferToSegments(segmentWriters);
 
-            renameFilesOnceComplete(mapperOutputFiles, objectOutputStream);
+            renameFilesOnceComplete(mapperOutputFiles, segmentWriters);
 
+            long writeTime = System.nanoTime() - start;
+            profile.getHistogram(TaskProfile.PHASE.SPILL).record(writeTime);
+            spillTime += writeTime;
             spillCount++;
+            counters.increment(TaskCounter.SPILL_COUNT, 1);
+            phase = TaskStatus.PHASE.MAP;
 
         } catch (IOException e) {
-            throw new RuntimeException(e.getMessage());
+            throw new RuntimeException(e.getMessage(), e);
         }
     }
 
@@ -260,17 +493,18 @@ public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
      * 
      * @param mapperOutputFiles: array of {@link File} Output files of the mapper, one for
      *            each reducer
-     * @param objectOutputStream: array of {@link ObjectOutputStream} that are to be
-     *            closed on completion
+     * @param segmentWriters: list of {@link SegmentWriter} that are to be closed on
+     *            completion
      * 
      * @throws IOException when there is an error while flushing/closing the output stream
      */
     private void renameFilesOnceComplete(
             File[] mapperOutputFiles,
-            ObjectOutputStream[] objectOutputStream) throws IOException {
+            List<SegmentWriter<KEYOUT, VALUEOUT>> segmentWriters) throws IOException {
         for (int reducer = 0; reducer < this.numberOfReducers; reducer++) {
-            objectOutputStream[reducer].flush();
-            objectOutputStream[reducer].close();
+            segmentWriters.get(reducer).close();
+            counters.increment(TaskCounter.MAP_OUTPUT_BYTES,
+                    segmentWriters.get(reducer).getRawLength());
             File renamedFile =
                     new File(finalPath + "_" + spillCount + "_" + reducer);
             mapperOutputFiles[reducer].renameTo(renamedFile);
@@ -279,83 +513,280 @@ public class MapContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
 
     /**
      * 
-     * Write all the key and values from in-memory map buffer to the
-     * {@link ObjectOutputStream}, which in turn writes to the map output files
+     * Write all the key and values from in-memory map buffer to the segment of the
+     * reducer computed for each key
      * 
-     * @param objectOutputStream {@link ObjectOutputStream}
-     * @throws IOException when there is an error writing the objects to the output stream
+     * @param segmentWriters list of {@link SegmentWriter}, one for each reducer
+     * @throws IOException when there is an error writing the objects to the segments
      */
-    private
-            void
-            writeMapBufferToStream(ObjectOutputStream[] objectOutputStream)
-                    throws IOException {
+    private void writeMapBufferToSegments(
+            List<SegmentWriter<KEYOUT, VALUEOUT>> segmentWriters) throws IOException {
+
+        if (hotKeys == null) {
+            for (KeyValuePair<KEYOUT, VALUEOUT> keyValPair : keyValuePairs) {
+                int reducerId = computeReducerIdForKey(keyValPair);
+                segmentWriters.get(reducerId).append(keyValPair.getKey(),
+                        keyValPair.getVal());
+            }
+            return;
+        }
 
-        int count = 0;
+        // The buffer is sorted, so the hot keys are looked up once per run of equal keys
+        KEYOUT runKey = null;
+        boolean isHotKey = false;
         for (KeyValuePair<KEYOUT, VALUEOUT> keyValPair : keyValuePairs) {
+            if (runKey == null
+                    || sortComparator.compare(runKey, keyValPair.getKey()) != 0) {
+                runKey = keyValPair.getKey();
+                isHotKey = hotKeys.contains(runKey);
+            }
             int reducerId = computeReducerIdForKey(keyValPair);
-            objectOutputStream[reducerId].writeObject(keyValPair.getKey());
-            objectOutputStream[reducerId].writeObject(keyValPair.getVal());
-            // Invoke reset periodically so that the objects read from the file
-            // are eligible for garbage collection. This value was chosen for
-            // performance reasons
-            if (count % 20480 == 0) {
-                objectOutputStream[reducerId].reset();
+            if (isHotKey) {
+                reducerId =
+                        (reducerId + hotKeyRecords++ % reducersPerHotKey)
+                                % numberOfReducers;
             }
-            count++;
+            segmentWriters.get(reducerId).append(keyValPair.getKey(),
+                    keyValPair.getVal());
         }
     }
 
     /**
-     * Initializes the compressed object output stream to which the mapper output will be
-     * written. Uses {@link DeflaterOutputStream} with Deflater.BEST_SPEED settings
+     * Finds the hot keys in the sorted buffer of the first spill: the keys with at least
+     * MIN_HOT_KEY_RECORDS records and at least half the share of the records a reducer
+     * would get. The hot keys are written, with one of their values, to the hot keys
+     * file of this map task
+     * 
+     * @throws IOException when the hot keys file cannot be written
+     */
+    private void findHotKeys() throws IOException {
+        int minRecords =
+                Math.max(MIN_HOT_KEY_RECORDS, keyValuePairs.size()
+                        / (2 * numberOfReducers));
+        TreeSet<KEYOUT> keys = new TreeSet<KEYOUT>(sortComparator);
+        SegmentWriter<KEYOUT, VALUEOUT> writer = null;
+        int runStart = 0;
+        for (int i = 1; i <= keyValuePairs.size(); i++) {
+            if (i < keyValuePairs.size()
+                    && sortComparator.compare(keyValuePairs.get(runStart).getKey(),
+                            keyValuePairs.get(i).getKey()) == 0) {
+                continue;
+            }
+            if (i - runStart >= minRecords) {
+                KeyValuePair<KEYOUT, VALUEOUT> pair = keyValuePairs.get(runStart);
+                if (writer == null) {
+                    writer =
+                            new SegmentWriter<KEYOUT, VALUEOUT>(new File(hotKeysPath
+                                    + tempFile));
+                }
+                writer.append(pair.getKey(), pair.getVal());
+                keys.add(pair.getKey());
+                LOG.info("Hot key " + pair.getKey() + ": " + (i - runStart) + " of "
+                        + keyValuePairs.size() + " records");
+            }
+            runStart = i;
+        }
+        if (writer != null) {
+            writer.close();
+            new File(hotKeysPath + tempFile).renameTo(new File(hotKeysPath));
+            hotKeys = keys;
+        }
+    }
+
+    /**
+     * Initializes the compressed segment writers to which the mapper output will be
+     * written.
      * 
      * @param mapperOutputFiles: array of {@link File} Output files of the mapper, one for
      *            each reducer
-     * @param objectOutputStream: array of {@link ObjectOutputStream}, one for each
+     * @param segmentWriters: list to which a {@link SegmentWriter} is added for each
      *            reducer
-     *            
-     * @throws IOException {@link IOException}
-     * @throws FileNotFoundException when the file cannot be read by the FileOutputStream
+     * 
+     * @throws IOException when the file cannot be opened for writing
+     * @see SegmentWriter
      */
-    private void initializeCompressedObjectOutputStream(
+    private void initializeSegmentWriters(
             File[] mapperOutputFiles,
-            ObjectOutputStream[] objectOutputStreams)
-            throws IOException,
-            FileNotFoundException {
+            List<SegmentWriter<KEYOUT, VALUEOUT>> segmentWriters) throws IOException {
 
-        // Initialize OutputStream to serialize and compress the mapper output Objects to
-        // files
         for (int reducerId = 0; reducerId < this.numberOfReducers; reducerId++) {
             File file = new File(tempPath + "_" + spillCount + "_" + reducerId);
             mapperOutputFiles[reducerId] = file;
-
-            Deflater def = new Deflater(Deflater.BEST_SPEED);
-
-            objectOutputStreams[reducerId] =
-                    new ObjectOutputStream((new BufferedOutputStream(
-                            new DeflaterOutputStream(
-                                    new FileOutputStream(file), def))));
-
+            segmentWriters.add(new SegmentWriter<KEYOUT, VALUEOUT>(file));
         }
     }
 
     /**
      * 
-     * Returns the reducer id for the key in the given keyValPair
+     * Returns the reducer id for the key in the given keyValPair, computed by the
+     * {@link Partitioner} of the job
      * 
      * @param keyValPair {@link KeyValuePair}
      * @return the reducer Id computed for the key
      * 
-     *         Tried using hash function (keyValPair.getKey().hashCode() %
-     *         this.numberOfReducers), but that sometimes caused the reducer Id to be set
-     *         as -1. Reference:
-     *         http://ercoppa.github.io/HadoopInternals/AnatomyMapReduceJob.html
+     * @see HashPartitioner
      */
     public
             int
             computeReducerIdForKey(KeyValuePair<KEYOUT, VALUEOUT> keyValPair) {
-        return (Integer.MAX_VALUE & keyValPair.getKey().hashCode())
-                % this.numberOfReducers;
+        return partitioner.getPartition(keyValPair.getKey(),
+                keyValPair.getVal(), this.numberOfReducers);
+    }
+
+    /**
+     * Records the number of uncompressed input bytes read and releases the inflater.
+     * Synchronized with updateStatus(), which reads the inflater while the input is
+     * being read
+     */
+    private synchronized void closeInflater() {
+        if (gzipBytesRead >= 0) {
+            inputBytes = gzipBytesRead;
+        } else {
+            inputBytes =
+                    uncompressedInput == null ? inflater.getBytesWritten()
+                            : uncompressedInputLength;
+        }
+        inflater.end();
+    }
+
+    /**
+     * Copies the progress of this map task to the given status
+     * 
+     * @param status {@link TaskStatus} of this map task
+     */
+    public synchronized void updateStatus(TaskStatus status) {
+        status.setPhase(phase);
+        status.setRecordsProcessed(inputRecords);
+        status.setBytesProcessed(inputBytes >= 0 && gzipInput == null ? inputBytes
+                : getBytesRead());
+    }
+
+    /**
+     * Get the number of input bytes read so far
+     * 
+     * @return uncompressed bytes of the split, compressed bytes of a gzip split, or
+     *         bytes of the local input file read
+     */
+    private long getBytesRead() {
+        if (gzipInput != null) {
+            return getPosition(gzipInput, gzipInputLength);
+        }
+        if (uncompressedInput == null) {
+            return inflater.getBytesWritten();
+        }
+        return getPosition(uncompressedInput, uncompressedInputLength);
+    }
+
+    /**
+     * Get the position of the given input file
+     * 
+     * @param input - {@link FileInputStream} of the input
+     * @param length - length of the file, returned once the input is closed
+     * @return bytes of the file read
+     */
+    private static long getPosition(FileInputStream input, long length) {
+        try {
+            return input.getChannel().position();
+        } catch (IOException e) {
+            // The input was closed
+            return length;
+        }
+    }
+
+    /**
+     * Adds the given amount to a user defined counter of this map task
+     * 
+     * @param group - name of the counter group
+     * @param name - name of the counter
+     * @param amount - value to be added
+     */
+    public void incrementCounter(String group, String name, long amount) {
+        counters.increment(group, name, amount);
+    }
+
+    /**
+     * Adds the given amount to a user defined counter of this map task
+     * 
+     * @param counter - enum constant naming the counter
+     * @param amount - value to be added
+     */
+    public void incrementCounter(Enum<?> counter, long amount) {
+        counters.increment(counter, amount);
+    }
+
+    /**
+     * Get a cache file of the job, added with ApplicationMaster.addCacheFile, mapped in
+     * memory. The file is mapped once per map task, and each call returns a new buffer
+     * over the mapping, with its own position
+     * 
+     * @param name - name of the cache file
+     * @return read-only {@link ByteBuffer} of the file content
+     */
+    public ByteBuffer getCacheFile(String name) {
+        MappedByteBuffer buffer = cacheFiles.get(name);
+        if (buffer == null) {
+            String path = configuration.getLocalCacheFile(name);
+            if (path == null) {
+                throw new IllegalArgumentException("Unknown cache file " + name);
+            }
+            try {
+                buffer = MRUtility.mapFile(new File(path));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            cacheFiles.put(name, buffer);
+        }
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the hash index of a small table for a map-side join. The table is a cache file
+     * of the job with one key and value per line. The index is built outside of the heap
+     * and cached by the TaskTracker, and shared with the other map tasks using the same
+     * table
+     * 
+     * @param name - name of the cache file
+     * @param separator - separator between the key and the value of a line
+     * @return {@link HashJoinIndex} of the table
+     */
+    public HashJoinIndex getJoinIndex(String name, String separator) {
+        String hash = configuration.getCacheFiles().get(name);
+        String path = configuration.getLocalCacheFile(name);
+        if (hash == null || path == null) {
+            throw new IllegalArgumentException("Unknown cache file " + name);
+        }
+        try {
+            return HashJoinIndex.getIndex(hash, new File(path), separator);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get the time spent in each phase of this map task
+     * 
+     * @return {@link TaskProfile}
+     */
+    public TaskProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Get the total time spent sorting and spilling the map output so far
+     * 
+     * @return time in nanoseconds
+     */
+    long getSpillTime() {
+        return spillTime;
+    }
+
+    /**
+     * Get the counters of this map task
+     * 
+     * @return {@link Counters}
+     */
+    public Counters getCounters() {
+        return counters;
     }
 
     /**
@@ -3,6 +3,8 @@ package mr.worker;
 import java.io.File;
 
 import mr.common.Configuration;
+import mr.common.Histogram;
+import mr.common.TaskProfile;
 
 /**
  * Maps key/value read from the input file to a set of intermediate key/value pairs.
@@ -29,18 +31,37 @@ public class Mapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
         Context(Configuration configuration, File inputSplit, String dataDir) {
             super(configuration, inputSplit, dataDir);
         }
+
+        Context(Configuration configuration, File input, int splitNumber,
+                boolean isCompressed, String dataDir) {
+            super(configuration, input, splitNumber, isCompressed, dataDir);
+        }
     }
 
     /**
      * Runs until all the values are processed from the input file. Invokes the map
      * function for every key-value pair read from the input file until all the keys have
-     * been read
+     * been read. The time taken to read each record and to map it is recorded in the
+     * profile of the context
      * 
      * @param context {@link Context}
      */
     public void run(Context context) {
+        Histogram readTimes =
+                context.getProfile().getHistogram(TaskProfile.PHASE.RECORD_READ);
+        Histogram mapTimes =
+                context.getProfile().getHistogram(TaskProfile.PHASE.MAP);
+        long start = System.nanoTime();
         while (context.nextKeyValue()) {
+            long readEnd = System.nanoTime();
+            readTimes.record(readEnd - start);
+            long spillTime = context.getSpillTime();
+
             map(context.getCurrentKey(), context.getCurrentValue(), context);
+
+            start = System.nanoTime();
+            // Spills triggered by the map method are recorded separately
+            mapTimes.record(start - readEnd - (context.getSpillTime() - spillTime));
         }
     }
 
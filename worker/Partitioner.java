@@ -0,0 +1,26 @@
+package mr.worker;
+
+/**
+ * Computes the reducer to which a map output key/value pair is sent. All the pairs for a
+ * key (or, with a grouping comparator, for a group of keys) must be sent to the same
+ * reducer. Implementations must have a public no-argument constructor.
+ * 
+ * Reference: This interface is based on Apache Hadoop's Partitioner class.
+ * 
+ * @see HashPartitioner
+ * 
+ * @param <KEY>
+ * @param <VALUE>
+ */
+public interface Partitioner<KEY, VALUE> {
+
+    /**
+     * Get the reducer id for the given key/value pair
+     * 
+     * @param key - map output key
+     * @param value - map output value
+     * @param numberOfReducers - number of reducers of the job
+     * @return reducer id, between 0 and numberOfReducers - 1
+     */
+    int getPartition(KEY key, VALUE value, int numberOfReducers);
+}
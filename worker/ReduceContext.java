@@ -1,28 +1,40 @@
 package mr.worker;
 
-import java.io.BufferedInputStream;
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.zip.InflaterInputStream;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
 
 import mr.common.Configuration;
+import mr.common.Counters;
+import mr.common.MRUtility;
+import mr.common.Histogram;
+import mr.common.TaskCounter;
+import mr.common.TaskProfile;
+import mr.common.TaskStatus;
+import mr.io.KeyValueFileOutputFormat;
+import mr.io.OutputFormat;
+import mr.io.RecordWriter;
 
 /**
  * Reads the compressed mapper output files and writes the reduced output to a file. The
  * pre-sorted mapper output files are then merged on the fly in sorted order while being
- * read from the disk.
+ * read from the disk. Only the keys are deserialized while merging; the values are
+ * deserialized when the reducer iterates over them.
+ * 
+ * When the hot keys of the job are salted, each reduce task only receives part of the
+ * records of a hot key. The output of the hot keys is then written with the
+ * {@link KeyValueFileOutputFormat} to a separate file, _hot_[reducer id], whose partial
+ * results are merged by a second job.
  * 
  * 
  * @param <KEYIN>
@@ -33,8 +45,7 @@ import mr.common.Configuration;
 
 public class ReduceContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
 
-    private static final String OUTPUTDIR = "output";
-    private static final String OUTPUTFILENAME = "part_";
+    private static final String HOT_KEY_OUTPUT_PREFIX = "_hot_";
 
     private ArrayList<String> intermediateFileNames = new ArrayList<String>();;
 
@@ -42,28 +53,49 @@ public class ReduceContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
     private String reducerId;
 
     // To read the mapper output files
-    private ObjectInputStream[] objectInputStream;
+    private List<SegmentReader<KEYIN, VALUEIN>> segmentReaders;
 
-    private PrintWriter reducerWriter;
+    private Configuration configuration;
+    // Cache files of the job mapped by this task, by name
+    private Map<String, MappedByteBuffer> cacheFiles =
+            new HashMap<String, MappedByteBuffer>();
+    private RecordWriter<KEYOUT, VALUEOUT> reducerWriter;
+    private File reducerOutputFile;
 
-    // Maintains the indices of files to be read while fetching the next key/value
-    private Set<Integer> filesToProceed = new HashSet<Integer>();
+    // Keys salted across several reducers by the map tasks, null if there are none
+    private TreeSet<KEYIN> hotKeys;
+    private RecordWriter<KEYOUT, VALUEOUT> hotKeyWriter;
+    private File hotKeyOutputFile;
 
+    // Value object reused for all the values passed to the reducer
     private VALUEIN value;
     private KEYIN currentKey;
-    private KEYIN previousKey;
+    // First key of the group of values being reduced
+    private KEYIN groupKey;
 
     // Iterable to iterate through all values for a key
     private Iterable<VALUEIN> values = new ValueIterable();
 
+    // Indices of the reducer input files, ordered by the key of their current record.
     // Used for merge sorting the mapper output files as they are being read
-    private List<FileIdValuePair<VALUEIN>> currentValues =
-            new ArrayList<FileIdValuePair<VALUEIN>>();
-    private SortedMap<KEYIN, List<FileIdValuePair<VALUEIN>>> keyValCache =
-            new TreeMap<KEYIN, List<FileIdValuePair<VALUEIN>>>();
+    private PriorityQueue<Integer> mergeQueue;
+    private Comparator<KEYIN> sortComparator;
+
+    // Used for grouping the sorted keys into the values of one reduce call
+    private Comparator<KEYIN> groupingComparator;
 
     private boolean isFirst = true;
-    private boolean hasNextKey = true;
+    private Counters counters = new Counters();
+
+    // Counted in fields and added to the counters once all the input has been read. The
+    // number of input records is also read by the heartbeat thread
+    private volatile long inputRecords;
+    private long inputGroups;
+    private long outputRecords;
+
+    // Time spent in each phase of this task
+    private TaskProfile profile = new TaskProfile();
+    private Histogram mergeTimes = profile.getHistogram(TaskProfile.PHASE.MERGE);
 
     /**
      * Initializes the mapper output files path to read Gets the list of mapper out files
@@ -75,6 +107,9 @@ public class ReduceContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
      */
     public ReduceContext(Configuration config, String tempDirectory,
             String taskId) {
+        this.configuration = config;
+        this.sortComparator = KeyComparators.getSortComparator(config);
+        this.groupingComparator = KeyComparators.getGroupingComparator(config);
         this.intermediateFilesPath = tempDirectory;
         getListOfFilesToProcess();
         this.reducerId = taskId;
@@ -103,7 +138,8 @@ public class ReduceContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
     }
 
     /**
-     * Gets list of mapper output files to process for the reduce task
+     * Gets list of mapper output files to process for the reduce task, without the runs
+     * left incomplete by a failed merge
      */
     private void getListOfFilesToProcess() {
 
@@ -111,31 +147,49 @@ public class ReduceContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
 
         for (File f : files) {
             String fileName = f.getName();
+            if (fileName.endsWith(SegmentMerger.IN_PROGRESS_SUFFIX)) {
+                continue;
+            }
             this.intermediateFileNames.add(fileName);
         }
 
     }
 
     /**
-     * Initializes the stream for reading compressed Mapper output files
+     * Initializes the readers for the compressed Mapper output files (and the runs
+     * merged from them during the shuffle)
      */
     private void initializeInputStreamsForFiles() {
         try {
             System.out.print("intermediate" + intermediateFileNames);
-            objectInputStream =
-                    new ObjectInputStream[this.intermediateFileNames.size()];
+            segmentReaders =
+                    new ArrayList<SegmentReader<KEYIN, VALUEIN>>(
+                            this.intermediateFileNames.size());
             int count = 0;
             // Initializing the input to read from compressed & serialized object file
             for (String fileName : intermediateFileNames) {
-                objectInputStream[count] =
-                        new ObjectInputStream(new BufferedInputStream(
-                                new InflaterInputStream(new FileInputStream(
-                                        intermediateFilesPath + File.separator
-                                                + fileName))));
+                segmentReaders.add(new SegmentReader<KEYIN, VALUEIN>(new File(
+                        intermediateFilesPath, fileName)));
 
-                filesToProceed.add(count);
                 count++;
             }
+            mergeQueue =
+                    new PriorityQueue<Integer>(Math.max(1, count),
+                            new Comparator<Integer>() {
+                                @Override
+                                public int compare(Integer fileId1, Integer fileId2) {
+                                    int diff =
+                                            sortComparator.compare(
+                                                    segmentReaders.get(fileId1)
+                                                            .getKey(),
+                                                    segmentReaders.get(fileId2)
+                                                            .getKey());
+                                    if (diff == 0) {
+                                        diff = fileId1 - fileId2;
+                                    }
+                                    return diff;
+                                }
+                            });
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -154,95 +208,146 @@ public class ReduceContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
     }
 
     /**
-     * Helper method to initialize File writer for output of the reduce task
+     * Get the file written by this reduce task with the job's {@link OutputFormat}
+     * 
+     * @return {@link File} of the reducer output
+     */
+    public File getOutputFile() {
+        return reducerOutputFile;
+    }
+
+    /**
+     * Helper method to initialize the {@link RecordWriter} of the job's
+     * {@link OutputFormat} for output of the reduce task
      * 
      */
     private void setUpForReducerOutput() {
         try {
-            createNewDirIfNotFound(OUTPUTDIR);
-            String reducerOutputPath =
-                    new File(".").getCanonicalPath() + File.separator
-                            + OUTPUTDIR + File.separator + OUTPUTFILENAME
-                            + this.reducerId;
-
-            this.reducerWriter = new PrintWriter(reducerOutputPath);
+            String outputDir = configuration.getOutputPath();
+            createNewDirIfNotFound(outputDir);
+            reducerOutputFile =
+                    new File(new File(outputDir).getCanonicalFile(),
+                            configuration.getOutputFilePrefix() + this.reducerId);
+
+            OutputFormat<KEYOUT, VALUEOUT> outputFormat =
+                    MRUtility.newInstance(configuration.getOutputFormatClass());
+            this.reducerWriter =
+                    outputFormat.getRecordWriter(configuration,
+                            reducerOutputFile);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * Check if there is anymore key to be processed from mapper output files.
+     * Reads the hot keys files received from the map TaskTrackers. The output of the
+     * reduce calls of these keys is written to the hot key output file
      * 
-     * @return true if there is a key to process, false otherwise
+     * @param hotKeysDirectory {@link File} of the folder of the hot keys files
      */
-    public boolean hasNextKey() {
-        if (isFirst) {
-            nextKeyValue();
-            return true;
-        } else {
-            if (currentKey == null) {
-                cleanup();
-                return false;
-            } else {
-                previousKey = currentKey;
-                if (!hasNextKey) {
-                    cleanup();
+    void setHotKeys(File hotKeysDirectory) {
+        File[] files = hotKeysDirectory.listFiles();
+        if (files == null || files.length == 0) {
+            return;
+        }
+        hotKeys = new TreeSet<KEYIN>(sortComparator);
+        for (File file : files) {
+            try {
+                SegmentReader<KEYIN, VALUEIN> reader =
+                        new SegmentReader<KEYIN, VALUEIN>(file);
+                try {
+                    while (reader.next()) {
+                        hotKeys.add(reader.getKey());
+                    }
+                } finally {
+                    reader.close();
                 }
-                return hasNextKey;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
         }
     }
 
     /**
-     * Closes all the streams for mapper output files and the reduce task output file
+     * Get the file of the partial results of the hot keys written by this reduce task
      * 
+     * @return {@link File} of the hot key output, or null if no hot key was reduced
      */
-    private void cleanup() {
-        for (ObjectInputStream in : objectInputStream) {
-            try {
-                in.close();
-            } catch (IOException e) {
-                System.out.println("ERROR: Exception while closing the file");
-            }
-            reducerWriter.close();
-        }
+    public File getHotKeyOutputFile() {
+        return hotKeyOutputFile;
     }
 
     /**
-     * Object to hold a file id along with a value
-     * 
-     * @author Deepak Jagadeesh
+     * Check if there is anymore key to be processed from mapper output files. The values
+     * of the previous group that were not consumed by the reducer are skipped without
+     * being deserialized. The time taken is recorded as merge time.
      * 
-     * @param <VALUEIN> object of type VALUEIN
+     * @return true if there is a key to process, false otherwise
      */
-    static class FileIdValuePair<VALUEIN> {
-        private VALUEIN key;
-        private Integer value;
-
-        FileIdValuePair(VALUEIN key, Integer value) {
-            this.key = key;
-            this.value = value;
+    public boolean hasNextKey() {
+        long start = System.nanoTime();
+        try {
+            return nextGroup();
+        } finally {
+            mergeTimes.record(System.nanoTime() - start);
         }
+    }
 
-        /**
-         * @return the value
-         */
-        public VALUEIN getValue() {
-            return key;
+    /**
+     * Skips the values of the current group that were not consumed and moves to the
+     * first record of the next group
+     * 
+     * @return true if there is a key to process, false otherwise
+     */
+    private boolean nextGroup() {
+        if (isFirst) {
+            isFirst = false;
+            for (int i = 0; i < segmentReaders.size(); i++) {
+                advance(i);
+            }
+        } else {
+            while (!mergeQueue.isEmpty() && isSameGroup(groupKey, headKey())) {
+                advance(mergeQueue.poll());
+            }
         }
-
-        /**
-         * @return the file id
-         */
-        public Integer getFileId() {
-            return value;
+        if (mergeQueue.isEmpty()) {
+            currentKey = null;
+            cleanup();
+            return false;
         }
+        groupKey = headKey();
+        currentKey = groupKey;
+        inputGroups++;
+        return true;
+    }
 
+    /**
+     * Closes all the streams for mapper output files and the reduce task output file,
+     * and updates the counters of the reduce task
+     * 
+     */
+    private void cleanup() {
+        for (SegmentReader<KEYIN, VALUEIN> in : segmentReaders) {
+            in.close();
+        }
+        counters.increment(TaskCounter.REDUCE_INPUT_GROUPS, inputGroups);
+        counters.increment(TaskCounter.REDUCE_INPUT_RECORDS, inputRecords);
+        counters.increment(TaskCounter.REDUCE_OUTPUT_RECORDS, outputRecords);
+        try {
+            reducerWriter.close();
+            if (hotKeyWriter != null) {
+                hotKeyWriter.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
-     * To iterate through all the values for the current key
+     * To iterate through all the values for the current key. Each value is deserialized
+     * only when next() is called, and {@link mr.io.Writable} values are read into the
+     * same object every time. A reducer that needs to keep a value beyond the next call
+     * must copy it.
      * 
      * @author Deepak Jagadeesh
      * @see java.util.Iterator
@@ -256,18 +361,7 @@ public class ReduceContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
          */
         @Override
         public boolean hasNext() {
-            if (isFirst || previousKey == null) {
-                previousKey = currentKey;
-                isFirst = false;
-                return true;
-            }
-            try {
-                nextKeyValue();
-            } catch (NoSuchElementException e) {
-                hasNextKey = false;
-                return false;
-            }
-            return previousKey.equals(currentKey);
+            return !mergeQueue.isEmpty() && isSameGroup(groupKey, headKey());
         }
 
         /**
@@ -275,6 +369,17 @@ public class ReduceContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
          */
         @Override
         public VALUEIN next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int fileId = mergeQueue.poll();
+            try {
+                value = segmentReaders.get(fileId).getValue(value);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            currentKey = segmentReaders.get(fileId).getKey();
+            advance(fileId);
             return value;
         }
 
@@ -285,78 +390,40 @@ public class ReduceContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
     }
 
     /**
-     * Reads one line from all the reducer input files at a time and stores it in a
-     * SortedMap used as a cache from which the next values are read. Once all the values
-     * for a particular key have been read, reads the next line from only those reducer
-     * input files from which those values read were obtained. This process is repeated
-     * until all the input files have been read completely.
-     * 
-     * throws {@link NoSuchElementException} when all the reducer input files have been
-     * read
+     * Reads the next record of the given reducer input file and adds the file back to the
+     * merge queue, ordered by the key of that record. The file is not added back once it
+     * has been read completely.
      * 
-     * @see java.util.TreeMap
-     * @see java.util.Set
-     * @see java.util.Collections
+     * @param fileId index of the reducer input file
      */
-    @SuppressWarnings("unchecked")
-    private void nextKeyValue() {
+    private void advance(int fileId) {
         try {
-            if (currentValues.size() > 0) {
-                value = currentValues.remove(0).getValue();
-            } else {
-                for (Integer fileId : filesToProceed) {
-                    KEYIN key = null;
-                    VALUEIN value = null;
-                    // Get the next key and value
-                    try {
-                        key = (KEYIN) objectInputStream[fileId].readObject();
-                        value =
-                                (VALUEIN) objectInputStream[fileId]
-                                        .readObject();
-                    } catch (EOFException eof) {
-                        // Comes here when one of the files have been read completely.
-                        // This can be safely ignored and the next file from
-                        // filesToProceed will be processed
-                        continue;
-                    }
-
-                    // Add the current key and the list of file ids containing the key
-                    // along with the corresponding values to the cache
-                    List<FileIdValuePair<VALUEIN>> currentValuesForKey =
-                            keyValCache.get(key);
-                    if (currentValuesForKey == null) {
-                        currentValuesForKey =
-                                new ArrayList<FileIdValuePair<VALUEIN>>();
-                        currentValuesForKey.add(new FileIdValuePair<VALUEIN>(
-                                value, fileId));
-                        keyValCache.put(key, currentValuesForKey);
-                    } else {
-                        currentValuesForKey.add(new FileIdValuePair<VALUEIN>(
-                                value, fileId));
-                    }
-                }
-                // Get and remove the first key from the cache
-                KEYIN key = keyValCache.firstKey();
-                previousKey = currentKey;
-                currentKey = key;
-                currentValues = keyValCache.remove(key);
-
-                // Add only the file id's corresponding to the file that contained the key
-                // removed
-                filesToProceed.clear();
-                for (FileIdValuePair<VALUEIN> va : currentValues) {
-                    filesToProceed.add(va.getFileId());
-                }
-                if (previousKey == null || currentKey.equals(previousKey)) {
-                    value = currentValues.remove(0).getValue();
-                }
+            if (segmentReaders.get(fileId).next()) {
+                inputRecords++;
+                mergeQueue.add(fileId);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
         }
+    }
+
+    /**
+     * @return key of the next record in sorted order of all the reducer input files
+     */
+    private KEYIN headKey() {
+        return segmentReaders.get(mergeQueue.peek()).getKey();
+    }
 
+    /**
+     * Check if the given keys belong to the same group of values, using the grouping
+     * comparator of the job
+     * 
+     * @param key1
+     * @param key2
+     * @return true if the values of both keys are passed to the same reduce call
+     */
+    private boolean isSameGroup(KEYIN key1, KEYIN key2) {
+        return groupingComparator.compare(key1, key2) == 0;
     }
 
     /**
@@ -373,8 +440,35 @@ public class ReduceContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
      * @param value
      */
     public void write(KEYOUT key, VALUEOUT value) {
-        this.reducerWriter.println(key + "--" + value);
-        this.reducerWriter.flush();
+        try {
+            if (hotKeys != null && hotKeys.contains(groupKey)) {
+                getHotKeyWriter().write(key, value);
+                outputRecords++;
+                return;
+            }
+            this.reducerWriter.write(key, value);
+            outputRecords++;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get the writer of the hot key output file, opened by the first write of a hot key
+     * 
+     * @return {@link RecordWriter} of the {@link KeyValueFileOutputFormat}
+     * @throws IOException when the file cannot be created
+     */
+    private RecordWriter<KEYOUT, VALUEOUT> getHotKeyWriter() throws IOException {
+        if (hotKeyWriter == null) {
+            hotKeyOutputFile =
+                    new File(reducerOutputFile.getParentFile(), HOT_KEY_OUTPUT_PREFIX
+                            + reducerId);
+            hotKeyWriter =
+                    new KeyValueFileOutputFormat<KEYOUT, VALUEOUT>().getRecordWriter(
+                            configuration, hotKeyOutputFile);
+        }
+        return hotKeyWriter;
     }
 
     /**
@@ -384,4 +478,78 @@ public class ReduceContext<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
         return this.currentKey;
     }
 
+    /**
+     * Adds the given amount to a user defined counter of this reduce task
+     * 
+     * @param group - name of the counter group
+     * @param name - name of the counter
+     * @param amount - value to be added
+     */
+    public void incrementCounter(String group, String name, long amount) {
+        counters.increment(group, name, amount);
+    }
+
+    /**
+     * Adds the given amount to a user defined counter of this reduce task
+     * 
+     * @param counter - enum constant naming the counter
+     * @param amount - value to be added
+     */
+    public void incrementCounter(Enum<?> counter, long amount) {
+        counters.increment(counter, amount);
+    }
+
+    /**
+     * Get a cache file of the job, added with ApplicationMaster.addCacheFile, mapped in
+     * memory. The file is mapped once per reduce task, and each call returns a new buffer
+     * over the mapping, with its own position
+     * 
+     * @param name - name of the cache file
+     * @return read-only {@link ByteBuffer} of the file content
+     */
+    public ByteBuffer getCacheFile(String name) {
+        MappedByteBuffer buffer = cacheFiles.get(name);
+        if (buffer == null) {
+            String path = configuration.getLocalCacheFile(name);
+            if (path == null) {
+                throw new IllegalArgumentException("Unknown cache file " + name);
+            }
+            try {
+                buffer = MRUtility.mapFile(new File(path));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            cacheFiles.put(name, buffer);
+        }
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies the progress of this reduce task to the given status
+     * 
+     * @param status {@link TaskStatus} of this reduce task
+     */
+    public void updateStatus(TaskStatus status) {
+        status.setPhase(TaskStatus.PHASE.REDUCE);
+        status.setRecordsProcessed(inputRecords);
+    }
+
+    /**
+     * Get the time spent in each phase of this reduce task
+     * 
+     * @return {@link TaskProfile}
+     */
+    public TaskProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Get the counters of this reduce task
+     * 
+     * @return {@link Counters}
+     */
+    public Counters getCounters() {
+        return counters;
+    }
+
 }
@@ -1,6 +1,8 @@
 package mr.worker;
 
 import mr.common.Configuration;
+import mr.common.Histogram;
+import mr.common.TaskProfile;
 
 /**
  * Reduces eack pair of mapper output key and the list of its values to a final output.
@@ -36,14 +38,19 @@ public class Reducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
     /**
      * Calls the reduce method once for every key from the mapper output (in sorted order
      * of the key). For every key, an Iterable object is provided which has the logic to
-     * iterate over all the map output values for the current key
+     * iterate over all the map output values for the current key. The time taken by
+     * each reduce call is recorded in the profile of the context
      * 
      * @param ctx {link @Reduce.Context}
      * @see ReduceContext
      */
     public void run(Context ctx) {
+        Histogram reduceTimes =
+                ctx.getProfile().getHistogram(TaskProfile.PHASE.REDUCE);
         while (ctx.hasNextKey()) {
+            long start = System.nanoTime();
             reduce(ctx.getCurrentKey(), ctx.getValues(), ctx);
+            reduceTimes.record(System.nanoTime() - start);
         }
     }
 
@@ -0,0 +1,73 @@
+package mr.worker;
+
+import static mr.common.MRUtility.sleep;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import mr.common.Constants.NetworkProtocol;
+import mr.common.MRUtility;
+
+/**
+ * Sends periodic heartbeats from a TaskTracker to the registry. Each heartbeat carries
+ * the port the TaskTracker listens on (which identifies it in the registry) and its
+ * current {@link mr.common.SystemSpecs}, with the running tasks, the free heap and the
+ * system load average. A TaskTracker that stops sending heartbeats is removed from the
+ * registry once its entry expires.
+ * 
+ * 
+ */
+public class RegistryUpdater implements Runnable {
+
+    private String registryHost;
+    private int registryPort;
+    private TaskTracker taskTracker;
+    private int listenerPort;
+    private int heartbeatInterval;
+
+    /**
+     * Constructor
+     * 
+     * @param registryHost - host name of the registry
+     * @param registryPort - listener port of the registry
+     * @param taskTracker {@link TaskTracker} that sends the heartbeats
+     * @param listenerPort - port the TaskTracker listens on for the ApplicationMaster
+     * @param heartbeatInterval - interval between two heartbeats in milliseconds
+     */
+    public RegistryUpdater(String registryHost, int registryPort,
+            TaskTracker taskTracker, int listenerPort, int heartbeatInterval) {
+        this.registryHost = registryHost;
+        this.registryPort = registryPort;
+        this.taskTracker = taskTracker;
+        this.listenerPort = listenerPort;
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Sends a heartbeat every heartbeat interval till the TaskTracker exits. A heartbeat
+     * that cannot be sent is skipped
+     */
+    @Override
+    public void run() {
+        while (true) {
+            sleep(heartbeatInterval);
+            try {
+                Socket socket = new Socket(registryHost, registryPort);
+                OutputStream outputStream = socket.getOutputStream();
+                MRUtility.writeMessageToStream(outputStream,
+                        NetworkProtocol.HEARTBEAT);
+                DataOutputStream dataOutputStream =
+                        new DataOutputStream(outputStream);
+                dataOutputStream.writeInt(listenerPort);
+                dataOutputStream.flush();
+                MRUtility.writeObjectToStream(outputStream,
+                        taskTracker.getSystemSpecs());
+                socket.close();
+            } catch (IOException e) {
+                System.out.println("Cannot send heartbeat to Registry");
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package mr.worker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import mr.common.Histogram;
+
+/**
+ * <p>
+ * Background merger started by the 'reducer' TaskTracker while the map output files are
+ * still being received. Segments saved by the {@link FileSaver} threads are handed over
+ * to the merger, and as soon as 'merge factor' segments are pending they are merged into
+ * a single larger sorted run in the same directory.
+ *
+ * <p>
+ * Runs produced by the merger are added back to the pending segments, so that they are
+ * merged again once enough of them are available. When the shuffle is complete, at most
+ * 'merge factor - 1' runs remain for the final merge performed by the
+ * {@link ReduceContext}.
+ *
+ * <p>
+ * A failed merge stops the merger. The error is kept and thrown by
+ * {@link #checkForFailure()}, since the segments of the merge are lost.
+ *
+ * @param <KEY>
+ * @param <VALUE>
+ */
+public class SegmentMerger<KEY, VALUE> implements Runnable {
+
+    private static final String MERGED_FILE = "merged_";
+    // Suffix of a run being written, which is not part of the input of the reduce task
+    static final String IN_PROGRESS_SUFFIX = ".tmp";
+
+    private String directory;
+    private int mergeFactor;
+    private Comparator<KEY> sortComparator;
+    private Histogram mergeTimes;
+    private int mergeCount = 0;
+    private boolean isShuffleComplete = false;
+    // Error of the merge that stopped the merger, thrown to the reduce task
+    private volatile IOException failure;
+
+    // Segments that were received (or merged) but are not yet part of a merge
+    private List<File> pendingSegments = new ArrayList<File>();
+
+    /**
+     * Constructor
+     *
+     * @param directory - folder in which the received map output files are stored
+     * @param mergeFactor - number of segments merged together into one run
+     * @param sortComparator - {@link Comparator} the segments are sorted by
+     * @param mergeTimes - {@link Histogram} of the time taken by each merge, read only
+     *            after the merger has ended
+     */
+    public SegmentMerger(String directory, int mergeFactor,
+            Comparator<KEY> sortComparator, Histogram mergeTimes) {
+        this.directory = directory;
+        this.mergeFactor = Math.max(2, mergeFactor);
+        this.sortComparator = sortComparator;
+        this.mergeTimes = mergeTimes;
+    }
+
+    /**
+     * Adds a completely received segment to the list of segments to be merged
+     *
+     * @param segment {@link File} map output file saved to the reducer's file system
+     */
+    public void addSegment(File segment) {
+        synchronized (pendingSegments) {
+            pendingSegments.add(segment);
+            pendingSegments.notifyAll();
+        }
+    }
+
+    /**
+     * Marks the end of the shuffle phase. The merger finishes the merges that can still
+     * be performed with 'merge factor' segments and then exits.
+     */
+    public void setShuffleComplete() {
+        synchronized (pendingSegments) {
+            isShuffleComplete = true;
+            pendingSegments.notifyAll();
+        }
+    }
+
+    /**
+     * Throws the error of the merge that stopped the merger, if any. Called by the reduce
+     * task once the merger thread has ended
+     *
+     * @throws IOException when a merge has failed
+     */
+    public void checkForFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Merge of the map output files failed", failure);
+        }
+    }
+
+    /**
+     * Waits until 'merge factor' segments are pending and merges them into a new run.
+     * Ends when the shuffle is complete and fewer than 'merge factor' segments remain,
+     * or when a merge fails.
+     */
+    @Override
+    public void run() {
+        List<File> segmentsToMerge;
+        while ((segmentsToMerge = getNextSegmentsToMerge()) != null) {
+            try {
+                long start = System.nanoTime();
+                File run = merge(segmentsToMerge);
+                mergeTimes.record(System.nanoTime() - start);
+                addSegment(run);
+            } catch (IOException e) {
+                e.printStackTrace();
+                failure = e;
+                return;
+            }
+        }
+        System.out.println("Segment merger has ended after " + mergeCount
+                + " merges");
+    }
+
+    /**
+     * Blocks till 'merge factor' segments are pending and removes them from the pending
+     * list. The smallest segments are merged first so that each record is rewritten as
+     * few times as possible
+     *
+     * @return list of segments to merge, or null if no more merges are required
+     */
+    private List<File> getNextSegmentsToMerge() {
+        synchronized (pendingSegments) {
+            while (pendingSegments.size() < mergeFactor) {
+                if (isShuffleComplete) {
+                    return null;
+                }
+                try {
+                    pendingSegments.wait();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+            Collections.sort(pendingSegments, new Comparator<File>() {
+                @Override
+                public int compare(File file1, File file2) {
+                    return Long.compare(file1.length(), file2.length());
+                }
+            });
+            List<File> segments =
+                    new ArrayList<File>(pendingSegments.subList(0, mergeFactor));
+            pendingSegments.subList(0, mergeFactor).clear();
+            return segments;
+        }
+    }
+
+    /**
+     * Merges the given sorted segments into a single sorted run. The values are copied
+     * without being deserialized. The run is written to a temporary file which is renamed
+     * once complete, and the merged segments are deleted
+     *
+     * @param segments list of sorted segment files
+     * @return {@link File} the merged run
+     * @throws IOException when there is an error reading or writing the segments, or the
+     *             run cannot be renamed
+     */
+    private File merge(List<File> segments) throws IOException {
+        String runName = MERGED_FILE + mergeCount++;
+        File tempRun = new File(directory, runName + IN_PROGRESS_SUFFIX);
+        File run = new File(directory, runName);
+
+        PriorityQueue<IndexedSegmentReader<KEY, VALUE>> queue =
+                new PriorityQueue<IndexedSegmentReader<KEY, VALUE>>(
+                        segments.size(), new SegmentComparator());
+        for (int i = 0; i < segments.size(); i++) {
+            IndexedSegmentReader<KEY, VALUE> reader =
+                    new IndexedSegmentReader<KEY, VALUE>(segments.get(i), i);
+            if (reader.next()) {
+                queue.add(reader);
+            } else {
+                reader.close();
+            }
+        }
+
+        SegmentWriter<KEY, VALUE> writer = new SegmentWriter<KEY, VALUE>(tempRun);
+        while (!queue.isEmpty()) {
+            IndexedSegmentReader<KEY, VALUE> reader = queue.poll();
+            writer.appendSerialized(reader.getKey(), reader.getValueClassName(),
+                    reader.getValueBytes(), reader.getValueLength());
+            if (reader.next()) {
+                queue.add(reader);
+            } else {
+                reader.close();
+            }
+        }
+        writer.close();
+        if (!tempRun.renameTo(run)) {
+            throw new IOException("Error while renaming " + tempRun + " to " + run);
+        }
+
+        for (File segment : segments) {
+            segment.delete();
+        }
+        return run;
+    }
+
+    /**
+     * {@link SegmentReader} along with the position of its segment in the merge
+     *
+     * @param <KEY>
+     * @param <VALUE>
+     */
+    private static class IndexedSegmentReader<KEY, VALUE> extends
+            SegmentReader<KEY, VALUE> {
+
+        private int index;
+
+        IndexedSegmentReader(File file, int index) throws IOException {
+            super(file);
+            this.index = index;
+        }
+    }
+
+    /**
+     * Sorts the segment readers by their current key, and by the position of their
+     * segment in the merge for equal keys so that the merge is stable
+     */
+    private class SegmentComparator implements
+            Comparator<IndexedSegmentReader<KEY, VALUE>> {
+
+        @Override
+        public int compare(
+                IndexedSegmentReader<KEY, VALUE> reader1,
+                IndexedSegmentReader<KEY, VALUE> reader2) {
+            int diff = sortComparator.compare(reader1.getKey(), reader2.getKey());
+            if (diff == 0) {
+                diff = reader1.index - reader2.index;
+            }
+            return diff;
+        }
+    }
+}
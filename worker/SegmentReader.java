@@ -0,0 +1,163 @@
+package mr.worker;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.zip.InflaterInputStream;
+
+import mr.common.MRUtility;
+import mr.io.DataInputBuffer;
+import mr.io.Writable;
+
+/**
+ * Reads the key/value pairs of a compressed segment file written by
+ * {@link SegmentWriter}, one pair at a time and in the order they were written. The key
+ * of each pair is deserialized by next(), whereas the value is kept as bytes until it is
+ * requested.
+ *
+ * @param <KEY>
+ * @param <VALUE>
+ */
+public class SegmentReader<KEY, VALUE> {
+
+    private File file;
+    private ObjectInputStream objectInputStream;
+    private DataInputBuffer valueInput = new DataInputBuffer();
+    private KEY key;
+    private String writableClassName;
+    private String valueClassName;
+    private byte[] valueBytes = new byte[128];
+    private int valueLength;
+
+    /**
+     * Opens the given segment file for reading
+     *
+     * @param file {@link File} the segment file to be read
+     * @throws IOException when the file cannot be opened
+     */
+    public SegmentReader(File file) throws IOException {
+        this.file = file;
+        objectInputStream =
+                new ObjectInputStream(new BufferedInputStream(
+                        new InflaterInputStream(new FileInputStream(file))));
+    }
+
+    /**
+     * Reads the next key/value pair from the segment. The value bytes are read but not
+     * deserialized
+     *
+     * @return true if a pair was read, false if the end of the segment has been reached
+     * @throws IOException when there is an error reading from the segment file
+     */
+    @SuppressWarnings("unchecked")
+    public boolean next() throws IOException {
+        try {
+            key = (KEY) objectInputStream.readObject();
+        } catch (EOFException eof) {
+            key = null;
+            valueLength = 0;
+            return false;
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        byte tag = objectInputStream.readByte();
+        if (tag == SegmentWriter.WRITABLE_NEW_CLASS) {
+            writableClassName = objectInputStream.readUTF();
+        }
+        valueClassName = (tag == SegmentWriter.SERIALIZED) ? null : writableClassName;
+        valueLength = objectInputStream.readInt();
+        if (valueBytes.length < valueLength) {
+            valueBytes = new byte[Math.max(valueLength, valueBytes.length * 2)];
+        }
+        objectInputStream.readFully(valueBytes, 0, valueLength);
+        return true;
+    }
+
+    /**
+     * @return key of the pair read by the last call to next()
+     */
+    public KEY getKey() {
+        return key;
+    }
+
+    /**
+     * Deserializes the value of the pair read by the last call to next()
+     *
+     * @return a new value object
+     * @throws IOException when the value cannot be deserialized
+     */
+    public VALUE getValue() throws IOException {
+        return getValue(null);
+    }
+
+    /**
+     * Deserializes the value of the pair read by the last call to next(). A
+     * {@link Writable} value is read into the given object if it is of the same class,
+     * so that a single value object can be reused for all values
+     *
+     * @param reuse - value object to be reused, may be null
+     * @return the given object with the fields of the value, or a new value object
+     * @throws IOException when the value cannot be deserialized
+     */
+    @SuppressWarnings("unchecked")
+    public VALUE getValue(VALUE reuse) throws IOException {
+        valueInput.reset(valueBytes, valueLength);
+        if (valueClassName == null) {
+            try {
+                return (VALUE) new ObjectInputStream(valueInput).readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+        VALUE value = reuse;
+        if (value == null || !value.getClass().getName().equals(valueClassName)) {
+            value = MRUtility.newInstance(valueClassName);
+        }
+        ((Writable) value).readFields(valueInput);
+        return value;
+    }
+
+    /**
+     * @return class of the current value if it is a {@link Writable}, or null if the
+     *         value is java serialized
+     */
+    public String getValueClassName() {
+        return valueClassName;
+    }
+
+    /**
+     * @return buffer containing the serialized current value. Only the first
+     *         getValueLength() bytes are valid, and the buffer is overwritten by next()
+     */
+    public byte[] getValueBytes() {
+        return valueBytes;
+    }
+
+    /**
+     * @return length of the serialized current value
+     */
+    public int getValueLength() {
+        return valueLength;
+    }
+
+    /**
+     * @return the segment file read by this reader
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Closes the segment file
+     */
+    public void close() {
+        try {
+            objectInputStream.close();
+        } catch (IOException e) {
+            System.out.println("ERROR: Exception while closing the file");
+        }
+    }
+}
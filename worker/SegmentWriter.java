@@ -0,0 +1,155 @@
+package mr.worker;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import mr.io.DataOutputBuffer;
+import mr.io.Writable;
+
+/**
+ * <p>
+ * Writes a sorted run of intermediate key/value pairs to a compressed segment file. The
+ * segment format is shared by the map output spills, the runs produced by the
+ * {@link SegmentMerger} and the reducer input read by {@link ReduceContext}.
+ *
+ * <p>
+ * Keys are written as serialized objects since they are compared while merging. Values
+ * are written as length-prefixed bytes, so that they can be copied or skipped without
+ * being deserialized. Each record has the following layout
+ *
+ * <pre>
+ * 1) key object
+ * 2) value tag (byte): WRITABLE, WRITABLE_NEW_CLASS or SERIALIZED
+ * 3) value class name (UTF), only for WRITABLE_NEW_CLASS
+ * 4) value length (int)
+ * 5) value bytes, written by {@link Writable#write} or by java serialization
+ * </pre>
+ *
+ * @see SegmentReader
+ *
+ * @param <KEY>
+ * @param <VALUE>
+ */
+public class SegmentWriter<KEY, VALUE> {
+
+    // Value is a Writable of the same class as the previous Writable value
+    static final byte WRITABLE = 0;
+    // Value is a Writable whose class name follows the tag
+    static final byte WRITABLE_NEW_CLASS = 1;
+    // Value is java serialized
+    static final byte SERIALIZED = 2;
+
+    // Invoke reset periodically so that the objects read from the file are eligible for
+    // garbage collection. This value was chosen for performance reasons
+    private static final int RESET_INTERVAL = 20480;
+
+    private ObjectOutputStream objectOutputStream;
+    private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private DataOutputBuffer valueBuffer = new DataOutputBuffer();
+    private String valueClassName;
+    private long recordCount;
+    private long rawLength;
+
+    /**
+     * Opens a compressed segment file for writing. Uses {@link DeflaterOutputStream} with
+     * Deflater.BEST_SPEED settings
+     *
+     * @param file {@link File} the segment file to be written
+     * @throws IOException when the file cannot be opened for writing
+     */
+    public SegmentWriter(File file) throws IOException {
+        objectOutputStream =
+                new ObjectOutputStream(new BufferedOutputStream(
+                        new DeflaterOutputStream(new FileOutputStream(file),
+                                deflater)));
+    }
+
+    /**
+     * Appends the given key/value pair to the segment. Pairs must be appended in sorted
+     * order of the key
+     *
+     * @param key
+     * @param value
+     * @throws IOException when there is an error writing to the segment file
+     */
+    public void append(KEY key, VALUE value) throws IOException {
+        valueBuffer.reset();
+        if (value instanceof Writable) {
+            ((Writable) value).write(valueBuffer);
+            appendSerialized(key, value.getClass().getName(),
+                    valueBuffer.getData(), valueBuffer.getLength());
+        } else {
+            ObjectOutputStream valueStream = new ObjectOutputStream(valueBuffer);
+            valueStream.writeObject(value);
+            valueStream.flush();
+            appendSerialized(key, null, valueBuffer.getData(),
+                    valueBuffer.getLength());
+        }
+    }
+
+    /**
+     * Appends the given key and an already serialized value to the segment. Used to copy
+     * values between segments without deserializing them
+     *
+     * @param key
+     * @param valueClassName - class of a {@link Writable} value, or null if the value is
+     *            java serialized
+     * @param valueBytes - byte array containing the serialized value
+     * @param valueLength - number of valid bytes in the array
+     * @throws IOException when there is an error writing to the segment file
+     */
+    public void appendSerialized(KEY key, String valueClassName, byte[] valueBytes,
+            int valueLength) throws IOException {
+        objectOutputStream.writeObject(key);
+        if (valueClassName == null) {
+            objectOutputStream.writeByte(SERIALIZED);
+        } else if (valueClassName.equals(this.valueClassName)) {
+            objectOutputStream.writeByte(WRITABLE);
+        } else {
+            objectOutputStream.writeByte(WRITABLE_NEW_CLASS);
+            objectOutputStream.writeUTF(valueClassName);
+            this.valueClassName = valueClassName;
+        }
+        objectOutputStream.writeInt(valueLength);
+        objectOutputStream.write(valueBytes, 0, valueLength);
+        if (recordCount % RESET_INTERVAL == 0) {
+            objectOutputStream.reset();
+        }
+        recordCount++;
+    }
+
+    /**
+     * Get the number of key/value pairs written so far
+     *
+     * @return number of records in this segment
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Get the uncompressed length of the segment, available once the segment is closed
+     *
+     * @return number of bytes written to the segment before compression
+     */
+    public long getRawLength() {
+        return rawLength;
+    }
+
+    /**
+     * Flushes and closes the segment file
+     *
+     * @throws IOException when there is an error while flushing/closing the stream
+     */
+    public void close() throws IOException {
+        objectOutputStream.flush();
+        objectOutputStream.close();
+        rawLength = deflater.getBytesRead();
+        deflater.end();
+    }
+}
@@ -1,30 +1,40 @@
 package mr.worker;
 
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.List;
 
-import mr.common.Constants.NetworkProtocol;
-import mr.common.MRUtility;
+import mr.common.Histogram;
+import mr.common.MessageChannel;
+import mr.common.TaskProfile;
+import mr.io.Text;
 
 /**
  * Shuffler thread sends the map output files to the correct reducer based on
- * the reducer id from the map output file name
+ * the reducer id from the map output file name. The files are sent as frames on one
+ * {@link MessageChannel} per reducer, kept open for the whole job
  * 
  * 
  */
 public class Shuffler implements Runnable {
 
+    // Interval between two scans of the map output directory while map tasks are running
+    private static final long SCAN_INTERVAL = 50;
+
     private SocketAddress[] reducerAddresses;
-    private Socket[] reducers;
+    private MessageChannel[] reducers;
     private String dataDir;
+    private String jobId;
     private boolean hasMoreFiles = true;
-    private boolean shouldEnd = false;
+    private volatile boolean shouldEnd = false;
+    // Set when new map output files may be complete, guarded by this object
+    private boolean hasNewFiles = false;
+    private TaskProfile profile = new TaskProfile();
+    private Histogram sendTimes =
+            profile.getHistogram(TaskProfile.PHASE.SHUFFLE_SEND);
 
     /**
      * Used to mark the end of the shuffle phase. Setting shouldEnd to true
@@ -36,6 +46,16 @@ public class Shuffler implements Runnable {
      */
     public void setShouldEnd(boolean shouldEnd) {
         this.shouldEnd = shouldEnd;
+        filesCompleted();
+    }
+
+    /**
+     * Wakes up the Shuffler thread to send the map output files completed since the last
+     * scan of the map output directory. Called when a map task is complete
+     */
+    public synchronized void filesCompleted() {
+        hasNewFiles = true;
+        notifyAll();
     }
 
     /**
@@ -45,16 +65,30 @@ public class Shuffler implements Runnable {
      *            reduce tasks
      * @param dataDir - folder in which the temporary map output files are
      *            stored
+     * @param jobId - id of the job, sent to the reducers when connecting
      */
-    public Shuffler(SocketAddress[] reducers, String dataDir) {
+    public Shuffler(SocketAddress[] reducers, String dataDir, String jobId) {
         this.reducerAddresses = reducers;
         this.dataDir = dataDir;
-        this.reducers = new Socket[reducers.length];
+        this.jobId = jobId;
+        this.reducers = new MessageChannel[reducers.length];
 
     }
 
     /**
-     * Obtains a network connection to each node handling the reducer task
+     * Get the time taken to send each map output file. Must be read only after the
+     * shuffler thread has ended
+     * 
+     * @return {@link TaskProfile} of the shuffle
+     */
+    public TaskProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Obtains a network connection to each node handling the reducer task. The id of the
+     * job is sent first, so that the reducer hands the connection to the reduce task of
+     * this job
      */
     private void obtainConnectionToReducers() {
         for (int i = 0; i < reducerAddresses.length; i++) {
@@ -62,7 +96,8 @@ public class Shuffler implements Runnable {
             Socket socket = new Socket();
             try {
                 socket.connect(reducerAddresses[i]);
-                reducers[i] = socket;
+                reducers[i] = new MessageChannel(socket);
+                reducers[i].send(MessageChannel.TYPE.SHUFFLE, new Text(jobId));
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -90,11 +125,30 @@ public class Shuffler implements Runnable {
             while (!fileQueue.isEmpty()) {
                 transferFilesToReducer(fileQueue);
             }
-            MRUtility.sleep(50);
+            if (hasMoreFiles) {
+                waitForNewFiles();
+            }
         }
+        sendHotKeysToAllReducers(dir);
         sendEndOfShuffleMessageToAllReducers();
     }
 
+    /**
+     * Waits till a map task is complete or the shuffle is ending. The files of the
+     * spills of the running map tasks are picked up by a scan every
+     * SCAN_INTERVAL milliseconds
+     */
+    private synchronized void waitForNewFiles() {
+        if (!hasNewFiles) {
+            try {
+                wait(SCAN_INTERVAL);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        hasNewFiles = false;
+    }
+
     /**
      * Fills the given fileQueue with a list of 'completed' files in the given
      * folder
@@ -125,14 +179,14 @@ public class Shuffler implements Runnable {
     private void transferFilesToReducer(List<String> fileQueue) {
         String fileName = fileQueue.remove(0);
         int reducerId = getReducerIdFromFileName(fileName);
-        Socket socket = reducers[reducerId];
+        MessageChannel channel = reducers[reducerId];
         System.out.println("about to tranfer file" + fileName + "to reducer "
                 + reducerId);
         try {
+            long start = System.nanoTime();
             File file = new File(dataDir, fileName);
-            OutputStream outputStream = socket.getOutputStream();
-            writeTransferModeToStream(outputStream, NetworkProtocol.FILE);
-            MRUtility.sendFile(file.getAbsolutePath(), outputStream);
+            channel.sendFile(MessageChannel.TYPE.SEGMENT, file);
+            sendTimes.record(System.nanoTime() - start);
             System.out.println("reducer file sent");
             file.delete();
         } catch (IOException e) {
@@ -141,19 +195,40 @@ public class Shuffler implements Runnable {
         }
     }
 
+    /**
+     * Sends the hot keys files written by the map tasks to all the reducers, once all the
+     * map tasks are complete, so that every reducer knows which of its keys were spread
+     * over several reducers. The files are then deleted
+     * 
+     * @param dir {@link File} of the map output directory
+     */
+    private void sendHotKeysToAllReducers(File dir) {
+        for (String fileName : dir.list()) {
+            if (!fileName.startsWith(MapContext.HOT_KEYS_FILE)) {
+                continue;
+            }
+            File file = new File(dir, fileName);
+            try {
+                for (MessageChannel channel : reducers) {
+                    channel.sendFile(MessageChannel.TYPE.HOT_KEYS, file);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                throw new RuntimeException(e);
+            }
+            file.delete();
+        }
+    }
+
     /**
      * Send 'end of shuffle' message to all the reducers to indicate that the
      * shuffle phase associated with the particular mapper has ended
      */
     private void sendEndOfShuffleMessageToAllReducers() {
-        for (Socket socket : reducers) {
-            OutputStream outputStream;
+        for (MessageChannel channel : reducers) {
             try {
-                outputStream = socket.getOutputStream();
-                writeTransferModeToStream(outputStream, NetworkProtocol.END);
-
-                outputStream.close();
-                socket.close();
+                channel.send(MessageChannel.TYPE.END_OF_SHUFFLE, null);
+                channel.close();
             } catch (IOException e) {
                 e.printStackTrace();
                 throw new RuntimeException(e);
@@ -176,20 +251,4 @@ public class Shuffler implements Runnable {
         return reducerId;
     }
 
-    /**
-     * Write the transfer mode string to the given OutputStream
-     * 
-     * @param outputStream {@link OutputStream}
-     * @param mode - transfer mode indicating the type of data that follows
-     *            this message in the given OutputStream
-     * @throws IOException
-     */
-    private void writeTransferModeToStream(
-            OutputStream outputStream,
-            String mode) throws IOException {
-        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
-        dataOutputStream.writeUTF(mode);
-        dataOutputStream.flush();
-    }
-
 }
@@ -1,81 +1,81 @@
 package mr.worker;
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
-import java.net.Socket;
-import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import mr.common.Heartbeat;
+import mr.common.MessageChannel;
 import mr.common.Task;
-import static mr.common.MRUtility.sleep;
 
 /**
  * Updates the ApplicationMaster by sending the list Completed tasks from the
- * TaskTracker's CompletedTaskQueue (by Task priority)
+ * CompletedTaskQueue of the job (by Task priority). A {@link Heartbeat} with the
+ * progress of the running task is sent every 'heartbeat interval' milliseconds in between
+ * the completed tasks. Both are sent as frames on the {@link MessageChannel} of the
+ * ApplicationMaster.
  * 
  * 
  */
 public class StatusUpdater implements Runnable {
 
-    PriorityQueue<Task> completedTasksQueue;
-    Socket socket;
+    BlockingQueue<Task> completedTasksQueue;
+    MessageChannel channel;
+    private JobSession jobSession;
+    private int heartbeatInterval;
 
     /**
      * Constructor
      * 
-     * @param socket {@link Socket} connection to the ApplicationMaster
-     * @param completedTasksQueue {@link PriorityQueue} of TaskTracker containing
+     * @param channel {@link MessageChannel} connection to the ApplicationMaster
+     * @param completedTasksQueue {@link BlockingQueue} of the job containing
      *            completed {@link Task}
+     * @param jobSession {@link JobSession} of the job, which builds the heartbeats
+     * @param heartbeatInterval interval between two heartbeats in milliseconds
      */
-    StatusUpdater(Socket socket, PriorityQueue<Task> completedTasksQueue) {
+    StatusUpdater(MessageChannel channel, BlockingQueue<Task> completedTasksQueue,
+            JobSession jobSession, int heartbeatInterval) {
         this.completedTasksQueue = completedTasksQueue;
-        this.socket = socket;
+        this.channel = channel;
+        this.jobSession = jobSession;
+        this.heartbeatInterval = Math.max(1, heartbeatInterval);
     }
 
     /**
-     * Monitors the CompletedTaskQueue for new tasks. While there are tasks in the queue,
-     * removes highest priority Task from the the queue and writes the object to the
-     * OutputStream
+     * Waits for new tasks in the CompletedTaskQueue, till the next heartbeat is due.
+     * Removes the highest priority Task from the the queue and sends it to the
+     * ApplicationMaster as soon as it is available. Ends after the END task has been sent,
+     * or when an error on the channel has failed the job
      */
     @Override
     public void run() {
         boolean hasMoreTasks = true;
-        while (hasMoreTasks) {
-            synchronized (completedTasksQueue) {
-                while (!completedTasksQueue.isEmpty()) {
-                    try {
-                        Task task = completedTasksQueue.poll();
-                        OutputStream outputStream = socket.getOutputStream();
-                        writeObjectToStream(outputStream, task);
-                        if (task.getType() == Task.TYPE.END) {
-                            hasMoreTasks = false;
-                            System.out.println("Status Updater end task");
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        throw new RuntimeException(e);
+        long nextHeartbeatTime = System.currentTimeMillis();
+        try {
+            while (hasMoreTasks) {
+                long now = System.currentTimeMillis();
+                if (now >= nextHeartbeatTime) {
+                    channel.send(MessageChannel.TYPE.HEARTBEAT,
+                            jobSession.getHeartbeat());
+                    nextHeartbeatTime = now + heartbeatInterval;
+                }
+
+                Task task =
+                        completedTasksQueue.poll(nextHeartbeatTime - now,
+                                TimeUnit.MILLISECONDS);
+                if (task != null) {
+                    channel.send(MessageChannel.TYPE.COMPLETED_TASK, task);
+                    if (task.getType() == Task.TYPE.END) {
+                        hasMoreTasks = false;
+                        System.out.println("Status Updater end task");
                     }
                 }
             }
-            sleep(500);
+        } catch (IOException e) {
+            jobSession.channelFailed(e);
+        } catch (InterruptedException e) {
+            System.out.println("Status Updater was interrupted");
         }
         System.out.println("Status Updater has ended");
     }
-
-    /**
-     * Write the given object to the given output stream
-     * 
-     * @param outputStream {@link OutputStream}
-     * @param object {@link Object}
-     * @throws IOException when there is an error writing to the output stream
-     */
-    private static void writeObjectToStream(
-            OutputStream outputStream,
-            Object object) throws IOException {
-        ObjectOutputStream objectOutputStream =
-                new ObjectOutputStream(outputStream);
-        objectOutputStream.writeObject(object);
-        objectOutputStream.flush();
-    }
-
 }
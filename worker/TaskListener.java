@@ -1,53 +1,56 @@
 package mr.worker;
 
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.net.Socket;
-import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
 
-import mr.common.MRUtility;
+import mr.common.MessageChannel;
 import mr.common.Task;
+import mr.common.TaskProfile;
 
 /**
  * <p>
  * TaskListener listens for the Tasks and the associated data (such as file
  * splits for Map tasks). Once a Task is received, adds the task to the
  * TaskTracker's "task queue" and performs the appropriate action such as
- * saving the split file for map tasks.
+ * saving the split file for map tasks. The tasks and the split files are read
+ * as frames from the {@link MessageChannel} of the ApplicationMaster.
  * 
  * <p>
- * Every TaskTracker launches one TaskTracker thread
+ * Every {@link JobSession} launches one TaskListener thread
  * 
  * 
  */
 public class TaskListener implements Runnable {
 
-    private PriorityQueue<Task> taskExecutionQueue;
-    private Socket socket;
+    private BlockingQueue<Task> taskExecutionQueue;
+    private MessageChannel channel;
     private String tempDirectory;
+    private JobSession jobSession;
 
     /**
      * 
-     * @param socket {@link Socket} connection to the ApplicationMaster
-     * @param taskExecutionQueue {@link PriorityQueue} task queue of the
+     * @param channel {@link MessageChannel} connection to the ApplicationMaster
+     * @param taskExecutionQueue {@link BlockingQueue} task queue of the
      *            TaskTracker
      * @param tempDirectory - temporary directory for mapper to which the file
      *            split will be written
+     * @param jobSession {@link JobSession} notified when the channel fails
      */
-    public TaskListener(Socket socket, PriorityQueue<Task> taskExecutionQueue,
-            String tempDirectory) {
+    public TaskListener(MessageChannel channel,
+            BlockingQueue<Task> taskExecutionQueue, String tempDirectory,
+            JobSession jobSession) {
         this.taskExecutionQueue = taskExecutionQueue;
-        this.socket = socket;
+        this.channel = channel;
         this.tempDirectory = tempDirectory;
+        this.jobSession = jobSession;
     }
 
     /**
-     * Blocks until there is a task available in the InputStream, if a Task was
+     * Blocks until there is a task available in the channel, if a Task was
      * received, adds the task to the TaskTrackers Task queue and performs
-     * appropriate action if required
+     * appropriate action if required. An error on the channel fails the job
+     * and ends the listener
      * 
      * <pre>
      * The types of tasks supported are,
@@ -62,64 +65,72 @@ public class TaskListener implements Runnable {
         boolean hasMoreTasks = true;
         while (hasMoreTasks) {
             try {
-                InputStream inputStream = socket.getInputStream();
-                if (inputStream.available() > 0) {
-                    // Read task from the input stream
-                    Task task = readTaskObjectFromInputStream(inputStream);
+                // Read task from the channel
+                Task task = readTask();
 
-                    // Perform the appropriate action based on the task type
-                    if (task.getType() == Task.TYPE.MAP) {
-                        setupMapTask(task, inputStream);
-                    } else if (task.getType() == Task.TYPE.END) {
-                        hasMoreTasks = false;
-                    }
-                    // Add task to the TaskTracker's execution queue
-                    synchronized (taskExecutionQueue) {
-                        taskExecutionQueue.add(task);
-                    }
+                // Perform the appropriate action based on the task type
+                if (task.getType() == Task.TYPE.MAP
+                        && task.getLocalInputPath() == null) {
+                    setupMapTask(task);
+                } else if (task.getType() == Task.TYPE.END) {
+                    hasMoreTasks = false;
                 }
+                // Add task to the TaskTracker's execution queue
+                taskExecutionQueue.add(task);
             } catch (IOException e) {
-                e.printStackTrace();
-                throw new RuntimeException(e);
+                jobSession.channelFailed(e);
+                return;
             }
         }
 
     }
 
     /**
-     * Reads the Task object from the given InputStream
+     * Blocks until the next task frame is received and reads the task
      * 
-     * @param inputStream {@link InputStream}
-     * 
-     * @return {@link Task} the task object retrieved from the given
-     *         InputStream
+     * @return {@link Task} the task read from the channel
      *         
-     * @throws IOException when there is error reading the input stream
+     * @throws IOException when there is error reading from the channel, or a
+     *             message other than a task is received
      */
-    private Task readTaskObjectFromInputStream(InputStream inputStream)
-            throws IOException {
-        try {
-            ObjectInputStream o = new ObjectInputStream(inputStream);
-            Task task = (Task) o.readObject();
-            return task;
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
+    private Task readTask() throws IOException {
+        MessageChannel.TYPE type = channel.readFrame();
+        if (type != MessageChannel.TYPE.TASK) {
+            throw new IOException("Expected a task, received " + type);
         }
+        return channel.readMessage(new Task());
     }
 
     /**
-     * Sets up the Map task by saving the file split to a temporary directory
+     * Sets up the Map task by saving the file split to a temporary directory. A large
+     * split is received in several parts, appended to the file of the split. The time
+     * taken to receive the split is recorded in the profile of the task. Not used for the
+     * map tasks reading a local file, which are not followed by a split
      * 
      * @param task {@link Task}
-     * @param inputStream {@link InputStream}
      * 
-     * @throws IOException when there is error reading the input stream
+     * @throws IOException when there is error reading from the channel, or the
+     *             split file does not follow the map task
      */
-    private void setupMapTask(Task task, InputStream inputStream)
-            throws IOException {
-        DataInputStream dataInputStream = new DataInputStream(inputStream);
-        File splitFile = MRUtility.receiveFile(tempDirectory, dataInputStream);
+    private void setupMapTask(Task task) throws IOException {
+        long start = System.nanoTime();
+        MessageChannel.TYPE type = channel.readFrame();
+        boolean append = false;
+        while (type == MessageChannel.TYPE.SPLIT_PART) {
+            channel.readFile(tempDirectory, append);
+            append = true;
+            type = channel.readFrame();
+        }
+        if (type != MessageChannel.TYPE.SPLIT) {
+            throw new IOException("Expected the split of task "
+                    + task.getTaskId() + ", received " + type);
+        }
+        File splitFile = channel.readFile(tempDirectory, append);
         task.setSplitFileForTask(splitFile);
+
+        TaskProfile profile = new TaskProfile();
+        profile.getHistogram(TaskProfile.PHASE.SPLIT_RECEIVE).record(
+                System.nanoTime() - start);
+        task.setProfile(profile);
     }
 }
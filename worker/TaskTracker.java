@@ -1,28 +1,29 @@
 package mr.worker;
 
-import static mr.common.MRUtility.sleep;
-
-import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import mr.common.CfgParser;
-import mr.common.Configuration;
 import mr.common.Constants.NetworkProtocol;
 import mr.common.MRUtility;
+import mr.common.MessageChannel;
 import mr.common.SystemSpecs;
-import mr.common.Task;
+import mr.io.Text;
 
 /**
  * 
@@ -31,11 +32,16 @@ import mr.common.Task;
  * Initialization phase:
  * 1) Launches the Shutdown monitor thread     * 
  * 2) Registers itself with the registry by submitting the system specification to the registry  
+ * 3) Launches the thread that sends periodic heartbeats with its load to the registry
  * 
  * Execution phase:
- * 1) Waits for an ApplicationMaster to connect
- * 2) Processes Map/Reduce tasks till completion
- * 3) After tasks completion, cleans up the resources, files used by the tasks
+ * 1) Accepts the connections of the ApplicationMasters and of the 'map' TaskTrackers. The
+ *    first frame received on a connection tells what it is for
+ * 2) Starts a {@link JobSession} on a new thread for every ApplicationMaster, which
+ *    processes the Map/Reduce tasks of its job till completion and then cleans up the
+ *    files used by the tasks. Several jobs run at the same time, and their map tasks share
+ *    the slots of this TaskTracker through a {@link FairShareScheduler}
+ * 3) Hands over the connections of the 'map' TaskTrackers to the reduce task of their job
  * 4) repeats step1- step 3 until shutdown request is received
  * 
  * Shutdown Phase:
@@ -47,28 +53,29 @@ import mr.common.Task;
  * 
  * 
  */
-@SuppressWarnings({ "rawtypes" })
 public class TaskTracker {
 
     private String registryHost;
     private int registryPort;
-    private Configuration configuration;
-    private PriorityQueue<Task> taskExecutionQueue = new PriorityQueue<Task>();
-    private PriorityQueue<Task> completedTaskQueue = new PriorityQueue<Task>();
-    private Mapper mapper;
-    private Reducer reducer;
-    private Mapper.Context context;
-    Thread taskUpdaterThread;
-    Thread taskListenerThread;
-    Thread fileTransferThread;
-    private boolean hasFileTransferThreadStarted = false;
+
+    // Map tasks of all the jobs share the slots of this TaskTracker. The number of slots
+    // is advertised to the registry when the TaskTracker is started with it (by the
+    // NodeManager in single TaskTracker mode), one slot per processor is used otherwise
+    private int advertisedSlots = 0;
+    private FairShareScheduler scheduler;
+    private List<JobSession> jobSessions =
+            Collections.synchronizedList(new ArrayList<JobSession>());
+    // Connections of the 'map' TaskTrackers by job id, taken by the reduce task of the
+    // job. A connection may be accepted before the reduce task has started
+    private Map<String, BlockingQueue<MessageChannel>> shuffleConnections =
+            new HashMap<String, BlockingQueue<MessageChannel>>();
+    Thread registryUpdaterThread;
     private String mtemp_dir;
     private String rtemp_dir;
     private String jartemp_dir;
-    private Shuffler shuffler;
+    // Cache files of the jobs by content hash, kept for the following jobs
+    private String cache_dir;
     private ServerSocket serverSocket;
-    private Socket socket;
-    private URLClassLoader classLoader;
 
     /**
      * Starts the TaskTracker
@@ -76,6 +83,9 @@ public class TaskTracker {
      */
     public static void main(String[] args) {
         TaskTracker taskTracker = new TaskTracker();
+        if (args.length > 0) {
+            taskTracker.advertisedSlots = Integer.parseInt(args[0]);
+        }
         taskTracker.start();
     }
 
@@ -86,6 +96,10 @@ public class TaskTracker {
 
         launchShutdownMonitor();
         register();
+        startRegistryUpdaterThread();
+        scheduler =
+                new FairShareScheduler(advertisedSlots > 0 ? advertisedSlots : Runtime
+                        .getRuntime().availableProcessors());
 
         try {
             executeTaskTrackerLifeCycle();
@@ -96,405 +110,251 @@ public class TaskTracker {
     }
 
     /**
-     * Execution phase of the TaskTracker. Performs the following actions in sequence 1)
-     * Waits for the Application master to connect 2) Sets the Mapper and Reducer objects
-     * 3) Starts a thread to listen for tasks 4) Starts a thread to update completion of
-     * the tasks assigned by Application master 5) Executes all the tasks that are in the
-     * task queue.
-     * 
-     * @throws InterruptedException when one of the thread is interrupted
+     * Execution phase of the TaskTracker. Accepts the connections till the shutdown.
+     * The first frame of a connection is the configuration of a job, sent by an
+     * ApplicationMaster, or the id of the job whose map output is sent by a 'map'
+     * TaskTracker
      */
-    private void executeTaskTrackerLifeCycle() throws InterruptedException {
+    private void executeTaskTrackerLifeCycle() {
 
         while (true) {
-            waitForMaster();
-            setupMapperAndReducerObjects();
-            startTaskListenerThread();
-            startTaskUpdaterThread();
-            executeTask();
-            taskUpdaterThread.join();
-            taskListenerThread.join();
-
-            if (hasFileTransferThreadStarted) {
-                fileTransferThread.join();
-                hasFileTransferThreadStarted = false;
-                shuffler = null;
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                // when a shutdown message is received, SocketException is thrown
+                // and the shutdown process is initiated
+                System.out.println("Shutting down!");
+                shutdown();
+                return;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
 
-            cleanup();
-            System.out.println("Task execution complete!");
-        }
-    }
-
-    /**
-     * Launches a thread to shutdown the Task tracker. When "shutdown" input is sent to
-     * System.in, the shutdown process is initiated
-     */
-    private void launchShutdownMonitor() {
-
-        try {
-            serverSocket = new ServerSocket();
-        } catch (IOException e) {
-            throw new RuntimeException("Error while creating server socket", e);
-        }
-
-        ShutdownThread shutdownMonitor =
-                new ShutdownThread(serverSocket, System.in);
-        shutdownMonitor.start();
-    }
-
-    /**
-     * Unregisters from the registry. Invoked on "shutdown"
-     */
-    private void unregister() {
-
-        try {
-            Socket rSocket = new Socket(registryHost, registryPort);
-
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
+            try {
+                MessageChannel channel = new MessageChannel(socket);
+                MessageChannel.TYPE type = channel.readFrame();
+                if (type == MessageChannel.TYPE.CONFIGURATION) {
+                    startJobSession(channel);
+                } else if (type == MessageChannel.TYPE.SHUFFLE) {
+                    String jobId = channel.readMessage(new Text()).getValue();
+                    getShuffleConnections(jobId).add(channel);
+                } else {
+                    System.out.println("Unexpected " + type + " from "
+                            + socket.getRemoteSocketAddress());
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // Only this connection is lost
+                e.printStackTrace();
+                closeQuietly(socket);
             }
-
-            OutputStream outputStream = rSocket.getOutputStream();
-            MRUtility.writeMessageToStream(outputStream,
-                    NetworkProtocol.UNREGISTER);
-
-            rSocket.close();
-
-        } catch (IOException e) {
-            System.out.println("Cannot connect to Registry");
         }
     }
 
     /**
-     * <pre>
-     * 1) Listens to the inputStream from the {@link ApplicationMaster} for any task.
-     * 2) Updates the task execution queue with the tasks read from stream. 
-     * 3) Saves the file splits to the temp directory (for map tasks)
-     * </pre>
-     * 
-     * @see TaskListener
-     */
-    private void startTaskListenerThread() {
-        TaskListener taskListener =
-                new TaskListener(socket, taskExecutionQueue, mtemp_dir);
-        taskListenerThread = new Thread(taskListener);
-        taskListenerThread.start();
-    }
-
-    /**
-     * Updates the ApplicationMaster by sending the completed tasks. Reads and removes
-     * tasks from the completed task queue.
+     * Starts a new {@link JobSession} for the ApplicationMaster connected on the given
+     * channel
      * 
-     * @see StatusUpdater
+     * @param channel {@link MessageChannel} connection to the ApplicationMaster
      */
-    private void startTaskUpdaterThread() {
-        StatusUpdater statusUpdater =
-                new StatusUpdater(socket, completedTaskQueue);
-        taskUpdaterThread = new Thread(statusUpdater);
-        taskUpdaterThread.start();
+    private void startJobSession(MessageChannel channel) {
+        System.out.println("Connected with master "
+                + channel.getSocket().getRemoteSocketAddress());
+        JobSession jobSession = new JobSession(this, channel, scheduler);
+        jobSessions.add(jobSession);
+        new Thread(jobSession, "job-session-"
+                + channel.getSocket().getRemoteSocketAddress()).start();
     }
 
     /**
-     * Gets the next task by priority from the task queue and executes it. If there are no
-     * tasks in the queue, sleeps for 100 milliseconds and checks the tasks queue for
-     * tasks. The method ends when an END task is fetched and executed.
+     * Get the connections of the 'map' TaskTrackers sending the map output of the given
+     * job, in the order they are accepted
      * 
+     * @param jobId - id of the job
+     * @return {@link BlockingQueue} of the connections
      */
-    private void executeTask() {
-        boolean hasMoreTasks = true;
-
-        while (hasMoreTasks) {
-            Task currentTask = getNextTaskFromQueue();
-            if (currentTask != null) {
-                if (currentTask.getType() == Task.TYPE.MAP) {
-
-                    executeMapTask(currentTask);
-
-                } else if (currentTask.getType() == Task.TYPE.REDUCE) {
-
-                    executeReduceTask(currentTask);
-
-                } else {
-                    executeCompleteTask(currentTask);
-                    hasMoreTasks = false;
-                    continue;
-                }
-            } else {
-                sleep(100);
+    BlockingQueue<MessageChannel> getShuffleConnections(String jobId) {
+        synchronized (shuffleConnections) {
+            BlockingQueue<MessageChannel> connections = shuffleConnections.get(jobId);
+            if (connections == null) {
+                connections = new LinkedBlockingQueue<MessageChannel>();
+                shuffleConnections.put(jobId, connections);
             }
+            return connections;
         }
-        System.out.println("Execute task has ended");
     }
 
     /**
-     * Fetches and removes the next task from the task queue by priority
+     * Removes the given session once its job has ended. Closes the connections of the
+     * 'map' TaskTrackers of the job that were not taken by a reduce task
      * 
-     * @return {@link Task}
+     * @param jobSession {@link JobSession} that has ended
      */
-    private Task getNextTaskFromQueue() {
-        Task nextTask = null;
-
-        synchronized (taskExecutionQueue) {
-            if (!taskExecutionQueue.isEmpty()) {
-                System.out.println("taskExecutionQueue" + taskExecutionQueue);
-                nextTask = taskExecutionQueue.poll();
-            }
+    void jobEnded(JobSession jobSession) {
+        jobSessions.remove(jobSession);
+        BlockingQueue<MessageChannel> connections;
+        synchronized (shuffleConnections) {
+            connections = shuffleConnections.remove(jobSession.getJobId());
         }
-
-        return nextTask;
-    }
-
-    /**
-     * Executes the given END task by adding it to the completed task queue and sets the
-     * "shouldEnd" field of shuffler to true, so that the Shuffler thread can finish
-     * executing after transferring the existing map output files.
-     * 
-     * @param task {@link Task} of Task.TYPE END     * 
-     */
-    private void executeCompleteTask(Task task) {
-        completedTaskQueue.add(task);
-        if (hasFileTransferThreadStarted) {
-            if (shuffler != null) {
-                shuffler.setShouldEnd(true);
+        if (connections != null) {
+            for (MessageChannel channel : connections) {
+                closeQuietly(channel.getSocket());
             }
         }
     }
 
     /**
-     * Execute the reduce task if there is at least one mapper output file. Once the task
-     * has been executed, adds it to the completedTask queue
+     * Get the root folder of the map output files of the jobs
      * 
-     * @param currentTask {@link Task} of Task.TYPE REDUCE
+     * @return folder path
      */
-    @SuppressWarnings("unchecked")
-    private void executeReduceTask(Task currentTask) {
-        boolean hasAtleastOneFile = getFilesFromMapper(currentTask);
-
-        if (hasAtleastOneFile) {
-            Reducer.Context reduceContext =
-                    reducer.new Context(configuration, rtemp_dir,
-                            currentTask.getTaskId());
-
-            reducer.run(reduceContext);
-        } else {
-            System.out.println("Reduce was not executed in this node");
-        }
-
-        System.out.println("Finished reduce task");
-        completedTaskQueue.add(currentTask);
+    String getMapTempDirectory() {
+        return mtemp_dir;
     }
 
     /**
-     * Executes a map task. If the Shuffler thread was not started before, launches a new
-     * shuffler thread. Once the task has been executed, adds it to the completedTask
-     * queue
+     * Get the root folder of the map output files received by the reduce tasks
      * 
-     * @param currentTask {@link Task} of Task.TYPE MAP
+     * @return folder path
      */
-    @SuppressWarnings("unchecked")
-    private void executeMapTask(Task currentTask) {
-        context =
-                mapper.new Context(configuration,
-                        currentTask.getSplitFileForTask(), mtemp_dir);
-
-        mapper.run(context);
-
-        if (!hasFileTransferThreadStarted) {
-            // Shuffler thread is responsible for transferring the map output files to the
-            // appropriate reducer
-            shuffler = new Shuffler(currentTask.getReducers(), mtemp_dir);
-            fileTransferThread = new Thread(shuffler);
-            fileTransferThread.start();
-            hasFileTransferThreadStarted = true;
-        }
-
-        synchronized (completedTaskQueue) {
-            completedTaskQueue.add(currentTask);
-        }
+    String getReduceTempDirectory() {
+        return rtemp_dir;
     }
 
     /**
-     * This method is executed only when the TaskTracker is executing a reduce task.
-     * Establishes connection to every map TaskTracker to receive the file map output
-     * files. Ends after all the map output files have been transfered to this
-     * TaskTrackers temp folder.
+     * Get the root folder of the jar files of the jobs
      * 
-     * @param currentTask {@link Task}
-     * @return true if atleast one map file was received, otherwise false
+     * @return folder path
      */
-    private boolean getFilesFromMapper(Task currentTask) {
-        int numberOfMapHosts = currentTask.getNumberOfMapHosts();
-
-        // Establishes connection to all the map TaskTrackers and launches file saver
-        // threads
-        Map<Socket, Thread> connectionToMapper =
-                saveMapTaskOutput(numberOfMapHosts);
-
-        // Waits for all file saver threads to finish.
-        for (Map.Entry<Socket, Thread> entry : connectionToMapper.entrySet()) {
-            try {
-                entry.getValue().join();
-                entry.getKey().close();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-        return checkIfAnyMapperFilesWereWritten();
-
+    String getJarTempDirectory() {
+        return jartemp_dir;
     }
 
     /**
-     * Checks if any map output file was received by the reducer.
+     * Get the cached copy of a cache file of a job
      * 
-     * @return true if at least one file was transferred, otherwise false
+     * @param hash - content hash of the file
+     * @return {@link File} in the cache folder, which may not exist yet
      */
-    private boolean checkIfAnyMapperFilesWereWritten() {
-        File file = new File(rtemp_dir);
-        if (file.list().length == 0) {
-            return false;
-        } else {
-            return true;
-        }
+    File getCacheFile(String hash) {
+        return new File(cache_dir, hash);
     }
 
     /**
-     * This method is executed only when the TaskTracker is executing a reduce task.
-     * Establishes connection with all TaskTracker running map task and launches a
-     * FileSaver thread listening for files on all connections.
+     * Moves a cache file received from a master to the cache folder, where it is named
+     * by its content hash. The same file may be added at the same time by another job
      * 
-     * @param numberOfMapHosts: number of TaskTrackers running the map task
-     * @return {@link Map} of mapper's {@link Socket} and the corresponding FileSaver
-     *         thread as value
+     * @param file - received {@link File}, named by its content hash
+     * @throws IOException when the file cannot be moved
      */
-    private Map<Socket, Thread> saveMapTaskOutput(int numberOfMapHosts) {
-        Map<Socket, Thread> connectionsToMapper = new HashMap<Socket, Thread>();
-
-        for (int i = 0; i < numberOfMapHosts; i++) {
-            System.out.println("Getting file from mapper");
-
-            try {
-                Socket socket = serverSocket.accept();
-                FileSaver fileSaver = new FileSaver(socket, rtemp_dir);
-                Thread thread = new Thread(fileSaver);
-                thread.start();
-                connectionsToMapper.put(socket, thread);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    void addCacheFile(File file) throws IOException {
+        File cacheFile = getCacheFile(file.getName());
+        if (!file.renameTo(cacheFile)) {
+            file.delete();
+            if (!cacheFile.exists()) {
+                throw new IOException("Error while caching " + file);
             }
         }
-
-        return connectionsToMapper;
     }
 
     /**
-     * Get the System specifications of the system running the TaskTracker. This
-     * information is sent to the registry, and accessed by the ApplicationMaster
-     * 
-     * @return {@link SystemSpec}
+     * Launches a thread to shutdown the Task tracker. When "shutdown" input is sent to
+     * System.in, the shutdown process is initiated
      */
-    private SystemSpecs getSystemSpecs() {
-        SystemSpecs systemSpecs = new SystemSpecs();
-        Runtime runtime = Runtime.getRuntime();
+    private void launchShutdownMonitor() {
 
-        int availableCpuCores = runtime.availableProcessors();
-        long maxMemoryAvailable = runtime.maxMemory();
+        try {
+            serverSocket = new ServerSocket();
+        } catch (IOException e) {
+            throw new RuntimeException("Error while creating server socket", e);
+        }
 
-        systemSpecs.setMaxMemoryAvailable(maxMemoryAvailable);
-        systemSpecs.setAvailableCpuCores(availableCpuCores);
-        return systemSpecs;
+        ShutdownThread shutdownMonitor =
+                new ShutdownThread(serverSocket, System.in);
+        shutdownMonitor.start();
     }
 
     /**
-     * Uses {@link URLClassLoader} to load the Mapper and Reducer class. Once the classes
-     * are loaded, creates instances of the mapper and reducer objects, which are stored
-     * in the instance variables of this TaskTracker *
+     * Launches a daemon thread that sends periodic heartbeats to the registry, so that
+     * this TaskTracker stays registered while it is alive
      * 
+     * @see RegistryUpdater
      */
-    private void setupMapperAndReducerObjects() {
-        String mapperClassStr = configuration.getMapperClass();
-        String reducerClassStr = configuration.getReducerClass();
-
-        try {
-            mapper =
-                    (Mapper) Class.forName(mapperClassStr, true, classLoader)
-                            .newInstance();
-            reducer =
-                    (Reducer) Class.forName(reducerClassStr, true, classLoader)
-                            .newInstance();
-        } catch (Exception e) {
-            // LOG.fatal("Error while setting up mapper and reducer object", e);
-            throw new RuntimeException(e);
-        }
-
+    private void startRegistryUpdaterThread() {
+        CfgParser cfg = CfgParser.getInstance(null);
+        RegistryUpdater registryUpdater =
+                new RegistryUpdater(registryHost, registryPort, this,
+                        serverSocket.getLocalPort(),
+                        cfg.getRegistryHeartbeatInterval());
+        registryUpdaterThread = new Thread(registryUpdater);
+        registryUpdaterThread.setDaemon(true);
+        registryUpdaterThread.start();
     }
 
     /**
-     * Waits for an ApplicationMaster to establish a connection. Once the connection is
-     * established, receives the jar file and the configuration object from the
-     * InputStream.
-     * 
+     * Unregisters from the registry. Invoked on "shutdown". The connection is made from a
+     * new port, so the port this TaskTracker is registered with is sent to the registry
      */
-    private void waitForMaster() {
+    private void unregister() {
 
         try {
-            System.out.println("Waiting for master");
-
-            socket = serverSocket.accept();
-            System.out.println("Connected with master");
+            Socket rSocket = new Socket(registryHost, registryPort);
+            int listenerPort = serverSocket.getLocalPort();
 
-            InputStream inputStream = socket.getInputStream();
-            DataInputStream dataInputStream = new DataInputStream(inputStream);
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
 
-            File jarFile = MRUtility.receiveFile(jartemp_dir, dataInputStream);
-            System.out.println("Jar file received");
+            OutputStream outputStream = rSocket.getOutputStream();
+            MRUtility.writeMessageToStream(outputStream,
+                    NetworkProtocol.UNREGISTER);
+            DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+            dataOutputStream.writeInt(listenerPort);
+            dataOutputStream.flush();
 
-            buildClassLoaderFromJar(jarFile);
-            getConfigurationFromInputStream(inputStream);
+            rSocket.close();
 
-        } catch (SocketException e) {
-            // when a shutdown message is received, SocketException is thrown
-            // and the shutdown process is initiated
-            System.out.println("Shutting down!");
-            shutdown();
         } catch (IOException e) {
-            // LOG.fatal("Error while reading data from input stream", e);
-            throw new RuntimeException(e);
+            System.out.println("Cannot connect to Registry");
         }
     }
 
     /**
-     * Gets the {@link Configuration} object from the input stream.
+     * Get the System specifications of the system running the TaskTracker, along with
+     * its current load. This information is sent to the registry at registration and
+     * with every heartbeat, and accessed by the ApplicationMaster
      * 
-     * @param inputStream {@link InputStream}
-     * 
-     * @throws IOException when there is an error reading from the input stream
+     * @return {@link SystemSpec}
      */
-    private void getConfigurationFromInputStream(InputStream inputStream)
-            throws IOException {
-        try {
-            ObjectInputStream objectInputStream =
-                    new ObjectInputStream(inputStream);
-            configuration = (Configuration) objectInputStream.readObject();
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
+    SystemSpecs getSystemSpecs() {
+        SystemSpecs systemSpecs = new SystemSpecs();
+        Runtime runtime = Runtime.getRuntime();
+
+        int availableCpuCores = runtime.availableProcessors();
+        long maxMemoryAvailable = runtime.maxMemory();
+
+        systemSpecs.setMaxMemoryAvailable(maxMemoryAvailable);
+        systemSpecs.setAvailableCpuCores(availableCpuCores);
+        systemSpecs.setNumberOfSlots(advertisedSlots);
+        systemSpecs.setRunningTasks(getNumberOfRunningTasks());
+        systemSpecs.setFreeMemory(maxMemoryAvailable
+                - (runtime.totalMemory() - runtime.freeMemory()));
+        systemSpecs.setSystemLoadAverage(ManagementFactory
+                .getOperatingSystemMXBean().getSystemLoadAverage());
+        return systemSpecs;
     }
 
     /**
      * <pre>
      * Shuts down this TaskTracker instance by performing the following actions
      * 1) Unregisters this TaskTracker from the registry
-     * 2) Cleans up the temporary files written by mappers and reducers
-     * 3) Delete temporary folders created by this TaskTracker for saving the intermediate files
+     * 2) Delete temporary folders created by this TaskTracker for saving the intermediate
+     *    files, with the files of the jobs that are still running
      * </pre>
      */
     private void shutdown() {
         unregister();
-        cleanup();
         deleteTempFolders();
 
         System.out.println("Unregistered successfully!");
@@ -514,9 +374,11 @@ public class TaskTracker {
         this.mtemp_dir = "mtemp_dir" + File.separator + nodeId;
         this.rtemp_dir = "rtemp_dir" + File.separator + nodeId;
         this.jartemp_dir = "jartemp_dir" + File.separator + nodeId;
+        this.cache_dir = "cache_dir" + File.separator + nodeId;
         createNewDirIfNotFound(mtemp_dir);
         createNewDirIfNotFound(rtemp_dir);
         createNewDirIfNotFound(jartemp_dir);
+        createNewDirIfNotFound(cache_dir);
     }
 
     /**
@@ -532,23 +394,6 @@ public class TaskTracker {
         }
     }
 
-    /**
-     * Creates an instance of {@link URLClassLoader} for the client jar file transfered by
-     * the ApplicationMaster. The classLoader instance is used for loading the Mapper and
-     * Reducer classes
-     * 
-     * @param file - {@link File} the client jar file
-     */
-    private void buildClassLoaderFromJar(File file) {
-        try {
-            URL[] url = new URL[] { file.toURI().toURL() };
-            classLoader =
-                    new URLClassLoader(url, this.getClass().getClassLoader());
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     /**
      * Registers this TaskTracker with the Registry. After a connection with the registry
      * has been established successfully, the method then creates an unique temp directory
@@ -564,7 +409,13 @@ public class TaskTracker {
             System.out.println("Registry " + registryHost + " Port "
                     + registryPort);
 
-            Socket registrySocket = new Socket(registryHost, registryPort);
+            // The server socket listens on the local address of the connection to the
+            // registry, which is the address the registry knows this TaskTracker by.
+            // Both sockets must allow the address to be reused for the bind to succeed
+            Socket registrySocket = new Socket();
+            registrySocket.setReuseAddress(true);
+            registrySocket.connect(new InetSocketAddress(registryHost, registryPort));
+            serverSocket.setReuseAddress(true);
             serverSocket.bind(registrySocket.getLocalSocketAddress());
 
             setupTempFolders(registrySocket.getLocalSocketAddress().toString());
@@ -589,45 +440,58 @@ public class TaskTracker {
         }
     }
 
+
     /**
-     * Cleans up the temporary files. Commented for testing
+     * Get the number of tasks running on this TaskTracker
+     * 
+     * @return number of running map and reduce tasks of all the jobs
      */
-    private void cleanup() {
-        deleteAllFilesInDir(mtemp_dir);
-        deleteAllFilesInDir(rtemp_dir);
+    private int getNumberOfRunningTasks() {
+        int runningTasks = 0;
+        synchronized (jobSessions) {
+            for (JobSession jobSession : jobSessions) {
+                runningTasks += jobSession.getNumberOfRunningTasks();
+            }
+        }
+        return runningTasks;
     }
 
     /**
      * Deletes the temporary folders created by this TaskTracker
      */
     private void deleteTempFolders() {
-        deleteDirIfFound(mtemp_dir);
-        deleteDirIfFound(rtemp_dir);
+        deleteRecursively(new File(mtemp_dir));
+        deleteRecursively(new File(rtemp_dir));
+        deleteRecursively(new File(jartemp_dir));
+        deleteRecursively(new File(cache_dir));
     }
 
     /**
-     * Utility method to delete the given directory if present
+     * Utility method to delete the given file, or the given directory with all its
+     * content
      * 
-     * @param dataDir - directory to be deleted
+     * @param file - file or directory to be deleted
      */
-    private void deleteDirIfFound(String dataDir) {
-        File dir = new File(dataDir);
-        if (dir.isDirectory()) {
-            dir.delete();
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
         }
+        file.delete();
     }
 
     /**
-     * Delete all files in the given directory
+     * Closes the given socket, ignoring the errors
      * 
-     * @param dataDir - a file directory
+     * @param socket {@link Socket}
      */
-    private void deleteAllFilesInDir(String dataDir) {
-        File dir = new File(dataDir);
-        String[] listOfFiles = dir.list();
-        for (String fileName : listOfFiles) {
-            File file = new File(dir, fileName);
-            file.delete();
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing more can be done with the connection
         }
     }
 }